@@ -0,0 +1,83 @@
+package net.osmand.benchmark;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.util.Algorithms;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Test resources of OsmAnd-java used by benchmarks (paths are relative to OsmAnd-java as in tests).
+ */
+public class BenchmarkResources {
+
+	public static final String RESOURCES_PATH = "src/test/resources/";
+	public static final String ROUTING_OBF = RESOURCES_PATH + "Routing_test.obf";
+	public static final String SEARCH_PATH = RESOURCES_PATH + "search/";
+	public static final String POI_TYPES = RESOURCES_PATH + "poi_types.xml";
+
+	public static File getFile(String path) throws FileNotFoundException {
+		File file = new File(path);
+		if (!file.exists()) {
+			throw new FileNotFoundException(file.getAbsolutePath()
+					+ " (run OsmAnd-java collectTestResources task to copy test resources)");
+		}
+		return file;
+	}
+
+	public static BinaryMapIndexReader openReader(String path) throws IOException {
+		return openReader(path, false);
+	}
+
+	/**
+	 * Opens obf file, gzipped files (as search test files) are unpacked to temporary file which is deleted on exit.
+	 * @param memoryMapped read file through memory mapping instead of raf
+	 */
+	public static BinaryMapIndexReader openReader(String path, boolean memoryMapped) throws IOException {
+		File file = getFile(path);
+		if (file.getName().endsWith(".gz")) {
+			File tmp = File.createTempFile(file.getName().substring(0, file.getName().length() - 3), ".obf");
+			tmp.deleteOnExit();
+			InputStream in = new GZIPInputStream(new FileInputStream(file));
+			OutputStream out = new FileOutputStream(tmp);
+			try {
+				Algorithms.streamCopy(in, out);
+			} finally {
+				Algorithms.closeStream(in);
+				Algorithms.closeStream(out);
+			}
+			file = tmp;
+		}
+		return new BinaryMapIndexReader(new RandomAccessFile(file, "r"), file, true, memoryMapped);
+	}
+
+	/**
+	 * First (by name) gzipped obf of search tests.
+	 */
+	public static String getSearchObf() throws IOException {
+		File[] files = getFile(SEARCH_PATH).listFiles();
+		if (files != null) {
+			Arrays.sort(files);
+			for (File f : files) {
+				if (f.getName().endsWith(".obf.gz")) {
+					return f.getPath();
+				}
+			}
+		}
+		throw new FileNotFoundException("No obf files in " + SEARCH_PATH);
+	}
+
+	public static void close(BinaryMapIndexReader reader) throws IOException {
+		if (reader != null) {
+			reader.close();
+		}
+	}
+}
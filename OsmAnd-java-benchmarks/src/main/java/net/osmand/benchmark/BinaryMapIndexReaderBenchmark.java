@@ -0,0 +1,121 @@
+package net.osmand.benchmark;
+
+import net.osmand.binary.BinaryMapDataObject;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.MapIndex;
+import net.osmand.binary.BinaryMapIndexReader.MapRoot;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.data.Amenity;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Map, poi and route data reading of area in the middle of test files (1/4 of index bounds by width and height)
+ * with raf and memory mapped readers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinaryMapIndexReaderBenchmark {
+
+	@Param({ BenchmarkResources.ROUTING_OBF })
+	public String mapObf;
+
+	// empty - first obf of search tests
+	@Param({ "" })
+	public String poiObf;
+
+	@Param({ "15" })
+	public int zoom;
+
+	@Param({ "false", "true" })
+	public boolean memoryMapped;
+
+	private BinaryMapIndexReader mapReader;
+	private BinaryMapIndexReader poiReader;
+	private int[] mapBox;
+	private int[] poiBox;
+
+	@Setup
+	public void setup() throws IOException {
+		mapReader = BenchmarkResources.openReader(mapObf, memoryMapped);
+		poiReader = BenchmarkResources.openReader(poiObf.isEmpty() ? BenchmarkResources.getSearchObf() : poiObf,
+				memoryMapped);
+		List<MapIndex> mapIndexes = mapReader.getMapIndexes();
+		if (mapIndexes.isEmpty() || mapIndexes.get(0).getRoots().isEmpty()) {
+			throw new IllegalStateException("No map data in " + mapObf);
+		}
+		List<MapRoot> roots = mapIndexes.get(0).getRoots();
+		MapRoot root = roots.get(roots.size() - 1);
+		mapBox = centerBox(root.getLeft(), root.getRight(), root.getTop(), root.getBottom());
+		List<PoiRegion> poiIndexes = poiReader.getPoiIndexes();
+		if (poiIndexes.isEmpty()) {
+			throw new IllegalStateException("No poi data in " + poiObf);
+		}
+		PoiRegion poi = poiIndexes.get(0);
+		poiBox = centerBox(poi.getLeft31(), poi.getRight31(), poi.getTop31(), poi.getBottom31());
+	}
+
+	private static int[] centerBox(int left, int right, int top, int bottom) {
+		int w = (right - left) / 8;
+		int h = (bottom - top) / 8;
+		int cx = left + (right - left) / 2;
+		int cy = top + (bottom - top) / 2;
+		return new int[] { cx - w, cx + w, cy - h, cy + h };
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		BenchmarkResources.close(mapReader);
+		BenchmarkResources.close(poiReader);
+	}
+
+	@Benchmark
+	public List<BinaryMapDataObject> searchMapIndex() throws IOException {
+		SearchRequest<BinaryMapDataObject> req = BinaryMapIndexReader.buildSearchRequest(mapBox[0], mapBox[1],
+				mapBox[2], mapBox[3], zoom, null);
+		return mapReader.searchMapIndex(req);
+	}
+
+	@Benchmark
+	public List<Amenity> searchPoi() throws IOException {
+		SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(poiBox[0], poiBox[1], poiBox[2],
+				poiBox[3], zoom, BinaryMapIndexReader.ACCEPT_ALL_POI_TYPE_FILTER, null);
+		return poiReader.searchPoi(req);
+	}
+
+	@Benchmark
+	public int loadRouteData() throws IOException {
+		int count = 0;
+		for (RouteRegion reg : mapReader.getRoutingIndexes()) {
+			SearchRequest<RouteDataObject> req = BinaryMapIndexReader.buildSearchRouteRequest(mapBox[0], mapBox[1],
+					mapBox[2], mapBox[3], null);
+			for (RouteSubregion sub : mapReader.searchRouteIndexTree(req, reg.getSubregions())) {
+				count += mapReader.loadRouteIndexData(sub).size();
+			}
+		}
+		return count;
+	}
+}
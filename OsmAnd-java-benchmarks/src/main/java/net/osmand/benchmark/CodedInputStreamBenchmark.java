@@ -0,0 +1,81 @@
+package net.osmand.benchmark;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Varint decoding as in obf reading: buffer of random numbers with distribution of coordinate deltas
+ * (mostly 1-2 bytes) or of ids and file pointers (3-5 bytes).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodedInputStreamBenchmark {
+
+	private static final int NUMBERS = 100000;
+
+	@Param({ "small", "large" })
+	public String numbers;
+
+	private byte[] buf32;
+	private byte[] buf64;
+
+	@Setup
+	public void setup() throws IOException {
+		Random rnd = new Random(1);
+		ByteArrayOutputStream out32 = new ByteArrayOutputStream();
+		ByteArrayOutputStream out64 = new ByteArrayOutputStream();
+		CodedOutputStream c32 = CodedOutputStream.newInstance(out32);
+		CodedOutputStream c64 = CodedOutputStream.newInstance(out64);
+		boolean small = "small".equals(numbers);
+		for (int i = 0; i < NUMBERS; i++) {
+			int v = small ? rnd.nextInt(1 << 12) : rnd.nextInt(Integer.MAX_VALUE);
+			c32.writeRawVarint32(v);
+			c64.writeRawVarint64(small ? v : ((long) v << 20) | rnd.nextInt(1 << 20));
+		}
+		c32.flush();
+		c64.flush();
+		buf32 = out32.toByteArray();
+		buf64 = out64.toByteArray();
+	}
+
+	@Benchmark
+	public long readRawVarint32() throws IOException {
+		CodedInputStream in = CodedInputStream.newInstance(buf32);
+		long sum = 0;
+		for (int i = 0; i < NUMBERS; i++) {
+			sum += in.readRawVarint32();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long readRawVarint64() throws IOException {
+		CodedInputStream in = CodedInputStream.newInstance(buf64);
+		long sum = 0;
+		for (int i = 0; i < NUMBERS; i++) {
+			sum += in.readRawVarint64();
+		}
+		return sum;
+	}
+}
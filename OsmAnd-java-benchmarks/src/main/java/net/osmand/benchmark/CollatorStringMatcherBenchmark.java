@@ -0,0 +1,99 @@
+package net.osmand.benchmark;
+
+import net.osmand.Collator;
+import net.osmand.CollatorStringMatcher;
+import net.osmand.CollatorStringMatcher.StringMatcherMode;
+import net.osmand.OsmAndCollator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Name matching of search: {@link CollatorStringMatcher#matches} (ascii names are matched with weights of chars)
+ * against {@link CollatorStringMatcher#cmatches} (collator for every name) on the same names and queries.
+ * Corpus "ascii" has only ascii names, "multilingual" has names of different scripts and latin names
+ * with diacritics (they are matched by collator in both cases).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CollatorStringMatcherBenchmark {
+
+	private static final String[] ASCII_NAMES = {
+			"Main Street", "Central Station", "Saint Peter's Church", "Hotel Continental", "Green Park",
+			"Bahnhofstrasse", "Rue de la Paix", "Via Roma", "Old Town Pharmacy", "Riverside Cafe",
+			"North Bridge Road", "Museum of Modern Art", "Lakeview Apartments", "City Hall", "Market Square"
+	};
+
+	private static final String[] NON_ASCII_NAMES = {
+			"Hauptstraße", "Café de Flore", "Plaza de España", "Kraków Główny", "Champs-Élysées",
+			"Улица Ленина", "Красная площадь", "Οδός Ερμού", "Ακρόπολη", "東京駅",
+			"北京路", "شارع الملك فهد", "רחוב הרצל", "İstiklal Caddesi", "Łódź Fabryczna"
+	};
+
+	// lower case queries without chars changed by matcher, so collator path gets the same parts as matcher
+	private static final String[] QUERIES = {
+			"main", "sta", "cafe", "stra", "plaza", "улица", "οδός", "東京", "krakow", "park"
+	};
+
+	@Param({ "ascii", "multilingual" })
+	public String corpus;
+
+	@Param({ "CHECK_STARTS_FROM_SPACE", "CHECK_EQUALS_FROM_SPACE", "CHECK_CONTAINS" })
+	public String mode;
+
+	private List<String> names;
+	private List<CollatorStringMatcher> matchers;
+	private StringMatcherMode matcherMode;
+	private Collator collator;
+
+	@Setup
+	public void setUp() {
+		names = new ArrayList<String>(Arrays.asList(ASCII_NAMES));
+		if (corpus.equals("multilingual")) {
+			names.addAll(Arrays.asList(NON_ASCII_NAMES));
+		}
+		matcherMode = StringMatcherMode.valueOf(mode);
+		collator = OsmAndCollator.primaryCollator();
+		matchers = new ArrayList<CollatorStringMatcher>();
+		for (String q : QUERIES) {
+			matchers.add(new CollatorStringMatcher(q, matcherMode));
+		}
+	}
+
+	@Benchmark
+	public void asciiPath(Blackhole bh) {
+		for (CollatorStringMatcher matcher : matchers) {
+			for (String name : names) {
+				bh.consume(matcher.matches(name));
+			}
+		}
+	}
+
+	@Benchmark
+	public void collatorPath(Blackhole bh) {
+		for (String part : QUERIES) {
+			for (String name : names) {
+				bh.consume(CollatorStringMatcher.cmatches(collator, name, part, matcherMode));
+			}
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package net.osmand.benchmark;
+
+import net.osmand.gpx.GPXFile;
+import net.osmand.gpx.GPXUtilities;
+import net.osmand.gpx.GPXUtilities.Track;
+import net.osmand.gpx.GPXUtilities.TrkSegment;
+import net.osmand.gpx.GPXUtilities.WptPt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading of recorded track (generated random walk with time, elevation and speed, as OsmAnd writes tracks).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GpxBenchmark {
+
+	@Param({ "10000", "100000" })
+	public int points;
+
+	private File file;
+
+	@Setup
+	public void setup() throws IOException {
+		GPXFile gpx = new GPXFile("OsmAnd benchmark");
+		Track track = new Track();
+		TrkSegment segment = new TrkSegment();
+		track.segments.add(segment);
+		gpx.tracks.add(track);
+		Random rnd = new Random(1);
+		double lat = 52.37;
+		double lon = 4.89;
+		long time = 1600000000000L;
+		double ele = 10;
+		for (int i = 0; i < points; i++) {
+			lat += (rnd.nextDouble() - 0.5) * 1e-4;
+			lon += (rnd.nextDouble() - 0.5) * 1e-4;
+			ele += rnd.nextDouble() - 0.5;
+			time += 1000;
+			segment.points.add(new WptPt(lat, lon, time, ele, rnd.nextDouble() * 10, 5));
+		}
+		file = File.createTempFile("benchmark", ".gpx");
+		Exception e = GPXUtilities.writeGpxFile(file, gpx);
+		if (e != null) {
+			throw new IOException(e);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public GPXFile loadGPXFile() {
+		return GPXUtilities.loadGPXFile(file);
+	}
+}
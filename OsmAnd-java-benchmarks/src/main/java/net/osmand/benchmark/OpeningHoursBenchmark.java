@@ -0,0 +1,48 @@
+package net.osmand.benchmark;
+
+import net.osmand.util.OpeningHoursParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of typical opening_hours values (as in OpeningHoursParserTest).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpeningHoursBenchmark {
+
+	private static final String[] OPENING_HOURS = {
+			"24/7",
+			"Mo-Fr 08:00-20:00; Sa 09:00-14:00",
+			"Mo-Fr 09:00-12:00, 13:00-18:00; Sa 10:00-14:00; PH off",
+			"Mo-Su 07:00-23:00; Dec 25 off",
+			"Mo-Th 11:00-03:00; Fr-Sa 11:00-05:00; Su 11:00-03:00",
+			"Apr-Oct: Mo-Su 10:00-19:00; Nov-Mar: Tu-Su 10:00-17:00",
+			"Mo-Fr 06:30-21:00; Sa,Su 08:00-21:00; week 01-52/2 We off",
+			"sunrise-sunset",
+			"Mo,We,Fr 09:00-17:00 \"by appointment\"; Tu,Th 09:00-20:00",
+			"Jan 01-Feb 15 Mo-Fr 10:00-16:00; Feb 16-Dec 31 Mo-Sa 09:00-18:00; SH off"
+	};
+
+	@Benchmark
+	public void parseOpenedHours(Blackhole bh) {
+		for (String oh : OPENING_HOURS) {
+			bh.consume(OpeningHoursParser.parseOpenedHours(oh));
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package net.osmand.benchmark;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiRegion;
+import net.osmand.data.LatLon;
+import net.osmand.osm.MapPoiTypes;
+import net.osmand.search.SearchUICore;
+import net.osmand.search.SearchUICore.SearchResultCollection;
+import net.osmand.search.core.SearchSettings;
+import net.osmand.util.MapUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full text search (as typed in search UI) with obf of search tests around its center.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchUICoreBenchmark {
+
+	// empty - first obf of search tests
+	@Param({ "" })
+	public String obf;
+
+	@Param({ "Restaurant", "Main", "Main Street 1" })
+	public String query;
+
+	private BinaryMapIndexReader reader;
+	private SearchUICore core;
+
+	@Setup
+	public void setup() throws IOException {
+		reader = BenchmarkResources.openReader(obf.isEmpty() ? BenchmarkResources.getSearchObf() : obf);
+		MapPoiTypes.setDefault(new MapPoiTypes(BenchmarkResources.getFile(BenchmarkResources.POI_TYPES).getPath()));
+		core = new SearchUICore(MapPoiTypes.getDefault(), "en", false);
+		core.init();
+		LatLon center = reader.getRegionCenter();
+		if (center == null && !reader.getPoiIndexes().isEmpty()) {
+			PoiRegion poi = reader.getPoiIndexes().get(0);
+			center = new LatLon(MapUtils.get31LatitudeY(poi.getTop31() / 2 + poi.getBottom31() / 2),
+					MapUtils.get31LongitudeX(poi.getLeft31() / 2 + poi.getRight31() / 2));
+		}
+		SearchSettings settings = new SearchSettings(Collections.singletonList(reader)).setLang("en", false);
+		core.updateSettings(settings.setOriginalLocation(center));
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		BenchmarkResources.close(reader);
+	}
+
+	@Benchmark
+	public SearchResultCollection search() {
+		return core.immediateSearch(query, null);
+	}
+}
@@ -0,0 +1,161 @@
+package net.osmand.router;
+
+import net.osmand.benchmark.BenchmarkResources;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.data.LatLon;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxRouteApproximation;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+import net.osmand.util.MapUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Step by step gpx approximation against map matching (hmm) on the track sampled along calculated route
+ * with gaussian noise. Accuracy (share of approximated points close to original route and unmatched distance)
+ * of the last invocation is printed on tear down.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx1g" })
+public class GpxApproximationBenchmark {
+
+	@Param({ BenchmarkResources.ROUTING_OBF })
+	public String obf;
+
+	@Param({ "steps", "hmm" })
+	public String approximation;
+
+	// gps error (m)
+	@Param({ "5", "20" })
+	public double noise;
+
+	// distance between track points (m)
+	@Param({ "20", "100" })
+	public double sampleDistance;
+
+	private BinaryMapIndexReader[] readers;
+	private RoutingConfiguration config;
+	private RoutePlannerFrontEnd frontEnd;
+	private List<RouteSegmentResult> route;
+	private List<LatLon> track;
+	private GpxRouteApproximation last;
+
+	@Setup
+	public void setup() throws IOException, InterruptedException {
+		readers = new BinaryMapIndexReader[] { BenchmarkResources.openReader(obf) };
+		RouteRegion reg = readers[0].getRoutingIndexes().get(0);
+		config = RoutingConfiguration.getDefault().build("car",
+				new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+						RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT), new HashMap<String, String>());
+		frontEnd = new RoutePlannerFrontEnd();
+		double lat = reg.getTopLatitude() - reg.getBottomLatitude();
+		double lon = reg.getRightLongitude() - reg.getLeftLongitude();
+		LatLon start = new LatLon(reg.getBottomLatitude() + lat * 0.3, reg.getLeftLongitude() + lon * 0.3);
+		LatLon end = new LatLon(reg.getBottomLatitude() + lat * 0.7, reg.getLeftLongitude() + lon * 0.7);
+		route = frontEnd.searchRoute(frontEnd.buildRoutingContext(config, null, readers, RouteCalculationMode.NORMAL),
+				start, end, null);
+		if (route == null || route.isEmpty()) {
+			throw new IllegalStateException("Route is not found in " + obf);
+		}
+		track = sampleTrack(route, sampleDistance, noise, new Random(11));
+		config.hmmApproximation = "hmm".equals(approximation);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		if (last != null) {
+			List<LatLon> matched = sampleTrack(last.result, sampleDistance, 0, null);
+			int close = 0;
+			for (LatLon l : matched) {
+				if (distanceToRoute(route, l) < 2 * noise + 10) {
+					close++;
+				}
+			}
+			System.out.println(String.format("%s: %d of %d points close to route, unmatched %d of %d m", approximation,
+					close, matched.size(), last.routeDistanceUnmatched, last.routeDistance));
+		}
+		BenchmarkResources.close(readers[0]);
+	}
+
+	@Benchmark
+	public GpxRouteApproximation searchGpxRoute() throws IOException, InterruptedException {
+		RoutingContext ctx = frontEnd.buildRoutingContext(config, null, readers, RouteCalculationMode.NORMAL);
+		ctx.calculationProgress = new RouteCalculationProgress();
+		GpxRouteApproximation gctx = new GpxRouteApproximation(ctx);
+		List<GpxPoint> points = new ArrayList<GpxPoint>();
+		frontEnd.appendGpxPoints(gctx, points, track);
+		last = frontEnd.searchGpxRoute(gctx, points, null);
+		return last;
+	}
+
+	private static List<LatLon> sampleTrack(List<RouteSegmentResult> route, double sampleDistance, double noise, Random rnd) {
+		List<LatLon> res = new ArrayList<LatLon>();
+		double toNext = 0;
+		LatLon prev = null;
+		for (RouteSegmentResult r : route) {
+			int inc = r.isForwardDirection() ? 1 : -1;
+			for (int i = r.getStartPointIndex(); ; i += inc) {
+				LatLon p = r.getPoint(i);
+				if (prev != null) {
+					double d = MapUtils.getDistance(prev, p);
+					double passed = 0;
+					while (passed + toNext <= d) {
+						passed += toNext;
+						double k = passed / d;
+						LatLon s = new LatLon(prev.getLatitude() + (p.getLatitude() - prev.getLatitude()) * k,
+								prev.getLongitude() + (p.getLongitude() - prev.getLongitude()) * k);
+						if (rnd != null) {
+							s = MapUtils.rhumbDestinationPoint(s, rnd.nextGaussian() * noise, rnd.nextDouble() * 360);
+						}
+						res.add(s);
+						toNext = sampleDistance;
+					}
+					toNext -= d - passed;
+				}
+				prev = p;
+				if (i == r.getEndPointIndex()) {
+					break;
+				}
+			}
+		}
+		return res;
+	}
+
+	private static double distanceToRoute(List<RouteSegmentResult> route, LatLon l) {
+		double min = Double.POSITIVE_INFINITY;
+		for (RouteSegmentResult r : route) {
+			int inc = r.isForwardDirection() ? 1 : -1;
+			for (int i = r.getStartPointIndex(); i != r.getEndPointIndex(); i += inc) {
+				LatLon a = r.getPoint(i);
+				LatLon b = r.getPoint(i + inc);
+				min = Math.min(min, MapUtils.getOrthogonalDistance(l.getLatitude(), l.getLongitude(),
+						a.getLatitude(), a.getLongitude(), b.getLatitude(), b.getLongitude()));
+			}
+		}
+		return min;
+	}
+}
@@ -0,0 +1,176 @@
+package net.osmand.router;
+
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentVisitor;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Open set of A* search on operations recorded from RoutingBenchmark routes: every visited segment is polled
+ * in the order planner visited it and is added after poll of its nearest visited parent (parentRoute)
+ * with priority it had when it was visited. Open set "heap" is {@link RouteSegmentHeap},
+ * "priorityQueue" is baseline with java.util.PriorityQueue as planner used it before.
+ * Segments queued but never visited are not recorded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class RouteSegmentHeapBenchmark {
+
+	private static final int POLL = -1;
+
+	@Param({ "heap", "priorityQueue" })
+	public String openSet;
+
+	@Param({ "500" })
+	public int minDistanceKm;
+
+	private final List<RecordedSearch> searches = new ArrayList<RecordedSearch>();
+
+	private static class RecordedSearch {
+		float heuristicCoefficient;
+		// copies of visited segments (only priority is set)
+		RouteSegment[] segments;
+		// index of segment to add or POLL
+		int[] operations;
+	}
+
+	@Setup
+	public void setup() throws IOException, InterruptedException {
+		RoutingBenchmark routing = new RoutingBenchmark();
+		routing.minDistanceKm = minDistanceKm;
+		routing.setup();
+		try {
+			for (RoutingBenchmark.RouteCase rc : routing.cases) {
+				RoutingContext ctx = routing.newContext(rc);
+				RouteSegmentPoint[] pnts = routing.findPoints(rc, ctx);
+				final List<RouteSegment> visited = new ArrayList<RouteSegment>();
+				final List<float[]> priorities = new ArrayList<float[]>();
+				ctx.visitor = new RouteSegmentVisitor() {
+
+					@Override
+					public void visitSegment(RouteSegment segment, int segmentEnd, boolean poll) {
+						visited.add(segment);
+						priorities.add(new float[] { segment.distanceFromStart, segment.distanceToEnd });
+					}
+
+					@Override
+					public void visitApproximatedSegments(List<RouteSegmentResult> segment, GpxPoint start,
+							GpxPoint target) {
+					}
+				};
+				new BinaryRoutePlanner().searchRouteInternal(ctx, pnts[0], pnts[1], null);
+				searches.add(record(ctx.config.heuristicCoefficient, visited, priorities));
+			}
+		} finally {
+			routing.tearDown();
+		}
+	}
+
+	private static RecordedSearch record(float heuristicCoefficient, List<RouteSegment> visited, List<float[]> priorities) {
+		Map<RouteSegment, Integer> firstPoll = new IdentityHashMap<RouteSegment, Integer>();
+		for (int i = 0; i < visited.size(); i++) {
+			if (!firstPoll.containsKey(visited.get(i))) {
+				firstPoll.put(visited.get(i), i);
+			}
+		}
+		// segments added after every poll (last list is for segments added before the first poll)
+		List<List<Integer>> addedAfterPoll = new ArrayList<List<Integer>>();
+		for (int i = 0; i <= visited.size(); i++) {
+			addedAfterPoll.add(new ArrayList<Integer>());
+		}
+		RecordedSearch rs = new RecordedSearch();
+		rs.heuristicCoefficient = heuristicCoefficient;
+		rs.segments = new RouteSegment[visited.size()];
+		for (int i = 0; i < visited.size(); i++) {
+			rs.segments[i] = new RouteSegment(null, 0, 1);
+			rs.segments[i].distanceFromStart = priorities.get(i)[0];
+			rs.segments[i].distanceToEnd = priorities.get(i)[1];
+			int parentPoll = -1;
+			RouteSegment parent = visited.get(i).getParentRoute();
+			while (parent != null && parent != RouteSegment.NULL) {
+				Integer p = firstPoll.get(parent);
+				if (p != null) {
+					parentPoll = p;
+					break;
+				}
+				parent = parent.getParentRoute();
+			}
+			if (parentPoll >= i) {
+				// parent was reassigned after segment was visited
+				parentPoll = i - 1;
+			}
+			addedAfterPoll.get(parentPoll < 0 ? visited.size() : parentPoll).add(i);
+		}
+		List<Integer> ops = new ArrayList<Integer>();
+		ops.addAll(addedAfterPoll.get(visited.size()));
+		for (int i = 0; i < visited.size(); i++) {
+			ops.add(POLL);
+			ops.addAll(addedAfterPoll.get(i));
+		}
+		rs.operations = new int[ops.size()];
+		for (int i = 0; i < rs.operations.length; i++) {
+			rs.operations[i] = ops.get(i);
+		}
+		return rs;
+	}
+
+	@Benchmark
+	public void replayOpenSet(Blackhole bh) {
+		boolean heap = "heap".equals(openSet);
+		for (RecordedSearch rs : searches) {
+			if (heap) {
+				RouteSegmentHeap queue = new RouteSegmentHeap(50, rs.heuristicCoefficient);
+				for (int op : rs.operations) {
+					if (op == POLL) {
+						bh.consume(queue.poll());
+					} else {
+						queue.add(rs.segments[op]);
+					}
+				}
+				queue.clear();
+			} else {
+				final float heuristicCoefficient = rs.heuristicCoefficient;
+				PriorityQueue<RouteSegment> queue = new PriorityQueue<RouteSegment>(50, new Comparator<RouteSegment>() {
+					@Override
+					public int compare(RouteSegment o1, RouteSegment o2) {
+						return BinaryRoutePlanner.roadPriorityComparator(o1.distanceFromStart, o1.distanceToEnd,
+								o2.distanceFromStart, o2.distanceToEnd, heuristicCoefficient);
+					}
+				});
+				for (int op : rs.operations) {
+					if (op == POLL) {
+						bh.consume(queue.poll());
+					} else {
+						queue.add(rs.segments[op]);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package net.osmand.router;
+
+import net.osmand.benchmark.BenchmarkResources;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.data.LatLon;
+import net.osmand.router.BinaryRoutePlanner.FinalRouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+import net.osmand.util.Algorithms;
+import net.osmand.util.MapUtils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A* search and route preparation of RouteTestingTest cases (test_routing.json) with start and end
+ * at least minDistanceKm apart (transit points are not used). Open set of the search is compared with
+ * java.util.PriorityQueue by {@link RouteSegmentHeapBenchmark}.
+ * Every invocation uses new routing contexts, so search time includes tile loading as in real route calculation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class RoutingBenchmark {
+
+	public static final String TEST_ROUTING_JSON = BenchmarkResources.RESOURCES_PATH + "test_routing.json";
+
+	@Param({ "500" })
+	public int minDistanceKm;
+
+	private final Map<String, BinaryMapIndexReader> openedReaders = new LinkedHashMap<String, BinaryMapIndexReader>();
+	final List<RouteCase> cases = new ArrayList<RouteCase>();
+	private RoutePlannerFrontEnd frontEnd;
+
+	private List<RoutingContext> contexts;
+	private List<RouteSegmentPoint[]> points;
+
+	static class RouteCase {
+		String name;
+		LatLon start;
+		LatLon end;
+		BinaryMapIndexReader[] readers;
+		RoutingConfiguration config;
+	}
+
+	@Setup
+	public void setup() throws IOException {
+		frontEnd = new RoutePlannerFrontEnd();
+		FileInputStream in = new FileInputStream(BenchmarkResources.getFile(TEST_ROUTING_JSON));
+		JSONArray entries;
+		try {
+			entries = new JSONArray(Algorithms.readFromInputStream(in).toString());
+		} finally {
+			Algorithms.closeStream(in);
+		}
+		for (int i = 0; i < entries.length(); i++) {
+			JSONObject entry = entries.getJSONObject(i);
+			if (entry.optBoolean("ignore")) {
+				continue;
+			}
+			RouteCase rc = new RouteCase();
+			rc.name = entry.optString("testName");
+			rc.start = readLatLon(entry.getJSONObject("startPoint"));
+			rc.end = readLatLon(entry.getJSONObject("endPoint"));
+			if (MapUtils.getDistance(rc.start, rc.end) < minDistanceKm * 1000d) {
+				continue;
+			}
+			Map<String, String> params = new HashMap<String, String>();
+			JSONObject jsonParams = entry.optJSONObject("params");
+			if (jsonParams != null) {
+				Iterator<String> keys = jsonParams.keys();
+				while (keys.hasNext()) {
+					String key = keys.next();
+					params.put(key, String.valueOf(jsonParams.get(key)));
+				}
+			}
+			// readers and configuration as in RouteTestingTest
+			BinaryMapIndexReader base = openReader(BenchmarkResources.ROUTING_OBF);
+			rc.readers = params.containsKey("map")
+					? new BinaryMapIndexReader[] { openReader(BenchmarkResources.RESOURCES_PATH + params.get("map")), base }
+					: new BinaryMapIndexReader[] { base };
+			rc.config = RoutingConfiguration.getDefault().build(
+					params.containsKey("vehicle") ? params.get("vehicle") : "car",
+					new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+							RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT), params);
+			if (params.containsKey("heuristicCoefficient")) {
+				rc.config.heuristicCoefficient = Float.parseFloat(params.get("heuristicCoefficient"));
+			}
+			cases.add(rc);
+		}
+		if (cases.isEmpty()) {
+			throw new IllegalStateException("No routes of " + minDistanceKm + " km and longer in " + TEST_ROUTING_JSON);
+		}
+	}
+
+	private BinaryMapIndexReader openReader(String path) throws IOException {
+		BinaryMapIndexReader reader = openedReaders.get(path);
+		if (reader == null) {
+			reader = BenchmarkResources.openReader(path);
+			openedReaders.put(path, reader);
+		}
+		return reader;
+	}
+
+	private static LatLon readLatLon(JSONObject obj) {
+		return new LatLon(obj.getDouble("latitude"), obj.getDouble("longitude"));
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		for (BinaryMapIndexReader reader : openedReaders.values()) {
+			BenchmarkResources.close(reader);
+		}
+		openedReaders.clear();
+	}
+
+	@Setup(Level.Invocation)
+	public void setupInvocation() throws IOException, InterruptedException {
+		contexts = new ArrayList<RoutingContext>();
+		points = new ArrayList<RouteSegmentPoint[]>();
+		for (RouteCase rc : cases) {
+			RoutingContext ctx = newContext(rc);
+			contexts.add(ctx);
+			points.add(findPoints(rc, ctx));
+		}
+	}
+
+	RoutingContext newContext(RouteCase rc) {
+		RoutingContext ctx = frontEnd.buildRoutingContext(rc.config, null, rc.readers, RouteCalculationMode.NORMAL);
+		ctx.calculationProgress = new RouteCalculationProgress();
+		return ctx;
+	}
+
+	RouteSegmentPoint[] findPoints(RouteCase rc, RoutingContext ctx) throws IOException, InterruptedException {
+		RouteSegmentPoint start = frontEnd.findRouteSegment(rc.start.getLatitude(), rc.start.getLongitude(), ctx, null);
+		RouteSegmentPoint end = frontEnd.findRouteSegment(rc.end.getLatitude(), rc.end.getLongitude(), ctx, null);
+		if (start == null || end == null) {
+			throw new IllegalStateException("Route points of " + rc.name + " are not found");
+		}
+		ctx.initStartAndTargetPoints(start, end);
+		return new RouteSegmentPoint[] { start, end };
+	}
+
+	@State(Scope.Thread)
+	public static class FoundRoutes {
+		private List<RoutingContext> contexts;
+		private List<FinalRouteSegment> finalSegments;
+
+		@Setup(Level.Invocation)
+		public void search(RoutingBenchmark b) throws IOException, InterruptedException {
+			contexts = new ArrayList<RoutingContext>();
+			finalSegments = new ArrayList<FinalRouteSegment>();
+			for (RouteCase rc : b.cases) {
+				RoutingContext ctx = b.newContext(rc);
+				RouteSegmentPoint[] pnts = b.findPoints(rc, ctx);
+				contexts.add(ctx);
+				finalSegments.add(new BinaryRoutePlanner().searchRouteInternal(ctx, pnts[0], pnts[1], null));
+			}
+		}
+	}
+
+	@Benchmark
+	public void searchRouteInternal(Blackhole bh) throws IOException, InterruptedException {
+		for (int i = 0; i < contexts.size(); i++) {
+			RouteSegmentPoint[] pnts = points.get(i);
+			bh.consume(new BinaryRoutePlanner().searchRouteInternal(contexts.get(i), pnts[0], pnts[1], null));
+		}
+	}
+
+	@Benchmark
+	public void prepareResult(FoundRoutes routes, Blackhole bh) throws IOException {
+		for (int i = 0; i < routes.contexts.size(); i++) {
+			bh.consume(new RouteResultPreparation().prepareResult(routes.contexts.get(i), routes.finalSegments.get(i)));
+		}
+	}
+}
@@ -33,6 +33,7 @@ package com.google.protobuf;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -68,6 +69,10 @@ public final class CodedInputStream {
     return new CodedInputStream(raf);
   }
 
+  public static CodedInputStream newInstance(MappedFileInput mappedFile) {
+    return new CodedInputStream(mappedFile.newCursor());
+  }
+
   /**
    * Create a new CodedInputStream wrapping the given byte array slice.
    */
@@ -222,7 +227,7 @@ public final class CodedInputStream {
   /** Read a {@code string} field value from the stream. */
   public String readString() throws IOException {
     final int size = readRawVarint32();
-    if (size <= (bufferSize - bufferPos) && size > 0) {
+    if (size <= (bufferSize - bufferPos) && size > 0 && mapped == null) {
       // Fast path:  We already have the bytes in a contiguous buffer, so
       //   just copy directly from it.
       final String result = new String(buffer, bufferPos, size, "UTF-8");
@@ -324,7 +329,7 @@ public final class CodedInputStream {
     final int size = readRawVarint32();
     if (size == 0) {
       return ByteString.EMPTY;
-    } else if (size <= (bufferSize - bufferPos) && size > 0) {
+    } else if (size <= (bufferSize - bufferPos) && size > 0 && mapped == null) {
       // Fast path:  We already have the bytes in a contiguous buffer, so
       //   just copy directly from it.
       final ByteString result = ByteString.copyFrom(buffer, bufferPos, size);
@@ -539,6 +544,10 @@ public final class CodedInputStream {
 
   private final byte[] buffer;
   private RandomAccessFile raf;
+  // osmand change: memory mapped input is read without intermediate buffer,
+  // current chunk of mapping is the buffer and buffer positions are offsets in chunk
+  private MappedFileInput.Cursor mapped;
+  private ByteBuffer mappedChunk;
   private int bufferSize;
   private int bufferSizeAfterLimit;
   private int bufferPos;
@@ -551,11 +560,12 @@ public final class CodedInputStream {
    * {@code totalBytesRetired + bufferPos}.  This value may be negative if
    * reading started in the middle of the current buffer (e.g. if the
    * constructor that takes a byte array and an offset was used).
+   * osmand change: positions are long as files could be bigger than 2 GB.
    */
-  private int totalBytesRetired;
+  private long totalBytesRetired;
 
   /** The absolute position of the end of the current message. */
-  private int currentLimit = Integer.MAX_VALUE;
+  private long currentLimit = NO_LIMIT;
 
   /** See setRecursionLimit() */
   private int recursionDepth;
@@ -567,6 +577,7 @@ public final class CodedInputStream {
   private static final int DEFAULT_RECURSION_LIMIT = 64;
   private static final int DEFAULT_SIZE_LIMIT = 64 << 20;  // 64MB
   private static final int BUFFER_SIZE = 5 * 1024;
+  private static final long NO_LIMIT = Long.MAX_VALUE;
 
   private CodedInputStream(final byte[] buffer, final int off, final int len) {
     this.buffer = buffer;
@@ -586,6 +597,15 @@ public final class CodedInputStream {
 		input = null;
 	}
 
+	private CodedInputStream(final MappedFileInput.Cursor mapped) {
+		buffer = null;
+		this.bufferSize = 0;
+		bufferPos = 0;
+		totalBytesRetired = 0;
+		this.mapped = mapped;
+		input = null;
+	}
+
   private CodedInputStream(final InputStream input) {
     buffer = new byte[BUFFER_SIZE];
     bufferSize = 0;
@@ -659,11 +679,20 @@ public final class CodedInputStream {
    * @return the old limit.
    */
   public int pushLimit(int byteLimit) throws InvalidProtocolBufferException {
+    return toIntLimit(pushLimitLong(byteLimit));
+  }
+
+  /**
+   * osmand change: same as {@link #pushLimit(int)} for positions after 2 GB.
+   *
+   * @return the old limit.
+   */
+  public long pushLimitLong(long byteLimit) throws InvalidProtocolBufferException {
     if (byteLimit < 0) {
       throw InvalidProtocolBufferException.negativeSize();
     }
     byteLimit += totalBytesRetired + bufferPos;
-    final int oldLimit = currentLimit;
+    final long oldLimit = currentLimit;
     if (byteLimit > oldLimit) {
       throw InvalidProtocolBufferException.truncatedMessage();
     }
@@ -674,12 +703,23 @@ public final class CodedInputStream {
     return oldLimit;
   }
 
+  // int limits are positions before 2 GB, Integer.MAX_VALUE stands for no limit
+  private static int toIntLimit(long limit) {
+    if (limit == NO_LIMIT) {
+      return Integer.MAX_VALUE;
+    }
+    if (limit >= Integer.MAX_VALUE) {
+      throw new IllegalStateException("Limit " + limit + " is after 2 GB, use pushLimitLong");
+    }
+    return (int) limit;
+  }
+
   private void recomputeBufferSizeAfterLimit() {
     bufferSize += bufferSizeAfterLimit;
-    final int bufferEnd = totalBytesRetired + bufferSize;
+    final long bufferEnd = totalBytesRetired + bufferSize;
     if (bufferEnd > currentLimit) {
       // Limit is in current buffer.
-      bufferSizeAfterLimit = bufferEnd - currentLimit;
+      bufferSizeAfterLimit = (int) (bufferEnd - currentLimit);
       bufferSize -= bufferSizeAfterLimit;
     } else {
       bufferSizeAfterLimit = 0;
@@ -692,6 +732,13 @@ public final class CodedInputStream {
    * @param oldLimit The old limit, as returned by {@code pushLimit}.
    */
   public void popLimit(final int oldLimit) {
+    popLimit(oldLimit == Integer.MAX_VALUE ? NO_LIMIT : (long) oldLimit);
+  }
+
+  /**
+   * osmand change: discards the current limit returned by {@link #pushLimitLong(long)}.
+   */
+  public void popLimit(final long oldLimit) {
     currentLimit = oldLimit;
     recomputeBufferSizeAfterLimit();
   }
@@ -701,12 +748,12 @@ public final class CodedInputStream {
    * If no limit is set, returns -1.
    */
   public int getBytesUntilLimit() {
-    if (currentLimit == Integer.MAX_VALUE) {
+    if (currentLimit == NO_LIMIT) {
       return -1;
     }
 
-    final int currentAbsolutePosition = totalBytesRetired + bufferPos;
-    return currentLimit - currentAbsolutePosition;
+    final long currentAbsolutePosition = totalBytesRetired + bufferPos;
+    return (int) Math.min(Integer.MAX_VALUE, currentLimit - currentAbsolutePosition);
   }
 
   /**
@@ -723,6 +770,17 @@ public final class CodedInputStream {
    * {@link #resetSizeCounter()} resets this value to zero.
    */
   public int getTotalBytesRead() {
+      final long read = totalBytesRetired + bufferPos;
+      if (read > Integer.MAX_VALUE) {
+        throw new IllegalStateException("Position " + read + " is after 2 GB, use getTotalBytesReadLong");
+      }
+      return (int) read;
+  }
+
+  /**
+   * osmand change: same as {@link #getTotalBytesRead()} for positions after 2 GB.
+   */
+  public long getTotalBytesReadLong() {
       return totalBytesRetired + bufferPos;
   }
 
@@ -753,7 +811,7 @@ public final class CodedInputStream {
     bufferPos = 0;
     if (raf != null) {
     	// osmand change
-     totalBytesRetired = (int) raf.getFilePointer();
+     totalBytesRetired = raf.getFilePointer();
     	long remain = raf.length() - raf.getFilePointer();
     	bufferSize = (int) Math.min(remain, buffer.length);
     	if(bufferSize > 0) {
@@ -761,6 +819,18 @@ public final class CodedInputStream {
     	} else {
     		bufferSize = -1;
     	}
+    } else if (mapped != null) {
+    	// osmand change: next chunk of mapping becomes the buffer (cursor is moved to the end of chunk)
+    	long pointer = mapped.getFilePointer();
+    	if (pointer < mapped.length()) {
+    		mappedChunk = mapped.getChunk();
+    		totalBytesRetired = mapped.getChunkStart();
+    		bufferPos = (int) (pointer - totalBytesRetired);
+    		bufferSize = mappedChunk.capacity();
+    		mapped.seek(totalBytesRetired + bufferSize);
+    	} else {
+    		bufferSize = -1;
+    	}
     } else {
     	bufferSize = (input == null) ? -1 : input.read(buffer);
     }
@@ -778,9 +848,10 @@ public final class CodedInputStream {
       }
     } else {
       recomputeBufferSizeAfterLimit();
-      final int totalBytesRead =
+      final long totalBytesRead =
         totalBytesRetired + bufferSize + bufferSizeAfterLimit;
-      if (totalBytesRead > sizeLimit || totalBytesRead < 0) {
+      // osmand change: size limit of file is its size
+      if (totalBytesRead > sizeLimit && raf == null && mapped == null) {
         throw InvalidProtocolBufferException.sizeLimitExceeded();
       }
       return true;
@@ -797,6 +868,9 @@ public final class CodedInputStream {
     if (bufferPos == bufferSize) {
       refillBuffer(true);
     }
+    if (mappedChunk != null) {
+      return mappedChunk.get(bufferPos++);
+    }
     return buffer[bufferPos++];
   }
 
@@ -813,12 +887,14 @@ public final class CodedInputStream {
 
     if (totalBytesRetired + bufferPos + size > currentLimit) {
       // Read to the end of the stream anyway.
-      skipRawBytes(currentLimit - totalBytesRetired - bufferPos);
+      skipRawBytes((int) (currentLimit - totalBytesRetired - bufferPos));
       // Then fail.
       throw InvalidProtocolBufferException.truncatedMessage();
     }
 
-    if (size <= bufferSize - bufferPos) {
+    if (mapped != null) {
+      return readMappedBytes(size);
+    } else if (size <= bufferSize - bufferPos) {
       // We have all the bytes we need already.
       final byte[] bytes = new byte[size];
       System.arraycopy(buffer, bufferPos, bytes, 0, size);
@@ -914,6 +990,27 @@ public final class CodedInputStream {
     }
   }
 
+  // osmand change: bytes are copied once from mapping to result
+  private byte[] readMappedBytes(final int size) throws IOException {
+    if (totalBytesRetired + bufferPos + size > mapped.length()) {
+      skipRawBytes((int) (mapped.length() - totalBytesRetired - bufferPos));
+      throw InvalidProtocolBufferException.truncatedMessage();
+    }
+    final byte[] bytes = new byte[size];
+    int pos = 0;
+    while (pos < size) {
+      if (bufferPos == bufferSize) {
+        refillBuffer(true);
+      }
+      final int n = Math.min(size - pos, bufferSize - bufferPos);
+      mappedChunk.position(bufferPos);
+      mappedChunk.get(bytes, pos, n);
+      bufferPos += n;
+      pos += n;
+    }
+    return bytes;
+  }
+
   /**
    * Reads and discards {@code size} bytes.
    *
@@ -927,7 +1024,7 @@ public final class CodedInputStream {
 
     if (totalBytesRetired + bufferPos + size > currentLimit) {
       // Read to the end of the stream anyway.
-      skipRawBytes(currentLimit - totalBytesRetired - bufferPos);
+      skipRawBytes((int) (currentLimit - totalBytesRetired - bufferPos));
       // Then fail.
       throw InvalidProtocolBufferException.truncatedMessage();
     }
@@ -945,10 +1042,22 @@ public final class CodedInputStream {
          bufferPos = 0;
          bufferSize = 0;
       	 int n = raf.skipBytes(size - pos);
-        totalBytesRetired = (int) raf.getFilePointer();
+        totalBytesRetired = raf.getFilePointer();
       	 if (n <= 0) {
              throw InvalidProtocolBufferException.truncatedMessage();
          }
+      } else if (mapped != null) {
+         // cursor is at the end of current chunk, so skip starts from current position
+         long pointer = totalBytesRetired + bufferSize + size - pos;
+         bufferPos = 0;
+         bufferSize = 0;
+         if (pointer > mapped.length()) {
+             mapped.seek(mapped.length());
+             totalBytesRetired = mapped.length();
+             throw InvalidProtocolBufferException.truncatedMessage();
+         }
+         mapped.seek(pointer);
+         totalBytesRetired = pointer;
       } else {
       // Keep refilling the buffer until we get to the point we wanted to skip
       // to.  This has the side effect of ensuring the limits are updated
@@ -973,9 +1082,13 @@ public final class CodedInputStream {
 		  }
 		  bufferPos = (int) (pointer - totalBytesRetired);
 	  } else {
-		  totalBytesRetired = (int) pointer;
+		  totalBytesRetired = pointer;
 		  bufferSizeAfterLimit = 0;
-		  raf.seek(pointer);
+		  if (mapped != null) {
+			  mapped.seek(pointer);
+		  } else {
+			  raf.seek(pointer);
+		  }
 		  bufferPos = 0;
 		  bufferSize = 0;
 	  }
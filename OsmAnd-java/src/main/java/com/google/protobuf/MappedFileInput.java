@@ -0,0 +1,101 @@
+package com.google.protobuf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * osmand change
+ * Read-only memory mapping of a whole file used as an alternative source for
+ * {@link CodedInputStream}. The file is mapped in chunks of {@link #CHUNK_SIZE}
+ * so files bigger than 2 GB can be mapped. Mapping is immutable and could be shared
+ * between several streams, each stream reads through its own {@link Cursor}.
+ * Streams read bytes directly from chunks of mapping (see {@link Cursor#getChunk()}).
+ */
+public final class MappedFileInput {
+
+	public static final int CHUNK_SIZE = 1 << 30;
+
+	private final ByteBuffer[] chunks;
+	private final int chunkSize;
+	private final long length;
+
+	private MappedFileInput(ByteBuffer[] chunks, int chunkSize, long length) {
+		this.chunks = chunks;
+		this.chunkSize = chunkSize;
+		this.length = length;
+	}
+
+	public static MappedFileInput map(FileChannel channel) throws IOException {
+		return map(channel, CHUNK_SIZE);
+	}
+
+	/**
+	 * @param chunkSize size of mapped chunks (small chunks are used to test reads on chunk boundaries)
+	 */
+	public static MappedFileInput map(FileChannel channel, int chunkSize) throws IOException {
+		long length = channel.size();
+		int count = (int) ((length + chunkSize - 1) / chunkSize);
+		ByteBuffer[] chunks = new ByteBuffer[count];
+		for (int i = 0; i < count; i++) {
+			long start = (long) i * chunkSize;
+			long size = Math.min(chunkSize, length - start);
+			chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+		}
+		return new MappedFileInput(chunks, chunkSize, length);
+	}
+
+	public long length() {
+		return length;
+	}
+
+	public Cursor newCursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Mutable read position over shared mapping with own views of chunks.
+	 * Not thread safe, one cursor should be used by one stream.
+	 */
+	public final class Cursor {
+		private final ByteBuffer[] views;
+		private long pointer;
+
+		private Cursor() {
+			views = new ByteBuffer[chunks.length];
+			for (int i = 0; i < chunks.length; i++) {
+				views[i] = chunks[i].duplicate();
+			}
+		}
+
+		public long length() {
+			return length;
+		}
+
+		public long getFilePointer() {
+			return pointer;
+		}
+
+		public void seek(long pos) throws IOException {
+			if (pos < 0) {
+				throw new IOException("Negative seek offset " + pos);
+			}
+			pointer = pos;
+		}
+
+		/**
+		 * Chunk which contains file pointer (pointer should be before the end of file),
+		 * position of returned buffer could be changed by stream.
+		 */
+		public ByteBuffer getChunk() {
+			return views[(int) (pointer / chunkSize)];
+		}
+
+		/**
+		 * File position of the first byte of {@link #getChunk()}.
+		 */
+		public long getChunkStart() {
+			return pointer / chunkSize * chunkSize;
+		}
+	}
+}
@@ -1,6 +1,13 @@
 package net.osmand;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 
@@ -12,9 +19,19 @@ import java.util.Locale;
  */
 public class CollatorStringMatcher implements StringMatcher {
 
+	private static final char FIRST_ASCII_CHAR = ' ';
+	private static final char LAST_ASCII_CHAR = '~';
+	// primary weights of ascii chars (by locale of primary collator), see buildAsciiWeights
+	private static final Map<Locale, int[]> ASCII_WEIGHTS = new ConcurrentHashMap<Locale, int[]>();
+	private static final int[] NO_ASCII_WEIGHTS = new int[0];
+
 	private final Collator collator;
 	private final StringMatcherMode mode;
 	private final String part;
+	// names of ascii chars are matched with weights of chars instead of collator (without creating substrings)
+	private final int[] asciiWeights;
+	private final int[] partWeights;
+	private final boolean turkicLowerCase;
 	
 	public static enum StringMatcherMode {
 		// tests only first word as base starts with part
@@ -44,7 +61,11 @@ public class CollatorStringMatcher implements StringMatcher {
 		}
 		this.part = part;
 		this.mode = mode;
-		
+		String lang = Locale.getDefault().getLanguage();
+		// 'I' is lower cased to dotless i
+		this.turkicLowerCase = lang.equals("tr") || lang.equals("az");
+		this.asciiWeights = getAsciiWeights(collator);
+		this.partWeights = asciiWeights != null && isAsciiString(part, false) ? getWeights(part) : null;
 	}
 
 	public Collator getCollator() {
@@ -53,8 +74,200 @@ public class CollatorStringMatcher implements StringMatcher {
 	
 	@Override
 	public boolean matches(String name) {
+		if (partWeights != null && isAsciiString(name, mode != StringMatcherMode.CHECK_CONTAINS)) {
+			return asciiMatches(name);
+		}
 		return cmatches(collator, name, part, mode);
 	}
+
+	/**
+	 * Weights of ascii chars are used only if they give the same result as collator
+	 * (chars are compared one by one, e.g. there are no contractions of several chars as one letter).
+	 * @return primary weights of ascii chars for default locale (0 - ignorable char) or null
+	 */
+	private static int[] getAsciiWeights(Collator collator) {
+		Locale locale = Locale.getDefault();
+		int[] weights = ASCII_WEIGHTS.get(locale);
+		if (weights == null) {
+			weights = buildAsciiWeights(collator);
+			ASCII_WEIGHTS.put(locale, weights == null ? NO_ASCII_WEIGHTS : weights);
+		}
+		return weights == NO_ASCII_WEIGHTS ? null : weights;
+	}
+
+	static int[] buildAsciiWeights(final Collator collator) {
+		List<String> chars = new ArrayList<String>();
+		for (char c = FIRST_ASCII_CHAR; c <= LAST_ASCII_CHAR; c++) {
+			chars.add(String.valueOf(c));
+		}
+		Collections.sort(chars, collator);
+		int[] weights = new int[LAST_ASCII_CHAR + 1];
+		int weight = 0;
+		String prev = null;
+		for (String c : chars) {
+			if (collator.equals(c, "")) {
+				weights[c.charAt(0)] = 0;
+			} else {
+				if (prev == null || !collator.equals(prev, c)) {
+					weight++;
+				}
+				weights[c.charAt(0)] = weight;
+				prev = c;
+			}
+		}
+		// check that strings of 1 and 2 chars are equal by collator only if their weights are equal
+		List<String> strings = new ArrayList<String>(chars);
+		for (String c1 : chars) {
+			for (String c2 : chars) {
+				strings.add(c1 + c2);
+			}
+		}
+		Collections.sort(strings, collator);
+		Map<String, Integer> classes = new HashMap<String, Integer>();
+		int cl = 0;
+		for (int i = 0; i < strings.size(); i++) {
+			if (i > 0 && !collator.equals(strings.get(i - 1), strings.get(i))) {
+				cl++;
+			}
+			String key = Arrays.toString(getWeights(weights, strings.get(i)));
+			Integer prevClass = classes.put(key, cl);
+			if (prevClass != null && prevClass != cl) {
+				return null;
+			}
+		}
+		if (classes.size() != cl + 1) {
+			return null;
+		}
+		return weights;
+	}
+
+	private int[] getWeights(String s) {
+		return getWeights(asciiWeights, s);
+	}
+
+	private static int[] getWeights(int[] weights, String s) {
+		int len = 0;
+		for (int i = 0; i < s.length(); i++) {
+			if (weights[s.charAt(i)] != 0) {
+				len++;
+			}
+		}
+		int[] res = new int[len];
+		len = 0;
+		for (int i = 0; i < s.length(); i++) {
+			if (weights[s.charAt(i)] != 0) {
+				res[len++] = weights[s.charAt(i)];
+			}
+		}
+		return res;
+	}
+
+	private boolean isAsciiString(String s, boolean lowerCase) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < FIRST_ASCII_CHAR || c > LAST_ASCII_CHAR || (lowerCase && turkicLowerCase && c == 'I')) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// same as cmatches for ascii name (lower case of ascii name is the same string as for default locale)
+	private boolean asciiMatches(String name) {
+		switch (mode) {
+		case CHECK_CONTAINS:
+			return asciiContains(name);
+		case CHECK_EQUALS_FROM_SPACE:
+			return asciiStartsWith(name, true, true, true);
+		case CHECK_STARTS_FROM_SPACE:
+			return asciiStartsWith(name, true, true, false);
+		case CHECK_STARTS_FROM_SPACE_NOT_BEGINNING:
+			return asciiStartsWith(name, false, true, false);
+		case CHECK_ONLY_STARTS_WITH:
+			return asciiStartsWith(name, true, false, false);
+		case CHECK_EQUALS:
+			return asciiStartsWith(name, false, false, true);
+		}
+		return false;
+	}
+
+	// compares chars from start to end of s with part (as collator.equals)
+	private boolean equalsPart(String s, int start, int end, boolean lowerCase) {
+		int k = 0;
+		for (int i = start; i < end; i++) {
+			char c = s.charAt(i);
+			if (lowerCase && c >= 'A' && c <= 'Z') {
+				c = (char) (c + ('a' - 'A'));
+			}
+			int w = asciiWeights[c];
+			if (w != 0) {
+				if (k >= partWeights.length || partWeights[k] != w) {
+					return false;
+				}
+				k++;
+			}
+		}
+		return k == partWeights.length;
+	}
+
+	// same as ccontains (base is not lower cased)
+	private boolean asciiContains(String base) {
+		if (base.length() <= part.length()) {
+			return equalsPart(base, 0, base.length(), false);
+		}
+		for (int pos = 0; pos <= base.length() - part.length() + 1; pos++) {
+			int end = Math.min(pos + part.length() * 2, base.length());
+			for (int length = end - pos; length >= 0; length--) {
+				if (equalsPart(base, pos, pos + length, false)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	// same as cstartsWith
+	private boolean asciiStartsWith(String searchIn, boolean checkBeginning, boolean checkSpaces, boolean equals) {
+		int searchInLength = searchIn.length();
+		int startLength = part.length();
+		if (startLength == 0) {
+			return true;
+		}
+		if (startLength > searchInLength) {
+			return false;
+		}
+		if (checkBeginning) {
+			boolean starts = equalsPart(searchIn, 0, startLength, true);
+			if (starts) {
+				if (equals) {
+					if (startLength == searchInLength || isSpace(searchIn.charAt(startLength))) {
+						return true;
+					}
+				} else {
+					return true;
+				}
+			}
+		}
+		if (checkSpaces) {
+			for (int i = 1; i <= searchInLength - startLength; i++) {
+				if (isSpace(searchIn.charAt(i - 1)) && !isSpace(searchIn.charAt(i))) {
+					if (equalsPart(searchIn, i, i + startLength, true)) {
+						if (equals) {
+							if (i + startLength == searchInLength || isSpace(searchIn.charAt(i + startLength))) {
+								return true;
+							}
+						} else {
+							return true;
+						}
+					}
+				}
+			}
+		}
+		if (!checkBeginning && !checkSpaces && equals) {
+			return equalsPart(searchIn, 0, searchInLength, true);
+		}
+		return false;
+	}
 	
 	
 	public static boolean cmatches(Collator collator, String fullName, String part, StringMatcherMode mode){
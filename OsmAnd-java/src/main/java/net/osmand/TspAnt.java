@@ -116,13 +116,26 @@ public class TspAnt {
             l.add(end);
         }
         n = l.size() ;
+        double[][] costs = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 1; j < n; j++) {
+                costs[i][j] = Math.rint(MapUtils.getDistance(l.get(i), l.get(j)));
+            }
+        }
+        return readGraph(costs, keepEndPoint);
+    }
+
+    // Reads graph from cost matrix (e.g. travel times by roads),
+    // points order is start, intermediates, end (if end point is kept).
+    public TspAnt readGraph(double[][] costs, boolean keepEndPoint) {
+        n = costs.length;
 //        System.out.println("Cost");
         graph = new double[n][n];
         double maxSum = 0;
 		for (int i = 0; i < n ; i++) {
 			double maxIWeight = 0;
 			for (int j = 1; j < n ; j++) {
-				double d = Math.rint(MapUtils.getDistance(l.get(i), l.get(j))) + 0.1;
+				double d = costs[i][j] + 0.1;
 				maxIWeight = Math.max(d, maxIWeight);
 				graph[i][j] = d;
 			}
@@ -25,17 +25,28 @@ public class TspHeldKarp {
 
   /// OSMAND Modification
 	public TspHeldKarp readInput(List<LatLon> ls, boolean returnToInitialPoint) {
-		n = ls.size();
+		double[][] costs = new double[ls.size()][ls.size()];
+		// TSPLIB distances are rounded to the nearest integer to avoid the sum of square roots problem
+		for (int i = 0; i < costs.length; i++) {
+			for (int j = 0; j < costs.length; j++) {
+				costs[i][j] = Math.rint(MapUtils.getDistance(ls.get(i), ls.get(j)));
+			}
+		}
+		return readInput(costs, returnToInitialPoint);
+	}
+
+	// cost matrix could be built by roads (e.g. travel times of RouteMatrixCalculator)
+	public TspHeldKarp readInput(double[][] costs, boolean returnToInitialPoint) {
+		n = costs.length;
 		order = new int[n];
 		cost = new double[n][n];
-		// TSPLIB distances are rounded to the nearest integer to avoid the sum of square roots problem
 		System.out.println("Cost");
 		for (int i = 0; i < n; i++) {
 			for (int j = 0; j < n; j++) {
 				if (!returnToInitialPoint && (j == 0)) {
 					cost[i][j] = 0;
 				} else {
-					cost[i][j] = Math.rint(MapUtils.getDistance(ls.get(i), ls.get(j)));
+					cost[i][j] = costs[i][j];
 				}
 			}
 			System.out.println(Arrays.toString(cost[i]));
@@ -4,6 +4,7 @@ package net.osmand.binary;
 import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MappedFileInput;
 import com.google.protobuf.WireFormat;
 
 import net.osmand.Collator;
@@ -56,6 +57,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.RandomAccessFile;
 import java.io.Reader;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -102,6 +104,7 @@ public class BinaryMapIndexReader {
 	
 	
 	private final RandomAccessFile raf;
+	private final MappedFileInput mappedFile;
 	protected final File file;
 	/*private*/ int version;
 	/*private*/ long dateCreated;
@@ -124,24 +127,32 @@ public class BinaryMapIndexReader {
 	private final BinaryMapRouteReaderAdapter routeAdapter;
 
 	private static final String BASEMAP_NAME = "basemap";
+	// mappings are shared between readers of the same file and released by GC (no explicit unmap in java)
+	private static final Map<String, WeakReference<MappedFileInput>> mappedFiles = new HashMap<String, WeakReference<MappedFileInput>>();
 
 
 	public BinaryMapIndexReader(final RandomAccessFile raf, File file) throws IOException {
-		this.raf = raf;
-		this.file = file;
-		codedIS = CodedInputStream.newInstance(raf);
-		codedIS.setSizeLimit(Integer.MAX_VALUE); // 2048 MB
-		transportAdapter = new BinaryMapTransportReaderAdapter(this);
-		addressAdapter = new BinaryMapAddressReaderAdapter(this);
-		poiAdapter = new BinaryMapPoiReaderAdapter(this);
-		routeAdapter = new BinaryMapRouteReaderAdapter(this);
-		init();
+		this(raf, file, true, false);
 	}
 
 	public BinaryMapIndexReader(final RandomAccessFile raf, File file, boolean init) throws IOException {
+		this(raf, file, init, false);
+	}
+
+	/**
+	 * @param memoryMapped read file through read-only memory mapping instead of buffered raf reads
+	 * (seeks become pointer moves and mapping is shared by readers of the same file)
+	 */
+	public BinaryMapIndexReader(final RandomAccessFile raf, File file, boolean init, boolean memoryMapped) throws IOException {
 		this.raf = raf;
 		this.file = file;
-		codedIS = CodedInputStream.newInstance(raf);
+		if (memoryMapped) {
+			mappedFile = getMappedFile(raf, file);
+			codedIS = CodedInputStream.newInstance(mappedFile);
+		} else {
+			mappedFile = null;
+			codedIS = CodedInputStream.newInstance(raf);
+		}
 		codedIS.setSizeLimit(Integer.MAX_VALUE); // 2048 MB
 		transportAdapter = new BinaryMapTransportReaderAdapter(this);
 		addressAdapter = new BinaryMapAddressReaderAdapter(this);
@@ -155,7 +166,12 @@ public class BinaryMapIndexReader {
 	public BinaryMapIndexReader(final RandomAccessFile raf, BinaryMapIndexReader referenceToSameFile) throws IOException {
 		this.raf = raf;
 		this.file = referenceToSameFile.file;
-		codedIS = CodedInputStream.newInstance(raf);
+		mappedFile = referenceToSameFile.mappedFile;
+		if (mappedFile != null) {
+			codedIS = CodedInputStream.newInstance(mappedFile);
+		} else {
+			codedIS = CodedInputStream.newInstance(raf);
+		}
 		codedIS.setSizeLimit(Integer.MAX_VALUE); // 2048 MB
 		version = referenceToSameFile.version;
 		dateCreated = referenceToSameFile.dateCreated;
@@ -174,6 +190,29 @@ public class BinaryMapIndexReader {
 	}
 
 
+	private static MappedFileInput getMappedFile(RandomAccessFile raf, File file) throws IOException {
+		String key = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+		synchronized (mappedFiles) {
+			WeakReference<MappedFileInput> ref = mappedFiles.get(key);
+			MappedFileInput mapped = ref == null ? null : ref.get();
+			if (mapped == null || mapped.length() != raf.length()) {
+				mapped = MappedFileInput.map(raf.getChannel());
+				mappedFiles.put(key, new WeakReference<MappedFileInput>(mapped));
+			}
+			Iterator<WeakReference<MappedFileInput>> it = mappedFiles.values().iterator();
+			while (it.hasNext()) {
+				if (it.next().get() == null) {
+					it.remove();
+				}
+			}
+			return mapped;
+		}
+	}
+
+	public boolean isMemoryMapped() {
+		return mappedFile != null;
+	}
+
 	public long getDateCreated() {
 		return dateCreated;
 	}
@@ -1708,6 +1747,8 @@ public class BinaryMapIndexReader {
 
 		int zoom = 15;
 		int limit = -1;
+		// set by other thread when found results are enough
+		volatile boolean limitExceeded = false;
 
 		// search on the path
 		// stores tile of 16 index and pairs (even length always) of points intersecting tile
@@ -1795,7 +1836,11 @@ public class BinaryMapIndexReader {
 		}
 
 		public boolean limitExceeded() {
-			return limit != -1 && searchResults.size() > limit;
+			return limitExceeded || (limit != -1 && searchResults.size() > limit);
+		}
+
+		public void setLimitExceeded(boolean limitExceeded) {
+			this.limitExceeded = limitExceeded;
 		}
 
 		public void setLimit(int limit) {
@@ -2411,6 +2456,30 @@ public class BinaryMapIndexReader {
 
 	}
 
+	/**
+	 * Searches indexed string table of map part in current limit. Table is read to memory on the first search
+	 * (see {@link NameIndexTrie}) and the next searches don't read it from file while it's kept
+	 * by {@link NameIndexCache}.
+	 */
+	void searchIndexedStringTable(BinaryIndexPart part, Collator instance, List<String> queries,
+			List<TIntArrayList> listOffsets, TIntArrayList matchedCharacters) throws IOException {
+		NameIndexCache cache = NameIndexCache.getDefault();
+		NameIndexTrie cached = cache.get(part);
+		if (cached == null) {
+			long start = codedIS.getTotalBytesReadLong();
+			cached = cache.put(part, NameIndexTrie.read(this));
+			if (cached == NameIndexTrie.NOT_CACHED) {
+				codedIS.seek(start);
+			}
+		}
+		if (cached == NameIndexTrie.NOT_CACHED) {
+			readIndexedStringTable(instance, queries, "", listOffsets, matchedCharacters);
+		} else {
+			cached.search(instance, queries, listOffsets, matchedCharacters);
+			codedIS.skipRawBytes(codedIS.getBytesUntilLimit());
+		}
+	}
+
 	void readIndexedStringTable(Collator instance, List<String> queries, String prefix, List<TIntArrayList> listOffsets, TIntArrayList matchedCharacters) throws IOException {
 		String key = null;
 		boolean[] matched = new boolean[matchedCharacters.size()];
@@ -2426,36 +2495,7 @@ public class BinaryMapIndexReader {
 				if (prefix.length() > 0) {
 					key = prefix + key;
 				}
-				shouldWeReadSubtable = false;
-				for (int i = 0; i < queries.size(); i++) {
-					int charMatches = matchedCharacters.get(i);
-					String query = queries.get(i);
-					matched[i] = false;
-					if (query == null) {
-						continue;
-					}
-					
-					// check query is part of key (the best matching)
-					if (CollatorStringMatcher.cmatches(instance, key, query, StringMatcherMode.CHECK_ONLY_STARTS_WITH)) {
-						if (query.length() >= charMatches) {
-							if (query.length() > charMatches) {
-								matchedCharacters.set(i, query.length());
-								listOffsets.get(i).clear();
-							}
-							matched[i] = true;
-						}
-						// check key is part of query
-					} else if (CollatorStringMatcher.cmatches(instance, query, key, StringMatcherMode.CHECK_ONLY_STARTS_WITH)) {
-						if (key.length() >= charMatches) {
-							if (key.length() > charMatches) {
-								matchedCharacters.set(i, key.length());
-								listOffsets.get(i).clear();
-							}
-							matched[i] = true;
-						}
-					}
-					shouldWeReadSubtable |= matched[i];
-				}
+				shouldWeReadSubtable = matchIndexedStringKey(instance, key, queries, listOffsets, matchedCharacters, matched);
 				break;
 			case OsmandOdb.IndexedStringTable.VAL_FIELD_NUMBER :
 				int val = readInt();
@@ -2469,14 +2509,7 @@ public class BinaryMapIndexReader {
 				int len = codedIS.readRawVarint32();
 				int oldLim = codedIS.pushLimit(len);
 				if (shouldWeReadSubtable && key != null) {
-					List<String> subqueries = new ArrayList<>(queries);
-					// reset query so we don't search what was not matched
-					for(int i = 0; i < queries.size(); i++) {
-						if(!matched[i]) {
-							subqueries.set(i, null);
-						}
-					}
-					readIndexedStringTable(instance, subqueries, key, listOffsets, matchedCharacters);
+					readIndexedStringTable(instance, getMatchedSubqueries(queries, matched), key, listOffsets, matchedCharacters);
 				} else {
 					codedIS.skipRawBytes(codedIS.getBytesUntilLimit());
 				}
@@ -2489,6 +2522,56 @@ public class BinaryMapIndexReader {
 		}
 	}
 
+	/**
+	 * Matches key of indexed string table with queries (only the longest matches are kept in offsets)
+	 * @return true if subtable of key should be read
+	 */
+	static boolean matchIndexedStringKey(Collator instance, String key, List<String> queries,
+			List<TIntArrayList> listOffsets, TIntArrayList matchedCharacters, boolean[] matched) {
+		boolean shouldWeReadSubtable = false;
+		for (int i = 0; i < queries.size(); i++) {
+			int charMatches = matchedCharacters.get(i);
+			String query = queries.get(i);
+			matched[i] = false;
+			if (query == null) {
+				continue;
+			}
+
+			// check query is part of key (the best matching)
+			if (CollatorStringMatcher.cmatches(instance, key, query, StringMatcherMode.CHECK_ONLY_STARTS_WITH)) {
+				if (query.length() >= charMatches) {
+					if (query.length() > charMatches) {
+						matchedCharacters.set(i, query.length());
+						listOffsets.get(i).clear();
+					}
+					matched[i] = true;
+				}
+				// check key is part of query
+			} else if (CollatorStringMatcher.cmatches(instance, query, key, StringMatcherMode.CHECK_ONLY_STARTS_WITH)) {
+				if (key.length() >= charMatches) {
+					if (key.length() > charMatches) {
+						matchedCharacters.set(i, key.length());
+						listOffsets.get(i).clear();
+					}
+					matched[i] = true;
+				}
+			}
+			shouldWeReadSubtable |= matched[i];
+		}
+		return shouldWeReadSubtable;
+	}
+
+	static List<String> getMatchedSubqueries(List<String> queries, boolean[] matched) {
+		List<String> subqueries = new ArrayList<>(queries);
+		// reset query so we don't search what was not matched
+		for (int i = 0; i < queries.size(); i++) {
+			if (!matched[i]) {
+				subqueries.set(i, null);
+			}
+		}
+		return subqueries;
+	}
+
 	private static void testAddressSearchByName(BinaryMapIndexReader reader) throws IOException {
 		SearchRequest<MapObject> req = buildAddressByNameRequest(new ResultMatcher<MapObject>() {
 			@Override
@@ -2727,6 +2810,38 @@ public class BinaryMapIndexReader {
 		}
 	}
 
+	/**
+	 * Reads all lazily initialized index metadata (map & route encoding rules, map trees, route subregion trees,
+	 * poi categories), so it is not modified anymore by search calls and could be shared between readers
+	 * created with {@link #BinaryMapIndexReader(RandomAccessFile, BinaryMapIndexReader)} in different threads.
+	 */
+	public void preloadIndexMetadata() throws IOException {
+		for (MapIndex mapIndex : mapIndexes) {
+			if (mapIndex.encodingRules.isEmpty()) {
+				codedIS.seek(mapIndex.filePointer);
+				int oldLimit = codedIS.pushLimit(mapIndex.length);
+				readMapIndex(mapIndex, true);
+				codedIS.popLimit(oldLimit);
+			}
+			for (MapRoot index : mapIndex.getRoots()) {
+				if (index.trees == null) {
+					index.trees = new ArrayList<MapTree>();
+					codedIS.seek(index.filePointer);
+					int oldLimit = codedIS.pushLimit(index.length);
+					readMapLevel(index);
+					codedIS.popLimit(oldLimit);
+				}
+			}
+		}
+		SearchRequest<RouteDataObject> req = buildSearchRouteRequest(0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, null);
+		for (RouteRegion routeRegion : routingIndexes) {
+			initRouteRegion(routeRegion);
+			searchRouteIndexTree(req, routeRegion.getSubregions());
+			searchRouteIndexTree(req, routeRegion.getBaseSubregions());
+		}
+		initCategories();
+	}
+
 	
 	public TLongObjectHashMap<IncompleteTransportRoute> getIncompleteTransportRoutes() throws InvalidProtocolBufferException, IOException {
 		if (incompleteTransportRoutes == null) {
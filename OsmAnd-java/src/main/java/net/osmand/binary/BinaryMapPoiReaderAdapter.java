@@ -293,15 +293,50 @@ public class BinaryMapPoiReaderAdapter {
 		}
 	}
 
-	private String normalizeSearchPoiByNameQuery(String query) {
+	private static String normalizeSearchPoiByNameQuery(String query) {
 		return query.replace("\"", "").toLowerCase();
 	}
 
+	/**
+	 * @return matcher of amenity names used by search by name (see {@link #matchesPoiName})
+	 */
+	public static CollatorStringMatcher getPoiNameMatcher(String nameQuery) {
+		return new CollatorStringMatcher(normalizeSearchPoiByNameQuery(nameQuery), StringMatcherMode.CHECK_STARTS_FROM_SPACE);
+	}
+
+	/**
+	 * @return true if name, english name, other names or name tags (*_name, brand) of amenity match
+	 */
+	public static boolean matchesPoiName(CollatorStringMatcher matcher, Amenity am) {
+		boolean matches = matcher.matches(am.getName().toLowerCase()) ||
+				matcher.matches(am.getEnName(true).toLowerCase());
+		if (!matches) {
+			for (String s : am.getOtherNames()) {
+				matches = matcher.matches(s.toLowerCase());
+				if (matches) {
+					break;
+				}
+			}
+			if (!matches) {
+				for (String key : am.getAdditionalInfoKeys()) {
+					if(!key.contains("_name") && 
+						!key.equals("brand")) {
+						continue;
+					}
+					matches = matcher.matches(am.getAdditionalInfo(key));
+					if (matches) {
+						break;
+					}
+				}
+			}
+		}
+		return matches;
+	}
+
 	protected void searchPoiByName(PoiRegion region, SearchRequest<Amenity> req) throws IOException {
 		TIntLongHashMap offsets = new TIntLongHashMap();
 		String query = normalizeSearchPoiByNameQuery(req.nameQuery);
-		CollatorStringMatcher matcher = new CollatorStringMatcher(query,
-				StringMatcherMode.CHECK_STARTS_FROM_SPACE);
+		CollatorStringMatcher matcher = getPoiNameMatcher(req.nameQuery);
 		long time = System.currentTimeMillis();
 		int indexOffset = codedIS.getTotalBytesRead();
 		while (true) {
@@ -317,7 +352,7 @@ public class BinaryMapPoiReaderAdapter {
 				int length = readInt();
 				int oldLimit = codedIS.pushLimit(length);
 				// here offsets are sorted by distance
-				offsets = readPoiNameIndex(matcher.getCollator(), query, req);
+				offsets = readPoiNameIndex(region, matcher.getCollator(), query, req);
 				codedIS.popLimit(oldLimit);
 				break;
 			case OsmandOdb.OsmAndPoiIndex.POIDATA_FIELD_NUMBER:
@@ -372,7 +407,7 @@ public class BinaryMapPoiReaderAdapter {
 		}
 	}
 
-	private TIntLongHashMap readPoiNameIndex(Collator instance, String query, SearchRequest<Amenity> req) throws IOException {
+	private TIntLongHashMap readPoiNameIndex(PoiRegion region, Collator instance, String query, SearchRequest<Amenity> req) throws IOException {
 		TIntLongHashMap offsets = new TIntLongHashMap();
 		List<TIntArrayList> listOffsets = null;
 		List<TIntLongHashMap> listOfSepOffsets = new ArrayList<TIntLongHashMap>();
@@ -394,7 +429,7 @@ public class BinaryMapPoiReaderAdapter {
 					charsList.add(0);
 					listOffsets.add(new TIntArrayList());
 				}
-				map.readIndexedStringTable(instance, queries, "", listOffsets, charsList);
+				map.searchIndexedStringTable(region, instance, queries, listOffsets, charsList);
 				codedIS.popLimit(oldLimit);
 				break;
 			}
@@ -590,33 +625,9 @@ public class BinaryMapPoiReaderAdapter {
 				int oldLim = codedIS.pushLimit(len);
 				Amenity am = readPoiPoint(0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, x, y, zoom, req, region, false);
 				codedIS.popLimit(oldLim);
-				if (am != null) {
-					boolean matches = matcher.matches(am.getName().toLowerCase()) ||
-							matcher.matches(am.getEnName(true).toLowerCase());
-					if (!matches) {
-						for (String s : am.getOtherNames()) {
-							matches = matcher.matches(s.toLowerCase());
-							if (matches) {
-								break;
-							}
-						}
-						if (!matches) {
-							for (String key : am.getAdditionalInfoKeys()) {
-								if(!key.contains("_name") && 
-									!key.equals("brand")) {
-									continue;
-								}
-								matches = matcher.matches(am.getAdditionalInfo(key));
-								if (matches) {
-									break;
-								}
-							}
-						}
-					}
-					if (matches) {
-						req.collectRawData(am);
-						req.publish(am);
-					}
+				if (am != null && matchesPoiName(matcher, am)) {
+					req.collectRawData(am);
+					req.publish(am);
 				}
 				break;
 			default:
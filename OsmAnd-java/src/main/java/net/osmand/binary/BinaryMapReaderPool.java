@@ -0,0 +1,353 @@
+package net.osmand.binary;
+
+import net.osmand.PlatformUtil;
+
+import org.apache.commons.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of {@link BinaryMapIndexReader} for concurrent consumers of the same set of files.
+ * Index metadata (MapIndex, RouteRegion, PoiRegion, AddressRegion and decoding rules) is parsed once per file
+ * and shared, every thread leases its own reader (cursor with own file handle) on top of it.
+ * Total number of opened file handles is capped, idle readers of other files are closed to free handles and
+ * lease waits when all handles are in use. Thread which already holds leases never waits (it could hold handles
+ * needed by waiting threads), it opens reader over the cap instead and such reader is closed when released.
+ */
+public class BinaryMapReaderPool {
+
+	private static final Log LOG = PlatformUtil.getLog(BinaryMapReaderPool.class);
+
+	private final int maxOpenFiles;
+	private final boolean memoryMapped;
+	private final Map<File, FileEntry> files = new LinkedHashMap<File, FileEntry>();
+	// leases of thread (removed when thread releases all readers)
+	private final ThreadLocal<Map<FileEntry, Lease>> threadLeases = new ThreadLocal<Map<FileEntry, Lease>>();
+	private int openFiles;
+	private boolean closed;
+
+	private final PoolStats stats = new PoolStats();
+
+	public static class PoolStats {
+		public final AtomicLong leases = new AtomicLong();
+		public final AtomicLong reusedLeases = new AtomicLong();
+		public final AtomicLong waits = new AtomicLong();
+		public final AtomicLong waitTimeNanos = new AtomicLong();
+		public final AtomicLong leaseTimeNanos = new AtomicLong();
+		public final AtomicLong openedReaders = new AtomicLong();
+		public final AtomicLong closedIdleReaders = new AtomicLong();
+		public final AtomicLong overflowReaders = new AtomicLong();
+
+		@Override
+		public String toString() {
+			return String.format("Leases %d (reused %d), waits %d (%.2f ms), lease time %.2f ms, opened readers %d "
+					+ "(over cap %d), closed idle readers %d",
+					leases.get(), reusedLeases.get(), waits.get(), waitTimeNanos.get() / 1e6, leaseTimeNanos.get() / 1e6,
+					openedReaders.get(), overflowReaders.get(), closedIdleReaders.get());
+		}
+	}
+
+	private static class FileEntry {
+		final File file;
+		final BinaryMapIndexReader metadata;
+		final LinkedList<BinaryMapIndexReader> idle = new LinkedList<BinaryMapIndexReader>();
+
+		FileEntry(File file, BinaryMapIndexReader metadata) {
+			this.file = file;
+			this.metadata = metadata;
+		}
+	}
+
+	private static class Lease {
+		final BinaryMapIndexReader reader;
+		final long startTime;
+		int count;
+
+		Lease(BinaryMapIndexReader reader) {
+			this.reader = reader;
+			this.startTime = System.nanoTime();
+		}
+	}
+
+	public BinaryMapReaderPool(int maxOpenFiles, boolean memoryMapped) {
+		if (maxOpenFiles <= 0) {
+			throw new IllegalArgumentException("Max open files should be positive " + maxOpenFiles);
+		}
+		this.maxOpenFiles = maxOpenFiles;
+		this.memoryMapped = memoryMapped;
+	}
+
+	/**
+	 * Parses file metadata once, file handle used for parsing is closed afterwards.
+	 */
+	public synchronized void registerFile(File file) throws IOException {
+		checkNotClosed();
+		if (files.containsKey(file)) {
+			return;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			BinaryMapIndexReader reader = new BinaryMapIndexReader(raf, file, true, memoryMapped);
+			reader.preloadIndexMetadata();
+			files.put(file, new FileEntry(file, reader));
+		} finally {
+			raf.close();
+		}
+	}
+
+	public synchronized List<File> getFiles() {
+		return new ArrayList<File>(files.keySet());
+	}
+
+	/**
+	 * Leases reader of the file for current thread. Nested leases of the same file by the same thread
+	 * return the same reader, every lease should be paired with {@link #release(BinaryMapIndexReader)}.
+	 */
+	public BinaryMapIndexReader lease(File file) throws IOException, InterruptedException {
+		return lease(Collections.singletonList(file))[0];
+	}
+
+	/**
+	 * Leases readers of all registered files for current thread (e.g. for RoutingContext or search).
+	 * Readers are acquired together, so threads leasing all files don't wait for each other's readers.
+	 * @throws IllegalStateException if there are more files than max open files
+	 * (readers should be leased per file then)
+	 */
+	public BinaryMapIndexReader[] leaseAll() throws IOException, InterruptedException {
+		List<File> fs = getFiles();
+		if (fs.size() > maxOpenFiles) {
+			throw new IllegalStateException("Can't lease " + fs.size() + " files with max open files " + maxOpenFiles);
+		}
+		return lease(fs);
+	}
+
+	private BinaryMapIndexReader[] lease(List<File> fs) throws IOException, InterruptedException {
+		List<FileEntry> entries = new ArrayList<FileEntry>(fs.size());
+		synchronized (this) {
+			checkNotClosed();
+			for (File file : fs) {
+				FileEntry entry = files.get(file);
+				if (entry == null) {
+					throw new IllegalArgumentException("File is not registered in pool " + file);
+				}
+				entries.add(entry);
+			}
+		}
+		Map<FileEntry, Lease> leases = threadLeases.get();
+		if (leases == null) {
+			leases = new HashMap<FileEntry, Lease>();
+		}
+		List<FileEntry> toAcquire = new ArrayList<FileEntry>();
+		for (FileEntry entry : entries) {
+			if (!leases.containsKey(entry) && !toAcquire.contains(entry)) {
+				toAcquire.add(entry);
+			}
+		}
+		BinaryMapIndexReader[] acquired = acquire(toAcquire, !leases.isEmpty());
+		for (int i = 0; i < acquired.length; i++) {
+			leases.put(toAcquire.get(i), new Lease(acquired[i]));
+		}
+		if (!leases.isEmpty()) {
+			threadLeases.set(leases);
+		}
+		BinaryMapIndexReader[] res = new BinaryMapIndexReader[entries.size()];
+		for (int i = 0; i < res.length; i++) {
+			Lease lease = leases.get(entries.get(i));
+			if (lease.count++ == 0) {
+				stats.leases.incrementAndGet();
+			} else {
+				stats.reusedLeases.incrementAndGet();
+			}
+			res[i] = lease.reader;
+		}
+		return res;
+	}
+
+	public void release(BinaryMapIndexReader reader) {
+		Map<FileEntry, Lease> leases = threadLeases.get();
+		FileEntry entry = null;
+		Lease lease = null;
+		if (leases != null) {
+			for (Map.Entry<FileEntry, Lease> e : leases.entrySet()) {
+				if (e.getValue().reader == reader) {
+					entry = e.getKey();
+					lease = e.getValue();
+					break;
+				}
+			}
+		}
+		if (lease == null) {
+			throw new IllegalStateException("Reader is not leased by current thread " + reader.getFile());
+		}
+		if (--lease.count > 0) {
+			return;
+		}
+		leases.remove(entry);
+		if (leases.isEmpty()) {
+			// don't keep maps of threads which don't use pool anymore
+			threadLeases.remove();
+		}
+		stats.leaseTimeNanos.addAndGet(System.nanoTime() - lease.startTime);
+		synchronized (this) {
+			if (closed || openFiles > maxOpenFiles) {
+				closeReader(reader);
+			} else {
+				entry.idle.addFirst(reader);
+			}
+			notifyAll();
+		}
+	}
+
+	public void releaseAll(BinaryMapIndexReader[] readers) {
+		for (BinaryMapIndexReader r : readers) {
+			release(r);
+		}
+	}
+
+	public PoolStats getStats() {
+		return stats;
+	}
+
+	public synchronized int getOpenFiles() {
+		return openFiles;
+	}
+
+	/**
+	 * Acquires readers of all entries at once: waits until all readers are available (idle or could be opened),
+	 * thread which holds other leases doesn't wait and opens readers over the cap.
+	 */
+	private synchronized BinaryMapIndexReader[] acquire(List<FileEntry> entries, boolean holdsLeases)
+			throws IOException, InterruptedException {
+		long waitStart = 0;
+		try {
+			while (true) {
+				checkNotClosed();
+				if (holdsLeases || canAcquire(entries)) {
+					break;
+				}
+				if (waitStart == 0) {
+					waitStart = System.nanoTime();
+					stats.waits.incrementAndGet();
+				}
+				wait();
+			}
+		} finally {
+			if (waitStart != 0) {
+				stats.waitTimeNanos.addAndGet(System.nanoTime() - waitStart);
+			}
+		}
+		BinaryMapIndexReader[] res = new BinaryMapIndexReader[entries.size()];
+		// idle readers first, so they are not closed to open readers of other entries
+		for (int i = 0; i < res.length; i++) {
+			if (!entries.get(i).idle.isEmpty()) {
+				res[i] = entries.get(i).idle.removeFirst();
+			}
+		}
+		boolean acquired = false;
+		try {
+			for (int i = 0; i < res.length; i++) {
+				if (res[i] == null) {
+					res[i] = openReader(entries.get(i));
+				}
+			}
+			acquired = true;
+		} finally {
+			if (!acquired) {
+				for (int i = 0; i < res.length; i++) {
+					if (res[i] != null) {
+						entries.get(i).idle.addFirst(res[i]);
+					}
+				}
+				notifyAll();
+			}
+		}
+		return res;
+	}
+
+	private boolean canAcquire(List<FileEntry> entries) {
+		int toOpen = 0;
+		int idleOfEntries = 0;
+		for (FileEntry e : entries) {
+			if (e.idle.isEmpty()) {
+				toOpen++;
+			} else {
+				idleOfEntries++;
+			}
+		}
+		int idle = 0;
+		for (FileEntry e : files.values()) {
+			idle += e.idle.size();
+		}
+		// other idle readers are closed to free handles
+		return toOpen <= maxOpenFiles - openFiles + idle - idleOfEntries;
+	}
+
+	private BinaryMapIndexReader openReader(FileEntry entry) throws IOException {
+		if (openFiles >= maxOpenFiles && !closeIdleReader()) {
+			stats.overflowReaders.incrementAndGet();
+		}
+		openFiles++;
+		boolean opened = false;
+		try {
+			BinaryMapIndexReader reader = new BinaryMapIndexReader(new RandomAccessFile(entry.file, "r"),
+					entry.metadata);
+			stats.openedReaders.incrementAndGet();
+			opened = true;
+			return reader;
+		} finally {
+			if (!opened) {
+				openFiles--;
+			}
+		}
+	}
+
+	private boolean closeIdleReader() {
+		for (FileEntry e : files.values()) {
+			if (!e.idle.isEmpty()) {
+				closeReader(e.idle.removeLast());
+				stats.closedIdleReaders.incrementAndGet();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void closeReader(BinaryMapIndexReader reader) {
+		try {
+			reader.getRaf().close();
+		} catch (IOException e) {
+			LOG.error("Error closing reader " + reader.getFile(), e);
+		}
+		openFiles--;
+	}
+
+	private void checkNotClosed() {
+		if (closed) {
+			throw new IllegalStateException("Reader pool is closed");
+		}
+	}
+
+	/**
+	 * Closes idle readers, leased readers are closed when they are released.
+	 */
+	public synchronized void close() {
+		closed = true;
+		for (FileEntry e : files.values()) {
+			while (!e.idle.isEmpty()) {
+				closeReader(e.idle.removeFirst());
+			}
+		}
+		files.clear();
+		notifyAll();
+	}
+}
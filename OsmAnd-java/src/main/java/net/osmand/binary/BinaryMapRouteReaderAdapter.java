@@ -22,12 +22,15 @@ import org.apache.commons.logging.Log;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import gnu.trove.iterator.TLongObjectIterator;
 import gnu.trove.list.array.TIntArrayList;
@@ -300,6 +303,84 @@ public class BinaryMapRouteReaderAdapter {
 		}
 	}
 
+	/**
+	 * Indexes of distinct types combinations of region. Lookup of known combination doesn't lock or allocate
+	 * (open addressing table, entry is published by setting key after value), new combinations are added under lock.
+	 */
+	private static class TypesCombinations {
+
+		private static final class Table {
+			final AtomicReferenceArray<int[]> keys;
+			final AtomicIntegerArray values;
+
+			Table(int capacity) {
+				keys = new AtomicReferenceArray<int[]>(capacity);
+				values = new AtomicIntegerArray(capacity);
+			}
+
+			int find(int[] types) {
+				int mask = keys.length() - 1;
+				for (int i = hash(types) & mask; ; i = (i + 1) & mask) {
+					int[] k = keys.get(i);
+					if (k == null) {
+						return -1;
+					}
+					if (Arrays.equals(k, types)) {
+						return values.get(i);
+					}
+				}
+			}
+
+			void insert(int[] types, int index) {
+				int mask = keys.length() - 1;
+				int i = hash(types) & mask;
+				while (keys.get(i) != null) {
+					i = (i + 1) & mask;
+				}
+				values.set(i, index);
+				keys.set(i, types);
+			}
+
+			private static int hash(int[] types) {
+				int h = Arrays.hashCode(types);
+				return h ^ (h >>> 16);
+			}
+		}
+
+		private volatile Table table = new Table(64);
+		private int size;
+
+		int getIndex(int[] types) {
+			int ind = table.find(types);
+			if (ind >= 0) {
+				return ind;
+			}
+			synchronized (this) {
+				Table t = table;
+				ind = t.find(types);
+				if (ind >= 0) {
+					return ind;
+				}
+				ind = size++;
+				if (size * 2 > t.keys.length()) {
+					Table grown = new Table(t.keys.length() * 2);
+					for (int i = 0; i < t.keys.length(); i++) {
+						int[] k = t.keys.get(i);
+						if (k != null) {
+							grown.insert(k, t.values.get(i));
+						}
+					}
+					grown.insert(types.clone(), ind);
+					table = grown;
+				} else {
+					// types array of road could be modified (conditional tags), so key is a copy
+					t.insert(types.clone(), ind);
+				}
+				return ind;
+			}
+		}
+	}
+
 	public static class RouteRegion extends BinaryIndexPart {
 		public int regionsRead;
 		public List<RouteTypeRule> routeEncodingRules = new ArrayList<BinaryMapRouteReaderAdapter.RouteTypeRule>();
@@ -307,6 +388,11 @@ public class BinaryMapRouteReaderAdapter {
 		public Map<String, Integer> decodingRules = null;
 		List<RouteSubregion> subregions = new ArrayList<RouteSubregion>();
 		List<RouteSubregion> basesubregions = new ArrayList<RouteSubregion>();
+		// leaves of route trees restored from cached index (see RouteSubregionIndex.pack)
+		int[] cachedLeaves;
+		int[] cachedBaseLeaves;
+		private RouteSubregionIndex subregionsIndex;
+		private RouteSubregionIndex basesubregionsIndex;
 		
 		public int directionForward = -1;
 		public int directionBackward = -1;
@@ -324,11 +410,20 @@ public class BinaryMapRouteReaderAdapter {
 		int destinationTypeRule = -1;
 		int destinationRefTypeRule = -1;
 		private RouteRegion referenceRouteRegion;
+		// distinct combinations of road types, index is used by routers to look up compiled rules
+		private final TypesCombinations typesCombinations = new TypesCombinations();
 
 		public String getPartName() {
 			return "Routing";
 		}
 
+		/**
+		 * @return index of types combination, the same for equal types arrays of region
+		 */
+		public int getTypesCombination(int[] types) {
+			return typesCombinations.getIndex(types);
+		}
+
 		public int getFieldNumber() {
 			return OsmandOdb.OsmAndStructure.ROUTINGINDEX_FIELD_NUMBER;
 		}
@@ -426,6 +521,25 @@ public class BinaryMapRouteReaderAdapter {
 			return basesubregions;
 		}
 
+		/**
+		 * @return index of subregions with data or null if route tree is not known completely
+		 * (leaves are restored from cached index or whole tree is read by {@link BinaryMapIndexReader#preloadIndexMetadata()})
+		 */
+		public synchronized RouteSubregionIndex getSubregionIndex(boolean basemap) {
+			if (basemap) {
+				if (basesubregionsIndex == null) {
+					basesubregionsIndex = cachedBaseLeaves != null ? RouteSubregionIndex.fromPacked(this, cachedBaseLeaves)
+							: RouteSubregionIndex.fromTree(basesubregions);
+				}
+				return basesubregionsIndex;
+			}
+			if (subregionsIndex == null) {
+				subregionsIndex = cachedLeaves != null ? RouteSubregionIndex.fromPacked(this, cachedLeaves)
+						: RouteSubregionIndex.fromTree(subregions);
+			}
+			return subregionsIndex;
+		}
+
 		public double getLeftLongitude() {
 			double l = 180;
 			for(RouteSubregion s : subregions) {
@@ -829,9 +943,10 @@ public class BinaryMapRouteReaderAdapter {
 			}
 		}
 	}
-	private void readRouteTreeData(RouteSubregion routeTree,  TLongArrayList idTables,
+	private List<RouteDataObject> readRouteTreeData(RouteSubregion routeTree, TLongArrayList idTables,
 			TLongObjectHashMap<RestrictionInfo> restrictions) throws IOException {
-		routeTree.dataObjects = new ArrayList<RouteDataObject>();
+		// objects are collected locally, so shared subregion is not modified while reading
+		List<RouteDataObject> dataObjects = new ArrayList<RouteDataObject>();
 		idTables.clear();
 		restrictions.clear();
 		List<String> stringTable = null;
@@ -844,7 +959,7 @@ public class BinaryMapRouteReaderAdapter {
 				while (it.hasNext()) {
 					it.advance();
 					int from = (int) it.key();
-					RouteDataObject fromr = routeTree.dataObjects.get(from);
+					RouteDataObject fromr = dataObjects.get(from);
 					fromr.restrictions = new long[it.value().length()];
 					RestrictionInfo val = it.value();
 					for (int k = 0; k < fromr.restrictions.length; k++) {
@@ -859,7 +974,7 @@ public class BinaryMapRouteReaderAdapter {
 					}
 //					fromr.restrictionsVia = new 
 				}
-				for (RouteDataObject o : routeTree.dataObjects) {
+				for (RouteDataObject o : dataObjects) {
 					if (o != null) {
 						if (o.id < idTables.size()) {
 							o.id = idTables.get((int) o.id);
@@ -881,15 +996,15 @@ public class BinaryMapRouteReaderAdapter {
 						}
 					}
 				}
-				return;
+				return dataObjects;
 			case RouteDataBlock.DATAOBJECTS_FIELD_NUMBER :
 				int length = codedIS.readRawVarint32();
 				int oldLimit = codedIS.pushLimit(length);
 				RouteDataObject obj = readRouteDataObject(routeTree.routeReg, routeTree.left, routeTree.top);
-				while(obj.id >= routeTree.dataObjects.size()) {
-					routeTree.dataObjects.add(null);
+				while(obj.id >= dataObjects.size()) {
+					dataObjects.add(null);
 				}
-				routeTree.dataObjects.set((int) obj.id,obj);
+				dataObjects.set((int) obj.id,obj);
 				codedIS.popLimit(oldLimit);
 				break;
 			case RouteDataBlock.IDTABLE_FIELD_NUMBER :
@@ -1079,15 +1194,16 @@ public class BinaryMapRouteReaderAdapter {
 	public List<RouteDataObject> loadRouteRegionData(RouteSubregion rs) throws IOException {
 		TLongArrayList idMap = new TLongArrayList();
 		TLongObjectHashMap<RestrictionInfo> restrictionMap = new TLongObjectHashMap<RestrictionInfo>();
-		if (rs.dataObjects == null) {
+		List<RouteDataObject> res = rs.dataObjects;
+		if (res == null) {
 			codedIS.seek(rs.filePointer + rs.shiftToData);
 			int limit = codedIS.readRawVarint32();
 			int oldLimit = codedIS.pushLimit(limit);
-			readRouteTreeData(rs, idMap, restrictionMap);
+			res = readRouteTreeData(rs, idMap, restrictionMap);
 			codedIS.popLimit(oldLimit);
+		} else {
+			rs.dataObjects = null;
 		}
-		List<RouteDataObject> res = rs.dataObjects;
-		rs.dataObjects = null;
 		return res;
 	}
 	
@@ -1103,20 +1219,22 @@ public class BinaryMapRouteReaderAdapter {
 		TLongArrayList idMap = new TLongArrayList();
 		TLongObjectHashMap<RestrictionInfo> restrictionMap = new TLongObjectHashMap<RestrictionInfo>();
 		for (RouteSubregion rs : toLoad) {
-			if (rs.dataObjects == null) {
+			List<RouteDataObject> dataObjects = rs.dataObjects;
+			if (dataObjects == null) {
 				codedIS.seek(rs.filePointer + rs.shiftToData);
 				int limit = codedIS.readRawVarint32();
 				int oldLimit = codedIS.pushLimit(limit);
-				readRouteTreeData(rs, idMap, restrictionMap);
+				dataObjects = readRouteTreeData(rs, idMap, restrictionMap);
 				codedIS.popLimit(oldLimit);
+			} else {
+				// free objects
+				rs.dataObjects = null;
 			}
-			for (RouteDataObject ro : rs.dataObjects) {
+			for (RouteDataObject ro : dataObjects) {
 				if (ro != null) {
 					matcher.publish(ro);
 				}
 			}
-			// free objects
-			rs.dataObjects = null;
 		}
 	}
 
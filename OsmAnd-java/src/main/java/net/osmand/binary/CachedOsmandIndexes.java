@@ -5,6 +5,7 @@ import net.osmand.binary.BinaryMapAddressReaderAdapter.AddressRegion;
 import net.osmand.binary.BinaryMapAddressReaderAdapter.CitiesBlock;
 import net.osmand.binary.BinaryMapIndexReader.MapIndex;
 import net.osmand.binary.BinaryMapIndexReader.MapRoot;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
 import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiRegion;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
@@ -28,6 +29,9 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class CachedOsmandIndexes {
 
@@ -37,7 +41,7 @@ public class CachedOsmandIndexes {
 	private boolean hasChanged = false;
 	public static final String INDEXES_DEFAULT_FILENAME = "indexes.cache";
 
-	public static final int VERSION = 2;
+	public static final int VERSION = 3;
 
 	public FileIndex addToCache(BinaryMapIndexReader reader, File f) {
 		hasChanged = true;
@@ -155,6 +159,7 @@ public class CachedOsmandIndexes {
 			for (RouteSubregion sub : index.getBaseSubregions()) {
 				addRouteSubregion(routing, sub, true);
 			}
+			addRouteLeaves(reader, index, routing);
 			fileIndex.addRoutingIndex(routing);
 		}
 
@@ -163,7 +168,43 @@ public class CachedOsmandIndexes {
 		return fi;
 	}
 
+	// leaves of route trees (subregions with data) are stored after roots with parent = index of root,
+	// so routing finds subregions of tile without reading trees (see RouteSubregionIndex)
+	private void addRouteLeaves(BinaryMapIndexReader reader, RouteRegion index, RoutingPart.Builder routing) {
+		SearchRequest<RouteDataObject> req = BinaryMapIndexReader.buildSearchRouteRequest(0, Integer.MAX_VALUE, 0,
+				Integer.MAX_VALUE, null);
+		List<RouteSubregion> roots = new ArrayList<RouteSubregion>(index.getSubregions());
+		roots.addAll(index.getBaseSubregions());
+		List<RouteSubregion> leaves = new ArrayList<RouteSubregion>();
+		List<RouteSubregion> baseLeaves = new ArrayList<RouteSubregion>();
+		try {
+			for (int i = 0; i < roots.size(); i++) {
+				RouteSubregion root = roots.get(i);
+				boolean base = i >= index.getSubregions().size();
+				boolean loaded = root.subregions != null;
+				List<RouteSubregion> subregions = reader.searchRouteIndexTree(req, Collections.singletonList(root));
+				for (RouteSubregion sub : subregions) {
+					routing.addSubregions(createRouteSubregion(sub, base).setParent(i));
+				}
+				(base ? baseLeaves : leaves).addAll(subregions);
+				if (!loaded) {
+					// tree was read only for cache
+					root.subregions = null;
+				}
+			}
+		} catch (IOException e) {
+			log.error("Error reading route tree " + index.getName(), e);
+			return;
+		}
+		index.cachedLeaves = RouteSubregionIndex.pack(leaves);
+		index.cachedBaseLeaves = RouteSubregionIndex.pack(baseLeaves);
+	}
+
 	private void addRouteSubregion(RoutingPart.Builder routing, RouteSubregion sub, boolean base) {
+		routing.addSubregions(createRouteSubregion(sub, base));
+	}
+
+	private OsmandIndex.RoutingSubregion.Builder createRouteSubregion(RouteSubregion sub, boolean base) {
 		OsmandIndex.RoutingSubregion.Builder rpart = OsmandIndex.RoutingSubregion.newBuilder();
 		rpart.setSize(sub.length);
 		rpart.setOffset(sub.filePointer);
@@ -173,7 +214,7 @@ public class CachedOsmandIndexes {
 		rpart.setBasemap(base);
 		rpart.setBottom(sub.bottom);
 		rpart.setShifToData(sub.shiftToData);
-		routing.addSubregions(rpart);
+		return rpart;
 	}
 
 	public BinaryMapIndexReader getReader(File f, boolean useStoredIndex) throws IOException {
@@ -306,6 +347,8 @@ public class CachedOsmandIndexes {
 			mi.filePointer = (int) index.getOffset();
 			mi.name = index.getName();
 
+			List<RouteSubregion> leaves = new ArrayList<RouteSubregion>();
+			List<RouteSubregion> baseLeaves = new ArrayList<RouteSubregion>();
 			for (RoutingSubregion mr : index.getSubregionsList()) {
 				RouteSubregion sub = new RouteSubregion(mi);
 				sub.length = (int) mr.getSize();
@@ -315,12 +358,18 @@ public class CachedOsmandIndexes {
 				sub.top = mr.getTop();
 				sub.bottom = mr.getBottom();
 				sub.shiftToData = mr.getShifToData();
-				if (mr.getBasemap()) {
+				if (mr.hasParent()) {
+					(mr.getBasemap() ? baseLeaves : leaves).add(sub);
+				} else if (mr.getBasemap()) {
 					mi.basesubregions.add(sub);
 				} else {
 					mi.subregions.add(sub);
 				}
 			}
+			if (!leaves.isEmpty() || !baseLeaves.isEmpty()) {
+				mi.cachedLeaves = RouteSubregionIndex.pack(leaves);
+				mi.cachedBaseLeaves = RouteSubregionIndex.pack(baseLeaves);
+			}
 			reader.routingIndexes.add(mi);
 			reader.indexes.add(mi);
 		}
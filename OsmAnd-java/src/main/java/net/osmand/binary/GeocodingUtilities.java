@@ -27,6 +27,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -135,6 +136,88 @@ public class GeocodingUtilities {
 	}
 
 
+	/**
+	 * Thread safe cache of streets found by name (least recently used names are evicted), so reverse geocoding of many
+	 * points (see {@link net.osmand.router.BatchReverseGeocoder}) reads address index once for every street name in area.
+	 * Buildings of cached streets are loaded once with the street.
+	 */
+	public static class GeocodingCache {
+		// streets found by name are cached for tiles of this zoom (~40 km)
+		private static final int ZOOM = 10;
+		public static final int DEFAULT_MAX_STREET_NAMES = 4096;
+
+		private final Map<String, List<Street>> streetsByName;
+
+		public GeocodingCache() {
+			this(DEFAULT_MAX_STREET_NAMES);
+		}
+
+		public GeocodingCache(final int maxStreetNames) {
+			streetsByName = new LinkedHashMap<String, List<Street>>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, List<Street>> eldest) {
+					return size() > maxStreetNames;
+				}
+			};
+		}
+
+		List<Street> getStreets(GeocodingUtilities geocoding, BinaryMapIndexReader reader, LatLon searchPoint,
+				String mainWord, boolean addCommonWords, List<String> streetNames) throws IOException {
+			int tx = (int) MapUtils.getTileNumberX(ZOOM, searchPoint.getLongitude());
+			int ty = (int) MapUtils.getTileNumberY(ZOOM, searchPoint.getLatitude());
+			String key = reader.getFile().getAbsolutePath() + "|" + addCommonWords + "|" + streetNames + "|" + tx + "|" + ty;
+			List<Street> streets;
+			synchronized (streetsByName) {
+				streets = streetsByName.get(key);
+			}
+			if (streets == null) {
+				// tile is searched with extended radius, distance to point is checked for every point
+				double lat = MapUtils.getLatitudeFromTile(ZOOM, ty + 0.5);
+				double lon = MapUtils.getLongitudeFromTile(ZOOM, tx + 0.5);
+				double halfDiagonal = MapUtils.getDistance(lat, lon, MapUtils.getLatitudeFromTile(ZOOM, ty),
+						MapUtils.getLongitudeFromTile(ZOOM, tx));
+				streets = new ArrayList<Street>();
+				SearchRequest<MapObject> req = geocoding.buildStreetsByNameRequest(streets, mainWord, addCommonWords,
+						streetNames, null, null);
+				req.setBBoxRadius(lat, lon, DISTANCE_STREET_NAME_PROXIMITY_BY_NAME + (int) Math.ceil(halfDiagonal));
+				reader.searchAddressDataByName(req);
+				synchronized (streetsByName) {
+					List<Street> existing = streetsByName.get(key);
+					if (existing != null) {
+						streets = existing;
+					} else {
+						streetsByName.put(key, streets);
+					}
+				}
+			}
+			return streets;
+		}
+
+		// street found by name has no buildings till they are preloaded (street without buildings is read again)
+		void preloadBuildings(BinaryMapIndexReader reader, Street street) throws IOException {
+			synchronized (street) {
+				if (street.getBuildings().isEmpty()) {
+					reader.preloadBuildings(street, null);
+				}
+			}
+		}
+
+		public int getCachedStreetNamesCount() {
+			synchronized (streetsByName) {
+				return streetsByName.size();
+			}
+		}
+
+		public void clear() {
+			synchronized (streetsByName) {
+				streetsByName.clear();
+			}
+		}
+	}
+
+
 	public List<GeocodingResult> reverseGeocodingSearch(RoutingContext ctx, double lat, double lon, boolean allowEmptyNames) throws IOException {
 		RoutePlannerFrontEnd rp = new RoutePlannerFrontEnd();
 		List<GeocodingResult> lst = new ArrayList<GeocodingUtilities.GeocodingResult>();
@@ -220,6 +303,14 @@ public class GeocodingUtilities {
 
 	public List<GeocodingResult> justifyReverseGeocodingSearch(final GeocodingResult road, BinaryMapIndexReader reader,
 			double knownMinBuildingDistance, final ResultMatcher<GeocodingResult> result) throws IOException {
+		return justifyReverseGeocodingSearch(road, reader, knownMinBuildingDistance, result, null);
+	}
+
+	/**
+	 * @param cache shared cache of streets and buildings or null to read address index for every call
+	 */
+	public List<GeocodingResult> justifyReverseGeocodingSearch(final GeocodingResult road, BinaryMapIndexReader reader,
+			double knownMinBuildingDistance, final ResultMatcher<GeocodingResult> result, GeocodingCache cache) throws IOException {
 		// test address index search
 		final List<GeocodingResult> streetsList = new ArrayList<GeocodingResult>();
 		boolean addCommonWords = false;
@@ -231,7 +322,6 @@ public class GeocodingUtilities {
 		final boolean addCommonWordsFinal = addCommonWords;
 		final List<String> streetNamesUsedFinal = streetNamesUsed;
 		if (streetNamesUsedFinal.size() > 0) {
-			log.info("Search street by name " + road.streetName + " " + streetNamesUsedFinal);
 			String mainWord = "";
 			for (int i = 0; i < streetNamesUsedFinal.size(); i++) {
 				String s = streetNamesUsedFinal.get(i);
@@ -239,36 +329,31 @@ public class GeocodingUtilities {
 					mainWord = s;
 				}
 			}
-			SearchRequest<MapObject> req = BinaryMapIndexReader.buildAddressByNameRequest(
-					new ResultMatcher<MapObject>() {
-						@Override
-						public boolean publish(MapObject object) {
-							if (object instanceof Street
-									&& prepareStreetName(object.getName(), addCommonWordsFinal).equals(streetNamesUsedFinal)) {
-								double d = MapUtils.getDistance(object.getLocation(), road.searchPoint.getLatitude(),
-										road.searchPoint.getLongitude());
-								// double check to suport old format
-								if (d < DISTANCE_STREET_NAME_PROXIMITY_BY_NAME) {
-									GeocodingResult rs = new GeocodingResult(road);
-									rs.street = (Street) object;
-									// set connection point to sort
-									rs.connectionPoint = rs.street.getLocation();
-									rs.city = rs.street.getCity();
-									streetsList.add(rs);
-									return true;
-								}
-								return false;
+			if (cache != null) {
+				for (Street street : cache.getStreets(this, reader, road.searchPoint, mainWord, addCommonWordsFinal,
+						streetNamesUsedFinal)) {
+					if (result != null && result.isCancelled()) {
+						break;
+					}
+					addStreetResult(road, street, streetsList);
+				}
+			} else {
+				log.info("Search street by name " + road.streetName + " " + streetNamesUsedFinal);
+				SearchRequest<MapObject> req = buildStreetsByNameRequest(null, mainWord, addCommonWordsFinal,
+						streetNamesUsedFinal, new ResultMatcher<Street>() {
+							@Override
+							public boolean publish(Street street) {
+								return addStreetResult(road, street, streetsList);
 							}
-							return false;
-						}
 
-						@Override
-						public boolean isCancelled() {
-							return result != null && result.isCancelled();
-						}
-					}, mainWord, StringMatcherMode.CHECK_EQUALS_FROM_SPACE);
-			req.setBBoxRadius(road.getLocation().getLatitude(), road.getLocation().getLongitude(), DISTANCE_STREET_NAME_PROXIMITY_BY_NAME);
-			reader.searchAddressDataByName(req);
+							@Override
+							public boolean isCancelled() {
+								return result != null && result.isCancelled();
+							}
+						}, result);
+				req.setBBoxRadius(road.getLocation().getLatitude(), road.getLocation().getLongitude(), DISTANCE_STREET_NAME_PROXIMITY_BY_NAME);
+				reader.searchAddressDataByName(req);
+			}
 		}
 
 		final List<GeocodingResult> res = new ArrayList<GeocodingResult>();
@@ -286,7 +371,7 @@ public class GeocodingUtilities {
 					continue;
 				}
 				street.connectionPoint = road.connectionPoint;
-				final List<GeocodingResult> streetBuildings = loadStreetBuildings(road, reader, street);
+				final List<GeocodingResult> streetBuildings = loadStreetBuildings(road, reader, street, cache);
 				Collections.sort(streetBuildings, DISTANCE_COMPARATOR);
 				if (streetBuildings.size() > 0) {
 					Iterator<GeocodingResult> it = streetBuildings.iterator();
@@ -312,6 +397,46 @@ public class GeocodingUtilities {
 		return res;
 	}
 
+	// streets with the same words in name, all streets are added to @streets or passed to @streetMatcher
+	private SearchRequest<MapObject> buildStreetsByNameRequest(final List<Street> streets, String mainWord,
+			final boolean addCommonWords, final List<String> streetNames, final ResultMatcher<Street> streetMatcher,
+			final ResultMatcher<GeocodingResult> result) {
+		return BinaryMapIndexReader.buildAddressByNameRequest(new ResultMatcher<MapObject>() {
+			@Override
+			public boolean publish(MapObject object) {
+				if (object instanceof Street && prepareStreetName(object.getName(), addCommonWords).equals(streetNames)) {
+					if (streetMatcher != null) {
+						return streetMatcher.publish((Street) object);
+					}
+					streets.add((Street) object);
+					return true;
+				}
+				return false;
+			}
+
+			@Override
+			public boolean isCancelled() {
+				return result != null && result.isCancelled();
+			}
+		}, mainWord, StringMatcherMode.CHECK_EQUALS_FROM_SPACE);
+	}
+
+	private boolean addStreetResult(GeocodingResult road, Street street, List<GeocodingResult> streetsList) {
+		double d = MapUtils.getDistance(street.getLocation(), road.searchPoint.getLatitude(),
+				road.searchPoint.getLongitude());
+		// double check to suport old format
+		if (d < DISTANCE_STREET_NAME_PROXIMITY_BY_NAME) {
+			GeocodingResult rs = new GeocodingResult(road);
+			rs.street = street;
+			// set connection point to sort
+			rs.connectionPoint = rs.street.getLocation();
+			rs.city = rs.street.getCity();
+			streetsList.add(rs);
+			return true;
+		}
+		return false;
+	}
+
 	public void filterDuplicateRegionResults(final List<GeocodingResult> res) {
 		Collections.sort(res, DISTANCE_COMPARATOR);
 		// filter duplicate city results (when building is in both regions on boundary)
@@ -357,10 +482,14 @@ public class GeocodingUtilities {
 	}
 
 	private List<GeocodingResult> loadStreetBuildings(final GeocodingResult road, BinaryMapIndexReader reader,
-			GeocodingResult street) throws IOException {
+			GeocodingResult street, GeocodingCache cache) throws IOException {
 		final List<GeocodingResult> streetBuildings = new ArrayList<GeocodingResult>();
-		reader.preloadBuildings(street.street, null);
-		log.info("Preload buildings " + street.street.getName() + " " + street.city.getName() + " " + street.street.getId());
+		if (cache != null) {
+			cache.preloadBuildings(reader, street.street);
+		} else {
+			reader.preloadBuildings(street.street, null);
+			log.info("Preload buildings " + street.street.getName() + " " + street.city.getName() + " " + street.street.getId());
+		}
 		for (Building b : street.street.getBuildings()) {
 			if (b.getLatLon2() != null) {
 				double slat = b.getLocation().getLatitude();
@@ -394,6 +523,11 @@ public class GeocodingUtilities {
 	}
 
 	public List<GeocodingResult> sortGeocodingResults(List<BinaryMapIndexReader> list, List<GeocodingResult> res) throws IOException {
+		return sortGeocodingResults(list, res, null);
+	}
+
+	public List<GeocodingResult> sortGeocodingResults(List<BinaryMapIndexReader> list, List<GeocodingResult> res,
+			GeocodingCache cache) throws IOException {
 		List<GeocodingResult> complete = new ArrayList<GeocodingUtilities.GeocodingResult>();
 		double minBuildingDistance = 0;
 		for (GeocodingResult r : res) {
@@ -411,7 +545,7 @@ public class GeocodingUtilities {
 				}
 			}
 			if (reader != null) {
-				List<GeocodingResult> justified = justifyReverseGeocodingSearch(r, reader, minBuildingDistance, null);
+				List<GeocodingResult> justified = justifyReverseGeocodingSearch(r, reader, minBuildingDistance, null, cache);
 				if (!justified.isEmpty()) {
 					double md = justified.get(0).getDistance();
 					if (minBuildingDistance == 0) {
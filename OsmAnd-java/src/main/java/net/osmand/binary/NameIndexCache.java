@@ -0,0 +1,97 @@
+package net.osmand.binary;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of name index tables ({@link NameIndexTrie}) of POI and address search of all maps.
+ * Tables are keyed by map part (part objects are shared by readers of the same file), least recently
+ * used tables are evicted when estimated size of all tables exceeds memory limit. Table bigger than memory limit
+ * is not cached and is read from file every search.
+ */
+public class NameIndexCache {
+
+	public static final long DEFAULT_MEMORY_LIMIT = 32l << 20;
+	// size of entry of table which is not cached
+	private static final int NOT_CACHED_SIZE = 64;
+
+	private static final NameIndexCache DEFAULT = new NameIndexCache(DEFAULT_MEMORY_LIMIT);
+
+	private long memoryLimit;
+	private long size;
+	private long evictions;
+	private final Map<BinaryIndexPart, NameIndexTrie> tables = new LinkedHashMap<BinaryIndexPart, NameIndexTrie>(16,
+			0.75f, true);
+
+	public NameIndexCache(long memoryLimit) {
+		this.memoryLimit = memoryLimit;
+	}
+
+	public static NameIndexCache getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @return cached table of part, {@link NameIndexTrie#NOT_CACHED} if table is read from file or null if table
+	 * wasn't read yet
+	 */
+	synchronized NameIndexTrie get(BinaryIndexPart part) {
+		return tables.get(part);
+	}
+
+	/**
+	 * @return table kept in cache ({@link NameIndexTrie#NOT_CACHED} if table is bigger than memory limit)
+	 */
+	synchronized NameIndexTrie put(BinaryIndexPart part, NameIndexTrie table) {
+		if (table != NameIndexTrie.NOT_CACHED && table.getEstimatedSize() > memoryLimit) {
+			table = NameIndexTrie.NOT_CACHED;
+		}
+		NameIndexTrie prev = tables.put(part, table);
+		if (prev != null) {
+			size -= getSize(prev);
+		}
+		size += getSize(table);
+		evict();
+		return table;
+	}
+
+	public synchronized void setMemoryLimit(long memoryLimit) {
+		this.memoryLimit = memoryLimit;
+		evict();
+	}
+
+	public synchronized long getMemoryLimit() {
+		return memoryLimit;
+	}
+
+	public synchronized long getEstimatedSize() {
+		return size;
+	}
+
+	public synchronized int getTablesCount() {
+		return tables.size();
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized void clear() {
+		tables.clear();
+		size = 0;
+	}
+
+	private void evict() {
+		Iterator<NameIndexTrie> it = tables.values().iterator();
+		while (size > memoryLimit && it.hasNext()) {
+			size -= getSize(it.next());
+			it.remove();
+			evictions++;
+		}
+	}
+
+	private static long getSize(NameIndexTrie table) {
+		return table == NameIndexTrie.NOT_CACHED ? NOT_CACHED_SIZE : table.getEstimatedSize();
+	}
+}
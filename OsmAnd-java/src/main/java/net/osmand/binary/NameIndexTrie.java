@@ -0,0 +1,154 @@
+package net.osmand.binary;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import net.osmand.Collator;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Name index (indexed string table of POI and address name search) kept in memory : prefix tree where every
+ * key is prefix of names with offsets of name data. Tree is read from file on the first search of region,
+ * the next searches (e.g. every typed character) walk only matching subtrees in memory with the same
+ * matching as reading from file ({@link BinaryMapIndexReader#readIndexedStringTable}).
+ * Tree is immutable, so it is shared by readers of the same file in different threads.
+ * Trees of all maps are kept by {@link NameIndexCache} in common memory limit.
+ */
+public class NameIndexTrie {
+
+	// max number of keys of cached table, bigger tables are read from file every search
+	public static final int MAX_CACHED_KEYS = 1 << 16;
+
+	// table is too big or cache is disabled
+	static final NameIndexTrie NOT_CACHED = new NameIndexTrie(new String[0], new int[] { 0 }, new int[0],
+			new NameIndexTrie[0]);
+
+	// full keys (with keys of parent tables)
+	private final String[] keys;
+	// offsets of key i are values[valuesStart[i]] ... values[valuesStart[i + 1] - 1]
+	private final int[] valuesStart;
+	private final int[] values;
+	private final NameIndexTrie[] subtables;
+	private final long estimatedSize;
+
+	private NameIndexTrie(String[] keys, int[] valuesStart, int[] values, NameIndexTrie[] subtables) {
+		this.keys = keys;
+		this.valuesStart = valuesStart;
+		this.values = values;
+		this.subtables = subtables;
+		// object headers and arrays, string is ~40 bytes with 2 bytes per char
+		long size = 16 + 4 * 16 + 4 * (valuesStart.length + values.length) + 4 * (keys.length + subtables.length);
+		for (String k : keys) {
+			size += 40 + 2 * k.length();
+		}
+		for (NameIndexTrie s : subtables) {
+			if (s != null) {
+				size += s.estimatedSize;
+			}
+		}
+		this.estimatedSize = size;
+	}
+
+	public long getEstimatedSize() {
+		return estimatedSize;
+	}
+
+	public int getKeysCount() {
+		int cnt = keys.length;
+		for (NameIndexTrie s : subtables) {
+			if (s != null) {
+				cnt += s.getKeysCount();
+			}
+		}
+		return cnt;
+	}
+
+	/**
+	 * Reads table in current limit of reader
+	 * @return table or {@link #NOT_CACHED} if table has more than {@link #MAX_CACHED_KEYS} keys
+	 * (position of reader is undefined then)
+	 */
+	static NameIndexTrie read(BinaryMapIndexReader map) throws IOException {
+		NameIndexTrie table = readTable(map, "", new int[1]);
+		return table == null ? NOT_CACHED : table;
+	}
+
+	private static NameIndexTrie readTable(BinaryMapIndexReader map, String prefix, int[] keysCount) throws IOException {
+		CodedInputStream codedIS = map.codedIS;
+		List<String> keys = new ArrayList<String>();
+		TIntArrayList valuesStart = new TIntArrayList();
+		TIntArrayList values = new TIntArrayList();
+		List<NameIndexTrie> subtables = new ArrayList<NameIndexTrie>();
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			switch (tag) {
+			case 0:
+				valuesStart.add(values.size());
+				return new NameIndexTrie(keys.toArray(new String[keys.size()]), valuesStart.toArray(), values.toArray(),
+						subtables.toArray(new NameIndexTrie[subtables.size()]));
+			case OsmandOdb.IndexedStringTable.KEY_FIELD_NUMBER:
+				if (++keysCount[0] > MAX_CACHED_KEYS) {
+					return null;
+				}
+				String key = codedIS.readString();
+				keys.add(prefix.length() > 0 ? prefix + key : key);
+				valuesStart.add(values.size());
+				subtables.add(null);
+				break;
+			case OsmandOdb.IndexedStringTable.VAL_FIELD_NUMBER:
+				int val = map.readInt();
+				// value before the first key is never matched
+				if (!keys.isEmpty()) {
+					values.add(val);
+				}
+				break;
+			case OsmandOdb.IndexedStringTable.SUBTABLES_FIELD_NUMBER:
+				int len = codedIS.readRawVarint32();
+				int oldLim = codedIS.pushLimit(len);
+				if (!keys.isEmpty()) {
+					NameIndexTrie subtable = readTable(map, keys.get(keys.size() - 1), keysCount);
+					if (subtable == null) {
+						codedIS.popLimit(oldLim);
+						return null;
+					}
+					subtables.set(keys.size() - 1, subtable);
+				} else {
+					codedIS.skipRawBytes(codedIS.getBytesUntilLimit());
+				}
+				codedIS.popLimit(oldLim);
+				break;
+			default:
+				map.skipUnknownField(t);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Same as {@link BinaryMapIndexReader#readIndexedStringTable} for table in memory
+	 */
+	void search(Collator instance, List<String> queries, List<TIntArrayList> listOffsets, TIntArrayList matchedCharacters) {
+		boolean[] matched = new boolean[matchedCharacters.size()];
+		for (int k = 0; k < keys.length; k++) {
+			boolean shouldWeReadSubtable = BinaryMapIndexReader.matchIndexedStringKey(instance, keys[k], queries,
+					listOffsets, matchedCharacters, matched);
+			for (int v = valuesStart[k]; v < valuesStart[k + 1]; v++) {
+				for (int i = 0; i < queries.size(); i++) {
+					if (matched[i]) {
+						listOffsets.get(i).add(values[v]);
+					}
+				}
+			}
+			if (shouldWeReadSubtable && subtables[k] != null) {
+				subtables[k].search(instance, BinaryMapIndexReader.getMatchedSubqueries(queries, matched), listOffsets,
+						matchedCharacters);
+			}
+		}
+	}
+}
@@ -7030,6 +7030,16 @@ public final class OsmandIndex {
      * <code>required uint32 shifToData = 8;</code>
      */
     int getShifToData();
+
+    // optional uint32 parent = 9;
+    /**
+     * <code>optional uint32 parent = 9;</code>
+     */
+    boolean hasParent();
+    /**
+     * <code>optional uint32 parent = 9;</code>
+     */
+    int getParent();
   }
   /**
    * Protobuf type {@code OsmAnd.OBF.RoutingSubregion}
@@ -7114,6 +7124,11 @@ public final class OsmandIndex {
               shifToData_ = input.readUInt32();
               break;
             }
+            case 72: {
+              bitField0_ |= 0x00000100;
+              parent_ = input.readUInt32();
+              break;
+            }
           }
         }
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -7269,6 +7284,22 @@ public final class OsmandIndex {
       return shifToData_;
     }
 
+    // optional uint32 parent = 9;
+    public static final int PARENT_FIELD_NUMBER = 9;
+    private int parent_;
+    /**
+     * <code>optional uint32 parent = 9;</code>
+     */
+    public boolean hasParent() {
+      return ((bitField0_ & 0x00000100) == 0x00000100);
+    }
+    /**
+     * <code>optional uint32 parent = 9;</code>
+     */
+    public int getParent() {
+      return parent_;
+    }
+
     private void initFields() {
       size_ = 0L;
       offset_ = 0L;
@@ -7278,6 +7309,7 @@ public final class OsmandIndex {
       top_ = 0;
       bottom_ = 0;
       shifToData_ = 0;
+      parent_ = 0;
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -7343,6 +7375,9 @@ public final class OsmandIndex {
       if (((bitField0_ & 0x00000080) == 0x00000080)) {
         output.writeUInt32(8, shifToData_);
       }
+      if (((bitField0_ & 0x00000100) == 0x00000100)) {
+        output.writeUInt32(9, parent_);
+      }
     }
 
     private int memoizedSerializedSize = -1;
@@ -7383,6 +7418,10 @@ public final class OsmandIndex {
         size += com.google.protobuf.CodedOutputStream
           .computeUInt32Size(8, shifToData_);
       }
+      if (((bitField0_ & 0x00000100) == 0x00000100)) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeUInt32Size(9, parent_);
+      }
       memoizedSerializedSize = size;
       return size;
     }
@@ -7490,6 +7529,8 @@ public final class OsmandIndex {
         bitField0_ = (bitField0_ & ~0x00000040);
         shifToData_ = 0;
         bitField0_ = (bitField0_ & ~0x00000080);
+        parent_ = 0;
+        bitField0_ = (bitField0_ & ~0x00000100);
         return this;
       }
 
@@ -7545,6 +7586,10 @@ public final class OsmandIndex {
           to_bitField0_ |= 0x00000080;
         }
         result.shifToData_ = shifToData_;
+        if (((from_bitField0_ & 0x00000100) == 0x00000100)) {
+          to_bitField0_ |= 0x00000100;
+        }
+        result.parent_ = parent_;
         result.bitField0_ = to_bitField0_;
         return result;
       }
@@ -7575,6 +7620,9 @@ public final class OsmandIndex {
         if (other.hasShifToData()) {
           setShifToData(other.getShifToData());
         }
+        if (other.hasParent()) {
+          setParent(other.getParent());
+        }
         return this;
       }
 
@@ -7893,6 +7941,39 @@ public final class OsmandIndex {
         return this;
       }
 
+      // optional uint32 parent = 9;
+      private int parent_ ;
+      /**
+       * <code>optional uint32 parent = 9;</code>
+       */
+      public boolean hasParent() {
+        return ((bitField0_ & 0x00000100) == 0x00000100);
+      }
+      /**
+       * <code>optional uint32 parent = 9;</code>
+       */
+      public int getParent() {
+        return parent_;
+      }
+      /**
+       * <code>optional uint32 parent = 9;</code>
+       */
+      public Builder setParent(int value) {
+        bitField0_ |= 0x00000100;
+        parent_ = value;
+        
+        return this;
+      }
+      /**
+       * <code>optional uint32 parent = 9;</code>
+       */
+      public Builder clearParent() {
+        bitField0_ = (bitField0_ & ~0x00000100);
+        parent_ = 0;
+        
+        return this;
+      }
+
       // @@protoc_insertion_point(builder_scope:OsmAnd.OBF.RoutingSubregion)
     }
 
@@ -35,6 +35,19 @@ public class RouteDataObject {
 	// mixed array [0, height, cumulative_distance height, cumulative_distance, height, ...] - length is length(points)*2
 	public float[] heightDistanceArray = null;
 	public float heightByCurrentLocation = Float.NaN;
+	// cached index of types combination in region (objects are shared between threads, so value is immutable)
+	private TypesCombination typesCombination;
+
+	private static final class TypesCombination {
+		// types array index was calculated for
+		final int[] types;
+		final int index;
+
+		TypesCombination(int[] types, int index) {
+			this.types = types;
+			this.index = index;
+		}
+	}
 
 	public RouteDataObject(RouteRegion region) {
 		this.region = region;
@@ -64,6 +77,24 @@ public class RouteDataObject {
 		this.pointNames = copy.pointNames;
 		this.pointNameTypes = copy.pointNameTypes;
 		this.id = copy.id;
+		this.typesCombination = copy.typesCombination;
+	}
+
+	/**
+	 * Index of types combination in region ({@link RouteRegion#getTypesCombination(int[])}) or -1 if region is unknown,
+	 * used as key of compiled routing rules.
+	 */
+	public int getTypesCombination() {
+		int[] tps = types;
+		TypesCombination c = typesCombination;
+		if (c == null || c.types != tps) {
+			if (region == null || tps == null) {
+				return -1;
+			}
+			c = new TypesCombination(tps, region.getTypesCombination(tps));
+			typesCombination = c;
+		}
+		return c.index;
 	}
 
 	public boolean compareRoute(RouteDataObject thatObj) {
@@ -553,6 +584,8 @@ public class RouteDataObject {
 						types = ntypes;
 					}
 					types[ks] = vl;
+					// types are modified in place, so cached combination is not valid
+					typesCombination = null;
 				}
 			}
 		}
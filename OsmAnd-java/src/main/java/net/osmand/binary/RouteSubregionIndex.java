@@ -0,0 +1,174 @@
+package net.osmand.binary;
+
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+/**
+ * Grid index of route subregions with data (leaves of route tree) of one route region, so subregions of routing tile
+ * are found by one hash lookup instead of walking route tree. Leaves are registered in every grid cell they intersect,
+ * leaves covering too many cells are kept in separate list which is checked for every search.
+ * Index is built from leaves stored in {@link CachedOsmandIndexes} or from completely read route tree
+ * and returns the same leaves as {@link BinaryMapRouteReaderAdapter#searchRouteRegionTree} in the same order.
+ */
+public class RouteSubregionIndex {
+
+	public static final int GRID_ZOOM = 13;
+	private static final int GRID_SHIFT = 31 - GRID_ZOOM;
+	private static final int MAX_CELLS_PER_LEAF = 64;
+	// file pointer, length, shift to data, left, right, top, bottom
+	private static final int PACKED_SIZE = 7;
+
+	// leaves in order of tree search
+	private final RouteSubregion[] leaves;
+	private final TLongObjectHashMap<int[]> cells;
+	private final int[] large;
+
+	private RouteSubregionIndex(RouteSubregion[] leaves, TLongObjectHashMap<int[]> cells, int[] large) {
+		this.leaves = leaves;
+		this.cells = cells;
+		this.large = large;
+	}
+
+	/**
+	 * @return index of route trees or null if some tree is not completely read
+	 */
+	public static RouteSubregionIndex fromTree(List<RouteSubregion> roots) {
+		List<RouteSubregion> leaves = new ArrayList<RouteSubregion>();
+		if (!collectLeaves(roots, leaves)) {
+			return null;
+		}
+		return build(leaves);
+	}
+
+	/**
+	 * Index of leaves packed by {@link #pack(List)} (e.g. restored from cached index).
+	 */
+	public static RouteSubregionIndex fromPacked(RouteRegion reg, int[] packed) {
+		List<RouteSubregion> leaves = new ArrayList<RouteSubregion>(packed.length / PACKED_SIZE);
+		for (int i = 0; i + PACKED_SIZE <= packed.length; i += PACKED_SIZE) {
+			RouteSubregion rs = new RouteSubregion(reg);
+			rs.filePointer = packed[i];
+			rs.length = packed[i + 1];
+			rs.shiftToData = packed[i + 2];
+			rs.left = packed[i + 3];
+			rs.right = packed[i + 4];
+			rs.top = packed[i + 5];
+			rs.bottom = packed[i + 6];
+			// leaf is never read as tree again
+			rs.subregions = new ArrayList<RouteSubregion>(0);
+			leaves.add(rs);
+		}
+		return build(leaves);
+	}
+
+	public static int[] pack(List<RouteSubregion> leaves) {
+		int[] packed = new int[leaves.size() * PACKED_SIZE];
+		int i = 0;
+		for (RouteSubregion rs : leaves) {
+			packed[i++] = rs.filePointer;
+			packed[i++] = rs.length;
+			packed[i++] = rs.shiftToData;
+			packed[i++] = rs.left;
+			packed[i++] = rs.right;
+			packed[i++] = rs.top;
+			packed[i++] = rs.bottom;
+		}
+		return packed;
+	}
+
+	private static RouteSubregionIndex build(List<RouteSubregion> leaves) {
+		TLongObjectHashMap<TIntArrayList> cellLists = new TLongObjectHashMap<TIntArrayList>();
+		TIntArrayList large = new TIntArrayList();
+		for (int i = 0; i < leaves.size(); i++) {
+			RouteSubregion rs = leaves.get(i);
+			int left = rs.left >>> GRID_SHIFT;
+			int right = rs.right >>> GRID_SHIFT;
+			int top = rs.top >>> GRID_SHIFT;
+			int bottom = rs.bottom >>> GRID_SHIFT;
+			if ((long) (right - left + 1) * (bottom - top + 1) > MAX_CELLS_PER_LEAF) {
+				large.add(i);
+				continue;
+			}
+			for (int x = left; x <= right; x++) {
+				for (int y = top; y <= bottom; y++) {
+					long cell = cellId(x, y);
+					TIntArrayList l = cellLists.get(cell);
+					if (l == null) {
+						l = new TIntArrayList(4);
+						cellLists.put(cell, l);
+					}
+					l.add(i);
+				}
+			}
+		}
+		TLongObjectHashMap<int[]> cells = new TLongObjectHashMap<int[]>(Math.max(cellLists.size(), 1));
+		for (long cell : cellLists.keys()) {
+			cells.put(cell, cellLists.get(cell).toArray());
+		}
+		return new RouteSubregionIndex(leaves.toArray(new RouteSubregion[leaves.size()]), cells, large.toArray());
+	}
+
+	// collects leaves in the same order as tree search does (children before parent)
+	private static boolean collectLeaves(List<RouteSubregion> list, List<RouteSubregion> leaves) {
+		for (RouteSubregion rs : list) {
+			if (rs.subregions == null || !collectLeaves(rs.subregions, leaves)) {
+				return false;
+			}
+			if (rs.shiftToData != 0) {
+				leaves.add(rs);
+			}
+		}
+		return true;
+	}
+
+	private static long cellId(int x, int y) {
+		return (((long) x) << GRID_ZOOM) + y;
+	}
+
+	public int getLeavesCount() {
+		return leaves.length;
+	}
+
+	/**
+	 * Adds leaves intersecting the box (31 coordinates) to toLoad.
+	 */
+	public List<RouteSubregion> search(int left, int top, int right, int bottom, List<RouteSubregion> toLoad) {
+		int cl = left >>> GRID_SHIFT;
+		int cr = right >>> GRID_SHIFT;
+		int ct = top >>> GRID_SHIFT;
+		int cb = bottom >>> GRID_SHIFT;
+		TIntArrayList found = new TIntArrayList();
+		if ((long) (cr - cl + 1) * (cb - ct + 1) > cells.size()) {
+			for (int i = 0; i < leaves.length; i++) {
+				found.add(i);
+			}
+		} else {
+			found.add(large);
+			for (int x = cl; x <= cr; x++) {
+				for (int y = ct; y <= cb; y++) {
+					int[] c = cells.get(cellId(x, y));
+					if (c != null) {
+						found.add(c);
+					}
+				}
+			}
+			found.sort();
+		}
+		int last = -1;
+		for (int k = 0; k < found.size(); k++) {
+			int i = found.get(k);
+			RouteSubregion rs = leaves[i];
+			if (i != last && right >= rs.left && left <= rs.right && top <= rs.bottom && bottom >= rs.top) {
+				toLoad.add(rs);
+			}
+			last = i;
+		}
+		return toLoad;
+	}
+}
@@ -0,0 +1,227 @@
+package net.osmand.router;
+
+import net.osmand.PlatformUtil;
+import net.osmand.ResultMatcher;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.GeocodingUtilities;
+import net.osmand.binary.GeocodingUtilities.GeocodingCache;
+import net.osmand.binary.GeocodingUtilities.GeocodingResult;
+import net.osmand.util.MapUtils;
+
+import org.apache.commons.logging.Log;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reverse geocoding of many points (e.g. gps positions of vehicles) with {@link GeocodingUtilities}.
+ * Points are sorted by routing tiles (Morton order of tiles), so tiles loaded by routing context are reused
+ * by the next points, streets found by name and buildings of streets are shared by all points ({@link GeocodingCache}).
+ * Sorted points are split into chunks of whole tiles which are geocoded in parallel with own routing contexts
+ * and file handles. Results are published as soon as point is geocoded (in order of tiles, one result at a time).
+ */
+public class BatchReverseGeocoder {
+
+	private static final Log log = PlatformUtil.getLog(BatchReverseGeocoder.class);
+
+	private static final int CHUNKS_PER_THREAD = 8;
+	// tile numbers are interleaved as 16 bit values
+	private static final int MAX_TILE_ZOOM = 16;
+
+	public static class BatchGeocodingResult {
+		// index of point in coordinates array
+		public final int index;
+		public final double lat;
+		public final double lon;
+		// sorted results as returned by GeocodingUtilities.sortGeocodingResults
+		public final List<GeocodingResult> results;
+
+		BatchGeocodingResult(int index, double lat, double lon, List<GeocodingResult> results) {
+			this.index = index;
+			this.lat = lat;
+			this.lon = lon;
+			this.results = results;
+		}
+	}
+
+	private final RoutingContext ctx;
+	private final List<BinaryMapIndexReader> addressReaders;
+	private final GeocodingUtilities geocoding = new GeocodingUtilities();
+	private final GeocodingCache cache = new GeocodingCache();
+	private boolean allowEmptyNames;
+	private int parallelism = 1;
+	private ExecutorService executor;
+
+	/**
+	 * @param ctx routing context to find roads near points (context is used only by the calling thread)
+	 * @param addressReaders readers with address index to find buildings and streets
+	 */
+	public BatchReverseGeocoder(RoutingContext ctx, List<BinaryMapIndexReader> addressReaders) {
+		this.ctx = ctx;
+		this.addressReaders = addressReaders;
+	}
+
+	public void setAllowEmptyNames(boolean allowEmptyNames) {
+		this.allowEmptyNames = allowEmptyNames;
+	}
+
+	/**
+	 * @param parallelism max number of threads geocoding points (1 - geocode in calling thread)
+	 * @param executor executor to geocode chunks of points or null to start new threads for every batch
+	 */
+	public void setParallelism(int parallelism, ExecutorService executor) {
+		this.parallelism = Math.max(1, parallelism);
+		this.executor = executor;
+	}
+
+	public GeocodingCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * @param latLons coordinates of points (lat1, lon1, lat2, lon2, ...)
+	 * @param publisher receives result of every point, geocoding is stopped when publisher is cancelled
+	 * @return number of geocoded points
+	 */
+	public int reverseGeocode(final double[] latLons, final ResultMatcher<BatchGeocodingResult> publisher)
+			throws IOException, InterruptedException {
+		long time = System.currentTimeMillis();
+		final long[] sorted = sortByTiles(latLons, Math.min(ctx.config.ZOOM_TO_LOAD_TILES, MAX_TILE_ZOOM));
+		int threads = Math.min(parallelism, Math.max(1, sorted.length / CHUNKS_PER_THREAD));
+		final int[] chunks = splitByTiles(sorted, threads * CHUNKS_PER_THREAD);
+		final AtomicInteger nextChunk = new AtomicInteger();
+		int geocoded = 0;
+		if (threads <= 1) {
+			geocoded = geocodeChunks(ctx, addressReaders, latLons, sorted, chunks, nextChunk, publisher);
+		} else {
+			ctx.prepareThreadCopies();
+			ExecutorService ex = executor != null ? executor : Executors.newFixedThreadPool(threads);
+			try {
+				List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+				for (int t = 0; t < threads; t++) {
+					futures.add(ex.submit(new Callable<Integer>() {
+						@Override
+						public Integer call() throws Exception {
+							return geocodeInThread(latLons, sorted, chunks, nextChunk, publisher);
+						}
+					}));
+				}
+				for (Future<Integer> f : futures) {
+					try {
+						geocoded += f.get();
+					} catch (ExecutionException e) {
+						RoutePlannerFrontEnd.rethrowTaskException(e);
+					}
+				}
+			} finally {
+				if (executor == null) {
+					ex.shutdown();
+				}
+			}
+		}
+		log.info(String.format("Reverse geocoding of %d points in %d ms (%d threads, %d street names cached)",
+				geocoded, System.currentTimeMillis() - time, threads, cache.getCachedStreetNamesCount()));
+		return geocoded;
+	}
+
+	private int geocodeInThread(double[] latLons, long[] sorted, int[] chunks, AtomicInteger nextChunk,
+			ResultMatcher<BatchGeocodingResult> publisher) throws IOException, InterruptedException {
+		RoutingContext threadCtx = ctx.copyForThread();
+		List<BinaryMapIndexReader> readers = new ArrayList<BinaryMapIndexReader>();
+		try {
+			for (BinaryMapIndexReader r : addressReaders) {
+				readers.add(new BinaryMapIndexReader(new RandomAccessFile(r.getFile(), "r"), r));
+			}
+			return geocodeChunks(threadCtx, readers, latLons, sorted, chunks, nextChunk, publisher);
+		} finally {
+			threadCtx.closeThreadCopy();
+			for (BinaryMapIndexReader r : readers) {
+				r.close();
+			}
+		}
+	}
+
+	private int geocodeChunks(RoutingContext ctx, List<BinaryMapIndexReader> readers, double[] latLons, long[] sorted,
+			int[] chunks, AtomicInteger nextChunk, ResultMatcher<BatchGeocodingResult> publisher)
+			throws IOException, InterruptedException {
+		int geocoded = 0;
+		int chunk;
+		while ((chunk = nextChunk.getAndIncrement()) < chunks.length - 1) {
+			for (int i = chunks[chunk]; i < chunks[chunk + 1]; i++) {
+				if (publisher.isCancelled()) {
+					return geocoded;
+				}
+				int index = (int) sorted[i];
+				double lat = latLons[2 * index];
+				double lon = latLons[2 * index + 1];
+				List<GeocodingResult> roads = geocoding.reverseGeocodingSearch(ctx, lat, lon, allowEmptyNames);
+				List<GeocodingResult> results = geocoding.sortGeocodingResults(readers, roads, cache);
+				synchronized (publisher) {
+					publisher.publish(new BatchGeocodingResult(index, lat, lon, results));
+				}
+				geocoded++;
+			}
+		}
+		return geocoded;
+	}
+
+	/**
+	 * @return indexes of points (low 32 bits) sorted by Morton code of tile (high 32 bits, sign bit is flipped
+	 * so signed order of keys is unsigned order of codes)
+	 */
+	static long[] sortByTiles(double[] latLons, int zoom) {
+		int n = latLons.length / 2;
+		long[] sorted = new long[n];
+		for (int i = 0; i < n; i++) {
+			int x = (int) MapUtils.getTileNumberX(zoom, latLons[2 * i + 1]);
+			int y = (int) MapUtils.getTileNumberY(zoom, latLons[2 * i]);
+			sorted[i] = ((interleave(x) | (interleave(y) << 1)) << 32 | i) ^ Long.MIN_VALUE;
+		}
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	// spreads 16 low bits of value to even bits
+	private static long interleave(int v) {
+		long x = v & 0xffff;
+		x = (x | (x << 8)) & 0x00ff00ff;
+		x = (x | (x << 4)) & 0x0f0f0f0f;
+		x = (x | (x << 2)) & 0x33333333;
+		x = (x | (x << 1)) & 0x55555555;
+		return x;
+	}
+
+	/**
+	 * @return bounds of chunks (first index of every chunk and size), points of one tile are in the same chunk
+	 */
+	static int[] splitByTiles(long[] sorted, int chunks) {
+		int chunkSize = Math.max(1, (sorted.length + chunks - 1) / chunks);
+		List<Integer> bounds = new ArrayList<Integer>();
+		bounds.add(0);
+		int i = chunkSize;
+		while (i < sorted.length) {
+			while (i < sorted.length && (sorted[i] >>> 32) == (sorted[i - 1] >>> 32)) {
+				i++;
+			}
+			if (i < sorted.length) {
+				bounds.add(i);
+			}
+			i += chunkSize;
+		}
+		bounds.add(sorted.length);
+		int[] res = new int[bounds.size()];
+		for (int k = 0; k < res.length; k++) {
+			res[k] = bounds.get(k);
+		}
+		return res;
+	}
+}
@@ -7,7 +7,6 @@ import java.text.MessageFormat;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
-import java.util.PriorityQueue;
 
 import net.osmand.PlatformUtil;
 import net.osmand.binary.RouteDataObject;
@@ -28,11 +27,17 @@ public class BinaryRoutePlanner {
 
 	protected static final Log log = PlatformUtil.getLog(BinaryRoutePlanner.class);
 
-	private static final int ROUTE_POINTS = 11;
+	static final int ROUTE_POINTS = 11;
 	private static final boolean ASSERT_CHECKS = true;
 	private static final boolean TRACE_ROUTING = false;
 	private static final int TEST_ID = 50725;
 	private static final boolean TEST_SPECIFIC = true;
+	// queue sizes are added to routing trace every interval of visited segments
+	private static final int TRACE_QUEUE_INTERVAL = 256;
+	private static final String[] TRACE_QUEUE_SERIES = { "direct", "reverse" };
+
+	// reverse search tree of previous route used by current search instead of reverse search
+	private ReverseSearchTree reverseTree;
 
 
 	public static double squareRootDist(int x1, int y1, int x2, int y2) {
@@ -41,19 +46,6 @@ public class BinaryRoutePlanner {
 	}
 
 
-	private static class SegmentsComparator implements Comparator<RouteSegment> {
-		final RoutingContext ctx;
-
-		public SegmentsComparator(RoutingContext ctx) {
-			this.ctx = ctx;
-		}
-
-		@Override
-		public int compare(RouteSegment o1, RouteSegment o2) {
-			return ctx.roadPriorityComparator(o1.distanceFromStart, o1.distanceToEnd, o2.distanceFromStart, o2.distanceToEnd);
-		}
-	}
-
 	private static class NonHeuristicSegmentsComparator implements Comparator<RouteSegment> {
 		public NonHeuristicSegmentsComparator() {
 		}
@@ -71,27 +63,35 @@ public class BinaryRoutePlanner {
 	FinalRouteSegment searchRouteInternal(final RoutingContext ctx, RouteSegmentPoint start, RouteSegmentPoint end,
 			RouteSegment recalculationEnd ) throws InterruptedException, IOException {
 		// measure time
+		long startTime = System.nanoTime();
 		ctx.memoryOverhead = 1000;
 
 		// Initializing priority queue to visit way segments 
 		Comparator<RouteSegment> nonHeuristicSegmentsComparator = new NonHeuristicSegmentsComparator();
-		PriorityQueue<RouteSegment> graphDirectSegments = new PriorityQueue<RouteSegment>(50, new SegmentsComparator(ctx));
-		PriorityQueue<RouteSegment> graphReverseSegments = new PriorityQueue<RouteSegment>(50, new SegmentsComparator(ctx));
+		RouteSegmentHeap graphDirectSegments = new RouteSegmentHeap(50, ctx.config.heuristicCoefficient);
+		RouteSegmentHeap graphReverseSegments = new RouteSegmentHeap(50, ctx.config.heuristicCoefficient);
 
 		// Set to not visit one segment twice (stores road.id << X + segmentStart)
 		TLongObjectHashMap<RouteSegment> visitedDirectSegments = new TLongObjectHashMap<RouteSegment>();
 		TLongObjectHashMap<RouteSegment> visitedOppositeSegments = new TLongObjectHashMap<RouteSegment>();
 
+		LandmarkHeuristic landmarks = ctx.config.landmarkHeuristic;
+		ctx.landmarks = landmarks != null && landmarks.isApplicable(ctx) ? landmarks : null;
 		initQueuesWithStartEnd(ctx, start, end, recalculationEnd, graphDirectSegments, graphReverseSegments, 
 				visitedDirectSegments, visitedOppositeSegments);
-
+		// reverse search tree of previous route to the same target : search only forward till tree is met
+		reverseTree = null;
+		if (recalculationEnd == null && ctx.reverseSearchTree != null && ctx.reverseSearchTree.isApplicable(ctx, end)) {
+			reverseTree = ctx.reverseSearchTree;
+			graphReverseSegments.clear();
+		}
 
 
 		FinalRouteSegment finalSegment = null;
 		boolean onlyBackward = ctx.getPlanRoadDirection() < 0;
 		boolean onlyForward = ctx.getPlanRoadDirection() > 0;
 		// Extract & analyze segment with min(f(x)) from queue while final segment is not found
-		PriorityQueue<RouteSegment> graphSegments = onlyForward ? graphReverseSegments : graphDirectSegments;
+		RouteSegmentHeap graphSegments = onlyForward ? graphReverseSegments : graphDirectSegments;
 		boolean forwardSearch = !onlyForward;
 		while (!graphSegments.isEmpty()) {
 			RouteSegment segment = graphSegments.poll();
@@ -122,6 +122,11 @@ public class BinaryRoutePlanner {
 			}
 			if (ctx.calculationProgress != null) {
 				ctx.calculationProgress.visitedSegments++;
+				if (ctx.calculationProgress.trace != null
+						&& ctx.calculationProgress.visitedSegments % TRACE_QUEUE_INTERVAL == 0) {
+					ctx.calculationProgress.trace.counter(RoutingTrace.CATEGORY_ROUTING, "queue", TRACE_QUEUE_SERIES,
+							new double[] { graphDirectSegments.size(), graphReverseSegments.size() });
+				}
 			}
 			if (forwardSearch) {
 				boolean doNotAddIntersections = onlyBackward;
@@ -134,14 +139,16 @@ public class BinaryRoutePlanner {
 			}
 			updateCalculationProgress(ctx, graphDirectSegments, graphReverseSegments);
 
-			checkIfGraphIsEmpty(ctx, ctx.getPlanRoadDirection() <= 0, true, graphReverseSegments, end, visitedOppositeSegments,
+			checkIfGraphIsEmpty(ctx, ctx.getPlanRoadDirection() <= 0 && reverseTree == null, true, graphReverseSegments, end, visitedOppositeSegments,
 					"Route is not found to selected target point.");
 			checkIfGraphIsEmpty(ctx, ctx.getPlanRoadDirection() >= 0, false, graphDirectSegments, start, visitedDirectSegments,
 					"Route is not found from selected start point.");
 			if (ctx.planRouteIn2Directions()) {
-				if (graphDirectSegments.isEmpty() || graphReverseSegments.isEmpty()) {
+				if (graphDirectSegments.isEmpty() || (graphReverseSegments.isEmpty() && reverseTree == null)) {
 					// can't proceed - so no route
 					break;
+				} else if (reverseTree != null) {
+					forwardSearch = true;
 				} else {
 					forwardSearch = nonHeuristicSegmentsComparator.compare(graphDirectSegments.peek(), graphReverseSegments.peek()) <= 0;
 				}
@@ -177,12 +184,21 @@ public class BinaryRoutePlanner {
 			ctx.calculationProgress.directQueueSize += graphDirectSegments.size(); // Math.max(ctx.directQueueSize,
 																					// graphDirectSegments.size());
 			ctx.calculationProgress.oppositeQueueSize += graphReverseSegments.size();
+			if (ctx.calculationProgress.trace != null) {
+				ctx.calculationProgress.trace.complete(RoutingTrace.CATEGORY_ROUTING, "search", null, startTime);
+			}
+		}
+		if (finalSegment != null && reverseTree == null && recalculationEnd == null
+				&& ctx.config.reverseSearchTreeMaxSegments > 0 && ctx.planRouteIn2Directions()) {
+			ctx.reverseSearchTree = ReverseSearchTree.build(ctx, end, finalSegment, visitedOppositeSegments,
+					ctx.config.reverseSearchTreeMaxSegments);
 		}
+		reverseTree = null;
 		return finalSegment;
 	}
 
 	protected void checkIfGraphIsEmpty(final RoutingContext ctx, boolean allowDirection,
-			boolean reverseWaySearch, PriorityQueue<RouteSegment> graphSegments, RouteSegmentPoint pnt, TLongObjectHashMap<RouteSegment> visited,
+			boolean reverseWaySearch, RouteSegmentHeap graphSegments, RouteSegmentPoint pnt, TLongObjectHashMap<RouteSegment> visited,
 			String msg) {
 		if (allowDirection && graphSegments.isEmpty()) {
 			if (pnt.others != null) {
@@ -280,7 +296,7 @@ public class BinaryRoutePlanner {
 
 
 	private void initQueuesWithStartEnd(final RoutingContext ctx, RouteSegmentPoint start, RouteSegmentPoint end,
-			RouteSegment recalculationEnd, PriorityQueue<RouteSegment> graphDirectSegments, PriorityQueue<RouteSegment> graphReverseSegments, 
+			RouteSegment recalculationEnd, RouteSegmentHeap graphDirectSegments, RouteSegmentHeap graphReverseSegments, 
 			TLongObjectHashMap<RouteSegment> visitedDirectSegments, TLongObjectHashMap<RouteSegment> visitedOppositeSegments) {
 		RouteSegment startPos = initRouteSegment(ctx, start, true, false);
 		RouteSegment startNeg = initRouteSegment(ctx, start, false, false);
@@ -342,8 +358,8 @@ public class BinaryRoutePlanner {
 	}
 
 
-	private void updateCalculationProgress(final RoutingContext ctx, PriorityQueue<RouteSegment> graphDirectSegments,
-			PriorityQueue<RouteSegment> graphReverseSegments) {
+	private void updateCalculationProgress(final RoutingContext ctx, RouteSegmentHeap graphDirectSegments,
+			RouteSegmentHeap graphReverseSegments) {
 		if (ctx.calculationProgress != null) {
 			ctx.calculationProgress.reverseSegmentQueueSize = graphReverseSegments.size();
 			ctx.calculationProgress.directSegmentQueueSize = graphDirectSegments.size();
@@ -387,7 +403,7 @@ public class BinaryRoutePlanner {
 		return (float) (distance / ctx.getRouter().getMaxSpeed());
 	}
 
-	protected static float h(RoutingContext ctx, int begX, int begY, int endX, int endY) {
+	protected static float h(RoutingContext ctx, boolean reverseWaySearch, int begX, int begY, int endX, int endY) {
 		double distToFinalPoint = squareRootDist(begX, begY, endX, endY);
 		double result = distToFinalPoint / ctx.getRouter().getMaxSpeed();
 		if (ctx.precalculatedRouteDirection != null) {
@@ -396,6 +412,13 @@ public class BinaryRoutePlanner {
 				return te;
 			}
 		}
+		LandmarkHeuristic landmarks = ctx.landmarks;
+		if (landmarks != null) {
+			// reverse search estimates time from start to the point
+			float bound = reverseWaySearch ? landmarks.lowerBound(endX, endY, begX, begY) :
+					landmarks.lowerBound(begX, begY, endX, endY);
+			result = Math.max(result, bound);
+		}
 		return (float) result;
 	}
 
@@ -406,6 +429,17 @@ public class BinaryRoutePlanner {
 	}
 
 	private double calculateRouteSegmentTime(RoutingContext ctx, boolean reverseWaySearch, RouteSegment segment) {
+		RoutingTrace trace = ctx.calculationProgress != null ? ctx.calculationProgress.trace : null;
+		if (trace == null) {
+			return evaluateRouteSegmentTime(ctx, reverseWaySearch, segment);
+		}
+		long now = System.nanoTime();
+		double time = evaluateRouteSegmentTime(ctx, reverseWaySearch, segment);
+		trace.addTime(RoutingTrace.CATEGORY_ROUTER, "segmentTime", null, System.nanoTime() - now);
+		return time;
+	}
+
+	private double evaluateRouteSegmentTime(RoutingContext ctx, boolean reverseWaySearch, RouteSegment segment) {
 		final RouteDataObject road = segment.road;
 		// store <segment> in order to not have unique <segment, direction> in visitedSegments
 		short segmentInd = reverseWaySearch ? segment.getSegmentStart() : segment.getSegmentEnd();
@@ -443,7 +477,7 @@ public class BinaryRoutePlanner {
 
 	@SuppressWarnings("unused")
 	private void processRouteSegment(final RoutingContext ctx, boolean reverseWaySearch,
-			PriorityQueue<RouteSegment> graphSegments, TLongObjectHashMap<RouteSegment> visitedSegments, 
+			RouteSegmentHeap graphSegments, TLongObjectHashMap<RouteSegment> visitedSegments, 
             RouteSegment startSegment, TLongObjectHashMap<RouteSegment> oppositeSegments, boolean doNotAddIntersections) {
 		if (ASSERT_CHECKS && !checkMovementAllowed(ctx, reverseWaySearch, startSegment)) {
 			throw new IllegalStateException();
@@ -473,7 +507,7 @@ public class BinaryRoutePlanner {
 			// 2. check if segment was already visited in opposite direction
 			// We check before we calculate segmentTime (to not calculate it twice with opposite and calculate turns
 			// onto each segment).
-			boolean alreadyVisited = checkIfOppositeSegmentWasVisited(reverseWaySearch, graphSegments, currentSegment,
+			boolean alreadyVisited = checkIfOppositeSegmentWasVisited(ctx, reverseWaySearch, graphSegments, currentSegment,
 					oppositeSegments);
  			if (alreadyVisited) {
  				// we don't stop here in order to allow improve found *potential* final segment - test case on short route
@@ -569,13 +603,17 @@ public class BinaryRoutePlanner {
 		return s.getParentRoute();
 	}
 
-	private boolean checkIfOppositeSegmentWasVisited(boolean reverseWaySearch,
-			PriorityQueue<RouteSegment> graphSegments, RouteSegment currentSegment, TLongObjectHashMap<RouteSegment> oppositeSegments) {
+	private boolean checkIfOppositeSegmentWasVisited(final RoutingContext ctx, boolean reverseWaySearch,
+			RouteSegmentHeap graphSegments, RouteSegment currentSegment, TLongObjectHashMap<RouteSegment> oppositeSegments) {
 		// check inverse direction for opposite
 		long currPoint = calculateRoutePointInternalId(currentSegment.getRoad(), 
 				currentSegment.getSegmentEnd(), currentSegment.getSegmentStart());
-		if (oppositeSegments.containsKey(currPoint)) {
-			RouteSegment opposite = oppositeSegments.get(currPoint);
+		RouteSegment opposite = oppositeSegments.get(currPoint);
+		if (opposite == null && reverseTree != null && !reverseWaySearch) {
+			// restored segments of previous reverse search are kept as visited
+			opposite = reverseTree.loadSegment(ctx, currPoint, oppositeSegments);
+		}
+		if (opposite != null) {
 			RouteSegment curParent = getParentDiffId(currentSegment);
 			RouteSegment oppParent = getParentDiffId(opposite);
 			RouteSegment to = reverseWaySearch ? curParent : oppParent;
@@ -598,7 +636,7 @@ public class BinaryRoutePlanner {
 		return false;
 	}
 
-	private long calculateRoutePointInternalId(final RouteDataObject road, int pntId, int nextPntId) {
+	static long calculateRoutePointInternalId(final RouteDataObject road, int pntId, int nextPntId) {
 		int positive = nextPntId - pntId;
 		int pntLen = road.getPointsLength();
 		if (pntId < 0 || nextPntId < 0 || pntId >= pntLen || nextPntId >= pntLen || (positive != -1 && positive != 1)) {
@@ -608,7 +646,7 @@ public class BinaryRoutePlanner {
 		return (road.getId() << ROUTE_POINTS) + (pntId << 1) + (positive > 0 ? 1 : 0);
 	}
 
-	private long calculateRoutePointId(RouteSegment segm) {
+	static long calculateRoutePointId(RouteSegment segm) {
 		return calculateRoutePointInternalId(segm.getRoad(), segm.getSegmentStart(), 
 				segm.isPositive() ? segm.getSegmentStart() + 1 : segm.getSegmentStart() - 1);
 		// return calculateRoutePointInternalId(segm.getRoad(), segm.getSegmentStart(), segm.getSegmentEnd()); 
@@ -726,7 +764,7 @@ public class BinaryRoutePlanner {
 		}
 	}
 
-	private RouteSegment processIntersections(RoutingContext ctx, PriorityQueue<RouteSegment> graphSegments,
+	private RouteSegment processIntersections(RoutingContext ctx, RouteSegmentHeap graphSegments,
 			TLongObjectHashMap<RouteSegment> visitedSegments,  RouteSegment currentSegment,
 			boolean reverseWaySearch, boolean doNotAddIntersections) {
 		RouteSegment nextCurrentSegment = null;
@@ -734,7 +772,7 @@ public class BinaryRoutePlanner {
 		int targetEndY = reverseWaySearch ? ctx.startY : ctx.targetY;
 		final int x = currentSegment.getRoad().getPoint31XTile(currentSegment.getSegmentEnd());
 		final int y = currentSegment.getRoad().getPoint31YTile(currentSegment.getSegmentEnd());
-		float distanceToEnd = h(ctx, x, y, targetEndX, targetEndY);
+		float distanceToEnd = h(ctx, reverseWaySearch, x, y, targetEndX, targetEndY);
 		// reassign @distanceToEnd to make it correct for visited segment
 		currentSegment.distanceToEnd = distanceToEnd; 
 		
@@ -829,15 +867,20 @@ public class BinaryRoutePlanner {
 		return nextCurrentSegment;
 	}
 
-	private boolean processOneRoadIntersection(RoutingContext ctx, boolean reverseWaySearch, PriorityQueue<RouteSegment> graphSegments,
+	private boolean processOneRoadIntersection(RoutingContext ctx, boolean reverseWaySearch, RouteSegmentHeap graphSegments,
 			TLongObjectHashMap<RouteSegment> visitedSegments, RouteSegment segment, RouteSegment next) {
 		if (next != null) {
 			if (!checkMovementAllowed(ctx, reverseWaySearch, next)) {
 				return false;
 			}
+			RoutingTrace trace = ctx.calculationProgress != null ? ctx.calculationProgress.trace : null;
+			long now = trace != null ? System.nanoTime() : 0;
 			float obstaclesTime = (float) ctx.getRouter().calculateTurnTime(next, 
 					next.isPositive() ? next.getRoad().getPointsLength() - 1 : 0,    
 					segment, segment.getSegmentEnd());
+			if (trace != null) {
+				trace.addTime(RoutingTrace.CATEGORY_ROUTER, "turnTime", null, System.nanoTime() - now);
+			}
 			if (obstaclesTime < 0) {
 				return false;
 			}
@@ -992,6 +1035,8 @@ public class BinaryRoutePlanner {
 		// NON-VISITED: Approximated (h(x)) time from @segStart of @this route segment to End [Start for reverse A*] 
 		// VISITED: Approximated (h(x)) time from @segEnd of @this route segment to End [Start for reverse A*]
 		float distanceToEnd = 0;
+		// # Position in A* open set (RouteSegmentHeap), -1 if segment is not queued
+		int heapIndex = -1;
 
 		public RouteSegment(RouteDataObject road, int segmentStart, int segmentEnd) {
 			this.road = road;
@@ -0,0 +1,649 @@
+package net.osmand.router;
+
+import gnu.trove.map.hash.TIntLongHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+
+import org.apache.commons.logging.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Contraction hierarchy over road graph of one routing profile (see {@link ContractionHierarchyBuilder}).
+ * Graph nodes are road junctions and road ends, base edges are parts of roads between 2 junctions
+ * (road id, start and end point index), shortcuts reference 2 contracted edges.
+ * Query is bidirectional Dijkstra over upward edges, path is unpacked into base edges and converted
+ * to the same {@link RouteSegmentResult} list as produced by {@link BinaryRoutePlanner}.
+ * Turn restrictions and turn costs are not modeled in hierarchy, so it is used only by explicit request
+ * (see {@link RoutePlannerFrontEnd#setContractionHierarchy(ContractionHierarchy)}).
+ * Hierarchy is immutable, queries could be run concurrently.
+ */
+public class ContractionHierarchy {
+
+	protected static final Log log = PlatformUtil.getLog(ContractionHierarchy.class);
+
+	private static final int MAGIC = 0x4F434831; // OCH1
+	private static final int VERSION = 2;
+	static final int NO_EDGE = -1;
+
+	final GeneralRouterProfile profile;
+	final String profileName;
+	// router (profile, parameters and rules) which weights are used in hierarchy
+	final String routerKey;
+
+	// nodes
+	final int[] nodeX;
+	final int[] nodeY;
+	final int[] rank;
+	// edges (shortcut has childA/childB, base edge references road)
+	final int[] edgeFrom;
+	final int[] edgeTo;
+	final float[] edgeWeight;
+	final int[] edgeChildA;
+	final int[] edgeChildB;
+	final long[] edgeRoadId;
+	final short[] edgeRoadStart;
+	final short[] edgeRoadEnd;
+
+	// upward edges from node (forward search) and edges to node from higher nodes (backward search)
+	private final int[] upFirst;
+	private final int[] upEdges;
+	private final int[] downFirst;
+	private final int[] downEdges;
+	// base edges sorted by road id
+	private final int[] roadEdges;
+
+	ContractionHierarchy(GeneralRouterProfile profile, String profileName, String routerKey, int[] nodeX, int[] nodeY, int[] rank,
+			int[] edgeFrom, int[] edgeTo, float[] edgeWeight, int[] edgeChildA, int[] edgeChildB,
+			long[] edgeRoadId, short[] edgeRoadStart, short[] edgeRoadEnd) {
+		this.profile = profile;
+		this.profileName = profileName;
+		this.routerKey = routerKey;
+		this.nodeX = nodeX;
+		this.nodeY = nodeY;
+		this.rank = rank;
+		this.edgeFrom = edgeFrom;
+		this.edgeTo = edgeTo;
+		this.edgeWeight = edgeWeight;
+		this.edgeChildA = edgeChildA;
+		this.edgeChildB = edgeChildB;
+		this.edgeRoadId = edgeRoadId;
+		this.edgeRoadStart = edgeRoadStart;
+		this.edgeRoadEnd = edgeRoadEnd;
+		int nodes = nodeX.length;
+		int edges = edgeFrom.length;
+		upFirst = new int[nodes + 1];
+		downFirst = new int[nodes + 1];
+		int baseEdges = 0;
+		for (int e = 0; e < edges; e++) {
+			if (rank[edgeTo[e]] > rank[edgeFrom[e]]) {
+				upFirst[edgeFrom[e] + 1]++;
+			} else {
+				downFirst[edgeTo[e] + 1]++;
+			}
+			if (edgeChildA[e] == NO_EDGE) {
+				baseEdges++;
+			}
+		}
+		for (int i = 0; i < nodes; i++) {
+			upFirst[i + 1] += upFirst[i];
+			downFirst[i + 1] += downFirst[i];
+		}
+		upEdges = new int[upFirst[nodes]];
+		downEdges = new int[downFirst[nodes]];
+		int[] upPos = Arrays.copyOf(upFirst, nodes);
+		int[] downPos = Arrays.copyOf(downFirst, nodes);
+		Integer[] sorted = new Integer[baseEdges];
+		baseEdges = 0;
+		for (int e = 0; e < edges; e++) {
+			if (rank[edgeTo[e]] > rank[edgeFrom[e]]) {
+				upEdges[upPos[edgeFrom[e]]++] = e;
+			} else {
+				downEdges[downPos[edgeTo[e]]++] = e;
+			}
+			if (edgeChildA[e] == NO_EDGE) {
+				sorted[baseEdges++] = e;
+			}
+		}
+		final long[] roadIds = this.edgeRoadId;
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return Long.compare(roadIds[o1], roadIds[o2]);
+			}
+		});
+		roadEdges = new int[baseEdges];
+		for (int i = 0; i < baseEdges; i++) {
+			roadEdges[i] = sorted[i];
+		}
+	}
+
+	public GeneralRouterProfile getProfile() {
+		return profile;
+	}
+
+	public String getProfileName() {
+		return profileName;
+	}
+
+	public int getNodesCount() {
+		return nodeX.length;
+	}
+
+	public int getEdgesCount() {
+		return edgeFrom.length;
+	}
+
+	public String getRouterKey() {
+		return routerKey;
+	}
+
+	/**
+	 * Hierarchy is used only for router it was built with (the same parameters and rules).
+	 * Hierarchy ignores impassable roads, conditional tags and direction points, so such contexts use A*
+	 */
+	public boolean isApplicable(RoutingContext ctx) {
+		GeneralRouter router = ctx.config.router;
+		return ctx.nativeLib == null && router.getProfile() == profile && router.getRouterKey().equals(routerKey)
+				&& router.getImpassableRoadIds().length == 0
+				&& ctx.config.routeCalculationTime == 0 && ctx.config.getDirectionPoints() == null;
+	}
+
+	public void writeToFile(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new GZIPOutputStream(new FileOutputStream(file))));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(profile.name());
+			out.writeUTF(profileName == null ? "" : profileName);
+			out.writeUTF(routerKey);
+			out.writeInt(nodeX.length);
+			for (int i = 0; i < nodeX.length; i++) {
+				out.writeInt(nodeX[i]);
+				out.writeInt(nodeY[i]);
+				out.writeInt(rank[i]);
+			}
+			out.writeInt(edgeFrom.length);
+			for (int e = 0; e < edgeFrom.length; e++) {
+				out.writeInt(edgeFrom[e]);
+				out.writeInt(edgeTo[e]);
+				out.writeFloat(edgeWeight[e]);
+				out.writeInt(edgeChildA[e]);
+				if (edgeChildA[e] == NO_EDGE) {
+					out.writeLong(edgeRoadId[e]);
+					out.writeShort(edgeRoadStart[e]);
+					out.writeShort(edgeRoadEnd[e]);
+				} else {
+					out.writeInt(edgeChildB[e]);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	public static ContractionHierarchy readFromFile(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(new FileInputStream(file))));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a contraction hierarchy file " + file.getName());
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported contraction hierarchy version " + version);
+			}
+			GeneralRouterProfile profile = GeneralRouterProfile.valueOf(in.readUTF());
+			String profileName = in.readUTF();
+			String routerKey = in.readUTF();
+			int nodes = in.readInt();
+			int[] nodeX = new int[nodes];
+			int[] nodeY = new int[nodes];
+			int[] rank = new int[nodes];
+			for (int i = 0; i < nodes; i++) {
+				nodeX[i] = in.readInt();
+				nodeY[i] = in.readInt();
+				rank[i] = in.readInt();
+			}
+			int edges = in.readInt();
+			int[] edgeFrom = new int[edges];
+			int[] edgeTo = new int[edges];
+			float[] edgeWeight = new float[edges];
+			int[] edgeChildA = new int[edges];
+			int[] edgeChildB = new int[edges];
+			long[] edgeRoadId = new long[edges];
+			short[] edgeRoadStart = new short[edges];
+			short[] edgeRoadEnd = new short[edges];
+			for (int e = 0; e < edges; e++) {
+				edgeFrom[e] = in.readInt();
+				edgeTo[e] = in.readInt();
+				edgeWeight[e] = in.readFloat();
+				edgeChildA[e] = in.readInt();
+				if (edgeChildA[e] == NO_EDGE) {
+					edgeChildB[e] = NO_EDGE;
+					edgeRoadId[e] = in.readLong();
+					edgeRoadStart[e] = in.readShort();
+					edgeRoadEnd[e] = in.readShort();
+				} else {
+					edgeChildB[e] = in.readInt();
+				}
+			}
+			return new ContractionHierarchy(profile, profileName, routerKey, nodeX, nodeY, rank, edgeFrom, edgeTo, edgeWeight,
+					edgeChildA, edgeChildB, edgeRoadId, edgeRoadStart, edgeRoadEnd);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Segment time the same way as A* calculates it (without turn time)
+	 * @return -1 if segment is not passable
+	 */
+	static double segmentTime(VehicleRouter router, RouteDataObject road, int from, int to) {
+		double dist = BinaryRoutePlanner.squareRootDist(road.getPoint31XTile(from), road.getPoint31YTile(from),
+				road.getPoint31XTile(to), road.getPoint31YTile(to));
+		float priority = router.defineSpeedPriority(road);
+		float speed = router.defineRoutingSpeed(road) * priority;
+		if (speed == 0) {
+			speed = router.getDefaultSpeed() * priority;
+		}
+		if (speed > router.getMaxSpeed()) {
+			speed = router.getMaxSpeed();
+		}
+		double obstacle = router.defineRoutingObstacle(road, to, from > to);
+		if (obstacle < 0) {
+			return -1;
+		}
+		double heightObstacle = router.defineHeightObstacle(road, (short) to, (short) from);
+		if (heightObstacle < 0) {
+			return -1;
+		}
+		return obstacle + heightObstacle + dist / speed;
+	}
+
+	private static double roadTime(VehicleRouter router, RouteDataObject road, int from, int to) {
+		double time = 0;
+		int dir = to > from ? 1 : -1;
+		for (int i = from; i != to; i += dir) {
+			double t = segmentTime(router, road, i, i + dir);
+			if (t < 0) {
+				return -1;
+			}
+			time += t;
+		}
+		return time;
+	}
+
+	// time of the part of segment [from, to] between precise point and @to (start) or @from (end)
+	private static double partialTime(VehicleRouter router, RouteSegmentPoint pnt, int from, int to, boolean start) {
+		RouteDataObject road = pnt.getRoad();
+		double t = segmentTime(router, road, from, to);
+		if (t < 0) {
+			return -1;
+		}
+		int p = start ? to : from;
+		double full = BinaryRoutePlanner.squareRootDist(road.getPoint31XTile(from), road.getPoint31YTile(from),
+				road.getPoint31XTile(to), road.getPoint31YTile(to));
+		double part = BinaryRoutePlanner.squareRootDist(pnt.preciseX, pnt.preciseY,
+				road.getPoint31XTile(p), road.getPoint31YTile(p));
+		return full == 0 ? 0 : t * Math.min(1, part / full);
+	}
+
+	// part of the road between precise point and graph node
+	private static class RoutePiece {
+		final int node;
+		final int start;
+		final int end;
+		final double time;
+		final int edge;
+
+		RoutePiece(int node, int start, int end, double time, int edge) {
+			this.node = node;
+			this.start = start;
+			this.end = end;
+			this.time = time;
+			this.edge = edge;
+		}
+	}
+
+	private List<RoutePiece> findPieces(VehicleRouter router, RouteSegmentPoint pnt, boolean start) {
+		List<RoutePiece> res = new ArrayList<RoutePiece>(2);
+		RouteDataObject road = pnt.getRoad();
+		// precise point lies between [j - 1, j] (see RoutePlannerFrontEnd.findRouteSegment)
+		int j = pnt.getSegmentStart();
+		if (j < 1) {
+			return res;
+		}
+		long roadId = road.getId();
+		int ind = lowerBound(roadId);
+		for (; ind < roadEdges.length && edgeRoadId[roadEdges[ind]] == roadId; ind++) {
+			int e = roadEdges[ind];
+			int s = edgeRoadStart[e];
+			int en = edgeRoadEnd[e];
+			boolean positive = en > s;
+			if (Math.min(s, en) > j - 1 || Math.max(s, en) < j) {
+				continue;
+			}
+			double partial;
+			double time;
+			if (start) {
+				// from precise point to edgeTo
+				partial = positive ? partialTime(router, pnt, j - 1, j, true) : partialTime(router, pnt, j, j - 1, true);
+				time = positive ? roadTime(router, road, j, en) : roadTime(router, road, j - 1, en);
+				if (partial >= 0 && time >= 0) {
+					res.add(new RoutePiece(edgeTo[e], positive ? j - 1 : j, en, partial + time, e));
+				}
+			} else {
+				// from edgeFrom to precise point
+				time = positive ? roadTime(router, road, s, j - 1) : roadTime(router, road, s, j);
+				partial = positive ? partialTime(router, pnt, j - 1, j, false) : partialTime(router, pnt, j, j - 1, false);
+				if (partial >= 0 && time >= 0) {
+					res.add(new RoutePiece(edgeFrom[e], s, positive ? j : j - 1, partial + time, e));
+				}
+			}
+		}
+		return res;
+	}
+
+	private int lowerBound(long roadId) {
+		int lo = 0;
+		int hi = roadEdges.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (edgeRoadId[roadEdges[mid]] < roadId) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Calculates route between start and end points.
+	 * @return prepared route or null if points are not part of hierarchy or route is not found
+	 */
+	public List<RouteSegmentResult> searchRoute(RoutingContext ctx, RouteSegmentPoint start, RouteSegmentPoint end)
+			throws IOException {
+		VehicleRouter router = ctx.getRouter();
+		List<RoutePiece> startPieces = findPieces(router, start, true);
+		List<RoutePiece> endPieces = findPieces(router, end, false);
+		if (startPieces.isEmpty() || endPieces.isEmpty()) {
+			return null;
+		}
+		double best = Double.POSITIVE_INFINITY;
+		List<RouteSegmentResult> direct = null;
+		// start and end on the same edge
+		for (RoutePiece s : startPieces) {
+			for (RoutePiece e : endPieces) {
+				boolean positive = s.end > s.start;
+				if (s.edge == e.edge && (positive ? e.end > s.start : e.end < s.start)) {
+					double t = roadTime(router, start.getRoad(), s.start, e.end);
+					if (t >= 0 && t < best) {
+						best = t;
+						direct = new ArrayList<RouteSegmentResult>();
+						addResult(direct, start.getRoad(), s.start, e.end, (float) t);
+					}
+				}
+			}
+		}
+
+		// node -> packed (time, parent edge)
+		TIntLongHashMap fwdVisited = new TIntLongHashMap();
+		TIntLongHashMap bwdVisited = new TIntLongHashMap();
+		NodeQueue fwd = new NodeQueue(64);
+		NodeQueue bwd = new NodeQueue(64);
+		for (RoutePiece p : startPieces) {
+			if (!fwdVisited.containsKey(p.node) || time(fwdVisited.get(p.node)) > p.time) {
+				fwdVisited.put(p.node, pack((float) p.time, NO_EDGE));
+				fwd.add(p.node, (float) p.time);
+			}
+		}
+		for (RoutePiece p : endPieces) {
+			if (!bwdVisited.containsKey(p.node) || time(bwdVisited.get(p.node)) > p.time) {
+				bwdVisited.put(p.node, pack((float) p.time, NO_EDGE));
+				bwd.add(p.node, (float) p.time);
+			}
+		}
+		int meet = -1;
+		while (!fwd.isEmpty() || !bwd.isEmpty()) {
+			boolean forward = bwd.isEmpty() || (!fwd.isEmpty() && fwd.peekKey() <= bwd.peekKey());
+			NodeQueue queue = forward ? fwd : bwd;
+			if (queue.peekKey() >= best) {
+				queue.clear();
+				continue;
+			}
+			float key = queue.peekKey();
+			int node = queue.poll();
+			TIntLongHashMap visited = forward ? fwdVisited : bwdVisited;
+			TIntLongHashMap other = forward ? bwdVisited : fwdVisited;
+			if (key > time(visited.get(node))) {
+				continue;
+			}
+			if (other.containsKey(node) && key + time(other.get(node)) < best) {
+				best = key + time(other.get(node));
+				meet = node;
+				direct = null;
+			}
+			int[] first = forward ? upFirst : downFirst;
+			int[] edges = forward ? upEdges : downEdges;
+			for (int i = first[node]; i < first[node + 1]; i++) {
+				int e = edges[i];
+				int next = forward ? edgeTo[e] : edgeFrom[e];
+				float nd = key + edgeWeight[e];
+				if (!visited.containsKey(next) || nd < time(visited.get(next))) {
+					visited.put(next, pack(nd, e));
+					queue.add(next, nd);
+				}
+			}
+		}
+		if (direct != null) {
+			ctx.routingTime += best;
+			return new RouteResultPreparation().prepareResult(ctx, direct, false);
+		}
+		if (meet == -1) {
+			return null;
+		}
+		List<Integer> path = new ArrayList<Integer>();
+		int node = meet;
+		int e;
+		while ((e = edge(fwdVisited.get(node))) != NO_EDGE) {
+			path.add(e);
+			node = edgeFrom[e];
+		}
+		int startNode = node;
+		Collections.reverse(path);
+		node = meet;
+		while ((e = edge(bwdVisited.get(node))) != NO_EDGE) {
+			path.add(e);
+			node = edgeTo[e];
+		}
+		int endNode = node;
+
+		List<RouteSegmentResult> result = new ArrayList<RouteSegmentResult>();
+		RoutePiece sp = findPiece(startPieces, startNode);
+		addResult(result, start.getRoad(), sp.start, sp.end, (float) sp.time);
+		TLongObjectHashMap<RouteDataObject> roads = new TLongObjectHashMap<RouteDataObject>();
+		int[] stack = new int[64];
+		for (int pe : path) {
+			int sz = 0;
+			stack[sz++] = pe;
+			while (sz > 0) {
+				int c = stack[--sz];
+				if (edgeChildA[c] != NO_EDGE) {
+					if (sz + 2 > stack.length) {
+						stack = Arrays.copyOf(stack, stack.length * 2);
+					}
+					stack[sz++] = edgeChildB[c];
+					stack[sz++] = edgeChildA[c];
+				} else {
+					RouteDataObject road = loadRoad(ctx, roads, c);
+					if (road == null) {
+						log.warn("Road " + (edgeRoadId[c] >> 6) + " of contraction hierarchy is not found in maps");
+						return null;
+					}
+					addResult(result, road, edgeRoadStart[c], edgeRoadEnd[c], edgeWeight[c]);
+				}
+			}
+		}
+		RoutePiece ep = findPiece(endPieces, endNode);
+		addResult(result, end.getRoad(), ep.start, ep.end, (float) ep.time);
+		ctx.routingTime += best;
+		return new RouteResultPreparation().prepareResult(ctx, result, false);
+	}
+
+	private static long pack(float time, int edge) {
+		return ((long) Float.floatToIntBits(time) << 32) | (edge & 0xffffffffL);
+	}
+
+	private static float time(long packed) {
+		return Float.intBitsToFloat((int) (packed >>> 32));
+	}
+
+	private static int edge(long packed) {
+		return (int) packed;
+	}
+
+	private RoutePiece findPiece(List<RoutePiece> pieces, int node) {
+		RoutePiece res = null;
+		for (RoutePiece p : pieces) {
+			if (p.node == node && (res == null || p.time < res.time)) {
+				res = p;
+			}
+		}
+		return res;
+	}
+
+	private RouteDataObject loadRoad(RoutingContext ctx, TLongObjectHashMap<RouteDataObject> roads, int e) {
+		long roadId = edgeRoadId[e];
+		RouteDataObject road = roads.get(roadId);
+		if (road == null) {
+			int node = edgeFrom[e];
+			RouteSegment s = ctx.loadRouteSegment(nodeX[node], nodeY[node], 0);
+			while (s != null) {
+				if (s.getRoad().getId() == roadId) {
+					road = s.getRoad();
+					roads.put(roadId, road);
+					break;
+				}
+				s = s.getNext();
+			}
+		}
+		return road;
+	}
+
+	private void addResult(List<RouteSegmentResult> result, RouteDataObject road, int start, int end, float time) {
+		if (start == end) {
+			return;
+		}
+		if (!result.isEmpty()) {
+			RouteSegmentResult last = result.get(result.size() - 1);
+			if (last.getObject().getId() == road.getId() && last.getEndPointIndex() == start
+					&& (last.getEndPointIndex() > last.getStartPointIndex()) == (end > start)) {
+				last.setEndPointIndex(end);
+				last.setRoutingTime(last.getRoutingTime() + time);
+				return;
+			}
+		}
+		RouteSegmentResult res = new RouteSegmentResult(road, start, end);
+		res.setRoutingTime(time);
+		result.add(res);
+	}
+
+	/**
+	 * Binary min heap of graph nodes with float keys, stale entries are skipped by caller
+	 */
+	static class NodeQueue {
+		private int[] nodes;
+		private float[] keys;
+		private int size;
+
+		NodeQueue(int capacity) {
+			nodes = new int[capacity];
+			keys = new float[capacity];
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		int size() {
+			return size;
+		}
+
+		void clear() {
+			size = 0;
+		}
+
+		float peekKey() {
+			return keys[0];
+		}
+
+		void add(int node, float key) {
+			if (size == nodes.length) {
+				nodes = Arrays.copyOf(nodes, size * 2);
+				keys = Arrays.copyOf(keys, size * 2);
+			}
+			int i = size++;
+			while (i > 0) {
+				int p = (i - 1) >> 1;
+				if (keys[p] <= key) {
+					break;
+				}
+				nodes[i] = nodes[p];
+				keys[i] = keys[p];
+				i = p;
+			}
+			nodes[i] = node;
+			keys[i] = key;
+		}
+
+		int poll() {
+			int res = nodes[0];
+			size--;
+			if (size > 0) {
+				int node = nodes[size];
+				float key = keys[size];
+				int i = 0;
+				while (true) {
+					int c = 2 * i + 1;
+					if (c >= size) {
+						break;
+					}
+					if (c + 1 < size && keys[c + 1] < keys[c]) {
+						c++;
+					}
+					if (key <= keys[c]) {
+						break;
+					}
+					nodes[i] = nodes[c];
+					keys[i] = keys[c];
+					i = c;
+				}
+				nodes[i] = node;
+				keys[i] = key;
+			}
+			return res;
+		}
+	}
+}
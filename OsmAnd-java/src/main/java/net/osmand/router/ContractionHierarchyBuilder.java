@@ -0,0 +1,361 @@
+package net.osmand.router;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.ContractionHierarchy.NodeQueue;
+
+import org.apache.commons.logging.Log;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Offline preprocessing of {@link ContractionHierarchy}.
+ * Roads accepted by router are split into base edges at junctions (points with the same 31-coordinates
+ * as in A*), travel time of edge is calculated the same way as A* segment time (speed, priority and obstacles,
+ * without turn time). Nodes are contracted in order of edge difference + contracted neighbours
+ * (lazy updates), shortcut is added when limited witness search doesn't find path that is not longer.
+ */
+public class ContractionHierarchyBuilder {
+
+	protected static final Log log = PlatformUtil.getLog(ContractionHierarchyBuilder.class);
+
+	private static final int WITNESS_SETTLED_LIMIT = 500;
+
+	private final GeneralRouter router;
+	private final TLongObjectHashMap<RouteDataObject> roads = new TLongObjectHashMap<RouteDataObject>();
+
+	// graph
+	private long[] nodeKeys;
+	private TIntArrayList[] outEdges;
+	private TIntArrayList[] inEdges;
+	private int edges;
+	private int[] edgeFrom = new int[1024];
+	private int[] edgeTo = new int[1024];
+	private float[] edgeWeight = new float[1024];
+	private int[] edgeChildA = new int[1024];
+	private int[] edgeChildB = new int[1024];
+	private long[] edgeRoadId = new long[1024];
+	private short[] edgeRoadStart = new short[1024];
+	private short[] edgeRoadEnd = new short[1024];
+
+	// contraction
+	private boolean[] contracted;
+	private int[] deletedNeighbours;
+	private float[] witnessDist;
+	private final TIntArrayList witnessTouched = new TIntArrayList();
+	private final NodeQueue witnessQueue = new NodeQueue(64);
+
+	public ContractionHierarchyBuilder(GeneralRouter router) {
+		this.router = router;
+	}
+
+	public void addRoads(BinaryMapIndexReader reader) throws IOException {
+		addRoads(reader, 0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+	}
+
+	public void addRoads(BinaryMapIndexReader reader, int left31, int top31, int right31, int bottom31)
+			throws IOException {
+		for (RouteRegion reg : reader.getRoutingIndexes()) {
+			SearchRequest<RouteDataObject> req = BinaryMapIndexReader.buildSearchRouteRequest(left31, right31,
+					top31, bottom31, null);
+			List<RouteSubregion> subregions = reader.searchRouteIndexTree(req, reg.getSubregions());
+			for (RouteSubregion sub : subregions) {
+				for (RouteDataObject ro : reader.loadRouteIndexData(sub)) {
+					if (ro != null) {
+						addRoad(ro);
+					}
+				}
+			}
+		}
+	}
+
+	public boolean addRoad(RouteDataObject ro) {
+		if (ro.getPointsLength() < 2 || roads.containsKey(ro.getId()) || !router.acceptLine(ro)) {
+			return false;
+		}
+		roads.put(ro.getId(), ro);
+		return true;
+	}
+
+	public int getRoadsCount() {
+		return roads.size();
+	}
+
+	public ContractionHierarchy build() {
+		long time = System.currentTimeMillis();
+		buildGraph();
+		int baseEdges = edges;
+		long graphTime = System.currentTimeMillis();
+		int[] rank = contract();
+		log.info(String.format("Contraction hierarchy: %d roads, %d nodes, %d edges, %d shortcuts (graph %d ms, contraction %d ms)",
+				roads.size(), nodeKeys.length, baseEdges, edges - baseEdges, graphTime - time,
+				System.currentTimeMillis() - graphTime));
+		int[] nodeX = new int[nodeKeys.length];
+		int[] nodeY = new int[nodeKeys.length];
+		for (int i = 0; i < nodeKeys.length; i++) {
+			nodeX[i] = (int) (nodeKeys[i] >> 31);
+			nodeY[i] = (int) (nodeKeys[i] & Integer.MAX_VALUE);
+		}
+		return new ContractionHierarchy(router.getProfile(), router.getProfileName(), router.getRouterKey(),
+				nodeX, nodeY, rank, Arrays.copyOf(edgeFrom, edges), Arrays.copyOf(edgeTo, edges),
+				Arrays.copyOf(edgeWeight, edges), Arrays.copyOf(edgeChildA, edges), Arrays.copyOf(edgeChildB, edges), Arrays.copyOf(edgeRoadId, edges),
+				Arrays.copyOf(edgeRoadStart, edges), Arrays.copyOf(edgeRoadEnd, edges));
+	}
+
+	private static long pointKey(RouteDataObject ro, int i) {
+		return (((long) ro.getPoint31XTile(i)) << 31) | ro.getPoint31YTile(i);
+	}
+
+	private void buildGraph() {
+		// junctions are points shared by several roads or repeated in one road, road ends are nodes as well
+		TLongArrayList points = new TLongArrayList();
+		for (RouteDataObject ro : roads.valueCollection()) {
+			int len = ro.getPointsLength();
+			for (int i = 0; i < len; i++) {
+				points.add(pointKey(ro, i));
+			}
+			points.add(pointKey(ro, 0));
+			points.add(pointKey(ro, len - 1));
+		}
+		long[] sorted = points.toArray();
+		points = null;
+		Arrays.sort(sorted);
+		TLongArrayList nodes = new TLongArrayList();
+		for (int i = 0; i < sorted.length; ) {
+			int j = i;
+			while (j < sorted.length && sorted[j] == sorted[i]) {
+				j++;
+			}
+			if (j - i > 1) {
+				nodes.add(sorted[i]);
+			}
+			i = j;
+		}
+		nodeKeys = nodes.toArray();
+		outEdges = new TIntArrayList[nodeKeys.length];
+		inEdges = new TIntArrayList[nodeKeys.length];
+		for (int i = 0; i < nodeKeys.length; i++) {
+			outEdges[i] = new TIntArrayList(4);
+			inEdges[i] = new TIntArrayList(4);
+		}
+		for (RouteDataObject ro : roads.valueCollection()) {
+			int oneway = router.isOneWay(ro);
+			int prev = 0;
+			int prevNode = Arrays.binarySearch(nodeKeys, pointKey(ro, 0));
+			double forward = 0;
+			double backward = 0;
+			for (int i = 1; i < ro.getPointsLength(); i++) {
+				if (forward >= 0) {
+					double t = ContractionHierarchy.segmentTime(router, ro, i - 1, i);
+					forward = t < 0 ? -1 : forward + t;
+				}
+				if (backward >= 0) {
+					double t = ContractionHierarchy.segmentTime(router, ro, i, i - 1);
+					backward = t < 0 ? -1 : backward + t;
+				}
+				int node = Arrays.binarySearch(nodeKeys, pointKey(ro, i));
+				if (node >= 0) {
+					if (node != prevNode) {
+						if (oneway >= 0 && forward >= 0) {
+							addEdge(prevNode, node, (float) forward, ContractionHierarchy.NO_EDGE,
+									ContractionHierarchy.NO_EDGE, ro.getId(), prev, i);
+						}
+						if (oneway <= 0 && backward >= 0) {
+							addEdge(node, prevNode, (float) backward, ContractionHierarchy.NO_EDGE,
+									ContractionHierarchy.NO_EDGE, ro.getId(), i, prev);
+						}
+					}
+					prev = i;
+					prevNode = node;
+					forward = 0;
+					backward = 0;
+				}
+			}
+		}
+	}
+
+	private int addEdge(int from, int to, float weight, int childA, int childB, long roadId, int start, int end) {
+		if (edges == edgeFrom.length) {
+			int capacity = edges * 2;
+			edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+			edgeTo = Arrays.copyOf(edgeTo, capacity);
+			edgeWeight = Arrays.copyOf(edgeWeight, capacity);
+			edgeChildA = Arrays.copyOf(edgeChildA, capacity);
+			edgeChildB = Arrays.copyOf(edgeChildB, capacity);
+			edgeRoadId = Arrays.copyOf(edgeRoadId, capacity);
+			edgeRoadStart = Arrays.copyOf(edgeRoadStart, capacity);
+			edgeRoadEnd = Arrays.copyOf(edgeRoadEnd, capacity);
+		}
+		int e = edges++;
+		edgeFrom[e] = from;
+		edgeTo[e] = to;
+		edgeWeight[e] = weight;
+		edgeChildA[e] = childA;
+		edgeChildB[e] = childB;
+		edgeRoadId[e] = roadId;
+		edgeRoadStart[e] = (short) start;
+		edgeRoadEnd[e] = (short) end;
+		outEdges[from].add(e);
+		inEdges[to].add(e);
+		return e;
+	}
+
+	private int[] contract() {
+		int n = nodeKeys.length;
+		contracted = new boolean[n];
+		deletedNeighbours = new int[n];
+		witnessDist = new float[n];
+		Arrays.fill(witnessDist, Float.POSITIVE_INFINITY);
+		int[] rank = new int[n];
+		NodeQueue queue = new NodeQueue(Math.max(n, 16));
+		for (int v = 0; v < n; v++) {
+			queue.add(v, priority(v));
+		}
+		int order = 0;
+		while (!queue.isEmpty()) {
+			int v = queue.poll();
+			if (contracted[v]) {
+				continue;
+			}
+			float p = priority(v);
+			if (!queue.isEmpty() && p > queue.peekKey()) {
+				// lazy update
+				queue.add(v, p);
+				continue;
+			}
+			contractNode(v, true);
+			contracted[v] = true;
+			rank[v] = order++;
+			for (int i = 0; i < outEdges[v].size(); i++) {
+				deletedNeighbours[edgeTo[outEdges[v].get(i)]]++;
+			}
+			for (int i = 0; i < inEdges[v].size(); i++) {
+				deletedNeighbours[edgeFrom[inEdges[v].get(i)]]++;
+			}
+		}
+		return rank;
+	}
+
+	private float priority(int v) {
+		int degree = 0;
+		for (int i = 0; i < outEdges[v].size(); i++) {
+			if (!contracted[edgeTo[outEdges[v].get(i)]]) {
+				degree++;
+			}
+		}
+		for (int i = 0; i < inEdges[v].size(); i++) {
+			if (!contracted[edgeFrom[inEdges[v].get(i)]]) {
+				degree++;
+			}
+		}
+		return contractNode(v, false) - degree + deletedNeighbours[v];
+	}
+
+	/**
+	 * @return number of shortcuts needed to contract node
+	 */
+	private int contractNode(int v, boolean addShortcuts) {
+		int shortcuts = 0;
+		TIntArrayList in = inEdges[v];
+		TIntArrayList out = outEdges[v];
+		for (int i = 0; i < in.size(); i++) {
+			int e1 = in.get(i);
+			int u = edgeFrom[e1];
+			if (contracted[u] || u == v) {
+				continue;
+			}
+			float maxCost = 0;
+			for (int j = 0; j < out.size(); j++) {
+				int e2 = out.get(j);
+				if (!contracted[edgeTo[e2]]) {
+					maxCost = Math.max(maxCost, edgeWeight[e1] + edgeWeight[e2]);
+				}
+			}
+			witnessSearch(u, v, maxCost);
+			for (int j = 0; j < out.size(); j++) {
+				int e2 = out.get(j);
+				int x = edgeTo[e2];
+				if (contracted[x] || x == u || x == v) {
+					continue;
+				}
+				float via = edgeWeight[e1] + edgeWeight[e2];
+				if (witnessDist[x] <= via || !isBestEdge(out, j, via, edgeWeight[e1])) {
+					continue;
+				}
+				shortcuts++;
+				if (addShortcuts) {
+					addEdge(u, x, via, e1, e2, 0, 0, 0);
+				}
+			}
+			resetWitness();
+		}
+		return shortcuts;
+	}
+
+	// parallel edges from contracted node to the same node need only one shortcut
+	private boolean isBestEdge(TIntArrayList out, int j, float via, float inWeight) {
+		int x = edgeTo[out.get(j)];
+		for (int k = 0; k < out.size(); k++) {
+			int e = out.get(k);
+			if (k != j && edgeTo[e] == x) {
+				float w = inWeight + edgeWeight[e];
+				if (w < via || (w == via && k < j)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private void witnessSearch(int source, int ignore, float maxCost) {
+		witnessQueue.clear();
+		witnessDist[source] = 0;
+		witnessTouched.add(source);
+		witnessQueue.add(source, 0);
+		int settled = 0;
+		while (!witnessQueue.isEmpty() && settled < WITNESS_SETTLED_LIMIT) {
+			float key = witnessQueue.peekKey();
+			int node = witnessQueue.poll();
+			if (key > witnessDist[node]) {
+				continue;
+			}
+			if (key > maxCost) {
+				break;
+			}
+			settled++;
+			TIntArrayList out = outEdges[node];
+			for (int i = 0; i < out.size(); i++) {
+				int e = out.get(i);
+				int next = edgeTo[e];
+				if (next == ignore || contracted[next]) {
+					continue;
+				}
+				float nd = key + edgeWeight[e];
+				if (nd < witnessDist[next]) {
+					if (witnessDist[next] == Float.POSITIVE_INFINITY) {
+						witnessTouched.add(next);
+					}
+					witnessDist[next] = nd;
+					witnessQueue.add(next, nd);
+				}
+			}
+		}
+	}
+
+	private void resetWitness() {
+		for (int i = 0; i < witnessTouched.size(); i++) {
+			witnessDist[witnessTouched.get(i)] = Float.POSITIVE_INFINITY;
+		}
+		witnessTouched.clear();
+	}
+}
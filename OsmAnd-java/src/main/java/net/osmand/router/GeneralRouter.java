@@ -11,6 +11,7 @@ import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -19,6 +20,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.set.hash.TLongHashSet;
@@ -65,6 +67,11 @@ public class GeneralRouter implements VehicleRouter {
 	private boolean allowPrivate;
 	private String filename = null;
 	private String profileName = "";
+	// parameters of derived router (empty for base router)
+	private final Map<String, String> params;
+	// identifies effective router: profile, attributes, parameters and rules (used as key for shared caches),
+	// computed on demand and reset when attributes or rules are changed
+	private volatile String routerKey;
 
 	private Map<RouteRegion, Map<Integer, Integer>> regionConvert = new LinkedHashMap<RouteRegion, Map<Integer,Integer>>();
 	
@@ -87,6 +94,10 @@ public class GeneralRouter implements VehicleRouter {
 	private GeneralRouterProfile profile;
 	
 	Map<RouteRegion, Map<IntHolder, Float>>[] evalCache;	
+	// compiled rules: values of road attributes by types combination of region (NaN - not evaluated yet)
+	private Map<RouteRegion, float[][]> compiledRules;
+	private RouteRegion lastCompiledRegion;
+	private float[][] lastCompiledRules;
 	
 	public enum RouteDataObjectAttribute {
 		ROAD_SPEED("speed"),
@@ -131,6 +142,7 @@ public class GeneralRouter implements VehicleRouter {
 	
 	public GeneralRouter(GeneralRouter parent, Map<String, String> params) {
 		this.profile = parent.profile;
+		this.params = new TreeMap<String, String>(params);
 		this.attributes = new LinkedHashMap<String, String>();
 		Iterator<Entry<String, String>> e = parent.attributes.entrySet().iterator();
 		while (e.hasNext()) {
@@ -178,6 +190,7 @@ public class GeneralRouter implements VehicleRouter {
 	
 	public GeneralRouter(GeneralRouterProfile profile, Map<String, String> attributes) {
 		this.profile = profile;
+		this.params = Collections.emptyMap();
 		this.attributes = new LinkedHashMap<String, String>();
 		Iterator<Entry<String, String>> e = attributes.entrySet().iterator();
 		while(e.hasNext()){
@@ -198,6 +211,51 @@ public class GeneralRouter implements VehicleRouter {
 
 	}
 
+	private GeneralRouter(GeneralRouter cp) {
+		this.profile = cp.profile;
+		this.params = cp.params;
+		this.routerKey = cp.routerKey;
+		this.attributes = new LinkedHashMap<String, String>(cp.attributes);
+		// do not copy, keep linked
+		universalRules = cp.universalRules;
+		universalRulesById = cp.universalRulesById;
+		tagRuleMask = cp.tagRuleMask;
+		ruleToValue = cp.ruleToValue;
+		parameters = cp.parameters;
+
+		objectAttributes = new RouteAttributeContext[RouteDataObjectAttribute.values().length];
+		for (int i = 0; i < objectAttributes.length; i++) {
+			RouteAttributeContext original = cp.objectAttributes[i];
+			objectAttributes[i] = new RouteAttributeContext(original,
+					original.paramContext == null ? null : original.paramContext.vars);
+		}
+		shortestRoute = cp.shortestRoute;
+		heightObstacles = cp.heightObstacles;
+		allowPrivate = cp.allowPrivate;
+		filename = cp.filename;
+		profileName = cp.profileName;
+		restrictionsAware = cp.restrictionsAware;
+		sharpTurn = cp.sharpTurn;
+		roundaboutTurn = cp.roundaboutTurn;
+		slightTurn = cp.slightTurn;
+		minSpeed = cp.minSpeed;
+		defaultSpeed = cp.defaultSpeed;
+		maxSpeed = cp.maxSpeed;
+		maxVehicleSpeed = cp.maxVehicleSpeed;
+		if (cp.impassableRoads != null) {
+			impassableRoads = new TLongHashSet(cp.impassableRoads);
+		}
+		initCaches();
+	}
+
+	/**
+	 * Copy of router with the same rules, parameters and impassable roads, but with own evaluation caches.
+	 * Caches are not thread safe, so every thread calculating route should use its own copy.
+	 */
+	public GeneralRouter copyWithOwnCaches() {
+		return new GeneralRouter(this);
+	}
+
 	@SuppressWarnings("unchecked")
 	private void initCaches() {
 		int l = RouteDataObjectAttribute.values().length;
@@ -205,6 +263,9 @@ public class GeneralRouter implements VehicleRouter {
 		for (int i = 0; i < l; i++) {
 			evalCache[i] = new HashMap<>();
 		}
+		compiledRules = new HashMap<RouteRegion, float[][]>();
+		lastCompiledRegion = null;
+		lastCompiledRules = null;
 	}
 
 	public String getFilename() {
@@ -228,6 +289,37 @@ public class GeneralRouter implements VehicleRouter {
 		return profile;
 	}
 
+	/**
+	 * Key of effective router state: routers with the same key evaluate the same speed, access and priority
+	 * of road (impassable roads are not part of key). Key doesn't depend on router instance, so it could be stored
+	 * with data prepared for router (e.g. preprocessed graph) and compared in other process.
+	 */
+	public String getRouterKey() {
+		String key = routerKey;
+		if (key == null) {
+			key = buildRouterKey();
+			routerKey = key;
+		}
+		return key;
+	}
+
+	private String buildRouterKey() {
+		StringBuilder rules = new StringBuilder();
+		for (RouteAttributeContext ctx : objectAttributes) {
+			for (RouteAttributeEvalRule rule : ctx.rules) {
+				rule.appendKey(rules);
+			}
+			rules.append('\n');
+		}
+		// FNV-1a hash of rules, so key stays short
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < rules.length(); i++) {
+			hash ^= rules.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return profile + new TreeMap<String, String>(attributes).toString() + params + "#" + Long.toHexString(hash);
+	}
+
 	public boolean getHeightObstacles() {
 		return heightObstacles;
 	}
@@ -238,6 +330,7 @@ public class GeneralRouter implements VehicleRouter {
 
 	public void addAttribute(String k, String v) {
 		attributes.put(k, v);
+		routerKey = null;
 		if (k.equals("restrictionsAware")) {
 			restrictionsAware = parseSilentBoolean(v, restrictionsAware);
 		} else if (k.equals("sharpTurn") || k.equals("leftTurn")) {
@@ -253,6 +346,10 @@ public class GeneralRouter implements VehicleRouter {
 		} else if (k.equals("maxDefaultSpeed") || k.equals("maxSpeed")) {
 			maxSpeed = parseSilentFloat(v, maxSpeed * 3.6f) / 3.6f;
 		}
+		if (evalCache != null) {
+			// cached speeds depend on attributes
+			initCaches();
+		}
 	}
 	
 	public RouteAttributeContext getObjContext(RouteDataObjectAttribute a) {
@@ -287,17 +384,25 @@ public class GeneralRouter implements VehicleRouter {
 
 	@Override
 	public boolean acceptLine(RouteDataObject way) {
-		Float res = getCache(RouteDataObjectAttribute.ACCESS, way);
-		if (res == null) {
-			res = (float) getObjContext(RouteDataObjectAttribute.ACCESS).evaluateInt(way, 0);
-			putCache(RouteDataObjectAttribute.ACCESS, way, res);
-		}
-		if (impassableRoads != null && impassableRoads.contains(way.id)) {
-			return false;
+		return isAccessible(way) && !isImpassableRoad(way.id);
+	}
+
+	/**
+	 * Access check by routing rules only (without impassable roads)
+	 */
+	public boolean isAccessible(RouteDataObject way) {
+		float res = getCompiledValue(RouteDataObjectAttribute.ACCESS, way);
+		if (Float.isNaN(res)) {
+			res = getObjContext(RouteDataObjectAttribute.ACCESS).evaluateInt(way, 0);
+			putCompiledValue(RouteDataObjectAttribute.ACCESS, way, res);
 		}
 		return res >= 0;
 	}
 
+	public boolean isImpassableRoad(long roadId) {
+		return impassableRoads != null && impassableRoads.contains(roadId);
+	}
+
 	public boolean isAllowPrivate() {
 		return allowPrivate;
 	}
@@ -311,17 +416,32 @@ public class GeneralRouter implements VehicleRouter {
 	
 	public int registerTagValueAttribute(String tag, String value) {
 		String key = tag +"$"+value;
-		if(universalRules.containsKey(key)) {
-			return universalRules.get(key);
+		// rules are shared with derived routers
+		synchronized (universalRules) {
+			if (universalRules.containsKey(key)) {
+				return universalRules.get(key);
+			}
+			int id = universalRules.size();
+			universalRulesById.add(key);
+			universalRules.put(key, id);
+			if (!tagRuleMask.containsKey(tag)) {
+				tagRuleMask.put(tag, new BitSet());
+			}
+			tagRuleMask.get(tag).set(id);
+			return id;
 		}
-		int id = universalRules.size();
-		universalRulesById.add(key);
-		universalRules.put(key, id);
-		if(!tagRuleMask.containsKey(tag)) {
-			tagRuleMask.put(tag, new BitSet());
+	}
+
+	/**
+	 * Registers all route types of region in advance, so shared rules are not modified
+	 * while routes are calculated concurrently (see {@link #copyWithOwnCaches()}).
+	 */
+	public void registerRouteRegionTypes(RouteRegion reg) {
+		for (RouteTypeRule r : reg.routeEncodingRules) {
+			if (r != null) {
+				registerTagValueAttribute(r.getTag(), r.getValue());
+			}
 		}
-		tagRuleMask.get(tag).set(id);
-		return id;
 	}
 	
 	
@@ -475,12 +595,12 @@ public class GeneralRouter implements VehicleRouter {
 	
 	@Override
 	public int isOneWay(RouteDataObject road) {
-		Float res = getCache(RouteDataObjectAttribute.ONEWAY, road);
-		if(res == null) {
-			res = (float) getObjContext(RouteDataObjectAttribute.ONEWAY).evaluateInt(road, 0);
-			putCache(RouteDataObjectAttribute.ONEWAY, road, res);
+		float res = getCompiledValue(RouteDataObjectAttribute.ONEWAY, road);
+		if (Float.isNaN(res)) {
+			res = getObjContext(RouteDataObjectAttribute.ONEWAY).evaluateInt(road, 0);
+			putCompiledValue(RouteDataObjectAttribute.ONEWAY, road, res);
 		}
-		return res.intValue();
+		return (int) res;
 	}
 	
 	@Override
@@ -490,21 +610,21 @@ public class GeneralRouter implements VehicleRouter {
 	
 	@Override
 	public float getPenaltyTransition(RouteDataObject road) {
-		Float vl = getCache(RouteDataObjectAttribute.PENALTY_TRANSITION, road);
-		if (vl == null) {
-			vl = (float) getObjContext(RouteDataObjectAttribute.PENALTY_TRANSITION).evaluateInt(road, 0);
-			putCache(RouteDataObjectAttribute.PENALTY_TRANSITION, road, vl);
+		float vl = getCompiledValue(RouteDataObjectAttribute.PENALTY_TRANSITION, road);
+		if (Float.isNaN(vl)) {
+			vl = getObjContext(RouteDataObjectAttribute.PENALTY_TRANSITION).evaluateInt(road, 0);
+			putCompiledValue(RouteDataObjectAttribute.PENALTY_TRANSITION, road, vl);
 		}
 		return vl;
 	}
 
 	@Override
 	public float defineRoutingSpeed(RouteDataObject road) {
-		Float definedSpd = getCache(RouteDataObjectAttribute.ROAD_SPEED, road);
-		if (definedSpd == null) {
+		float definedSpd = getCompiledValue(RouteDataObjectAttribute.ROAD_SPEED, road);
+		if (Float.isNaN(definedSpd)) {
 			float spd = getObjContext(RouteDataObjectAttribute.ROAD_SPEED).evaluateFloat(road, defaultSpeed);
 			definedSpd = Math.max(Math.min(spd, maxSpeed), minSpeed);
-			putCache(RouteDataObjectAttribute.ROAD_SPEED, road, definedSpd);
+			putCompiledValue(RouteDataObjectAttribute.ROAD_SPEED, road, definedSpd);
 		}
 		return definedSpd;
 	}
@@ -516,43 +636,74 @@ public class GeneralRouter implements VehicleRouter {
 			float spd = getObjContext(RouteDataObjectAttribute.ROAD_SPEED).evaluateFloat(road, defaultSpeed);
 			return Math.max(Math.min(spd, maxVehicleSpeed), minSpeed);
 		}
-		Float sp = getCache(RouteDataObjectAttribute.ROAD_SPEED, road);
-		if (sp == null) {
+		float sp = getCompiledValue(RouteDataObjectAttribute.ROAD_SPEED, road);
+		if (Float.isNaN(sp)) {
 			float spd = getObjContext(RouteDataObjectAttribute.ROAD_SPEED).evaluateFloat(road, defaultSpeed);
 			sp = Math.max(Math.min(spd, maxVehicleSpeed), minSpeed);
-			putCache(RouteDataObjectAttribute.ROAD_SPEED, road, sp);
+			putCompiledValue(RouteDataObjectAttribute.ROAD_SPEED, road, sp);
 		}
 		return sp;
 	}
 	
 	@Override
 	public float defineSpeedPriority(RouteDataObject road) {
-		Float sp = getCache(RouteDataObjectAttribute.ROAD_PRIORITIES, road);
-		if(sp == null) {
+		float sp = getCompiledValue(RouteDataObjectAttribute.ROAD_PRIORITIES, road);
+		if (Float.isNaN(sp)) {
 			sp = getObjContext(RouteDataObjectAttribute.ROAD_PRIORITIES).evaluateFloat(road, 1f);
-			putCache(RouteDataObjectAttribute.ROAD_PRIORITIES, road, sp, false);
+			putCompiledValue(RouteDataObjectAttribute.ROAD_PRIORITIES, road, sp);
 		}
 		return sp;
 	}
 	
 	@Override
 	public float defineDestinationPriority(RouteDataObject road) {
-		Float sp = getCache(RouteDataObjectAttribute.DESTINATION_PRIORITIES, road);
-		if(sp == null) {
+		float sp = getCompiledValue(RouteDataObjectAttribute.DESTINATION_PRIORITIES, road);
+		if (Float.isNaN(sp)) {
 			sp = getObjContext(RouteDataObjectAttribute.DESTINATION_PRIORITIES).evaluateFloat(road, 1f);
-			putCache(RouteDataObjectAttribute.DESTINATION_PRIORITIES, road, sp, false);
+			putCompiledValue(RouteDataObjectAttribute.DESTINATION_PRIORITIES, road, sp);
 		}
 		return sp;
 	}
 
-	private void putCache(RouteDataObjectAttribute attr, RouteDataObject road, Float val) {
-		putCache(attr, road.region, road.types, val, false);
+	private float getCompiledValue(RouteDataObjectAttribute attr, RouteDataObject road) {
+		int ind = USE_CACHE ? road.getTypesCombination() : -1;
+		if (ind < 0) {
+			return Float.NaN;
+		}
+		float[] values = getCompiledRules(road.region)[attr.ordinal()];
+		return values != null && ind < values.length ? values[ind] : Float.NaN;
 	}
-	
-	private void putCache(RouteDataObjectAttribute attr, RouteDataObject road, Float val, boolean extra) {
-		putCache(attr, road.region, road.types, val, extra);
+
+	private void putCompiledValue(RouteDataObjectAttribute attr, RouteDataObject road, float value) {
+		int ind = USE_CACHE ? road.getTypesCombination() : -1;
+		if (ind < 0) {
+			return;
+		}
+		float[][] rules = getCompiledRules(road.region);
+		float[] values = rules[attr.ordinal()];
+		if (values == null || ind >= values.length) {
+			int len = values == null ? 0 : values.length;
+			int newLen = Math.max(Math.max(len * 2, 64), ind + 1);
+			values = values == null ? new float[newLen] : Arrays.copyOf(values, newLen);
+			Arrays.fill(values, len, newLen, Float.NaN);
+			rules[attr.ordinal()] = values;
+		}
+		values[ind] = value;
 	}
-	
+
+	private float[][] getCompiledRules(RouteRegion reg) {
+		if (reg != lastCompiledRegion || lastCompiledRules == null) {
+			float[][] rules = compiledRules.get(reg);
+			if (rules == null) {
+				rules = new float[RouteDataObjectAttribute.values().length][];
+				compiledRules.put(reg, rules);
+			}
+			lastCompiledRegion = reg;
+			lastCompiledRules = rules;
+		}
+		return lastCompiledRules;
+	}
+
 	private void putCache(RouteDataObjectAttribute attr, RouteRegion reg, int[] types, Float val, boolean extra) {
 //		TIMER -= System.nanoTime();
 		Map<RouteRegion, Map<IntHolder, Float>> ch = evalCache[attr.ordinal()];
@@ -597,10 +748,6 @@ public class GeneralRouter implements VehicleRouter {
 		}
 	}
 
-	private Float getCache(RouteDataObjectAttribute attr, RouteDataObject road) {
-		return getCache(attr, road.region, road.types, false);
-	}
-	
 	private Float getCache(RouteDataObjectAttribute attr, RouteRegion reg, int[] types, boolean extra) {
 		Map<RouteRegion, Map<IntHolder, Float>> ch = evalCache[attr.ordinal()];
 //		TIMER -= System.nanoTime();
@@ -824,6 +971,8 @@ public class GeneralRouter implements VehicleRouter {
 			RouteAttributeEvalRule ev = new RouteAttributeEvalRule();
 			ev.registerSelectValue(selectValue, selectType);
 			rules.add(ev);	
+			// conditions of rule are registered right after rule while router is parsed
+			routerKey = null;
 			return ev;
 		}
 		
@@ -959,6 +1108,11 @@ public class GeneralRouter implements VehicleRouter {
 		private String valueType;
 		// numbers		
 		private Number[] cacheValues;
+
+		void appendKey(StringBuilder key) {
+			key.append(" (").append(expressionType).append(' ').append(valueType).append(' ')
+					.append(Arrays.toString(values)).append(')');
+		}
 		
 		public boolean matches(BitSet types, ParameterContext paramContext) {
 			double f1 = calculateExprValue(0, types, paramContext);
@@ -1115,6 +1269,22 @@ public class GeneralRouter implements VehicleRouter {
 			out.println();
 		}
 
+		void appendKey(StringBuilder key) {
+			key.append(selectValueDef).append(' ').append(selectType).append(' ').append(parameters);
+			for (int i = 0; i < tagValueCondDefTag.size(); i++) {
+				key.append(tagValueCondDefNot.get(i) ? " !" : " ").append(tagValueCondDefTag.get(i)).append('=')
+						.append(tagValueCondDefValue.get(i));
+			}
+			for (RouteAttributeExpression e : conditionExpressions) {
+				e.appendKey(key);
+			}
+			if (selectExpression != null) {
+				key.append(" select");
+				selectExpression.appendKey(key);
+			}
+			key.append(';');
+		}
+
 		public void registerAndTagValueCondition(String tag, String value, boolean not) {
 			tagValueCondDefTag.add(tag);
 			tagValueCondDefValue.add(value);
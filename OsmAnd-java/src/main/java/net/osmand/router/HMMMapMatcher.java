@@ -0,0 +1,214 @@
+package net.osmand.router;
+
+import net.osmand.data.LatLon;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.RouteMatrixCalculator.OneToManySearch;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxRouteApproximation;
+import net.osmand.util.MapUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hidden Markov model map matching of gpx track (Newson, Krumm "Hidden Markov Map Matching Through Noise and Sparseness"),
+ * selected with {@link RoutingConfiguration#hmmApproximation}.
+ * Candidates of gps point are road projections within minPointApproximation, emission probability is gaussian
+ * by distance to gps point (hmmGpsSigma), transition probability is exponential (hmmTransitionBeta) by difference between
+ * route distance of candidates (bounded one-to-many search) and straight distance of gps points.
+ * The most probable candidates are decoded by Viterbi algorithm, where candidates couldn't be connected
+ * chain is broken and gap is displayed as straight line.
+ * Result is set to gpx points (routeToTarget, targetInd) in the same way as step by step approximation does.
+ */
+public class HMMMapMatcher {
+
+	private static final int MAX_CANDIDATES = 8;
+	// transition with route longer than straight distance by TRANSITION_BOUND * beta is improbable (e^-20)
+	private static final double TRANSITION_BOUND = 20;
+	private static final double IMPOSSIBLE = Double.NEGATIVE_INFINITY;
+
+	private final RoutePlannerFrontEnd frontEnd;
+
+	public HMMMapMatcher(RoutePlannerFrontEnd frontEnd) {
+		this.frontEnd = frontEnd;
+	}
+
+	@SuppressWarnings("unchecked")
+	public void matchGpxPoints(GpxRouteApproximation gctx, List<GpxPoint> gpxPoints) throws IOException {
+		RoutingContext ctx = gctx.ctx;
+		if (ctx.calculationProgress == null) {
+			ctx.calculationProgress = new RouteCalculationProgress();
+		}
+		double sigma = ctx.config.hmmGpsSigma;
+		for (GpxPoint p : gpxPoints) {
+			p.routeToTarget = null;
+			p.stepBackRoute = null;
+			p.targetInd = -1;
+			p.straightLine = false;
+		}
+		// points closer than 2 sigma to previous one don't improve matching
+		List<GpxPoint> samples = new ArrayList<GpxPoint>();
+		for (GpxPoint p : gpxPoints) {
+			if (samples.isEmpty() || p.ind == gpxPoints.size() - 1
+					|| MapUtils.getDistance(samples.get(samples.size() - 1).loc, p.loc) >= 2 * sigma) {
+				samples.add(p);
+			}
+		}
+		int n = samples.size();
+		RouteSegmentPoint[][] candidates = new RouteSegmentPoint[n][];
+		int[][] back = new int[n][];
+		// routes[t][c] - route to candidate from back[t][c] found by transition
+		List<RouteSegmentResult>[][] routes = new List[n][];
+		double[] prob = null;
+		int chainStart = 0;
+		for (int t = 0; t < n && !ctx.calculationProgress.isCancelled; t++) {
+			GpxPoint sample = samples.get(t);
+			RouteSegmentPoint[] cands = findCandidates(gctx, sample);
+			candidates[t] = cands;
+			back[t] = new int[cands.length];
+			Arrays.fill(back[t], -1);
+			routes[t] = new List[cands.length];
+			if (cands.length == 0) {
+				if (prob != null) {
+					decodeChain(gctx, samples, candidates, back, routes, prob, chainStart, t - 1);
+				}
+				prob = null;
+				chainStart = t + 1;
+				continue;
+			}
+			double[] next = new double[cands.length];
+			for (int c = 0; c < cands.length; c++) {
+				next[c] = emission(sigma, cands[c], sample);
+			}
+			if (prob != null) {
+				boolean connected = transition(gctx, samples.get(t - 1), sample, candidates[t - 1], prob, cands, next,
+						back[t], routes[t]);
+				if (!connected) {
+					decodeChain(gctx, samples, candidates, back, routes, prob, chainStart, t - 1);
+					chainStart = t;
+					for (int c = 0; c < cands.length; c++) {
+						next[c] = emission(sigma, cands[c], sample);
+					}
+				}
+			}
+			prob = next;
+			ctx.calculationProgress.approximatedDistance = (float) sample.cumDist;
+		}
+		if (prob != null && !ctx.calculationProgress.isCancelled) {
+			decodeChain(gctx, samples, candidates, back, routes, prob, chainStart, n - 1);
+		}
+	}
+
+	private RouteSegmentPoint[] findCandidates(GpxRouteApproximation gctx, GpxPoint sample) throws IOException {
+		gctx.routePointsSearched++;
+		RouteSegmentPoint pnt = frontEnd.findRouteSegment(sample.loc.getLatitude(), sample.loc.getLongitude(), gctx.ctx, null);
+		if (pnt == null) {
+			return new RouteSegmentPoint[0];
+		}
+		List<RouteSegmentPoint> res = new ArrayList<RouteSegmentPoint>();
+		for (RouteSegmentPoint p : pnt.others) {
+			if (res.size() < MAX_CANDIDATES
+					&& MapUtils.getDistance(p.getPreciseLatLon(), sample.loc) <= gctx.ctx.config.minPointApproximation) {
+				res.add(p);
+			}
+		}
+		return res.toArray(new RouteSegmentPoint[res.size()]);
+	}
+
+	private static double emission(double sigma, RouteSegmentPoint candidate, GpxPoint sample) {
+		double d = MapUtils.getDistance(candidate.getPreciseLatLon(), sample.loc) / sigma;
+		return -0.5 * d * d;
+	}
+
+	// adds the best transition log probability to next candidates and keeps its route,
+	// returns false if no candidate could be reached
+	private boolean transition(GpxRouteApproximation gctx, GpxPoint prevSample, GpxPoint sample,
+			RouteSegmentPoint[] prevCands, double[] prob, RouteSegmentPoint[] cands, double[] next, int[] back,
+			List<RouteSegmentResult>[] routes) {
+		RoutingConfiguration config = gctx.ctx.config;
+		double beta = config.hmmTransitionBeta;
+		double straight = MapUtils.getDistance(prevSample.loc, sample.loc);
+		OneToManySearch search = new OneToManySearch(gctx.ctx, cands);
+		search.setMaxDistance((float) (straight + 2 * config.minPointApproximation + TRANSITION_BOUND * beta));
+		double[] best = new double[cands.length];
+		Arrays.fill(best, IMPOSSIBLE);
+		float[] times = new float[cands.length];
+		float[] distances = new float[cands.length];
+		for (int p = 0; p < prevCands.length; p++) {
+			if (prob[p] == IMPOSSIBLE) {
+				continue;
+			}
+			Arrays.fill(times, RouteMatrixCalculator.UNREACHABLE);
+			Arrays.fill(distances, RouteMatrixCalculator.UNREACHABLE);
+			search.search(prevCands[p], times, distances);
+			gctx.routeCalculations++;
+			gctx.routeDistCalculations += straight;
+			for (int c = 0; c < cands.length; c++) {
+				if (distances[c] != RouteMatrixCalculator.UNREACHABLE) {
+					double lp = prob[p] - Math.abs(distances[c] - straight) / beta;
+					if (lp > best[c]) {
+						best[c] = lp;
+						back[c] = p;
+						routes[c] = search.getRoute(c);
+					}
+				}
+			}
+		}
+		boolean connected = false;
+		for (int c = 0; c < cands.length; c++) {
+			if (back[c] != -1) {
+				next[c] += best[c];
+				connected = true;
+			} else {
+				next[c] = IMPOSSIBLE;
+			}
+		}
+		if (!connected) {
+			Arrays.fill(back, -1);
+			Arrays.fill(routes, null);
+		}
+		return connected;
+	}
+
+	// finds the most probable candidates of samples [start, end] and sets routes between them kept by transition
+	private void decodeChain(GpxRouteApproximation gctx, List<GpxPoint> samples, RouteSegmentPoint[][] candidates,
+			int[][] back, List<RouteSegmentResult>[][] routes, double[] prob, int start, int end) throws IOException {
+		int c = 0;
+		for (int i = 1; i < prob.length; i++) {
+			if (prob[i] > prob[c]) {
+				c = i;
+			}
+		}
+		int[] path = new int[end - start + 1];
+		for (int t = end; t >= start; t--) {
+			path[t - start] = c;
+			c = back[t][c];
+		}
+		RouteResultPreparation preparation = new RouteResultPreparation();
+		for (int t = start; t < end; t++) {
+			RouteSegmentPoint from = candidates[t][path[t - start]];
+			RouteSegmentPoint to = candidates[t + 1][path[t + 1 - start]];
+			GpxPoint sample = samples.get(t);
+			GpxPoint target = samples.get(t + 1);
+			List<RouteSegmentResult> res = routes[t + 1][path[t + 1 - start]];
+			if (res == null || res.isEmpty()) {
+				continue;
+			}
+			LatLon startPoint = from.getPreciseLatLon();
+			LatLon endPoint = to.getPreciseLatLon();
+			frontEnd.makeStartEndPointsPrecise(res, startPoint, endPoint, null);
+			preparation.prepareResult(gctx.ctx, res, false);
+			sample.routeToTarget = res;
+			sample.targetInd = target.ind;
+			if (gctx.ctx.getVisitor() != null) {
+				gctx.ctx.getVisitor().visitApproximatedSegments(res, sample, target);
+			}
+		}
+		// routes of not selected candidates are not needed anymore
+		for (int t = start; t <= end; t++) {
+			routes[t] = null;
+		}
+	}
+}
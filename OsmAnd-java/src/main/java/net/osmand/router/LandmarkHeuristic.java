@@ -0,0 +1,283 @@
+package net.osmand.router;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+
+import org.apache.commons.logging.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Landmark distance tables (ALT) of one routing profile to improve A* heuristic (see {@link LandmarkHeuristicBuilder}).
+ * Times from every landmark and to every landmark are calculated over road points with the same segment times as A*
+ * (without turn time) and aggregated by grid cells: for every cell and landmark the lower and upper bound of time
+ * from (to) landmark to any point of road segments crossing the cell is kept.
+ * By triangle inequality time(a, b) >= time(L, b) - time(L, a) and time(a, b) >= time(a, L) - time(b, L), so
+ * the bound never exceeds real route time and A* result stays the same, while far less segments are visited
+ * for slow profiles (bicycle, pedestrian) with height obstacles.
+ * Tables are calculated for roads of map files with router state (see {@link GeneralRouter#getRouterKey()}),
+ * so they are used only by contexts with the same router and without other routing files, files are identified
+ * by name, size and modification time (see {@link RoutingConfiguration#landmarkHeuristic}).
+ * Tables are immutable, could be used concurrently.
+ */
+public class LandmarkHeuristic {
+
+	protected static final Log log = PlatformUtil.getLog(LandmarkHeuristic.class);
+
+	private static final int MAGIC = 0x4F414C31; // OAL1
+	private static final int VERSION = 2;
+	public static final String FILE_EXT = ".landmarks";
+
+	// lower and upper bound of time from landmark, lower and upper bound of time to landmark
+	static final int FROM_LOWER = 0;
+	static final int FROM_UPPER = 1;
+	static final int TO_LOWER = 2;
+	static final int TO_UPPER = 3;
+	static final int VALUES = 4;
+
+	final GeneralRouterProfile profile;
+	final String profileName;
+	final String routerKey;
+	final boolean heightObstacles;
+	// map files which roads were used (name, length, last modified)
+	final String[] mapNames;
+	final long[] mapLengths;
+	final long[] mapModified;
+	final int zoom;
+	final int[] landmarkX;
+	final int[] landmarkY;
+	// sorted cell ids and values [cell][landmark][FROM_LOWER..TO_UPPER] (infinity - unknown)
+	final long[] cells;
+	final float[] values;
+
+	LandmarkHeuristic(GeneralRouterProfile profile, String profileName, String routerKey, boolean heightObstacles,
+			String[] mapNames, long[] mapLengths, long[] mapModified, int zoom,
+			int[] landmarkX, int[] landmarkY, long[] cells, float[] values) {
+		this.profile = profile;
+		this.profileName = profileName;
+		this.routerKey = routerKey;
+		this.heightObstacles = heightObstacles;
+		this.mapNames = mapNames;
+		this.mapLengths = mapLengths;
+		this.mapModified = mapModified;
+		this.zoom = zoom;
+		this.landmarkX = landmarkX;
+		this.landmarkY = landmarkY;
+		this.cells = cells;
+		this.values = values;
+	}
+
+	public GeneralRouterProfile getProfile() {
+		return profile;
+	}
+
+	public String getProfileName() {
+		return profileName;
+	}
+
+	public String getRouterKey() {
+		return routerKey;
+	}
+
+	public int getLandmarksCount() {
+		return landmarkX.length;
+	}
+
+	public int getCellsCount() {
+		return cells.length;
+	}
+
+	/**
+	 * Sidecar file of map file for routing profile (e.g. Germany_europe_2.obf -> Germany_europe_2.bicycle.landmarks)
+	 */
+	public static File getSidecarFile(File obf, String profileName) {
+		String name = obf.getName();
+		int i = name.lastIndexOf('.');
+		if (i > 0) {
+			name = name.substring(0, i);
+		}
+		return new File(obf.getParentFile(), name + "." + profileName + FILE_EXT);
+	}
+
+	/**
+	 * Reads tables of map file for routing profile, returns null if there is no sidecar file or it's calculated
+	 * for other version of map file.
+	 */
+	public static LandmarkHeuristic readSidecarFile(File obf, String profileName) throws IOException {
+		File file = getSidecarFile(obf, profileName);
+		if (!file.exists()) {
+			return null;
+		}
+		LandmarkHeuristic landmarks = readFromFile(file);
+		if (!landmarks.isBuiltFor(obf)) {
+			log.warn("Landmarks " + file.getName() + " are calculated for other version of " + obf.getName());
+			return null;
+		}
+		return landmarks;
+	}
+
+	/**
+	 * Tables are calculated without conditional access, direction points and with fixed router state,
+	 * other contexts use only straight line heuristic. Roads of routing files of context should be the same
+	 * as roads of tables: more roads could make routes shorter than bound, while impassable roads only increase
+	 * route time, so they don't break the bound.
+	 */
+	public boolean isApplicable(RoutingContext ctx) {
+		GeneralRouter router = ctx.config.router;
+		if (ctx.calculationMode == RouteCalculationMode.BASE || router.getProfile() != profile
+				|| !equalsName(router.getProfileName(), profileName) || router.getHeightObstacles() != heightObstacles
+				|| ctx.config.routeCalculationTime != 0 || ctx.config.getDirectionPoints() != null
+				|| !router.getRouterKey().equals(routerKey)) {
+			return false;
+		}
+		for (BinaryMapIndexReader reader : ctx.getMaps()) {
+			if (!reader.getRoutingIndexes().isEmpty() && !isBuiltFor(reader.getFile())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	boolean isBuiltFor(File obf) {
+		for (int i = 0; i < mapNames.length; i++) {
+			if (mapNames[i].equals(obf.getName()) && mapLengths[i] == obf.length()
+					&& mapModified[i] == obf.lastModified()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean equalsName(String s1, String s2) {
+		return (s1 == null ? "" : s1).equals(s2 == null ? "" : s2);
+	}
+
+	private int cellIndex(int x31, int y31) {
+		return Arrays.binarySearch(cells, cellId(x31, y31, zoom));
+	}
+
+	static long cellId(int x31, int y31, int zoom) {
+		return ((long) (x31 >>> (31 - zoom)) << zoom) | (y31 >>> (31 - zoom));
+	}
+
+	/**
+	 * @return lower bound of route time (seconds) between 2 points or 0 if points are not covered by tables
+	 */
+	public float lowerBound(int fromX, int fromY, int toX, int toY) {
+		int from = cellIndex(fromX, fromY);
+		int to = cellIndex(toX, toY);
+		if (from < 0 || to < 0) {
+			return 0;
+		}
+		int l = landmarkX.length;
+		int f = from * l * VALUES;
+		int t = to * l * VALUES;
+		float res = 0;
+		for (int i = 0; i < l; i++, f += VALUES, t += VALUES) {
+			// time(L, to) - time(L, from)
+			float fromLandmark = values[t + FROM_LOWER] - values[f + FROM_UPPER];
+			if (fromLandmark > res && fromLandmark != Float.POSITIVE_INFINITY) {
+				res = fromLandmark;
+			}
+			// time(from, L) - time(to, L)
+			float toLandmark = values[f + TO_LOWER] - values[t + TO_UPPER];
+			if (toLandmark > res && toLandmark != Float.POSITIVE_INFINITY) {
+				res = toLandmark;
+			}
+		}
+		return res;
+	}
+
+	public void writeToFile(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new GZIPOutputStream(new FileOutputStream(file))));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(profile.name());
+			out.writeUTF(profileName == null ? "" : profileName);
+			out.writeUTF(routerKey);
+			out.writeBoolean(heightObstacles);
+			out.writeInt(mapNames.length);
+			for (int i = 0; i < mapNames.length; i++) {
+				out.writeUTF(mapNames[i]);
+				out.writeLong(mapLengths[i]);
+				out.writeLong(mapModified[i]);
+			}
+			out.writeInt(zoom);
+			out.writeInt(landmarkX.length);
+			for (int i = 0; i < landmarkX.length; i++) {
+				out.writeInt(landmarkX[i]);
+				out.writeInt(landmarkY[i]);
+			}
+			out.writeInt(cells.length);
+			for (int i = 0; i < cells.length; i++) {
+				out.writeLong(cells[i]);
+			}
+			for (int i = 0; i < values.length; i++) {
+				out.writeFloat(values[i]);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	public static LandmarkHeuristic readFromFile(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(new FileInputStream(file))));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a landmarks file " + file.getName());
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported landmarks version " + version);
+			}
+			GeneralRouterProfile profile = GeneralRouterProfile.valueOf(in.readUTF());
+			String profileName = in.readUTF();
+			String routerKey = in.readUTF();
+			boolean heightObstacles = in.readBoolean();
+			int maps = in.readInt();
+			String[] mapNames = new String[maps];
+			long[] mapLengths = new long[maps];
+			long[] mapModified = new long[maps];
+			for (int i = 0; i < maps; i++) {
+				mapNames[i] = in.readUTF();
+				mapLengths[i] = in.readLong();
+				mapModified[i] = in.readLong();
+			}
+			int zoom = in.readInt();
+			int landmarks = in.readInt();
+			int[] landmarkX = new int[landmarks];
+			int[] landmarkY = new int[landmarks];
+			for (int i = 0; i < landmarks; i++) {
+				landmarkX[i] = in.readInt();
+				landmarkY[i] = in.readInt();
+			}
+			long[] cells = new long[in.readInt()];
+			for (int i = 0; i < cells.length; i++) {
+				cells[i] = in.readLong();
+			}
+			float[] values = new float[cells.length * landmarks * VALUES];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = in.readFloat();
+			}
+			return new LandmarkHeuristic(profile, profileName, routerKey, heightObstacles, mapNames, mapLengths, mapModified,
+					zoom, landmarkX, landmarkY, cells, values);
+		} finally {
+			in.close();
+		}
+	}
+}
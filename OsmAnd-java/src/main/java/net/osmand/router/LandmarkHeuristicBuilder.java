@@ -0,0 +1,422 @@
+package net.osmand.router;
+
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.ContractionHierarchy.NodeQueue;
+
+import org.apache.commons.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Offline preprocessing of {@link LandmarkHeuristic}.
+ * Graph nodes are all road points (points with the same 31-coordinates are the same node as in A*), edges are road
+ * segments with A* segment time. Landmarks are selected one by one as the farthest node (sum of times from and to
+ * already selected landmarks), so they are spread at the region border. For every landmark Dijkstra is run
+ * from landmark (forward) and to landmark (backward) and times of segment ends are aggregated into cells of segment.
+ */
+public class LandmarkHeuristicBuilder {
+
+	protected static final Log log = PlatformUtil.getLog(LandmarkHeuristicBuilder.class);
+
+	public static final int DEFAULT_LANDMARKS = 16;
+	// ~2.4 km cells
+	public static final int DEFAULT_ZOOM = 14;
+
+	private final GeneralRouter router;
+	private final TLongObjectHashMap<RouteDataObject> roads = new TLongObjectHashMap<RouteDataObject>();
+	// map files of added roads, tables are used only with the same files
+	private final List<File> mapFiles = new ArrayList<File>();
+	private int landmarks = DEFAULT_LANDMARKS;
+	private int zoom = DEFAULT_ZOOM;
+
+	// graph (nodes are sorted point keys, adjacency in compressed arrays)
+	private long[] nodeKeys;
+	private int[] outFirst;
+	private int[] outTo;
+	private float[] outWeight;
+	private int[] inFirst;
+	private int[] inFrom;
+	private float[] inWeight;
+	// segments (time < 0 - segment is not passable in direction)
+	private int[] segA;
+	private int[] segB;
+	private float[] segAB;
+	private float[] segBA;
+
+	public LandmarkHeuristicBuilder(GeneralRouter router) {
+		this.router = router;
+	}
+
+	public void setLandmarksCount(int landmarks) {
+		this.landmarks = landmarks;
+	}
+
+	public void setZoom(int zoom) {
+		this.zoom = zoom;
+	}
+
+	public void addRoads(BinaryMapIndexReader reader) throws IOException {
+		addRoads(reader, 0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+	}
+
+	public void addRoads(BinaryMapIndexReader reader, int left31, int top31, int right31, int bottom31)
+			throws IOException {
+		if (!mapFiles.contains(reader.getFile())) {
+			mapFiles.add(reader.getFile());
+		}
+		for (RouteRegion reg : reader.getRoutingIndexes()) {
+			SearchRequest<RouteDataObject> req = BinaryMapIndexReader.buildSearchRouteRequest(left31, right31,
+					top31, bottom31, null);
+			List<RouteSubregion> subregions = reader.searchRouteIndexTree(req, reg.getSubregions());
+			for (RouteSubregion sub : subregions) {
+				for (RouteDataObject ro : reader.loadRouteIndexData(sub)) {
+					if (ro != null) {
+						addRoad(ro);
+					}
+				}
+			}
+		}
+	}
+
+	public boolean addRoad(RouteDataObject ro) {
+		if (ro.getPointsLength() < 2 || roads.containsKey(ro.getId()) || !router.acceptLine(ro)) {
+			return false;
+		}
+		roads.put(ro.getId(), ro);
+		return true;
+	}
+
+	public int getRoadsCount() {
+		return roads.size();
+	}
+
+	public LandmarkHeuristic build() {
+		long time = System.currentTimeMillis();
+		buildGraph();
+		int n = nodeKeys.length;
+		long[] cells = buildCells();
+		int l = Math.min(landmarks, n);
+		float[] values = new float[cells.length * l * LandmarkHeuristic.VALUES];
+		for (int i = 0; i < values.length; i += LandmarkHeuristic.VALUES) {
+			values[i + LandmarkHeuristic.FROM_LOWER] = Float.POSITIVE_INFINITY;
+			values[i + LandmarkHeuristic.FROM_UPPER] = Float.NEGATIVE_INFINITY;
+			values[i + LandmarkHeuristic.TO_LOWER] = Float.POSITIVE_INFINITY;
+			values[i + LandmarkHeuristic.TO_UPPER] = Float.NEGATIVE_INFINITY;
+		}
+		int[] landmarkX = new int[l];
+		int[] landmarkY = new int[l];
+		double[] from = new double[n];
+		double[] to = new double[n];
+		// sum of times from and to the closest landmark (infinity - not connected with the first landmark)
+		double[] farthest = new double[n];
+		int landmark = selectStartNode();
+		if (landmark >= 0) {
+			dijkstra(landmark, true, from);
+			dijkstra(landmark, false, to);
+			landmark = farthestNode(from, to, null);
+		}
+		Arrays.fill(farthest, Double.POSITIVE_INFINITY);
+		int k = 0;
+		for (; k < l && landmark >= 0; k++) {
+			landmarkX[k] = (int) (nodeKeys[landmark] >> 31);
+			landmarkY[k] = (int) (nodeKeys[landmark] & Integer.MAX_VALUE);
+			dijkstra(landmark, true, from);
+			dijkstra(landmark, false, to);
+			aggregate(cells, values, k, l, from, to);
+			landmark = farthestNode(from, to, farthest);
+		}
+		if (k < l) {
+			// small graph without enough distinct landmarks
+			float[] selected = new float[cells.length * k * LandmarkHeuristic.VALUES];
+			for (int c = 0; c < cells.length; c++) {
+				System.arraycopy(values, c * l * LandmarkHeuristic.VALUES, selected, c * k * LandmarkHeuristic.VALUES,
+						k * LandmarkHeuristic.VALUES);
+			}
+			values = selected;
+			landmarkX = Arrays.copyOf(landmarkX, k);
+			landmarkY = Arrays.copyOf(landmarkY, k);
+			l = k;
+		}
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == Float.NEGATIVE_INFINITY) {
+				// no passable segment in cell
+				values[i] = Float.POSITIVE_INFINITY;
+			}
+		}
+		log.info(String.format("Landmarks: %d roads, %d nodes, %d segments, %d landmarks, %d cells (%d ms)",
+				roads.size(), n, segA.length, l, cells.length, System.currentTimeMillis() - time));
+		String[] mapNames = new String[mapFiles.size()];
+		long[] mapLengths = new long[mapFiles.size()];
+		long[] mapModified = new long[mapFiles.size()];
+		for (int i = 0; i < mapNames.length; i++) {
+			File f = mapFiles.get(i);
+			mapNames[i] = f.getName();
+			mapLengths[i] = f.length();
+			mapModified[i] = f.lastModified();
+		}
+		return new LandmarkHeuristic(router.getProfile(), router.getProfileName(), router.getRouterKey(),
+				router.getHeightObstacles(), mapNames, mapLengths, mapModified, zoom, landmarkX, landmarkY, cells, values);
+	}
+
+	private static long pointKey(RouteDataObject ro, int i) {
+		return (((long) ro.getPoint31XTile(i)) << 31) | ro.getPoint31YTile(i);
+	}
+
+	private void buildGraph() {
+		TLongArrayList points = new TLongArrayList();
+		for (RouteDataObject ro : roads.valueCollection()) {
+			for (int i = 0; i < ro.getPointsLength(); i++) {
+				points.add(pointKey(ro, i));
+			}
+		}
+		points.sort();
+		TLongArrayList nodes = new TLongArrayList();
+		for (int i = 0; i < points.size(); i++) {
+			if (i == 0 || points.get(i) != points.get(i - 1)) {
+				nodes.add(points.get(i));
+			}
+		}
+		points = null;
+		nodeKeys = nodes.toArray();
+		int segments = 0;
+		for (RouteDataObject ro : roads.valueCollection()) {
+			segments += ro.getPointsLength() - 1;
+		}
+		segA = new int[segments];
+		segB = new int[segments];
+		segAB = new float[segments];
+		segBA = new float[segments];
+		int s = 0;
+		for (RouteDataObject ro : roads.valueCollection()) {
+			int oneway = router.isOneWay(ro);
+			int prevNode = Arrays.binarySearch(nodeKeys, pointKey(ro, 0));
+			for (int i = 1; i < ro.getPointsLength(); i++) {
+				int node = Arrays.binarySearch(nodeKeys, pointKey(ro, i));
+				if (node != prevNode) {
+					segA[s] = prevNode;
+					segB[s] = node;
+					segAB[s] = oneway >= 0 ? (float) ContractionHierarchy.segmentTime(router, ro, i - 1, i) : -1;
+					segBA[s] = oneway <= 0 ? (float) ContractionHierarchy.segmentTime(router, ro, i, i - 1) : -1;
+					s++;
+				}
+				prevNode = node;
+			}
+		}
+		segA = Arrays.copyOf(segA, s);
+		segB = Arrays.copyOf(segB, s);
+		segAB = Arrays.copyOf(segAB, s);
+		segBA = Arrays.copyOf(segBA, s);
+		int n = nodeKeys.length;
+		outFirst = new int[n + 1];
+		inFirst = new int[n + 1];
+		for (s = 0; s < segA.length; s++) {
+			if (segAB[s] >= 0) {
+				outFirst[segA[s] + 1]++;
+				inFirst[segB[s] + 1]++;
+			}
+			if (segBA[s] >= 0) {
+				outFirst[segB[s] + 1]++;
+				inFirst[segA[s] + 1]++;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			outFirst[i + 1] += outFirst[i];
+			inFirst[i + 1] += inFirst[i];
+		}
+		outTo = new int[outFirst[n]];
+		outWeight = new float[outFirst[n]];
+		inFrom = new int[inFirst[n]];
+		inWeight = new float[inFirst[n]];
+		int[] outPos = Arrays.copyOf(outFirst, n);
+		int[] inPos = Arrays.copyOf(inFirst, n);
+		for (s = 0; s < segA.length; s++) {
+			if (segAB[s] >= 0) {
+				addEdge(segA[s], segB[s], segAB[s], outPos, inPos);
+			}
+			if (segBA[s] >= 0) {
+				addEdge(segB[s], segA[s], segBA[s], outPos, inPos);
+			}
+		}
+	}
+
+	private void addEdge(int from, int to, float weight, int[] outPos, int[] inPos) {
+		int o = outPos[from]++;
+		outTo[o] = to;
+		outWeight[o] = weight;
+		int i = inPos[to]++;
+		inFrom[i] = from;
+		inWeight[i] = weight;
+	}
+
+	private long[] buildCells() {
+		TLongArrayList list = new TLongArrayList();
+		for (int s = 0; s < segA.length; s++) {
+			addCells(s, list, null, null, 0, 0, null, null);
+		}
+		list.sort();
+		TLongArrayList cells = new TLongArrayList();
+		for (int i = 0; i < list.size(); i++) {
+			if (i == 0 || list.get(i) != list.get(i - 1)) {
+				cells.add(list.get(i));
+			}
+		}
+		return cells.toArray();
+	}
+
+	// cells intersecting bbox of segment, bounds of any point of segment are added to cells if cells != null
+	private void addCells(int s, TLongArrayList list, long[] cells, float[] values, int k, int l, double[] from,
+			double[] to) {
+		int ax = (int) (nodeKeys[segA[s]] >> 31);
+		int ay = (int) (nodeKeys[segA[s]] & Integer.MAX_VALUE);
+		int bx = (int) (nodeKeys[segB[s]] >> 31);
+		int by = (int) (nodeKeys[segB[s]] & Integer.MAX_VALUE);
+		int shift = 31 - zoom;
+		int left = Math.min(ax, bx) >>> shift;
+		int right = Math.max(ax, bx) >>> shift;
+		int top = Math.min(ay, by) >>> shift;
+		int bottom = Math.max(ay, by) >>> shift;
+		double fromLower = 0;
+		double fromUpper = 0;
+		double toLower = 0;
+		double toUpper = 0;
+		boolean passable = segAB[s] >= 0 || segBA[s] >= 0;
+		if (cells != null) {
+			int a = segA[s];
+			int b = segB[s];
+			// point of segment is reached through one of segment ends
+			fromLower = Math.min(from[a], from[b]);
+			toLower = Math.min(to[a], to[b]);
+			fromUpper = Double.POSITIVE_INFINITY;
+			toUpper = Double.POSITIVE_INFINITY;
+			if (segAB[s] >= 0) {
+				fromUpper = Math.min(fromUpper, from[a] + segAB[s]);
+				toUpper = Math.min(toUpper, to[b] + segAB[s]);
+			}
+			if (segBA[s] >= 0) {
+				fromUpper = Math.min(fromUpper, from[b] + segBA[s]);
+				toUpper = Math.min(toUpper, to[a] + segBA[s]);
+			}
+		}
+		for (int x = left; x <= right; x++) {
+			for (int y = top; y <= bottom; y++) {
+				long cell = ((long) x << zoom) | y;
+				if (cells == null) {
+					list.add(cell);
+					continue;
+				}
+				int ind = (Arrays.binarySearch(cells, cell) * l + k) * LandmarkHeuristic.VALUES;
+				values[ind + LandmarkHeuristic.FROM_LOWER] = Math.min(values[ind + LandmarkHeuristic.FROM_LOWER],
+						roundDown(fromLower));
+				values[ind + LandmarkHeuristic.TO_LOWER] = Math.min(values[ind + LandmarkHeuristic.TO_LOWER],
+						roundDown(toLower));
+				if (passable) {
+					values[ind + LandmarkHeuristic.FROM_UPPER] = Math.max(values[ind + LandmarkHeuristic.FROM_UPPER],
+							roundUp(fromUpper));
+					values[ind + LandmarkHeuristic.TO_UPPER] = Math.max(values[ind + LandmarkHeuristic.TO_UPPER],
+							roundUp(toUpper));
+				}
+			}
+		}
+	}
+
+	private void aggregate(long[] cells, float[] values, int k, int l, double[] from, double[] to) {
+		for (int s = 0; s < segA.length; s++) {
+			addCells(s, null, cells, values, k, l, from, to);
+		}
+	}
+
+	private static float roundDown(double v) {
+		float f = (float) v;
+		return f > v ? Math.nextAfter(f, Double.NEGATIVE_INFINITY) : f;
+	}
+
+	private static float roundUp(double v) {
+		float f = (float) v;
+		return f < v ? Math.nextAfter(f, Double.POSITIVE_INFINITY) : f;
+	}
+
+	// node closest to the center of all nodes
+	private int selectStartNode() {
+		if (nodeKeys.length == 0) {
+			return -1;
+		}
+		double cx = 0;
+		double cy = 0;
+		for (long key : nodeKeys) {
+			cx += (key >> 31);
+			cy += (key & Integer.MAX_VALUE);
+		}
+		cx /= nodeKeys.length;
+		cy /= nodeKeys.length;
+		int best = 0;
+		double bestDist = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < nodeKeys.length; i++) {
+			double dx = (nodeKeys[i] >> 31) - cx;
+			double dy = (nodeKeys[i] & Integer.MAX_VALUE) - cy;
+			if (dx * dx + dy * dy < bestDist) {
+				bestDist = dx * dx + dy * dy;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Updates distance to the closest landmark and returns the farthest node connected in both directions
+	 */
+	private int farthestNode(double[] from, double[] to, double[] farthest) {
+		int best = -1;
+		double bestDist = 0;
+		for (int i = 0; i < from.length; i++) {
+			double d = from[i] + to[i];
+			if (farthest != null) {
+				d = Math.min(d, farthest[i]);
+				farthest[i] = d;
+			}
+			if (d != Double.POSITIVE_INFINITY && d > bestDist) {
+				bestDist = d;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	// label correcting Dijkstra (queue keys are float), so times are exact
+	private void dijkstra(int source, boolean forward, double[] dist) {
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		int[] first = forward ? outFirst : inFirst;
+		int[] next = forward ? outTo : inFrom;
+		float[] weight = forward ? outWeight : inWeight;
+		NodeQueue queue = new NodeQueue(1024);
+		dist[source] = 0;
+		queue.add(source, 0);
+		while (!queue.isEmpty()) {
+			float key = queue.peekKey();
+			int node = queue.poll();
+			if (key > (float) dist[node]) {
+				continue;
+			}
+			double d = dist[node];
+			for (int e = first[node]; e < first[node + 1]; e++) {
+				double nd = d + weight[e];
+				int v = next[e];
+				if (nd < dist[v]) {
+					dist[v] = nd;
+					queue.add(v, (float) nd);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,374 @@
+package net.osmand.router;
+
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Compact off-heap copy of road objects of routing tile which was unloaded because of memory limit
+ * (see {@link RoutingConfiguration#compactTileStore}).
+ * Roads are stored column by column (ids, coordinates, types, restrictions, point types, names) in one direct buffer,
+ * numbers are written as variable length integers, ids and coordinates are delta encoded.
+ * Packed tile takes ~10 times less than estimated size of loaded objects and it is unpacked without reading and
+ * decoding map file again.
+ */
+public class PackedRouteTile {
+
+	private static final int COLUMNS = 6;
+	private static final int IDS = 0;
+	private static final int POINTS = 1;
+	private static final int TYPES = 2;
+	private static final int RESTRICTIONS = 3;
+	private static final int POINT_TYPES = 4;
+	private static final int NAMES = 5;
+	// buffer, column offsets and references
+	private static final int OVERHEAD = 64;
+
+	private final RouteRegion region;
+	private final ByteBuffer data;
+	private final int[] columnStart = new int[COLUMNS];
+	private final int count;
+
+	private PackedRouteTile(RouteRegion region, ByteBuffer data, int count) {
+		this.region = region;
+		this.data = data;
+		this.count = count;
+	}
+
+	public static PackedRouteTile pack(RouteRegion region, List<RouteDataObject> objects) {
+		Column[] columns = new Column[COLUMNS];
+		for (int i = 0; i < COLUMNS; i++) {
+			columns[i] = new Column();
+		}
+		long prevId = 0;
+		for (RouteDataObject o : objects) {
+			columns[IDS].writeSignedLong(o.id - prevId);
+			prevId = o.id;
+
+			Column c = columns[POINTS];
+			int len = o.pointsX.length;
+			c.writeInt(len);
+			int px = 0;
+			int py = 0;
+			for (int i = 0; i < len; i++) {
+				c.writeSignedInt(o.pointsX[i] - px);
+				c.writeSignedInt(o.pointsY[i] - py);
+				px = o.pointsX[i];
+				py = o.pointsY[i];
+			}
+
+			columns[TYPES].writeInts(o.types);
+
+			c = columns[RESTRICTIONS];
+			c.writeLongs(o.restrictions);
+			c.writeLongs(o.restrictionsVia);
+
+			c = columns[POINT_TYPES];
+			c.writeIntArrays(o.pointTypes);
+			c.writeIntArrays(o.pointNameTypes);
+			if (o.pointNames == null) {
+				c.writeInt(0);
+			} else {
+				c.writeInt(o.pointNames.length + 1);
+				for (String[] names : o.pointNames) {
+					if (names == null) {
+						c.writeInt(0);
+					} else {
+						c.writeInt(names.length + 1);
+						for (String name : names) {
+							c.writeString(name);
+						}
+					}
+				}
+			}
+
+			c = columns[NAMES];
+			c.writeInts(o.nameIds);
+			if (o.names == null) {
+				c.writeInt(0);
+			} else {
+				c.writeInt(o.names.size() + 1);
+				TIntObjectIterator<String> it = o.names.iterator();
+				while (it.hasNext()) {
+					it.advance();
+					c.writeInt(it.key());
+					c.writeString(it.value());
+				}
+			}
+		}
+		int size = 0;
+		for (Column c : columns) {
+			size += c.size;
+		}
+		ByteBuffer data = ByteBuffer.allocateDirect(size);
+		PackedRouteTile tile = new PackedRouteTile(region, data, objects.size());
+		for (int i = 0; i < COLUMNS; i++) {
+			tile.columnStart[i] = data.position();
+			data.put(columns[i].bytes, 0, columns[i].size);
+		}
+		return tile;
+	}
+
+	public RouteDataObject[] unpack() {
+		ColumnReader[] columns = new ColumnReader[COLUMNS];
+		for (int i = 0; i < COLUMNS; i++) {
+			columns[i] = new ColumnReader(data, columnStart[i]);
+		}
+		RouteDataObject[] res = new RouteDataObject[count];
+		long id = 0;
+		for (int k = 0; k < count; k++) {
+			RouteDataObject o = new RouteDataObject(region);
+			id += columns[IDS].readSignedLong();
+			o.id = id;
+
+			ColumnReader c = columns[POINTS];
+			int len = c.readInt();
+			o.pointsX = new int[len];
+			o.pointsY = new int[len];
+			int px = 0;
+			int py = 0;
+			for (int i = 0; i < len; i++) {
+				px += c.readSignedInt();
+				py += c.readSignedInt();
+				o.pointsX[i] = px;
+				o.pointsY[i] = py;
+			}
+
+			o.types = columns[TYPES].readInts();
+
+			c = columns[RESTRICTIONS];
+			o.restrictions = c.readLongs();
+			o.restrictionsVia = c.readLongs();
+
+			c = columns[POINT_TYPES];
+			o.pointTypes = c.readIntArrays();
+			o.pointNameTypes = c.readIntArrays();
+			int pnames = c.readInt() - 1;
+			if (pnames >= 0) {
+				o.pointNames = new String[pnames][];
+				for (int i = 0; i < pnames; i++) {
+					int l = c.readInt() - 1;
+					if (l >= 0) {
+						o.pointNames[i] = new String[l];
+						for (int j = 0; j < l; j++) {
+							o.pointNames[i][j] = c.readString();
+						}
+					}
+				}
+			}
+
+			c = columns[NAMES];
+			o.nameIds = c.readInts();
+			int names = c.readInt() - 1;
+			if (names >= 0) {
+				o.names = new TIntObjectHashMap<String>();
+				for (int i = 0; i < names; i++) {
+					int key = c.readInt();
+					o.names.put(key, c.readString());
+				}
+			}
+			res[k] = o;
+		}
+		return res;
+	}
+
+	public int getRoadsCount() {
+		return count;
+	}
+
+	public int getEstimatedSize() {
+		return data.capacity() + OVERHEAD;
+	}
+
+	private static class Column {
+		private byte[] bytes = new byte[256];
+		private int size;
+
+		private void ensure(int add) {
+			if (size + add > bytes.length) {
+				byte[] n = new byte[Math.max(bytes.length * 2, size + add)];
+				System.arraycopy(bytes, 0, n, 0, size);
+				bytes = n;
+			}
+		}
+
+		// unsigned variable length int (as in protobuf)
+		void writeInt(int v) {
+			ensure(5);
+			while ((v & ~0x7F) != 0) {
+				bytes[size++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			bytes[size++] = (byte) v;
+		}
+
+		void writeLong(long v) {
+			ensure(10);
+			while ((v & ~0x7FL) != 0) {
+				bytes[size++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			bytes[size++] = (byte) v;
+		}
+
+		void writeSignedInt(int v) {
+			writeInt((v << 1) ^ (v >> 31));
+		}
+
+		void writeSignedLong(long v) {
+			writeLong((v << 1) ^ (v >> 63));
+		}
+
+		// null arrays are written as 0 length, others as length + 1
+		void writeInts(int[] a) {
+			if (a == null) {
+				writeInt(0);
+			} else {
+				writeInt(a.length + 1);
+				for (int v : a) {
+					writeInt(v);
+				}
+			}
+		}
+
+		void writeIntArrays(int[][] a) {
+			if (a == null) {
+				writeInt(0);
+			} else {
+				writeInt(a.length + 1);
+				for (int[] v : a) {
+					writeInts(v);
+				}
+			}
+		}
+
+		void writeLongs(long[] a) {
+			if (a == null) {
+				writeInt(0);
+			} else {
+				writeInt(a.length + 1);
+				for (long v : a) {
+					writeSignedLong(v);
+				}
+			}
+		}
+
+		void writeString(String s) {
+			if (s == null) {
+				writeInt(0);
+				return;
+			}
+			byte[] b;
+			try {
+				b = s.getBytes("UTF-8");
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+			writeInt(b.length + 1);
+			ensure(b.length);
+			System.arraycopy(b, 0, bytes, size, b.length);
+			size += b.length;
+		}
+	}
+
+	private static class ColumnReader {
+		private final ByteBuffer data;
+		private int pos;
+
+		ColumnReader(ByteBuffer data, int pos) {
+			this.data = data;
+			this.pos = pos;
+		}
+
+		int readInt() {
+			int v = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = data.get(pos++);
+				v |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return v;
+		}
+
+		long readLong() {
+			long v = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = data.get(pos++);
+				v |= ((long) (b & 0x7F)) << shift;
+				shift += 7;
+			} while (b < 0);
+			return v;
+		}
+
+		int readSignedInt() {
+			int v = readInt();
+			return (v >>> 1) ^ -(v & 1);
+		}
+
+		long readSignedLong() {
+			long v = readLong();
+			return (v >>> 1) ^ -(v & 1);
+		}
+
+		int[] readInts() {
+			int len = readInt() - 1;
+			if (len < 0) {
+				return null;
+			}
+			int[] a = new int[len];
+			for (int i = 0; i < len; i++) {
+				a[i] = readInt();
+			}
+			return a;
+		}
+
+		int[][] readIntArrays() {
+			int len = readInt() - 1;
+			if (len < 0) {
+				return null;
+			}
+			int[][] a = new int[len][];
+			for (int i = 0; i < len; i++) {
+				a[i] = readInts();
+			}
+			return a;
+		}
+
+		long[] readLongs() {
+			int len = readInt() - 1;
+			if (len < 0) {
+				return null;
+			}
+			long[] a = new long[len];
+			for (int i = 0; i < len; i++) {
+				a[i] = readSignedLong();
+			}
+			return a;
+		}
+
+		String readString() {
+			int len = readInt() - 1;
+			if (len < 0) {
+				return null;
+			}
+			byte[] b = new byte[len];
+			for (int i = 0; i < len; i++) {
+				b[i] = data.get(pos++);
+			}
+			try {
+				return new String(b, "UTF-8");
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package net.osmand.router;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.BinaryRoutePlanner.FinalRouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reverse search tree of calculated route kept in compact form (segment id, time to target, parent, point)
+ * without road objects. Tree consists of segments visited by reverse search and of segments of found route,
+ * so it covers whole route. Route recalculation to the same target (e.g. when driver deviates from route)
+ * searches only forward from new position until it meets the tree, segments of the tree are restored
+ * with their chain to target from loaded tiles when they are met (see {@link BinaryRoutePlanner}).
+ * Tree is kept in {@link RoutingContext#reverseSearchTree} if {@link RoutingConfiguration#reverseSearchTreeMaxSegments}
+ * is set, it is used while it is not expired ({@link RoutingConfiguration#reverseSearchTreeExpiration}).
+ */
+public class ReverseSearchTree {
+
+	// segment id (see BinaryRoutePlanner.calculateRoutePointId), time to target, parent index and point of segment start
+	// (24 bytes per segment)
+	public static final int SEGMENT_SIZE = 24;
+	private static final int NO_PARENT = -1;
+
+	private final String routerKey;
+	private final long[] impassableRoads;
+	private final RouteCalculationMode calculationMode;
+	private final long targetRoadId;
+	private final int targetX;
+	private final int targetY;
+	private final long created;
+
+	// sorted segment ids
+	final long[] segments;
+	final float[] times;
+	final int[] parents;
+	final int[] pointsX;
+	final int[] pointsY;
+
+	private ReverseSearchTree(RoutingContext ctx, RouteSegmentPoint end, int size) {
+		this.routerKey = ctx.config.router.getRouterKey();
+		this.impassableRoads = sortedImpassableRoads(ctx);
+		this.calculationMode = ctx.calculationMode;
+		this.targetRoadId = end.getRoad().getId();
+		this.targetX = end.preciseX;
+		this.targetY = end.preciseY;
+		this.created = System.currentTimeMillis();
+		this.segments = new long[size];
+		this.times = new float[size];
+		this.parents = new int[size];
+		this.pointsX = new int[size];
+		this.pointsY = new int[size];
+	}
+
+	public int getSegmentsCount() {
+		return segments.length;
+	}
+
+	public long getEstimatedSize() {
+		return (long) segments.length * SEGMENT_SIZE;
+	}
+
+	public long getCreationTime() {
+		return created;
+	}
+
+	/**
+	 * Tree is used for the same target, router (profile and parameters), avoided roads and calculation mode
+	 * till it is expired. Route to the same target via other intermediate points still uses tree for the last leg.
+	 */
+	public boolean isApplicable(RoutingContext ctx, RouteSegmentPoint end) {
+		return ctx.nativeLib == null && ctx.planRouteIn2Directions() && ctx.calculationMode == calculationMode
+				&& System.currentTimeMillis() - created <= ctx.config.reverseSearchTreeExpiration
+				&& end.getRoad().getId() == targetRoadId && end.preciseX == targetX && end.preciseY == targetY
+				&& ctx.config.router.getRouterKey().equals(routerKey)
+				&& Arrays.equals(sortedImpassableRoads(ctx), impassableRoads);
+	}
+
+	private static long[] sortedImpassableRoads(RoutingContext ctx) {
+		long[] ids = ctx.config.router.getImpassableRoadIds();
+		Arrays.sort(ids);
+		return ids;
+	}
+
+	/**
+	 * Restores segment of the tree with its chain to target (restored segments are put to loaded map).
+	 * @return segment with time to target (as segment visited by reverse search) or null if segment is not in tree
+	 * or roads of chain are not loaded (e.g. road became impassable)
+	 */
+	RouteSegment loadSegment(RoutingContext ctx, long segmentId, TLongObjectHashMap<RouteSegment> loaded) {
+		int ind = Arrays.binarySearch(segments, segmentId);
+		if (ind < 0) {
+			return null;
+		}
+		TIntArrayList chain = new TIntArrayList();
+		RouteSegment parent = RouteSegment.NULL;
+		while (ind != NO_PARENT) {
+			RouteSegment s = loaded.get(segments[ind]);
+			if (s != null) {
+				parent = s;
+				break;
+			}
+			chain.add(ind);
+			ind = parents[ind];
+		}
+		for (int i = chain.size() - 1; i >= 0; i--) {
+			int k = chain.get(i);
+			RouteSegment s = createSegment(ctx, k);
+			if (s == null) {
+				return null;
+			}
+			s.setParentRoute(parent);
+			s.distanceFromStart = times[k];
+			loaded.put(segments[k], s);
+			parent = s;
+		}
+		return parent;
+	}
+
+	private RouteSegment createSegment(RoutingContext ctx, int ind) {
+		long roadId = segments[ind] >> BinaryRoutePlanner.ROUTE_POINTS;
+		int segStart = (int) (segments[ind] >> 1) & ((1 << (BinaryRoutePlanner.ROUTE_POINTS - 1)) - 1);
+		int segEnd = (segments[ind] & 1) == 1 ? segStart + 1 : segStart - 1;
+		RouteSegment s = ctx.loadRouteSegment(pointsX[ind], pointsY[ind], 0, true);
+		while (s != null) {
+			RouteDataObject road = s.getRoad();
+			if (road.getId() == roadId && segEnd >= 0 && Math.max(segStart, segEnd) < road.getPointsLength()
+					&& road.getPoint31XTile(segStart) == pointsX[ind] && road.getPoint31YTile(segStart) == pointsY[ind]) {
+				return new RouteSegment(road, segStart, segEnd);
+			}
+			s = s.getNext();
+		}
+		return null;
+	}
+
+	private static class TreeSegment {
+		long id;
+		float time;
+		long parentId;
+		boolean root;
+		boolean route;
+		int x;
+		int y;
+	}
+
+	/**
+	 * Builds tree of route calculated by bidirectional search: segments visited by reverse search keep their
+	 * time to target, segments of route found by forward search get time of route minus time from start.
+	 * When there are more segments than max, segments of route and the fastest to target are kept.
+	 */
+	static ReverseSearchTree build(RoutingContext ctx, RouteSegmentPoint end, FinalRouteSegment finalSegment,
+			TLongObjectHashMap<RouteSegment> visitedOppositeSegments, int maxSegments) {
+		TLongObjectHashMap<TreeSegment> all = new TLongObjectHashMap<TreeSegment>();
+		for (long id : visitedOppositeSegments.keys()) {
+			RouteSegment s = visitedOppositeSegments.get(id);
+			TreeSegment t = new TreeSegment();
+			t.id = id;
+			t.time = s.distanceFromStart;
+			t.root = s.getParentRoute() == null;
+			t.parentId = t.root ? 0 : BinaryRoutePlanner.calculateRoutePointId(s.getParentRoute());
+			t.x = s.getRoad().getPoint31XTile(s.getSegmentStart());
+			t.y = s.getRoad().getPoint31YTile(s.getSegmentStart());
+			all.put(id, t);
+		}
+		// reverse part of route is already visited, mark it and add forward part in opposite direction
+		RouteSegment reversePart = finalSegment.reverseWaySearch ? finalSegment : finalSegment.opposite;
+		for (RouteSegment s = reversePart; s != null; s = s.getParentRoute()) {
+			TreeSegment t = all.get(BinaryRoutePlanner.calculateRoutePointId(s));
+			if (t != null) {
+				t.route = true;
+			}
+		}
+		RouteSegment forwardPart = finalSegment.reverseWaySearch ? finalSegment.opposite.getParentRoute()
+				: finalSegment.getParentRoute();
+		long parentId = BinaryRoutePlanner.calculateRoutePointId(reversePart);
+		for (RouteSegment s = forwardPart; s != null && s.getParentRoute() != null; s = s.getParentRoute()) {
+			// first segment starts at start point (not at segment point), so it is not added
+			long id = BinaryRoutePlanner.calculateRoutePointInternalId(s.getRoad(), s.getSegmentEnd(), s.getSegmentStart());
+			float time = finalSegment.distanceFromStart - s.getParentRoute().distanceFromStart;
+			TreeSegment t = all.get(id);
+			if (t == null) {
+				t = new TreeSegment();
+				t.id = id;
+				t.time = time;
+				t.parentId = parentId;
+				t.x = s.getRoad().getPoint31XTile(s.getSegmentEnd());
+				t.y = s.getRoad().getPoint31YTile(s.getSegmentEnd());
+				all.put(id, t);
+			}
+			t.route = true;
+			parentId = id;
+		}
+
+		List<TreeSegment> ordered = new ArrayList<TreeSegment>(all.valueCollection());
+		Collections.sort(ordered, new Comparator<TreeSegment>() {
+			@Override
+			public int compare(TreeSegment o1, TreeSegment o2) {
+				if (o1.route != o2.route) {
+					return o1.route ? -1 : 1;
+				}
+				return Float.compare(o1.time, o2.time);
+			}
+		});
+		// parent is faster to target, so it is checked before child (segments without kept parent are dropped)
+		TLongObjectHashMap<TreeSegment> kept = new TLongObjectHashMap<TreeSegment>();
+		for (TreeSegment t : ordered) {
+			if (kept.size() >= maxSegments) {
+				break;
+			}
+			if (t.root || kept.containsKey(t.parentId)) {
+				kept.put(t.id, t);
+			}
+		}
+		long[] ids = kept.keys();
+		Arrays.sort(ids);
+		ReverseSearchTree tree = new ReverseSearchTree(ctx, end, ids.length);
+		for (int i = 0; i < ids.length; i++) {
+			TreeSegment t = kept.get(ids[i]);
+			tree.segments[i] = t.id;
+			tree.times[i] = t.time;
+			tree.parents[i] = t.root ? NO_PARENT : Arrays.binarySearch(ids, t.parentId);
+			tree.pointsX[i] = t.x;
+			tree.pointsY[i] = t.y;
+		}
+		return tree;
+	}
+}
@@ -43,12 +43,17 @@ public class RouteCalculationProgress {
 	public int loadedPrevUnloadedTiles = 0;
 	public int unloadedTiles = 0;
 	public int loadedTiles = 0;
+	public int unpackedTiles = 0;
 	
 	public boolean isCancelled;
 	public boolean requestPrivateAccessRouting;
 
 	public long routeCalculationStartTime;
 	public List<WorldRegion> missingMaps;
+	// progress of route legs calculated in parallel (leg is finished when its timeToCalculate is set)
+	public volatile RouteCalculationProgress[] parallelLegs;
+	// optional structured trace of calculation (shared with parallel legs)
+	public RoutingTrace trace;
 
 	private static final float INITIAL_PROGRESS = 0.05f;
 	private static final float FIRST_ITERATION = 0.72f;
@@ -73,6 +78,7 @@ public class RouteCalculationProgress {
 		p.distinctLoadedTiles = cp.distinctLoadedTiles;
 		p.maxLoadedTiles = cp.maxLoadedTiles;
 		p.loadedPrevUnloadedTiles = cp.loadedPrevUnloadedTiles;
+		p.unpackedTiles = cp.unpackedTiles;
 		cp.maxLoadedTiles = 0;
 		return p;
 	}
@@ -89,6 +95,7 @@ public class RouteCalculationProgress {
 		tiles.put("loadedTilesPrevUnloaded", this.loadedPrevUnloadedTiles - firstPhase.loadedPrevUnloadedTiles);
 		tiles.put("loadedTilesMax", Math.max(this.maxLoadedTiles, this.distinctLoadedTiles));
 		tiles.put("unloadedTiles", this.unloadedTiles - firstPhase.unloadedTiles);
+		tiles.put("unpackedTiles", this.unpackedTiles - firstPhase.unpackedTiles);
 		Map<String, Object> segms = new LinkedHashMap<String, Object>();
 		map.put("segments", segms);
 		segms.put("visited", this.visitedSegments - firstPhase.visitedSegments);
@@ -122,13 +129,50 @@ public class RouteCalculationProgress {
 		return map;
 	}
 	
-	public float getLinearProgress() {
+	/**
+	 * Adds counters of route leg calculated in parallel
+	 */
+	public void addLegProgress(RouteCalculationProgress leg) {
+		timeNanoToCalcDeviation += leg.timeNanoToCalcDeviation;
+		timeToLoad += leg.timeToLoad;
+		timeToLoadHeaders += leg.timeToLoadHeaders;
+		timeToFindInitialSegments += leg.timeToFindInitialSegments;
+
+		visitedSegments += leg.visitedSegments;
+		visitedDirectSegments += leg.visitedDirectSegments;
+		visitedOppositeSegments += leg.visitedOppositeSegments;
+		directQueueSize += leg.directQueueSize;
+		oppositeQueueSize += leg.oppositeQueueSize;
+
+		loadedTiles += leg.loadedTiles;
+		distinctLoadedTiles += leg.distinctLoadedTiles;
+		// legs are kept in memory at the same time
+		maxLoadedTiles += leg.maxLoadedTiles;
+		loadedPrevUnloadedTiles += leg.loadedPrevUnloadedTiles;
+		unloadedTiles += leg.unloadedTiles;
+		unpackedTiles += leg.unpackedTiles;
+	}
+
+	private float getDistanceProgress() {
+		RouteCalculationProgress[] legs = parallelLegs;
+		if (legs != null && legs.length > 0) {
+			float sum = 0;
+			for (RouteCalculationProgress leg : legs) {
+				sum += leg.timeToCalculate > 0 ? 1 : leg.getDistanceProgress();
+			}
+			return sum / legs.length;
+		}
 		float p = Math.max(distanceFromBegin, distanceFromEnd);
 		float all = totalEstimatedDistance * 1.35f;
 		float pr = 0;
 		if (all > 0) {
 			pr = Math.min(p * p / (all * all), 1);
 		}
+		return pr;
+	}
+
+	public float getLinearProgress() {
+		float pr = getDistanceProgress();
 		float progress = INITIAL_PROGRESS;
 		if (totalIterations <= 1) {
 			progress = INITIAL_PROGRESS + pr * (1 - INITIAL_PROGRESS);
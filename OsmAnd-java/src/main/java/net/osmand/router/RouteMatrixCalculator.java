@@ -0,0 +1,524 @@
+package net.osmand.router;
+
+import net.osmand.binary.RouteDataObject;
+import net.osmand.data.LatLon;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.ContractionHierarchy.NodeQueue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+/**
+ * Calculates travel time and distance matrix between many sources and targets.
+ * Every source is processed by one-to-many Dijkstra search over road points loaded by routing context
+ * (segment costs of router are the same as A* uses, turn time and turn restrictions are not counted),
+ * search stops as soon as all targets are settled or search limits are reached (unreachable target doesn't expand
+ * the whole road graph). Tiles loaded by search stay in context for next sources,
+ * sources are calculated in parallel with own routing contexts if parallelism is set.
+ */
+public class RouteMatrixCalculator {
+
+	public static final float UNREACHABLE = -1;
+	public static final float DEFAULT_DETOUR_FACTOR = 3;
+	public static final int DEFAULT_MAX_VISITED_POINTS = 1000000;
+
+	private final RoutePlannerFrontEnd frontEnd = new RoutePlannerFrontEnd();
+	private int parallelism = 1;
+	private ExecutorService executor;
+	private float detourFactor = DEFAULT_DETOUR_FACTOR;
+	private int maxVisitedPoints = DEFAULT_MAX_VISITED_POINTS;
+
+	public static class RouteMatrix {
+		// time in seconds from source (row) to target (column), UNREACHABLE if route is not found
+		public final float[][] times;
+		// distance in meters from source (row) to target (column), UNREACHABLE if route is not found
+		public final float[][] distances;
+
+		public RouteMatrix(int sources, int targets) {
+			times = new float[sources][targets];
+			distances = new float[sources][targets];
+			for (int i = 0; i < sources; i++) {
+				Arrays.fill(times[i], UNREACHABLE);
+				Arrays.fill(distances[i], UNREACHABLE);
+			}
+		}
+
+		/**
+		 * Times as costs for TSP solvers ({@link net.osmand.TspAnt}, {@link net.osmand.TspHeldKarp}),
+		 * unreachable targets get cost bigger than any tour through reachable ones.
+		 */
+		public double[][] getTimeCosts() {
+			double max = 0;
+			for (float[] row : times) {
+				for (float t : row) {
+					max = Math.max(max, t);
+				}
+			}
+			double unreachable = Math.rint(max * (times.length + 1)) + 1;
+			double[][] costs = new double[times.length][];
+			for (int i = 0; i < times.length; i++) {
+				costs[i] = new double[times[i].length];
+				for (int j = 0; j < times[i].length; j++) {
+					costs[i][j] = times[i][j] == UNREACHABLE ? unreachable : times[i][j];
+				}
+			}
+			return costs;
+		}
+	}
+
+	/**
+	 * @param parallelism max number of sources calculated at the same time
+	 * @param executor executor to calculate sources or null to start new threads for every matrix
+	 */
+	public void setParallelism(int parallelism, ExecutorService executor) {
+		this.parallelism = Math.max(1, parallelism);
+		this.executor = executor;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param detourFactor targets not reached in time of straight distance to the farthest target multiplied by factor
+	 *                     with min speed of router are unreachable (0 - no time limit)
+	 * @param maxVisitedPoints max road points settled by search from one source (0 - no limit)
+	 */
+	public void setSearchLimits(float detourFactor, int maxVisitedPoints) {
+		this.detourFactor = detourFactor;
+		this.maxVisitedPoints = maxVisitedPoints;
+	}
+
+	public RouteMatrix calculate(final RoutingContext ctx, List<LatLon> sources, List<LatLon> targets)
+			throws IOException, InterruptedException {
+		if (ctx.calculationProgress == null) {
+			ctx.calculationProgress = new RouteCalculationProgress();
+		}
+		final RouteSegmentPoint[] sourcePoints = findRouteSegments(ctx, sources);
+		final RouteSegmentPoint[] targetPoints = findRouteSegments(ctx, targets);
+		final RouteMatrix matrix = new RouteMatrix(sources.size(), targets.size());
+		final AtomicInteger nextSource = new AtomicInteger();
+		int threads = Math.min(parallelism, sources.size());
+		if (threads <= 1) {
+			calculateRows(ctx, sourcePoints, targetPoints, nextSource, matrix);
+			return matrix;
+		}
+		ctx.prepareThreadCopies();
+		// progress counters aren't thread safe, so every thread has own progress (merged when rows are calculated)
+		final RouteCalculationProgress[] threadProgress = new RouteCalculationProgress[threads];
+		for (int i = 0; i < threads; i++) {
+			threadProgress[i] = new RouteCalculationProgress();
+			threadProgress[i].trace = ctx.calculationProgress.trace;
+		}
+		ExecutorService executor = this.executor != null ? this.executor : Executors.newFixedThreadPool(threads);
+		boolean finished = false;
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int i = 0; i < threads; i++) {
+				final RouteCalculationProgress progress = threadProgress[i];
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						RoutingContext threadCtx = ctx.copyForThread();
+						threadCtx.calculationProgress = progress;
+						try {
+							calculateRows(threadCtx, sourcePoints, targetPoints, nextSource, matrix);
+						} finally {
+							threadCtx.closeThreadCopy();
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> f : futures) {
+				RoutePlannerFrontEnd.waitParallelTask(ctx, f, threadProgress);
+			}
+			finished = true;
+		} finally {
+			if (!finished) {
+				// stop other threads
+				nextSource.set(sources.size());
+				for (RouteCalculationProgress p : threadProgress) {
+					p.isCancelled = true;
+				}
+			}
+			if (this.executor == null) {
+				executor.shutdown();
+			}
+		}
+		for (RouteCalculationProgress p : threadProgress) {
+			ctx.calculationProgress.addLegProgress(p);
+		}
+		return matrix;
+	}
+
+	private RouteSegmentPoint[] findRouteSegments(RoutingContext ctx, List<LatLon> points) throws IOException {
+		RouteSegmentPoint[] res = new RouteSegmentPoint[points.size()];
+		for (int i = 0; i < res.length; i++) {
+			LatLon l = points.get(i);
+			res[i] = frontEnd.findRouteSegment(l.getLatitude(), l.getLongitude(), ctx, null);
+		}
+		return res;
+	}
+
+	private void calculateRows(RoutingContext ctx, RouteSegmentPoint[] sources, RouteSegmentPoint[] targets,
+			AtomicInteger nextSource, RouteMatrix matrix) {
+		OneToManySearch search = new OneToManySearch(ctx, targets);
+		if (maxVisitedPoints > 0) {
+			search.setMaxVisitedPoints(maxVisitedPoints);
+		}
+		float minSpeed = ctx.getRouter().getMinSpeed();
+		int i;
+		while ((i = nextSource.getAndIncrement()) < sources.length && !ctx.calculationProgress.isCancelled) {
+			if (sources[i] != null) {
+				if (detourFactor > 0 && minSpeed > 0) {
+					search.setMaxTime((float) (getMaxTargetDistance(sources[i], targets) * detourFactor / minSpeed));
+				}
+				search.search(sources[i], matrix.times[i], matrix.distances[i]);
+			}
+		}
+	}
+
+	private static double getMaxTargetDistance(RouteSegmentPoint source, RouteSegmentPoint[] targets) {
+		double max = 0;
+		for (RouteSegmentPoint t : targets) {
+			if (t != null) {
+				max = Math.max(max, BinaryRoutePlanner.squareRootDist(source.preciseX, source.preciseY,
+						t.preciseX, t.preciseY));
+			}
+		}
+		return max;
+	}
+
+	private static long pointKey(int x31, int y31) {
+		return (((long) x31) << 31) + y31;
+	}
+
+	private static class MatrixNode {
+		final int x31;
+		final int y31;
+		final int index;
+		float time = Float.MAX_VALUE;
+		float distance;
+		boolean settled;
+		// segment of road by which node is reached (parent is null for the segment of source)
+		MatrixNode parent;
+		RouteDataObject road;
+		int from;
+		int to;
+
+		MatrixNode(int x31, int y31, int index) {
+			this.x31 = x31;
+			this.y31 = y31;
+			this.index = index;
+		}
+	}
+
+	// target could be reached from the point of its segment
+	private static class TargetApproach {
+		final int target;
+		final RouteDataObject road;
+		final int from;
+		final int to;
+		final float time;
+		final float distance;
+
+		TargetApproach(int target, RouteDataObject road, int from, int to, float time, float distance) {
+			this.target = target;
+			this.road = road;
+			this.from = from;
+			this.to = to;
+			this.time = time;
+			this.distance = distance;
+		}
+	}
+
+	/**
+	 * One-to-many Dijkstra search from source point to target points, also used by {@link HMMMapMatcher}
+	 * to calculate transitions between candidates of gps points.
+	 */
+	static class OneToManySearch {
+		private final RoutingContext ctx;
+		private final VehicleRouter router;
+		private final RouteSegmentPoint[] targets;
+		private final TLongObjectHashMap<List<TargetApproach>> approaches = new TLongObjectHashMap<List<TargetApproach>>();
+		// last segment of the best route to target (node is null if target is on the segment of source)
+		private final MatrixNode[] targetNodes;
+		private final RouteDataObject[] targetRoads;
+		private final int[] targetFrom;
+		private final int[] targetTo;
+		private float maxDistance = Float.MAX_VALUE;
+		private float maxTime = Float.MAX_VALUE;
+		private int maxVisitedPoints = Integer.MAX_VALUE;
+
+		private final TLongObjectHashMap<MatrixNode> visited = new TLongObjectHashMap<MatrixNode>();
+		private final List<MatrixNode> nodes = new ArrayList<MatrixNode>();
+		private final NodeQueue queue = new NodeQueue(256);
+		private int found;
+		private float maxFound;
+
+		OneToManySearch(RoutingContext ctx, RouteSegmentPoint[] targets) {
+			this.ctx = ctx;
+			this.router = ctx.getRouter();
+			this.targets = targets;
+			this.targetNodes = new MatrixNode[targets.length];
+			this.targetRoads = new RouteDataObject[targets.length];
+			this.targetFrom = new int[targets.length];
+			this.targetTo = new int[targets.length];
+			for (int t = 0; t < targets.length; t++) {
+				RouteSegmentPoint pnt = targets[t];
+				if (pnt == null) {
+					continue;
+				}
+				RouteDataObject road = pnt.getRoad();
+				int j = pnt.getSegmentStart();
+				int oneway = router.isOneWay(road);
+				if (oneway >= 0) {
+					addApproach(road, j - 1, j, pnt, t);
+				}
+				if (oneway <= 0) {
+					addApproach(road, j, j - 1, pnt, t);
+				}
+			}
+		}
+
+		private void addApproach(RouteDataObject road, int from, int to, RouteSegmentPoint pnt, int target) {
+			double full = segmentDistance(road, from, to);
+			double part = BinaryRoutePlanner.squareRootDist(road.getPoint31XTile(from), road.getPoint31YTile(from),
+					pnt.preciseX, pnt.preciseY);
+			double time = partTime(road, from, to, full, part);
+			if (time < 0) {
+				return;
+			}
+			long key = pointKey(road.getPoint31XTile(from), road.getPoint31YTile(from));
+			List<TargetApproach> list = approaches.get(key);
+			if (list == null) {
+				list = new ArrayList<TargetApproach>(1);
+				approaches.put(key, list);
+			}
+			list.add(new TargetApproach(target, road, from, to, (float) time, (float) part));
+		}
+
+		// route points further than max distance from source are not visited
+		void setMaxDistance(float maxDistance) {
+			this.maxDistance = maxDistance;
+		}
+
+		// route points reached later than max time from source are not visited
+		void setMaxTime(float maxTime) {
+			this.maxTime = maxTime;
+		}
+
+		// search stops after max number of points is settled (not reached targets stay unreachable)
+		void setMaxVisitedPoints(int maxVisitedPoints) {
+			this.maxVisitedPoints = maxVisitedPoints;
+		}
+
+		private double partTime(RouteDataObject road, int from, int to, double full, double part) {
+			double time = ContractionHierarchy.segmentTime(router, road, from, to);
+			if (time < 0) {
+				return -1;
+			}
+			return full == 0 ? 0 : time * Math.min(1, part / full);
+		}
+
+		private static double segmentDistance(RouteDataObject road, int from, int to) {
+			return BinaryRoutePlanner.squareRootDist(road.getPoint31XTile(from), road.getPoint31YTile(from),
+					road.getPoint31XTile(to), road.getPoint31YTile(to));
+		}
+
+		void search(RouteSegmentPoint source, float[] times, float[] distances) {
+			visited.clear();
+			nodes.clear();
+			queue.clear();
+			Arrays.fill(targetNodes, null);
+			Arrays.fill(targetRoads, null);
+			found = 0;
+			maxFound = 0;
+			int reachable = 0;
+			for (RouteSegmentPoint t : targets) {
+				if (t != null) {
+					reachable++;
+				}
+			}
+			RouteDataObject road = source.getRoad();
+			int j = source.getSegmentStart();
+			int oneway = router.isOneWay(road);
+			if (oneway >= 0) {
+				startFrom(source, j - 1, j, times, distances);
+			}
+			if (oneway <= 0) {
+				startFrom(source, j, j - 1, times, distances);
+			}
+			int iterations = 0;
+			int settled = 0;
+			while (!queue.isEmpty()) {
+				float key = queue.peekKey();
+				if (found == reachable && key >= maxFound) {
+					// all targets are settled
+					break;
+				}
+				MatrixNode node = nodes.get(queue.poll());
+				if (node.settled || key > node.time) {
+					continue;
+				}
+				node.settled = true;
+				if (++settled > maxVisitedPoints) {
+					break;
+				}
+				List<TargetApproach> list = approaches.get(pointKey(node.x31, node.y31));
+				if (list != null) {
+					for (TargetApproach a : list) {
+						if (reachTarget(a.target, node.time + a.time, node.distance + a.distance, times, distances)) {
+							setTargetRoute(a.target, node, a.road, a.from, a.to);
+						}
+					}
+				}
+				RouteSegment s = ctx.loadRouteSegment(node.x31, node.y31, 0);
+				while (s != null) {
+					RouteDataObject ro = s.getRoad();
+					int i = s.getSegmentStart();
+					int ow = router.isOneWay(ro);
+					if (ow >= 0 && i + 1 < ro.getPointsLength()) {
+						visit(node, ro, i, i + 1);
+					}
+					if (ow <= 0 && i > 0) {
+						visit(node, ro, i, i - 1);
+					}
+					s = s.getNext();
+				}
+				if (++iterations % 1000 == 0 && ctx.calculationProgress.isCancelled) {
+					break;
+				}
+			}
+		}
+
+		private void startFrom(RouteSegmentPoint source, int from, int to, float[] times, float[] distances) {
+			RouteDataObject road = source.getRoad();
+			double full = segmentDistance(road, from, to);
+			double partFrom = Math.min(full, BinaryRoutePlanner.squareRootDist(road.getPoint31XTile(from),
+					road.getPoint31YTile(from), source.preciseX, source.preciseY));
+			double time = partTime(road, from, to, full, full - partFrom);
+			if (time < 0) {
+				return;
+			}
+			// target on the same segment further in direction of movement
+			for (int t = 0; t < targets.length; t++) {
+				RouteSegmentPoint pnt = targets[t];
+				if (pnt != null && pnt.getRoad().getId() == road.getId() && pnt.getSegmentStart() == source.getSegmentStart()) {
+					double targetFrom = BinaryRoutePlanner.squareRootDist(road.getPoint31XTile(from),
+							road.getPoint31YTile(from), pnt.preciseX, pnt.preciseY);
+					if (targetFrom >= partFrom) {
+						double part = targetFrom - partFrom;
+						if (reachTarget(t, (float) partTime(road, from, to, full, part), (float) part, times, distances)) {
+							setTargetRoute(t, null, road, from, to);
+						}
+					}
+				}
+			}
+			MatrixNode node = getNode(road.getPoint31XTile(to), road.getPoint31YTile(to));
+			if (time < node.time) {
+				node.time = (float) time;
+				node.distance = (float) (full - partFrom);
+				node.parent = null;
+				node.road = road;
+				node.from = from;
+				node.to = to;
+				queue.add(node.index, node.time);
+			}
+		}
+
+		private void visit(MatrixNode node, RouteDataObject ro, int from, int to) {
+			double time = ContractionHierarchy.segmentTime(router, ro, from, to);
+			if (time < 0) {
+				return;
+			}
+			MatrixNode next = getNode(ro.getPoint31XTile(to), ro.getPoint31YTile(to));
+			float t = (float) (node.time + time);
+			float distance = (float) (node.distance + segmentDistance(ro, from, to));
+			if (!next.settled && t < next.time && distance <= maxDistance && t <= maxTime) {
+				next.time = t;
+				next.distance = distance;
+				next.parent = node;
+				next.road = ro;
+				next.from = from;
+				next.to = to;
+				queue.add(next.index, t);
+			}
+		}
+
+		private boolean reachTarget(int target, float time, float distance, float[] times, float[] distances) {
+			if (times[target] == UNREACHABLE) {
+				found++;
+			} else if (time >= times[target]) {
+				return false;
+			}
+			times[target] = time;
+			distances[target] = distance;
+			maxFound = 0;
+			for (float f : times) {
+				maxFound = Math.max(maxFound, f);
+			}
+			return true;
+		}
+
+		private void setTargetRoute(int target, MatrixNode node, RouteDataObject road, int from, int to) {
+			targetNodes[target] = node;
+			targetRoads[target] = road;
+			targetFrom[target] = from;
+			targetTo[target] = to;
+		}
+
+		/**
+		 * Road segments of the route to target found by the last search (points are not precise,
+		 * first segment starts at point of source segment and last ends at point of target segment), null if target is not reached.
+		 */
+		List<RouteSegmentResult> getRoute(int target) {
+			if (targetRoads[target] == null) {
+				return null;
+			}
+			List<RouteSegmentResult> res = new ArrayList<RouteSegmentResult>();
+			addSegmentBefore(res, targetRoads[target], targetFrom[target], targetTo[target]);
+			for (MatrixNode n = targetNodes[target]; n != null; n = n.parent) {
+				addSegmentBefore(res, n.road, n.from, n.to);
+			}
+			Collections.reverse(res);
+			return res;
+		}
+
+		// segments are added from the end of route, segment continuing previous one on the same road is merged with it
+		private static void addSegmentBefore(List<RouteSegmentResult> res, RouteDataObject road, int from, int to) {
+			if (res.size() > 0) {
+				RouteSegmentResult last = res.get(res.size() - 1);
+				boolean sameDirection = (last.getEndPointIndex() > last.getStartPointIndex()) == (to > from);
+				if (last.getObject().getId() == road.getId() && last.getStartPointIndex() == to && sameDirection) {
+					last.setStartPointIndex(from);
+					return;
+				}
+			}
+			res.add(new RouteSegmentResult(road, from, to));
+		}
+
+		private MatrixNode getNode(int x31, int y31) {
+			long key = pointKey(x31, y31);
+			MatrixNode node = visited.get(key);
+			if (node == null) {
+				node = new MatrixNode(x31, y31, nodes.size());
+				visited.put(key, node);
+				nodes.add(node);
+			}
+			return node;
+		}
+	}
+}
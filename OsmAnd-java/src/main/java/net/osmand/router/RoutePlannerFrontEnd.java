@@ -25,6 +25,14 @@ import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import gnu.trove.list.array.TIntArrayList;
 
@@ -36,6 +44,18 @@ public class RoutePlannerFrontEnd {
 	protected static final double GPS_POSSIBLE_ERROR = 7;
 	public boolean useSmartRouteRecalculation = true;
 	public boolean useNativeApproximation = true;
+	// optional precalculated hierarchy used instead of A* for applicable contexts
+	private ContractionHierarchy contractionHierarchy;
+	// number of route legs between intermediate points calculated at the same time (1 - sequential calculation)
+	private int legsParallelism = 1;
+	// optional executor for route legs (otherwise threads are created for every route calculation)
+	private ExecutorService legsExecutor;
+	// number of gpx track chunks approximated at the same time (1 - sequential approximation)
+	private int gpxParallelism = 1;
+	// length of gpx track chunk (m), chunks are overlapped by 2 * maxStepApproximation
+	private double gpxChunkDistance = 50000;
+	// optional executor for gpx track chunks
+	private ExecutorService gpxExecutor;
 
 	private static final boolean TRACE_ROUTING = false;
 
@@ -239,108 +259,465 @@ public class RoutePlannerFrontEnd {
 		this.useNativeApproximation = useNativeApproximation;
 	}
 
+	public void setContractionHierarchy(ContractionHierarchy contractionHierarchy) {
+		this.contractionHierarchy = contractionHierarchy;
+	}
+
+	public ContractionHierarchy getContractionHierarchy() {
+		return contractionHierarchy;
+	}
+
+	/**
+	 * Enables parallel calculation of route legs between intermediate points.
+	 * Legs are calculated with own routing contexts, file handles and router caches,
+	 * result is the same as for sequential calculation.
+	 * @param parallelism max number of legs calculated at the same time (1 - sequential calculation)
+	 * @param executor executor to calculate legs or null to start new threads for every route
+	 */
+	public void setLegsParallelism(int parallelism, ExecutorService executor) {
+		this.legsParallelism = Math.max(1, parallelism);
+		this.legsExecutor = executor;
+	}
+
+	public int getLegsParallelism() {
+		return legsParallelism;
+	}
+
+	/**
+	 * Enables parallel approximation of long gpx tracks (java approximation only).
+	 * Track is split into overlapped chunks which are approximated with own routing contexts and file handles,
+	 * chunks are stitched at the first road point which is common to routes of both chunks
+	 * (route visitor is called from chunk threads).
+	 * @param parallelism max number of chunks approximated at the same time (1 - sequential approximation)
+	 * @param chunkDistance length of track chunk in meters
+	 * @param executor executor to approximate chunks or null to start new threads for every track
+	 */
+	public void setGpxApproximationParallelism(int parallelism, double chunkDistance, ExecutorService executor) {
+		this.gpxParallelism = Math.max(1, parallelism);
+		this.gpxChunkDistance = chunkDistance;
+		this.gpxExecutor = executor;
+	}
+
+	public int getGpxApproximationParallelism() {
+		return gpxParallelism;
+	}
+
+	private boolean isContractionHierarchyUsed(RoutingContext ctx) {
+		return contractionHierarchy != null && ctx.calculationMode != RouteCalculationMode.BASE
+				&& contractionHierarchy.isApplicable(ctx);
+	}
+
+	private boolean isReverseSearchTreeUsed(RoutingContext ctx, RouteSegmentPoint end) {
+		return ctx.reverseSearchTree != null && ctx.reverseSearchTree.isApplicable(ctx, end);
+	}
+
 	public GpxRouteApproximation searchGpxRoute(GpxRouteApproximation gctx, List<GpxPoint> gpxPoints, ResultMatcher<GpxRouteApproximation> resultMatcher) throws IOException, InterruptedException {
 		long timeToCalculate = System.nanoTime();
 		NativeLibrary nativeLib = gctx.ctx.nativeLib;
 		if (nativeLib != null && useNativeApproximation) {
 			gctx = nativeLib.runNativeSearchGpxRoute(gctx, gpxPoints);
 		} else {
-			gctx.ctx.keepNativeRoutingContext = true;
-			if (gctx.ctx.calculationProgress == null) {
-				gctx.ctx.calculationProgress = new RouteCalculationProgress();
-			}
-			GpxPoint start = null;
-			GpxPoint prev = null;
-			if (gpxPoints.size() > 0) {
-				gctx.ctx.calculationProgress.totalApproximateDistance = (float) gpxPoints.get(gpxPoints.size() - 1).cumDist;
-				start = gpxPoints.get(0);
-			}
-			float minPointApproximation = gctx.ctx.config.minPointApproximation;
-			while (start != null && !gctx.ctx.calculationProgress.isCancelled) {
-				double routeDist = gctx.ctx.config.maxStepApproximation;
-				GpxPoint next = findNextGpxPointWithin(gpxPoints, start, routeDist);
-				boolean routeFound = false;
-				if (next != null && initRoutingPoint(start, gctx, minPointApproximation)) {
-					while (routeDist >= gctx.ctx.config.minStepApproximation && !routeFound) {
-						routeFound = initRoutingPoint(next, gctx, minPointApproximation);
+			initGpxApproximation(gctx, gpxPoints);
+			if (gctx.ctx.config.hmmApproximation) {
+				new HMMMapMatcher(this).matchGpxPoints(gctx, gpxPoints);
+			} else if (gpxParallelism > 1 && gpxPoints.size() > 0
+					&& gpxPoints.get(gpxPoints.size() - 1).cumDist > 2 * gpxChunkDistance) {
+				approximateGpxChunksParallel(gctx, gpxPoints);
+			} else if (gpxPoints.size() > 0) {
+				approximateGpxPoints(gctx, gpxPoints, gpxPoints.get(0), null);
+			}
+			finishGpxApproximation(gctx, gpxPoints, timeToCalculate);
+		}
+		if (resultMatcher != null) {
+			resultMatcher.publish(gctx.ctx.calculationProgress.isCancelled ? null : gctx);
+		}
+		return gctx;
+	}
+
+	/**
+	 * Continues approximation of recorded track after new points were appended (see {@link #appendGpxPoints}).
+	 * Gpx points should be the same objects approximated before with java approximation,
+	 * only the last approximated route step is calculated again, result with turns is rebuilt from calculated steps
+	 * (roads attached to them are loaded again as they are cleared after turns are calculated).
+	 */
+	public GpxRouteApproximation extendGpxRoute(GpxRouteApproximation gctx, List<GpxPoint> gpxPoints,
+			ResultMatcher<GpxRouteApproximation> resultMatcher) throws IOException, InterruptedException {
+		NativeLibrary nativeLib = gctx.ctx.nativeLib;
+		if ((nativeLib != null && useNativeApproximation) || gctx.ctx.config.hmmApproximation) {
+			// native approximation and map matching are not incremental
+			gctx.finalPoints.clear();
+			gctx.result.clear();
+			gctx.routeGapDistance = 0;
+			gctx.routeDistanceUnmatched = 0;
+			return searchGpxRoute(gctx, gpxPoints, resultMatcher);
+		}
+		long timeToCalculate = System.nanoTime();
+		initGpxApproximation(gctx, gpxPoints);
+		GpxPoint start = null;
+		for (GpxPoint p : gpxPoints) {
+			if (p.straightLine) {
+				// straight lines are added again by calculateGpxRoute
+				p.routeToTarget = null;
+				p.straightLine = false;
+			} else if (p.routeToTarget != null) {
+				start = p;
+			}
+		}
+		GpxPoint prev = null;
+		if (start != null) {
+			for (GpxPoint p : gpxPoints) {
+				if (p.routeToTarget != null && p.targetInd == start.ind) {
+					prev = p;
+				}
+			}
+			start.routeToTarget = null;
+			start.stepBackRoute = null;
+			start.targetInd = -1;
+		} else if (gpxPoints.size() > 0) {
+			start = gpxPoints.get(0);
+		}
+		RouteResultPreparation preparation = new RouteResultPreparation();
+		for (GpxPoint p : gpxPoints) {
+			if (p.routeToTarget != null && !gctx.ctx.calculationProgress.isCancelled) {
+				preparation.attachRoadSegments(gctx.ctx, p.routeToTarget);
+			}
+		}
+		gctx.finalPoints.clear();
+		gctx.result.clear();
+		gctx.routeGapDistance = 0;
+		gctx.routeDistanceUnmatched = 0;
+		if (start != null) {
+			approximateGpxPoints(gctx, gpxPoints, start, prev);
+		}
+		finishGpxApproximation(gctx, gpxPoints, timeToCalculate);
+		if (resultMatcher != null) {
+			resultMatcher.publish(gctx.ctx.calculationProgress.isCancelled ? null : gctx);
+		}
+		return gctx;
+	}
+
+	private void initGpxApproximation(GpxRouteApproximation gctx, List<GpxPoint> gpxPoints) {
+		gctx.ctx.keepNativeRoutingContext = true;
+		if (gctx.ctx.calculationProgress == null) {
+			gctx.ctx.calculationProgress = new RouteCalculationProgress();
+		}
+		if (gpxPoints.size() > 0) {
+			gctx.ctx.calculationProgress.totalApproximateDistance = (float) gpxPoints.get(gpxPoints.size() - 1).cumDist;
+		}
+	}
+
+	private void finishGpxApproximation(GpxRouteApproximation gctx, List<GpxPoint> gpxPoints, long timeToCalculate) {
+		if (gctx.ctx.calculationProgress != null) {
+			gctx.ctx.calculationProgress.timeToCalculate = System.nanoTime() - timeToCalculate;
+		}
+		gctx.ctx.deleteNativeRoutingContext();
+		calculateGpxRoute(gctx, gpxPoints);
+		if (!gctx.result.isEmpty() && !gctx.ctx.calculationProgress.isCancelled) {
+			RouteResultPreparation.printResults(gctx.ctx, gpxPoints.get(0).loc, gpxPoints.get(gpxPoints.size() - 1).loc, gctx.result);
+			log.info(gctx);
+		}
+	}
+
+	private void approximateGpxPoints(GpxRouteApproximation gctx, List<GpxPoint> gpxPoints, GpxPoint start, GpxPoint prev)
+			throws IOException, InterruptedException {
+		float minPointApproximation = gctx.ctx.config.minPointApproximation;
+		while (start != null && !gctx.ctx.calculationProgress.isCancelled) {
+			double routeDist = gctx.ctx.config.maxStepApproximation;
+			GpxPoint next = findNextGpxPointWithin(gpxPoints, start, routeDist);
+			boolean routeFound = false;
+			if (next != null && initRoutingPoint(start, gctx, minPointApproximation)) {
+				while (routeDist >= gctx.ctx.config.minStepApproximation && !routeFound) {
+					routeFound = initRoutingPoint(next, gctx, minPointApproximation);
+					if (routeFound) {
+						routeFound = findGpxRouteSegment(gctx, gpxPoints, start, next, prev != null);
 						if (routeFound) {
-							routeFound = findGpxRouteSegment(gctx, gpxPoints, start, next, prev != null);
-							if (routeFound) {
-								routeFound = isRouteCloseToGpxPoints(minPointApproximation, gpxPoints, start, next);
-								if (!routeFound) {
-									start.routeToTarget = null;
-								}
-							}
-							if (routeFound && next.ind == gpxPoints.size() - 1) {
-								// last point - last route found
-								makeSegmentPointPrecise(start.routeToTarget.get(start.routeToTarget.size() - 1),
-										next.loc, false);
-							} else if (routeFound) {
-								// route is found - cut the end of the route and move to next iteration
-								// start.stepBackRoute = new ArrayList<RouteSegmentResult>();
-								// boolean stepBack = true;
-								boolean stepBack = stepBackAndFindPrevPointInRoute(gctx, gpxPoints, start, next);
-								if (!stepBack) {
-									// not supported case (workaround increase routing.xml maxStepApproximation)
-									log.info("Consider to increase routing.xml maxStepApproximation to: " + routeDist * 2);
-									start.routeToTarget = null;
-									routeFound = false;
-								} else {
-									if (gctx.ctx.getVisitor() != null) {
-										gctx.ctx.getVisitor().visitApproximatedSegments(start.routeToTarget, start,
-												next);
-									}
-								}
+							routeFound = isRouteCloseToGpxPoints(minPointApproximation, gpxPoints, start, next);
+							if (!routeFound) {
+								start.routeToTarget = null;
 							}
 						}
-						if (!routeFound) {
-							// route is not found move next point closer to start point (distance / 2)
-							routeDist = routeDist / 2;
-							if (routeDist < gctx.ctx.config.minStepApproximation
-									&& routeDist > gctx.ctx.config.minStepApproximation / 2 + 1) {
-								routeDist = gctx.ctx.config.minStepApproximation;
-							}
-							next = findNextGpxPointWithin(gpxPoints, start, routeDist);
-							if (next != null) {
-								routeDist = Math.min(next.cumDist - start.cumDist, routeDist);
+						if (routeFound && next.ind == gpxPoints.size() - 1) {
+							// last point - last route found
+							makeSegmentPointPrecise(start.routeToTarget.get(start.routeToTarget.size() - 1),
+									next.loc, false);
+						} else if (routeFound) {
+							// route is found - cut the end of the route and move to next iteration
+							// start.stepBackRoute = new ArrayList<RouteSegmentResult>();
+							// boolean stepBack = true;
+							boolean stepBack = stepBackAndFindPrevPointInRoute(gctx, gpxPoints, start, next);
+							if (!stepBack) {
+								// not supported case (workaround increase routing.xml maxStepApproximation)
+								log.info("Consider to increase routing.xml maxStepApproximation to: " + routeDist * 2);
+								start.routeToTarget = null;
+								routeFound = false;
+							} else {
+								if (gctx.ctx.getVisitor() != null) {
+									gctx.ctx.getVisitor().visitApproximatedSegments(start.routeToTarget, start,
+											next);
+								}
 							}
 						}
 					}
-				}
-				// route is not found skip segment and keep it as straight line on display
-				if (!routeFound && next != null) {
-					// route is not found, move start point by
-					next = findNextGpxPointWithin(gpxPoints, start, gctx.ctx.config.minStepApproximation);
-					if (prev != null) {
-						prev.routeToTarget.addAll(prev.stepBackRoute);
-						makeSegmentPointPrecise(prev.routeToTarget.get(prev.routeToTarget.size() - 1), start.loc, false);
+					if (!routeFound) {
+						// route is not found move next point closer to start point (distance / 2)
+						routeDist = routeDist / 2;
+						if (routeDist < gctx.ctx.config.minStepApproximation
+								&& routeDist > gctx.ctx.config.minStepApproximation / 2 + 1) {
+							routeDist = gctx.ctx.config.minStepApproximation;
+						}
+						next = findNextGpxPointWithin(gpxPoints, start, routeDist);
 						if (next != null) {
-							log.warn("NOT found route from: " + start.pnt.getRoad() + " at " + start.pnt.getSegmentStart());
+							routeDist = Math.min(next.cumDist - start.cumDist, routeDist);
 						}
 					}
-					prev = null;
+				}
+			}
+			// route is not found skip segment and keep it as straight line on display
+			if (!routeFound && next != null) {
+				// route is not found, move start point by
+				next = findNextGpxPointWithin(gpxPoints, start, gctx.ctx.config.minStepApproximation);
+				if (prev != null) {
+					prev.routeToTarget.addAll(prev.stepBackRoute);
+					makeSegmentPointPrecise(prev.routeToTarget.get(prev.routeToTarget.size() - 1), start.loc, false);
+					if (next != null) {
+						log.warn("NOT found route from: " + start.pnt.getRoad() + " at " + start.pnt.getSegmentStart());
+					}
+				}
+				prev = null;
+			} else {
+				prev = start;
+			}
+			start = next;
+			if (gctx.ctx.calculationProgress != null && start != null) {
+				gctx.ctx.calculationProgress.approximatedDistance = (float) start.cumDist;
+			}
+		}
+	}
+
+	private void approximateGpxChunksParallel(final GpxRouteApproximation gctx, List<GpxPoint> gpxPoints)
+			throws IOException, InterruptedException {
+		gctx.ctx.prepareThreadCopies();
+		// chunk is started earlier by overlap, so it's stitched with previous one after both settled on the same route
+		double overlap = 2 * gctx.ctx.config.maxStepApproximation;
+		double totalDist = gpxPoints.get(gpxPoints.size() - 1).cumDist;
+		int chunksCount = (int) Math.ceil(totalDist / gpxChunkDistance);
+		final List<List<GpxPoint>> chunks = new ArrayList<List<GpxPoint>>(chunksCount);
+		int[] chunkOffsets = new int[chunksCount];
+		for (int c = 0; c < chunksCount; c++) {
+			int from = c == 0 ? 0 : indexOfGpxDistance(gpxPoints, c * gpxChunkDistance - overlap);
+			int to = c == chunksCount - 1 ? gpxPoints.size() - 1 : indexOfGpxDistance(gpxPoints, (c + 1) * gpxChunkDistance);
+			chunkOffsets[c] = from;
+			List<GpxPoint> chunk = new ArrayList<GpxPoint>(to - from + 1);
+			for (int k = from; k <= to; k++) {
+				GpxPoint p = new GpxPoint(gpxPoints.get(k));
+				p.ind = k - from;
+				chunk.add(p);
+			}
+			chunks.add(chunk);
+		}
+		final GpxRouteApproximation[] chunkResults = new GpxRouteApproximation[chunksCount];
+		final RouteCalculationProgress[] chunkProgress = new RouteCalculationProgress[chunksCount];
+		for (int i = 0; i < chunksCount; i++) {
+			chunkProgress[i] = new RouteCalculationProgress();
+			chunkProgress[i].trace = gctx.ctx.calculationProgress.trace;
+		}
+		final AtomicInteger nextChunk = new AtomicInteger();
+		int threads = Math.min(gpxParallelism, chunksCount);
+		ExecutorService executor = gpxExecutor != null ? gpxExecutor : Executors.newFixedThreadPool(threads);
+		boolean finished = false;
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int i = 0; i < threads; i++) {
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						approximateGpxChunks(gctx, chunks, nextChunk, chunkResults, chunkProgress);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> f : futures) {
+				waitParallelTask(gctx.ctx, f, chunkProgress);
+			}
+			finished = true;
+		} finally {
+			if (!finished) {
+				for (RouteCalculationProgress p : chunkProgress) {
+					p.isCancelled = true;
+				}
+			}
+			if (gpxExecutor == null) {
+				executor.shutdown();
+			}
+		}
+		for (int c = 0; c < chunksCount; c++) {
+			gctx.ctx.calculationProgress.addLegProgress(chunkProgress[c]);
+			if (chunkResults[c] != null) {
+				gctx.routeCalculations += chunkResults[c].routeCalculations;
+				gctx.routePointsSearched += chunkResults[c].routePointsSearched;
+				gctx.routeDistCalculations += chunkResults[c].routeDistCalculations;
+			}
+		}
+		stitchGpxChunks(gpxPoints, chunks, chunkOffsets);
+		gctx.ctx.calculationProgress.approximatedDistance = (float) totalDist;
+	}
+
+	private void approximateGpxChunks(GpxRouteApproximation gctx, List<List<GpxPoint>> chunks, AtomicInteger nextChunk,
+			GpxRouteApproximation[] chunkResults, RouteCalculationProgress[] chunkProgress)
+			throws IOException, InterruptedException {
+		RoutingContext threadCtx = gctx.ctx.copyForThread();
+		try {
+			int chunk;
+			while ((chunk = nextChunk.getAndIncrement()) < chunks.size()) {
+				if (chunkProgress[chunk].isCancelled) {
+					break;
+				}
+				threadCtx.calculationProgress = chunkProgress[chunk];
+				GpxRouteApproximation chunkCtx = new GpxRouteApproximation(threadCtx);
+				approximateGpxPoints(chunkCtx, chunks.get(chunk), chunks.get(chunk).get(0), null);
+				threadCtx.unloadAllData();
+				chunkResults[chunk] = chunkCtx;
+			}
+		} finally {
+			threadCtx.closeThreadCopy();
+		}
+	}
+
+	// next chunk is joined at the first road point (same road, direction and point) which routes of previous chunks
+	// and of next chunk both pass in the overlap: previous route is cut at that point and next chunk route starts from it.
+	// Only if routes don't share any road point, next chunk steps are taken after the last step of previous chunks
+	// (gap is displayed as straight line)
+	static void stitchGpxChunks(List<GpxPoint> gpxPoints, List<List<GpxPoint>> chunks, int[] chunkOffsets) {
+		int lastTarget = 0;
+		for (int c = 0; c < chunks.size(); c++) {
+			List<GpxPoint> chunk = chunks.get(c);
+			int offset = chunkOffsets[c];
+			int next = c == 0 ? -1 : joinGpxChunk(gpxPoints, chunk, offset, lastTarget);
+			if (next == -1) {
+				clearGpxRoute(gpxPoints, lastTarget);
+				next = 0;
+				while (next < chunk.size() && chunk.get(next).ind + offset < lastTarget) {
+					next++;
+				}
+			}
+			for (int k = next; k < chunk.size(); ) {
+				GpxPoint p = chunk.get(k);
+				if (p.routeToTarget != null) {
+					GpxPoint gp = gpxPoints.get(p.ind + offset);
+					gp.pnt = p.pnt;
+					gp.routeToTarget = p.routeToTarget;
+					gp.stepBackRoute = p.stepBackRoute;
+					gp.targetInd = p.targetInd + offset;
+					lastTarget = gp.targetInd;
+					k = p.targetInd;
 				} else {
-					prev = start;
+					k++;
 				}
-				start = next;
-				if (gctx.ctx.calculationProgress != null && start != null) {
-					gctx.ctx.calculationProgress.approximatedDistance = (float) start.cumDist;
+			}
+		}
+	}
+
+	// returns index of chunk point to continue with after joined step or -1 if routes have no common road point
+	private static int joinGpxChunk(List<GpxPoint> gpxPoints, List<GpxPoint> chunk, int offset, int lastTarget) {
+		List<GpxPoint> prevSteps = new ArrayList<GpxPoint>();
+		for (int i = 0; i < lastTarget; ) {
+			GpxPoint p = gpxPoints.get(i);
+			if (p.routeToTarget != null) {
+				if (p.targetInd > offset) {
+					prevSteps.add(p);
 				}
+				i = p.targetInd;
+			} else {
+				i++;
 			}
-			if (gctx.ctx.calculationProgress != null) {
-				gctx.ctx.calculationProgress.timeToCalculate = System.nanoTime() - timeToCalculate;
+		}
+		for (int k = 0; k < chunk.size() && chunk.get(k).ind + offset < lastTarget; ) {
+			GpxPoint p = chunk.get(k);
+			if (p.routeToTarget == null) {
+				k++;
+				continue;
+			}
+			for (int ns = 0; ns < p.routeToTarget.size(); ns++) {
+				RouteSegmentResult next = p.routeToTarget.get(ns);
+				for (GpxPoint prev : prevSteps) {
+					for (int ps = 0; ps < prev.routeToTarget.size(); ps++) {
+						RouteSegmentResult seg = prev.routeToTarget.get(ps);
+						int point = getCommonRoadPoint(seg, next);
+						if (point == -1) {
+							continue;
+						}
+						boolean prevEmpty = ps == 0 && point == seg.getStartPointIndex();
+						// gpx point to hold joined step: after previous step start or instead of it, if it is cut fully
+						int ind = prevEmpty ? prev.ind : Math.max(p.ind + offset, prev.ind + 1);
+						if (ind >= p.targetInd + offset) {
+							continue;
+						}
+						if (!prevEmpty) {
+							List<RouteSegmentResult> cut = new ArrayList<RouteSegmentResult>(prev.routeToTarget.subList(0, ps));
+							if (point != seg.getStartPointIndex()) {
+								seg.setEndPointIndex(point);
+								cut.add(seg);
+							}
+							prev.routeToTarget = cut;
+							prev.stepBackRoute = null;
+							prev.targetInd = ind;
+						}
+						clearGpxRoute(gpxPoints, prevEmpty ? prev.ind : prev.ind + 1);
+						List<RouteSegmentResult> rest = new ArrayList<RouteSegmentResult>(
+								p.routeToTarget.subList(ns, p.routeToTarget.size()));
+						next.setStartPointIndex(point);
+						GpxPoint gp = gpxPoints.get(ind);
+						gp.pnt = new RouteSegmentPoint(next.getObject(), point, 0);
+						gp.routeToTarget = rest;
+						gp.stepBackRoute = p.stepBackRoute;
+						gp.targetInd = p.targetInd + offset;
+						return p.targetInd;
+					}
+				}
 			}
-			gctx.ctx.deleteNativeRoutingContext();
-			calculateGpxRoute(gctx, gpxPoints);
-			if (!gctx.result.isEmpty() && !gctx.ctx.calculationProgress.isCancelled) {
-				RouteResultPreparation.printResults(gctx.ctx, gpxPoints.get(0).loc, gpxPoints.get(gpxPoints.size() - 1).loc, gctx.result);
-				log.info(gctx);
+			k = p.targetInd;
+		}
+		return -1;
+	}
+
+	// first point of next segment on the same road in the same direction which previous segment passes before its end
+	private static int getCommonRoadPoint(RouteSegmentResult prev, RouteSegmentResult next) {
+		if (prev.getObject().getId() != next.getObject().getId()
+				|| prev.isForwardDirection() != next.isForwardDirection()) {
+			return -1;
+		}
+		int d = next.isForwardDirection() ? 1 : -1;
+		for (int i = next.getStartPointIndex(); i != next.getEndPointIndex(); i += d) {
+			if ((i - prev.getStartPointIndex()) * d >= 0 && (prev.getEndPointIndex() - i) * d > 0) {
+				return i;
 			}
 		}
-		if (resultMatcher != null) {
-			resultMatcher.publish(gctx.ctx.calculationProgress.isCancelled ? null : gctx);
+		return -1;
+	}
+
+	private static void clearGpxRoute(List<GpxPoint> gpxPoints, int from) {
+		for (int k = from; k < gpxPoints.size(); k++) {
+			GpxPoint p = gpxPoints.get(k);
+			p.routeToTarget = null;
+			p.stepBackRoute = null;
+			p.targetInd = -1;
+			p.straightLine = false;
 		}
-		return gctx;
+	}
+
+	// index of the first point with cumulative distance not less than dist (or the last point)
+	private static int indexOfGpxDistance(List<GpxPoint> gpxPoints, double dist) {
+		int lo = 0;
+		int hi = gpxPoints.size() - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (gpxPoints.get(mid).cumDist < dist) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
 	}
 
 	private boolean isRouteCloseToGpxPoints(float minPointApproximation, List<GpxPoint> gpxPoints,
@@ -490,20 +867,30 @@ public class RoutePlannerFrontEnd {
 
 	public List<GpxPoint> generateGpxPoints(GpxRouteApproximation gctx, LocationsHolder locationsHolder) {
 		List<GpxPoint> gpxPoints = new ArrayList<>(locationsHolder.getSize());
-		GpxPoint prev = null;
 		for(int i = 0; i < locationsHolder.getSize(); i++) {
-			GpxPoint p = new GpxPoint();
-			p.ind = i;
-			p.loc = locationsHolder.getLatLon(i);
-			if (prev != null) {
-				p.cumDist = MapUtils.getDistance(p.loc, prev.loc) + prev.cumDist;
-			}
-			gpxPoints.add(p);
-			gctx.routeDistance = (int) p.cumDist;
-			prev = p;
+			appendGpxPoint(gctx, gpxPoints, locationsHolder.getLatLon(i));
 		}
 		return gpxPoints;
 	}
+
+	// appends recorded points to the end of track to continue approximation with extendGpxRoute
+	public void appendGpxPoints(GpxRouteApproximation gctx, List<GpxPoint> gpxPoints, List<LatLon> locations) {
+		for (LatLon l : locations) {
+			appendGpxPoint(gctx, gpxPoints, l);
+		}
+	}
+
+	private void appendGpxPoint(GpxRouteApproximation gctx, List<GpxPoint> gpxPoints, LatLon loc) {
+		GpxPoint p = new GpxPoint();
+		p.ind = gpxPoints.size();
+		p.loc = loc;
+		if (p.ind > 0) {
+			GpxPoint prev = gpxPoints.get(p.ind - 1);
+			p.cumDist = MapUtils.getDistance(p.loc, prev.loc) + prev.cumDist;
+		}
+		gpxPoints.add(p);
+		gctx.routeDistance = (int) p.cumDist;
+	}
  
 	private void cleanupResultAndAddTurns(GpxRouteApproximation gctx) {
 		// cleanup double joints
@@ -782,7 +1169,7 @@ public class RoutePlannerFrontEnd {
 			}
 		}
 		if (ctx.calculationMode == RouteCalculationMode.COMPLEX && routeDirection == null
-				&& maxDistance > RoutingConfiguration.DEVIATION_RADIUS * 6) {
+				&& maxDistance > RoutingConfiguration.DEVIATION_RADIUS * 6 && !isContractionHierarchyUsed(ctx)) {
 			ctx.calculationProgress.totalIterations++;
 			RoutingContext nctx = buildRoutingContext(ctx.config, ctx.nativeLib, ctx.getMaps(), RouteCalculationMode.BASE);
 			nctx.calculationProgress = ctx.calculationProgress;
@@ -928,7 +1315,8 @@ public class RoutePlannerFrontEnd {
 
 	private List<RouteSegmentResult> searchRouteInternalPrepare(final RoutingContext ctx, RouteSegmentPoint start, RouteSegmentPoint end,
 	                                                            PrecalculatedRouteDirection routeDirection) throws IOException, InterruptedException {
-		RouteSegmentPoint recalculationEnd = getRecalculationEnd(ctx);
+		// kept reverse search tree covers previous route better than its remaining part
+		RouteSegmentPoint recalculationEnd = isReverseSearchTreeUsed(ctx, end) ? null : getRecalculationEnd(ctx);
 		if (recalculationEnd != null) {
 			ctx.initStartAndTargetPoints(start, recalculationEnd);
 		} else {
@@ -948,6 +1336,13 @@ public class RoutePlannerFrontEnd {
 			ctx.targetSegmentInd  = end.segStart;
 			return runNativeRouting(ctx, recalculationEnd);
 		} else {
+			if (recalculationEnd == null && isContractionHierarchyUsed(ctx)) {
+				List<RouteSegmentResult> res = contractionHierarchy.searchRoute(ctx, start, end);
+				if (res != null) {
+					return res;
+				}
+				log.info("Route is not found by contraction hierarchy, fallback to A*");
+			}
 			refreshProgressDistance(ctx);
 			// Split into 2 methods to let GC work in between
 			ctx.finalRouteSegment = new BinaryRoutePlanner().searchRouteInternal(ctx, start, end, recalculationEnd);
@@ -1105,6 +1500,12 @@ public class RoutePlannerFrontEnd {
 				}
 			}
 		}
+		if (legsParallelism > 1 && restPartRecalculatedRoute == null && ctx.nativeLib == null && ctx.visitor == null
+				&& ctx.config.getDirectionPoints() == null) {
+			List<RouteSegmentResult> results = searchRouteLegsParallel(ctx, points, routeDirection);
+			ctx.unloadAllData();
+			return results;
+		}
 		List<RouteSegmentResult> results = new ArrayList<RouteSegmentResult>();
 		for (int i = 0; i < points.size() - 1; i++) {
 			RoutingContext local = new RoutingContext(ctx);
@@ -1113,8 +1514,10 @@ public class RoutePlannerFrontEnd {
 					local.previouslyCalculatedRoute = firstPartRecalculatedRoute;
 				}
 			}
+			local.reverseSearchTree = ctx.reverseSearchTree;
 			
 			List<RouteSegmentResult> res = searchRouteInternalPrepare(local, points.get(i), points.get(i + 1), routeDirection);
+			ctx.reverseSearchTree = local.reverseSearchTree;
 			makeStartEndPointsPrecise(res, points.get(i).getPreciseLatLon(), points.get(i + 1).getPreciseLatLon(), null);
 			results.addAll(res);
 			ctx.routingTime += local.routingTime;
@@ -1129,6 +1532,138 @@ public class RoutePlannerFrontEnd {
 
 	}
 
+	// search modifies start / end points and their candidates, so every leg calculated in parallel uses own copies
+	// (intermediate point is end of one leg and start of the next one)
+	private static RouteSegmentPoint copyLegPoint(RouteSegmentPoint pnt) {
+		RouteSegmentPoint cp = new RouteSegmentPoint(pnt);
+		if (pnt.others != null) {
+			cp.others = new ArrayList<RouteSegmentPoint>(pnt.others.size());
+			for (RouteSegmentPoint o : pnt.others) {
+				cp.others.add(o == pnt ? cp : new RouteSegmentPoint(o));
+			}
+		}
+		return cp;
+	}
+
+	private List<RouteSegmentResult> searchRouteLegsParallel(final RoutingContext ctx, final List<RouteSegmentPoint> points,
+			final PrecalculatedRouteDirection routeDirection) throws IOException, InterruptedException {
+		ctx.prepareThreadCopies();
+		int legs = points.size() - 1;
+		// every leg is set by one thread only (list isn't resized), results are read after futures are done
+		final List<List<RouteSegmentResult>> legResults = new ArrayList<List<RouteSegmentResult>>(
+				Collections.<List<RouteSegmentResult>>nCopies(legs, null));
+		final float[] legRoutingTime = new float[legs];
+		final RouteCalculationProgress[] legProgress = new RouteCalculationProgress[legs];
+		for (int i = 0; i < legs; i++) {
+			legProgress[i] = new RouteCalculationProgress();
+			legProgress[i].trace = ctx.calculationProgress.trace;
+		}
+		final AtomicInteger nextLeg = new AtomicInteger();
+		int threads = Math.min(legsParallelism, legs);
+		ExecutorService executor = legsExecutor != null ? legsExecutor : Executors.newFixedThreadPool(threads);
+		ctx.calculationProgress.parallelLegs = legProgress;
+		boolean finished = false;
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int i = 0; i < threads; i++) {
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						searchRouteLegs(ctx, points, routeDirection, nextLeg, legResults, legRoutingTime, legProgress);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> f : futures) {
+				waitParallelTask(ctx, f, legProgress);
+			}
+			finished = true;
+		} finally {
+			if (!finished) {
+				for (RouteCalculationProgress p : legProgress) {
+					p.isCancelled = true;
+				}
+			}
+			if (legsExecutor == null) {
+				executor.shutdown();
+			}
+			ctx.calculationProgress.parallelLegs = null;
+		}
+		// stitch legs in order, so result is the same as for sequential calculation
+		List<RouteSegmentResult> results = new ArrayList<RouteSegmentResult>();
+		for (int i = 0; i < legs; i++) {
+			ctx.calculationProgress.addLegProgress(legProgress[i]);
+			if (legResults.get(i) != null) {
+				results.addAll(legResults.get(i));
+			}
+			ctx.routingTime += legRoutingTime[i];
+		}
+		return results;
+	}
+
+	private void searchRouteLegs(RoutingContext ctx, List<RouteSegmentPoint> points, PrecalculatedRouteDirection routeDirection,
+			AtomicInteger nextLeg, List<List<RouteSegmentResult>> legResults, float[] legRoutingTime,
+			RouteCalculationProgress[] legProgress) throws IOException, InterruptedException {
+		RoutingContext threadCtx = ctx.copyForThread();
+		BinaryMapIndexReader[] readers = threadCtx.getMaps();
+		try {
+			int leg;
+			while ((leg = nextLeg.getAndIncrement()) < legResults.size()) {
+				if (legProgress[leg].isCancelled) {
+					break;
+				}
+				long timeToCalculate = System.nanoTime();
+				RoutingContext local = new RoutingContext(threadCtx, threadCtx.config, readers);
+				local.calculationProgress = legProgress[leg];
+				RouteSegmentPoint start = points.get(leg);
+				RouteSegmentPoint end = points.get(leg + 1);
+				List<RouteSegmentResult> res = searchRouteInternalPrepare(local, copyLegPoint(start), copyLegPoint(end),
+						routeDirection);
+				makeStartEndPointsPrecise(res, start.getPreciseLatLon(), end.getPreciseLatLon(), null);
+				local.unloadAllData();
+				legResults.set(leg, res);
+				legRoutingTime[leg] = local.routingTime;
+				local.calculationProgress.timeToCalculate = System.nanoTime() - timeToCalculate;
+			}
+		} finally {
+			threadCtx.closeThreadCopy();
+		}
+	}
+
+	// waits for task calculating part of route in another thread, cancellation of route is passed to its parts
+	static void waitParallelTask(RoutingContext ctx, Future<Void> future, RouteCalculationProgress[] legProgress)
+			throws IOException, InterruptedException {
+		while (true) {
+			try {
+				future.get(100, TimeUnit.MILLISECONDS);
+				return;
+			} catch (TimeoutException e) {
+				if (ctx.calculationProgress.isCancelled) {
+					for (RouteCalculationProgress p : legProgress) {
+						p.isCancelled = true;
+					}
+				}
+			} catch (ExecutionException e) {
+				rethrowTaskException(e);
+			}
+		}
+	}
+
+	// rethrows exception of task calculating part of route in another thread
+	static void rethrowTaskException(ExecutionException e) throws IOException, InterruptedException {
+		Throwable cause = e.getCause();
+		if (cause instanceof IOException) {
+			throw (IOException) cause;
+		} else if (cause instanceof InterruptedException) {
+			throw (InterruptedException) cause;
+		} else if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		} else if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		throw new IOException(cause);
+	}
+
 	private void pringGC(final RoutingContext ctx, boolean before) {
 		if (RoutingContext.SHOW_GC_SIZE && before) {
 			long h1 = RoutingContext.runGCUsedMemory();
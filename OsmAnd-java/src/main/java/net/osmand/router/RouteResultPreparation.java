@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -15,6 +16,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.xmlpull.v1.XmlPullParser;
@@ -24,6 +31,7 @@ import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.set.hash.TIntHashSet;
 import net.osmand.PlatformUtil;
 import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteTypeRule;
 import net.osmand.binary.RouteDataObject;
 import net.osmand.data.LatLon;
@@ -51,14 +59,27 @@ public class RouteResultPreparation {
 	public static final int SHIFT_ID = 6;
 	protected static final Log LOG = PlatformUtil.getLog(RouteResultPreparation.class);
 	public static final String UNMATCHED_HIGHWAY_TYPE = "unmatched";
+	// min number of segments in chunk prepared in parallel
+	static final int MIN_PARALLEL_SEGMENTS = 256;
+	private static ExecutorService sharedPreparationExecutor;
 	/**
 	 * Helper method to prepare final result 
 	 */
 	List<RouteSegmentResult> prepareResult(RoutingContext ctx, FinalRouteSegment finalSegment) throws IOException {
+		long time = System.nanoTime();
 		List<RouteSegmentResult> result  = convertFinalSegmentToResults(ctx, finalSegment);
+		tracePhase(ctx, "convert", time);
 		prepareResult(ctx, result, false);
 		return result;
 	}
+
+	// adds phase to routing trace and returns start time of the next phase
+	private static long tracePhase(RoutingContext ctx, String phase, long startTime) {
+		if (ctx.calculationProgress != null && ctx.calculationProgress.trace != null) {
+			ctx.calculationProgress.trace.complete(RoutingTrace.CATEGORY_PREPARATION, phase, null, startTime);
+		}
+		return System.nanoTime();
+	}
 	
 	private static class CombineAreaRoutePoint {
 		int x31;
@@ -172,6 +193,7 @@ public class RouteResultPreparation {
 	}
 
 	public List<RouteSegmentResult> prepareResult(RoutingContext ctx, List<RouteSegmentResult> result, boolean recalculation) throws IOException {
+		long time = System.nanoTime();
 		for (int i = 0; i < result.size(); i++) {
 			RouteDataObject road = result.get(i).getObject();
 			checkAndInitRouteRegion(ctx, road);
@@ -182,12 +204,16 @@ public class RouteResultPreparation {
 		}
 		combineWayPointsForAreaRouting(ctx, result);
 		validateAllPointsConnected(result);
+		time = tracePhase(ctx, "combineAreaPoints", time);
 		splitRoadsAndAttachRoadSegments(ctx, result, recalculation);
+		time = tracePhase(ctx, "attachRoadSegments", time);
 		for (int i = 0; i < result.size(); i++) {
 			filterMinorStops(result.get(i));
 		}
 		calculateTimeSpeed(ctx, result);
+		time = tracePhase(ctx, "timeSpeed", time);
 		prepareTurnResults(ctx, result);
+		tracePhase(ctx, "turns", time);
 		return result;
 	}
 	
@@ -227,11 +253,35 @@ public class RouteResultPreparation {
 		return seg;
 	}
 
-	public void prepareTurnResults(RoutingContext ctx, List<RouteSegmentResult> result) {
-		for (int i = 0; i < result.size(); i ++) {
-			TurnType turnType = getTurnInfo(result, i, ctx.leftSideNavigation);
-			result.get(i).setTurnType(turnType);
+	public void prepareTurnResults(RoutingContext ctx, final List<RouteSegmentResult> result) {
+		final boolean leftSide = ctx.leftSideNavigation;
+		// turn of segment depends on neighbour segments and lanes of previous turn
+		int chunks = runSegmentsTask(ctx, result, new SegmentsTask() {
+			@Override
+			public void run(VehicleRouter router, int start, int end) {
+				if (start > 0) {
+					// previous turn is calculated by another chunk, first turn is calculated after all chunks
+					result.get(start).setTurnType(null);
+					start++;
+				}
+				for (int i = start; i < end; i++) {
+					TurnType turnType = getTurnInfo(result, i, leftSide);
+					result.get(i).setTurnType(turnType);
+				}
+			}
+		});
+		for (int c = 1; c < chunks; c++) {
+			// recalculate turns while lanes used by next turn differ from lanes used in chunk
+			for (int i = chunkStart(result.size(), chunks, c); i < result.size(); i++) {
+				TurnType used = result.get(i).getTurnType();
+				TurnType turnType = getTurnInfo(result, i, leftSide);
+				result.get(i).setTurnType(turnType);
+				if (sameLanes(used, turnType)) {
+					break;
+				}
+			}
 		}
+		// merging of turns is sequential
 		
 		determineTurnsToMerge(ctx.leftSideNavigation, result);
 		ignorePrecedingStraightsOnSameIntersection(ctx.leftSideNavigation, result);
@@ -290,18 +340,34 @@ public class RouteResultPreparation {
 	// reference speed 30ms (108kmh) - 2ms (7kmh)
 	private static final double SLOW_DOWN_SPEED = 2;
 	
-	public static void calculateTimeSpeed(RoutingContext ctx, List<RouteSegmentResult> result) {
+	public static void calculateTimeSpeed(RoutingContext ctx, final List<RouteSegmentResult> result) {
 		//for Naismith/Scarf
-		boolean usePedestrianHeight = ((((GeneralRouter) ctx.getRouter()).getProfile() == GeneralRouterProfile.PEDESTRIAN) && ((GeneralRouter) ctx.getRouter()).getHeightObstacles());
-		double scarfSeconds = 7.92f / ctx.getRouter().getDefaultSpeed();
+		final boolean usePedestrianHeight = ((((GeneralRouter) ctx.getRouter()).getProfile() == GeneralRouterProfile.PEDESTRIAN) && ((GeneralRouter) ctx.getRouter()).getHeightObstacles());
+		if (usePedestrianHeight) {
+			// height arrays are cached in roads shared by segments
+			for (int i = 0; i < result.size(); i++) {
+				result.get(i).getObject().calculateHeightArray();
+			}
+		}
+		runSegmentsTask(ctx, result, new SegmentsTask() {
+			@Override
+			public void run(VehicleRouter router, int start, int end) {
+				calculateTimeSpeed(router, usePedestrianHeight, result, start, end);
+			}
+		});
+	}
 
-		for (int i = 0; i < result.size(); i++) {
+	private static void calculateTimeSpeed(VehicleRouter router, boolean usePedestrianHeight,
+			List<RouteSegmentResult> result, int start, int end) {
+		double scarfSeconds = 7.92f / router.getDefaultSpeed();
+
+		for (int i = start; i < end; i++) {
 			RouteSegmentResult rr = result.get(i);
 			RouteDataObject road = rr.getObject();
 			double distOnRoadToPass = 0;
-			double speed = ctx.getRouter().defineVehicleSpeed(road);
+			double speed = router.defineVehicleSpeed(road);
 			if (speed == 0) {
-				speed = ctx.getRouter().getDefaultSpeed();
+				speed = router.getDefaultSpeed();
 			} else {
 				if (speed > SLOW_DOWN_SPEED_THRESHOLD) {
 					speed = speed - (speed / SLOW_DOWN_SPEED_THRESHOLD - 1) * SLOW_DOWN_SPEED;
@@ -323,7 +389,7 @@ public class RouteResultPreparation {
 				double d = measuredDist(road.getPoint31XTile(j), road.getPoint31YTile(j), road.getPoint31XTile(next),
 						road.getPoint31YTile(next));
 				distance += d;
-				double obstacle = ctx.getRouter().defineObstacle(road, j, plus);
+				double obstacle = router.defineObstacle(road, j, plus);
 				if (obstacle < 0) {
 					obstacle = 0;
 				}
@@ -446,6 +512,96 @@ public class RouteResultPreparation {
 		}
 	}
 
+	private static boolean sameLanes(TurnType t1, TurnType t2) {
+		if (t1 == null || t2 == null) {
+			return t1 == t2;
+		}
+		return Arrays.equals(t1.getLanes(), t2.getLanes());
+	}
+
+	interface SegmentsTask {
+
+		void run(VehicleRouter router, int start, int end);
+	}
+
+	/**
+	 * Runs segment local task over result. Long routes are split into chunks processed in parallel
+	 * ({@link RoutingConfiguration#preparationParallelism}), every chunk uses router with own caches.
+	 * @return number of chunks
+	 */
+	static int runSegmentsTask(RoutingContext ctx, final List<RouteSegmentResult> result, final SegmentsTask task) {
+		final RoutingConfiguration config = ctx.config;
+		final int chunks = Math.min(config.preparationParallelism, result.size() / MIN_PARALLEL_SEGMENTS);
+		if (chunks <= 1) {
+			task.run(ctx.getRouter(), 0, result.size());
+			return 1;
+		}
+		// router rules are shared by router copies, so all types are registered before
+		Set<RouteRegion> regions = new HashSet<RouteRegion>();
+		for (RouteSegmentResult r : result) {
+			if (r.getObject().region != null && regions.add(r.getObject().region)) {
+				config.router.registerRouteRegionTypes(r.getObject().region);
+			}
+		}
+		ExecutorService executor = config.preparationExecutor != null ? config.preparationExecutor
+				: getSharedPreparationExecutor();
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		try {
+			for (int c = 1; c < chunks; c++) {
+				final int start = chunkStart(result.size(), chunks, c);
+				final int end = chunkStart(result.size(), chunks, c + 1);
+				futures.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						task.run(config.router.copyWithOwnCaches(), start, end);
+					}
+				}));
+			}
+			task.run(ctx.getRouter(), 0, chunkStart(result.size(), chunks, 1));
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Route preparation was interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+					: new IllegalStateException(e.getCause());
+		} finally {
+			for (Future<?> f : futures) {
+				f.cancel(true);
+			}
+		}
+		return chunks;
+	}
+
+	/**
+	 * Executor used when {@link RoutingConfiguration#preparationExecutor} is not set. It is created on first use
+	 * and shared by all routes, idle daemon threads are stopped after 60 seconds.
+	 */
+	private static synchronized ExecutorService getSharedPreparationExecutor() {
+		if (sharedPreparationExecutor == null) {
+			sharedPreparationExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "RoutePreparation-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return sharedPreparationExecutor;
+	}
+
+	private static int chunkStart(int size, int chunks, int chunk) {
+		return (int) ((long) size * chunk / chunks);
+	}
+
 	private void checkAndInitRouteRegion(RoutingContext ctx, RouteDataObject road) throws IOException {
 		BinaryMapIndexReader reader = ctx.reverseMap.get(road.region);
 		if (reader != null) {
@@ -594,6 +750,9 @@ public class RouteResultPreparation {
 		for (String msg : routeInfo) {
 			println(msg);
 		}
+		if (ctx.calculationProgress != null && ctx.calculationProgress.trace != null) {
+			println(ctx.calculationProgress.trace.toString());
+		}
 //		calculateStatistics(result);
 	}
 
@@ -2046,6 +2205,30 @@ public class RouteResultPreparation {
 	}
 
 	
+	/**
+	 * Attaches roads to prepared (already split) route again, e.g. after attached roads were cleared to save memory.
+	 */
+	void attachRoadSegments(RoutingContext ctx, List<RouteSegmentResult> result) throws IOException {
+		for (int i = 0; i < result.size(); i++) {
+			if (ctx.checkIfMemoryLimitCritical(ctx.config.memoryLimitation)) {
+				ctx.unloadUnusedTiles(ctx.config.memoryLimitation);
+			}
+			RouteSegmentResult rr = result.get(i);
+			rr.clearAttachedRoutes();
+			boolean plus = rr.getStartPointIndex() < rr.getEndPointIndex();
+			int next;
+			for (int j = rr.getStartPointIndex(); j != rr.getEndPointIndex(); j = next) {
+				next = plus ? j + 1 : j - 1;
+				if (j == rr.getStartPointIndex()) {
+					attachRoadSegments(ctx, result, i, j, plus, false);
+				}
+				if (next != rr.getEndPointIndex()) {
+					attachRoadSegments(ctx, result, i, next, plus, false);
+				}
+			}
+		}
+	}
+
 	private void attachRoadSegments(RoutingContext ctx, List<RouteSegmentResult> result, int routeInd, int pointInd, boolean plus, boolean recalculation) throws IOException {
 		RouteSegmentResult rr = result.get(routeInd);
 		RouteDataObject road = rr.getObject();
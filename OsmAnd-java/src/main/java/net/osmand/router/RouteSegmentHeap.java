@@ -0,0 +1,188 @@
+package net.osmand.router;
+
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+
+import java.util.Arrays;
+
+/**
+ * Indexed d-ary min heap of route segments used as A* open set by {@link BinaryRoutePlanner}.
+ * Priority f(x) = g(x) + heuristicCoefficient * h(x) is calculated once when segment is added and stored
+ * in primitive array, position of segment in heap is stored in segment itself (RouteSegment.heapIndex),
+ * so segment added again with lower priority replaces its queued entry (decrease-key) instead of
+ * being queued twice, and queued segment could be removed in O(log n).
+ * One segment should be queued only in one heap at the same time (forward and reverse search use different segments).
+ */
+public class RouteSegmentHeap {
+
+	private static final int ARITY = 4;
+	private static final int DEFAULT_CAPACITY = 64;
+
+	private final float heuristicCoefficient;
+	private float[] keys;
+	private RouteSegment[] segments;
+	private int size;
+
+	public RouteSegmentHeap(float heuristicCoefficient) {
+		this(DEFAULT_CAPACITY, heuristicCoefficient);
+	}
+
+	public RouteSegmentHeap(int capacity, float heuristicCoefficient) {
+		capacity = Math.max(capacity, ARITY);
+		this.heuristicCoefficient = heuristicCoefficient;
+		this.keys = new float[capacity];
+		this.segments = new RouteSegment[capacity];
+	}
+
+	public float priority(RouteSegment segment) {
+		return segment.distanceFromStart + heuristicCoefficient * segment.distanceToEnd;
+	}
+
+	/**
+	 * Adds segment or decreases priority of already queued segment.
+	 * @return false if segment is already queued with lower or equal priority
+	 */
+	public boolean add(RouteSegment segment) {
+		float key = priority(segment);
+		int ind = indexOf(segment);
+		if (ind >= 0) {
+			if (key >= keys[ind]) {
+				return false;
+			}
+			keys[ind] = key;
+			siftUp(ind);
+			return true;
+		}
+		if (size == keys.length) {
+			int capacity = size + (size >> 1);
+			keys = Arrays.copyOf(keys, capacity);
+			segments = Arrays.copyOf(segments, capacity);
+		}
+		keys[size] = key;
+		segments[size] = segment;
+		segment.heapIndex = size;
+		siftUp(size++);
+		return true;
+	}
+
+	public RouteSegment peek() {
+		return size == 0 ? null : segments[0];
+	}
+
+	public float peekPriority() {
+		if (size == 0) {
+			throw new IllegalStateException("Heap is empty");
+		}
+		return keys[0];
+	}
+
+	public RouteSegment poll() {
+		if (size == 0) {
+			return null;
+		}
+		RouteSegment res = segments[0];
+		removeAt(0);
+		return res;
+	}
+
+	public boolean contains(RouteSegment segment) {
+		return indexOf(segment) >= 0;
+	}
+
+	public boolean remove(RouteSegment segment) {
+		int ind = indexOf(segment);
+		if (ind < 0) {
+			return false;
+		}
+		removeAt(ind);
+		return true;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			segments[i].heapIndex = -1;
+			segments[i] = null;
+		}
+		size = 0;
+	}
+
+	private int indexOf(RouteSegment segment) {
+		int ind = segment.heapIndex;
+		if (ind >= 0 && ind < size && segments[ind] == segment) {
+			return ind;
+		}
+		return -1;
+	}
+
+	private void removeAt(int ind) {
+		segments[ind].heapIndex = -1;
+		int last = --size;
+		if (ind != last) {
+			RouteSegment moved = segments[last];
+			float key = keys[last];
+			segments[ind] = moved;
+			keys[ind] = key;
+			moved.heapIndex = ind;
+			siftDown(ind);
+			if (segments[ind] == moved) {
+				siftUp(ind);
+			}
+		}
+		segments[last] = null;
+	}
+
+	private void siftUp(int ind) {
+		RouteSegment segment = segments[ind];
+		float key = keys[ind];
+		while (ind > 0) {
+			int parent = (ind - 1) / ARITY;
+			if (keys[parent] <= key) {
+				break;
+			}
+			keys[ind] = keys[parent];
+			segments[ind] = segments[parent];
+			segments[ind].heapIndex = ind;
+			ind = parent;
+		}
+		keys[ind] = key;
+		segments[ind] = segment;
+		segment.heapIndex = ind;
+	}
+
+	private void siftDown(int ind) {
+		RouteSegment segment = segments[ind];
+		float key = keys[ind];
+		while (true) {
+			int child = ind * ARITY + 1;
+			if (child >= size) {
+				break;
+			}
+			int end = Math.min(child + ARITY, size);
+			int min = child;
+			float minKey = keys[child];
+			for (int c = child + 1; c < end; c++) {
+				if (keys[c] < minKey) {
+					min = c;
+					minKey = keys[c];
+				}
+			}
+			if (key <= minKey) {
+				break;
+			}
+			keys[ind] = minKey;
+			segments[ind] = segments[min];
+			segments[ind].heapIndex = ind;
+			ind = min;
+		}
+		keys[ind] = key;
+		segments[ind] = segment;
+		segment.heapIndex = ind;
+	}
+}
@@ -439,6 +439,10 @@ public class RouteSegmentResult implements StringExternalizable<RouteDataBundle>
 		if(r.getObject().isRoadDeleted()) {
 			return;
 		}
+		if (attachedRoutes == null) {
+			// attached routes were cleared
+			updateCapacity();
+		}
 		int st = Math.abs(roadIndex - startPointIndex);
 		if(attachedRoutes[st] == null) {
 			attachedRoutes[st] = new ArrayList<RouteSegmentResult>();
@@ -471,6 +475,9 @@ public class RouteSegmentResult implements StringExternalizable<RouteDataBundle>
 	}
 
 	public List<RouteSegmentResult> getAttachedRoutes(int routeInd) {
+		if (attachedRoutes == null) {
+			return Collections.emptyList();
+		}
 		int st = Math.abs(routeInd - startPointIndex);
 		List<RouteSegmentResult> list = attachedRoutes[st];
 		if (list == null) {
@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ExecutorService;
 
 import gnu.trove.list.array.TIntArrayList;
 
@@ -42,6 +43,10 @@ public class RoutingConfiguration {
 	public int ZOOM_TO_LOAD_TILES = 16;
 	public long memoryLimitation;
 	public long nativeMemoryLimitation;
+	// shared cache of decoded tiles between routing contexts (null - tiles are loaded by every context)
+	public RoutingTileCache tileCache;
+	// unloaded tiles are kept packed off-heap (see PackedRouteTile) and restored without reading map file
+	public boolean compactTileStore;
 
 	// 1.2 Build A* graph in backward/forward direction (can affect results)
 	// 0 - 2 ways, 1 - direct way, -1 - reverse way
@@ -61,6 +66,20 @@ public class RoutingConfiguration {
 	// 1.6 Time to calculate all access restrictions based on conditions
 	public long routeCalculationTime = 0;
 
+	// 1.7 Number of threads to prepare segment local data of long routes (time, speed, turns) in RouteResultPreparation
+	public int preparationParallelism = 1;
+	// executor for parallel preparation (null - shared executor of RouteResultPreparation)
+	public ExecutorService preparationExecutor;
+
+	// 1.8 Landmark tables (ALT) of region to improve A* heuristic for routes inside of region (doesn't affect results)
+	public LandmarkHeuristic landmarkHeuristic;
+
+	// 1.9 Keep reverse search tree of route to recalculate route to the same target only by forward search (doesn't affect results)
+	// max number of kept segments (24 bytes per segment, 0 - tree is not kept)
+	public int reverseSearchTreeMaxSegments = 0;
+	// time (ms) to use kept tree
+	public long reverseSearchTreeExpiration = 10 * 60 * 1000;
+
 
 	// extra points to be inserted in ways (quad tree is based on 31 coords)
 	private QuadTree<DirectionPoint> directionPoints;
@@ -79,10 +98,52 @@ public class RoutingConfiguration {
 	// Parameter to smoother the track itself (could be 0 if it's not recorded track)
 	public float smoothenPointsNoRoute = 5;
 
+	// Approximate track with hidden markov model map matching (HMMMapMatcher) instead of step by step route search
+	public boolean hmmApproximation = false;
+
+	// Map matching: standard deviation of gps error (m)
+	public float hmmGpsSigma = 10;
+
+	// Map matching: expected difference between route distance and straight distance of consecutive track points (m)
+	public float hmmTransitionBeta = 50;
+
 	public QuadTree<DirectionPoint> getDirectionPoints() {
 		return directionPoints;
 	}
 
+	// copy of configuration with another router (e.g. router with own caches for other thread)
+	RoutingConfiguration copy(GeneralRouter router) {
+		RoutingConfiguration c = new RoutingConfiguration();
+		c.attributes.putAll(attributes);
+		c.heuristicCoefficient = heuristicCoefficient;
+		c.ZOOM_TO_LOAD_TILES = ZOOM_TO_LOAD_TILES;
+		c.memoryLimitation = memoryLimitation;
+		c.nativeMemoryLimitation = nativeMemoryLimitation;
+		c.tileCache = tileCache;
+		c.compactTileStore = compactTileStore;
+		c.planRoadDirection = planRoadDirection;
+		c.router = router;
+		c.routerName = routerName;
+		c.initialDirection = initialDirection;
+		c.recalculateDistance = recalculateDistance;
+		c.routeCalculationTime = routeCalculationTime;
+		c.preparationParallelism = preparationParallelism;
+		c.preparationExecutor = preparationExecutor;
+		c.landmarkHeuristic = landmarkHeuristic;
+		c.reverseSearchTreeMaxSegments = reverseSearchTreeMaxSegments;
+		c.reverseSearchTreeExpiration = reverseSearchTreeExpiration;
+		c.directionPoints = directionPoints;
+		c.directionPointsRadius = directionPointsRadius;
+		c.minPointApproximation = minPointApproximation;
+		c.minStepApproximation = minStepApproximation;
+		c.maxStepApproximation = maxStepApproximation;
+		c.smoothenPointsNoRoute = smoothenPointsNoRoute;
+		c.hmmApproximation = hmmApproximation;
+		c.hmmGpsSigma = hmmGpsSigma;
+		c.hmmTransitionBeta = hmmTransitionBeta;
+		return c;
+	}
+
 	public static class DirectionPoint extends Node {
 		private static final long serialVersionUID = -7496599771204656505L;
 		public double distance = Double.MAX_VALUE;
@@ -136,6 +197,8 @@ public class RoutingConfiguration {
 		private Map<String, String> attributes = new LinkedHashMap<>();
 		private Set<Long> impassableRoadLocations = new HashSet<>();
 		private QuadTree<Node> directionPointsBuilder;
+		private RoutingTileCache tileCache;
+		private boolean compactTileStore;
 
 		public Builder() {
 		}
@@ -197,6 +260,9 @@ public class RoutingConfiguration {
 			i.minStepApproximation = parseSilentFloat(getAttribute(i.router, "minStepApproximation"), i.minStepApproximation);
 			i.maxStepApproximation = parseSilentFloat(getAttribute(i.router, "maxStepApproximation"), i.maxStepApproximation);
 			i.smoothenPointsNoRoute = parseSilentFloat(getAttribute(i.router, "smoothenPointsNoRoute"), i.smoothenPointsNoRoute);
+			i.hmmApproximation = parseSilentBoolean(getAttribute(i.router, "hmmApproximation"), i.hmmApproximation);
+			i.hmmGpsSigma = parseSilentFloat(getAttribute(i.router, "hmmGpsSigma"), i.hmmGpsSigma);
+			i.hmmTransitionBeta = parseSilentFloat(getAttribute(i.router, "hmmTransitionBeta"), i.hmmTransitionBeta);
 
 			i.router.setImpassableRoads(new HashSet<>(impassableRoadLocations));
 			i.ZOOM_TO_LOAD_TILES = parseSilentInt(getAttribute(i.router, "zoomToLoadTiles"), i.ZOOM_TO_LOAD_TILES);
@@ -217,6 +283,8 @@ public class RoutingConfiguration {
 				i.nativeMemoryLimitation = memoryLimits.nativeMemoryLimitMb * (1l << 20);
 			}
 			i.planRoadDirection = parseSilentInt(getAttribute(i.router, "planRoadDirection"), i.planRoadDirection);
+			i.tileCache = tileCache;
+			i.compactTileStore = compactTileStore;
 			if (directionPointsBuilder != null) {
 				QuadRect rect = new QuadRect(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
 				List<net.osmand.osm.edit.Node> lst = directionPointsBuilder.queryInBox(rect, new ArrayList<Node>());
@@ -236,6 +304,20 @@ public class RoutingConfiguration {
 			this.directionPointsBuilder = directionPoints;
 			return this;
 		}
+
+		public Builder setTileCache(RoutingTileCache tileCache) {
+			this.tileCache = tileCache;
+			return this;
+		}
+
+		public RoutingTileCache getTileCache() {
+			return tileCache;
+		}
+
+		public Builder setCompactTileStore(boolean compactTileStore) {
+			this.compactTileStore = compactTileStore;
+			return this;
+		}
 		
 		public void clearImpassableRoadLocations() {
 			impassableRoadLocations.clear();
@@ -306,6 +388,13 @@ public class RoutingConfiguration {
 		return Float.parseFloat(t);
 	}
 
+	public static boolean parseSilentBoolean(String t, boolean v) {
+		if (t == null || t.length() == 0) {
+			return v;
+		}
+		return Boolean.parseBoolean(t);
+	}
+
 	
 	private static RoutingConfiguration.Builder DEFAULT;
 
@@ -2,9 +2,11 @@ package net.osmand.router;
 
 
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -27,6 +29,7 @@ import net.osmand.binary.BinaryMapRouteReaderAdapter;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
 import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
 import net.osmand.binary.RouteDataObject;
+import net.osmand.binary.RouteSubregionIndex;
 import net.osmand.data.QuadPoint;
 import net.osmand.data.QuadRect;
 import net.osmand.router.BinaryRoutePlanner.FinalRouteSegment;
@@ -77,6 +80,10 @@ public class RoutingContext {
 	public boolean leftSideNavigation;
 	public List<RouteSegmentResult> previouslyCalculatedRoute;
 	public PrecalculatedRouteDirection precalculatedRouteDirection;
+	// reverse search tree of previous route (pass to context of recalculation), see RoutingConfiguration.reverseSearchTreeMaxSegments
+	public ReverseSearchTree reverseSearchTree;
+	// landmark tables of configuration if they are applicable for current search (checked once by route planner)
+	LandmarkHeuristic landmarks;
 	
 	
 	// 2. Routing memory cache (big objects)
@@ -84,6 +91,8 @@ public class RoutingContext {
 	
 	// Needs to be a sorted array list . Another option to use hashmap but it will be more memory expensive
 	List<RoutingSubregionTile> subregionTiles = new ArrayList<RoutingSubregionTile>();
+	// subregion indexes of reader (decided once, so subregions of reader are always the same objects)
+	Map<BinaryMapIndexReader, List<RouteSubregionIndex>> subregionIndexes = new HashMap<BinaryMapIndexReader, List<RouteSubregionIndex>>();
 	
 	// 3. Warm object caches
 	ArrayList<RouteSegment> segmentsToVisitPrescripted = new ArrayList<BinaryRoutePlanner.RouteSegment>(5);
@@ -117,6 +126,13 @@ public class RoutingContext {
 		this.calculationProgress = cp.calculationProgress;
 	}
 	
+	// context with the same settings as cp, but with own readers and configuration
+	RoutingContext(RoutingContext cp, RoutingConfiguration config, BinaryMapIndexReader[] map) {
+		this(config, cp.nativeLib, map, cp.calculationMode);
+		this.leftSideNavigation = cp.leftSideNavigation;
+		this.visitor = cp.visitor;
+	}
+
 	RoutingContext(RoutingConfiguration config, NativeLibrary nativeLibrary, BinaryMapIndexReader[] map, RouteCalculationMode calcMode) {
 		this.calculationMode = calcMode;
 		for (BinaryMapIndexReader mr : map) {
@@ -207,6 +223,10 @@ public class RoutingContext {
 	
 	public void unloadAllData(RoutingContext except) {
 		for (RoutingSubregionTile tl : subregionTiles) {
+			if (tl.isPacked()) {
+				global.size -= tl.getPackedSize();
+				tl.dropPacked();
+			}
 			if (tl.isLoaded()) {
 				if(except == null || except.searchSubregionTile(tl.subregion) < 0){
 					tl.unload();
@@ -290,32 +310,52 @@ public class RoutingContext {
 
 			try {
 				BinaryMapIndexReader reader = reverseMap.get(ts.subregion.routeReg);
-				ts.setLoadedNonNative();
-				List<RouteDataObject> res = reader.loadRouteIndexData(ts.subregion);
-				
-				if (toLoad != null) {
-					toLoad.addAll(res);
+				PackedRouteTile packed = ts.packed;
+				TLongHashSet packedExcludedIds = ts.excludedIds;
+				if (packed != null) {
+					global.size -= packed.getEstimatedSize();
+					ts.dropPacked();
+				}
+				ts.setLoadedNonNative(config.compactTileStore);
+				if (packed != null && toLoad == null) {
+					loadPackedSubregionTile(ts, packed, packedExcludedIds, excludeNotAllowed);
+				} else if (toLoad == null && isTileCacheUsed(points)) {
+					loadCachedSubregionTile(ts, reader, excludeNotAllowed);
 				} else {
-					for (RouteDataObject ro : res) {
-						if (ro != null) {
-							if (config.routeCalculationTime != 0) {
-								ro.processConditionalTags(config.routeCalculationTime);
-							}
-							if (config.router.acceptLine(ro)) {
-								if (excludeNotAllowed != null && !excludeNotAllowed.contains(ro.getId())) {
-									// don't attach point for route precalculation
-									if (!config.router.attributes.containsKey(GeneralRouter.CHECK_ALLOW_PRIVATE_NEEDED)) {
+					long decodeTime = System.nanoTime();
+					List<RouteDataObject> res = reader.loadRouteIndexData(ts.subregion);
+					if (calculationProgress != null && calculationProgress.trace != null) {
+						calculationProgress.trace.complete(RoutingTrace.CATEGORY_TILES, "decode", ts.subregion.routeReg.getName(),
+								"subregion " + ts.subregion.filePointer + ", " + res.size() + " roads", decodeTime);
+					}
+
+					if (toLoad != null) {
+						toLoad.addAll(res);
+					} else {
+						for (RouteDataObject ro : res) {
+							if (ro != null) {
+								if (config.routeCalculationTime != 0) {
+									ro.processConditionalTags(config.routeCalculationTime);
+								}
+								if (config.router.acceptLine(ro)) {
+									boolean allowed = excludeNotAllowed != null && !excludeNotAllowed.contains(ro.getId());
+									// don't attach point for route precalculation (excluded roads are attached for packed tile)
+									if ((allowed || ts.canPack())
+											&& !config.router.attributes.containsKey(GeneralRouter.CHECK_ALLOW_PRIVATE_NEEDED)) {
 										connectPoint(ts, ro, points);
 									}
-									ts.add(ro);
+									ts.addAccepted(ro);
+									if (allowed) {
+										ts.add(ro);
+									}
 								}
-							}
-							if (excludeNotAllowed != null && ro.getId() > 0) {
-								excludeNotAllowed.add(ro.getId());
-								if (ts.excludedIds == null) {
-									ts.excludedIds = new TLongHashSet();
+								if (excludeNotAllowed != null && ro.getId() > 0) {
+									excludeNotAllowed.add(ro.getId());
+									if (ts.excludedIds == null) {
+										ts.excludedIds = new TLongHashSet();
+									}
+									ts.excludedIds.add(ro.getId());
 								}
-								ts.excludedIds.add(ro.getId());
 							}
 						}
 					}
@@ -351,9 +391,60 @@ public class RoutingContext {
 		global.size += ts.tileStatistics.size;
 		if (calculationProgress != null) {
 			calculationProgress.timeToLoad += (System.nanoTime() - now);
+			if (calculationProgress.trace != null) {
+				BinaryMapIndexReader reader = reverseMap.get(ts.subregion.routeReg);
+				calculationProgress.trace.complete(RoutingTrace.CATEGORY_TILES, "load",
+						reader != null ? reader.getFile().getName() : null, now);
+			}
 		}
 	}
 	
+	private void loadPackedSubregionTile(RoutingSubregionTile ts, PackedRouteTile packed, TLongHashSet excludedIds,
+			TLongHashSet excludeNotAllowed) {
+		// objects were processed by conditional tags, direction points and access rules before packing,
+		// but roads are excluded again as other tiles could be loaded or unloaded since then
+		for (RouteDataObject ro : packed.unpack()) {
+			ts.addAccepted(ro);
+			if (excludeNotAllowed != null && !excludeNotAllowed.contains(ro.getId())) {
+				ts.add(ro);
+			}
+		}
+		ts.excludedIds = excludedIds;
+		if (excludeNotAllowed != null && excludedIds != null) {
+			excludeNotAllowed.addAll(excludedIds);
+		}
+		if (calculationProgress != null) {
+			calculationProgress.unpackedTiles++;
+		}
+	}
+
+	private boolean isTileCacheUsed(List<DirectionPoint> points) {
+		// cached objects are shared and can't be modified by conditional tags or direction points
+		return config.tileCache != null && config.routeCalculationTime == 0 && points.isEmpty();
+	}
+
+	private void loadCachedSubregionTile(RoutingSubregionTile ts, BinaryMapIndexReader reader, TLongHashSet excludeNotAllowed)
+			throws IOException {
+		RoutingTileCache.CachedTile tile = config.tileCache.getTile(reader, ts.subregion, config);
+		RouteDataObject[] objects = tile.objects;
+		for (int i = 0; i < objects.length; i++) {
+			RouteDataObject ro = objects[i];
+			if (tile.accepted.get(i) && !config.router.isImpassableRoad(ro.getId())) {
+				ts.addAccepted(ro);
+				if (excludeNotAllowed != null && !excludeNotAllowed.contains(ro.getId())) {
+					ts.add(ro);
+				}
+			}
+			if (excludeNotAllowed != null && ro.getId() > 0) {
+				excludeNotAllowed.add(ro.getId());
+				if (ts.excludedIds == null) {
+					ts.excludedIds = new TLongHashSet();
+				}
+				ts.excludedIds.add(ro.getId());
+			}
+		}
+	}
+
 	public List<RoutingSubregionTile> loadAllSubregionTiles(BinaryMapIndexReader reader, RouteSubregion reg) throws IOException {
 		List<RoutingSubregionTile> list = new ArrayList<RoutingContext.RoutingSubregionTile>();
 		SearchRequest<RouteDataObject> request = BinaryMapIndexReader.buildSearchRouteRequest(0,
@@ -388,7 +479,7 @@ public class RoutingContext {
 //					long now = System.nanoTime();
 					// int rg = r.getValue().get(0).routeReg.regionsRead;
 					
-					List<RouteSubregion> subregs = r.getKey().searchRouteIndexTree(request, r.getValue());
+					List<RouteSubregion> subregs = searchSubregions(r.getKey(), r.getValue(), request);
 //					if (calculationProgress != null) {
 //						calculationProgress.timeToLoadHeaders += (System.nanoTime() - now);
 //					}
@@ -415,11 +506,44 @@ public class RoutingContext {
 		}
 		if (calculationProgress != null) {
 			calculationProgress.timeToLoadHeaders += (System.nanoTime() - now);
+			if (calculationProgress.trace != null) {
+				calculationProgress.trace.complete(RoutingTrace.CATEGORY_TILES, "headers", null, now);
+			}
 		}
 	
 		return collection;
 	}
 
+	// uses subregion index of reader's route regions if it is known, otherwise walks route trees
+	private List<RouteSubregion> searchSubregions(BinaryMapIndexReader reader, List<RouteSubregion> roots,
+			SearchRequest<RouteDataObject> request) throws IOException {
+		List<RouteSubregionIndex> indexes = subregionIndexes.get(reader);
+		if (indexes == null) {
+			indexes = new ArrayList<RouteSubregionIndex>();
+			for (RouteRegion reg : reader.getRoutingIndexes()) {
+				RouteSubregionIndex index = reg.getSubregionIndex(calculationMode == RouteCalculationMode.BASE);
+				if (index == null) {
+					indexes = Collections.emptyList();
+					break;
+				}
+				indexes.add(index);
+			}
+			subregionIndexes.put(reader, indexes);
+		}
+		if (indexes.isEmpty()) {
+			return reader.searchRouteIndexTree(request, roots);
+		}
+		List<RouteSubregion> subregs = new ArrayList<RouteSubregion>();
+		for (int i = 0; i < indexes.size(); i++) {
+			int size = subregs.size();
+			indexes.get(i).search(request.getLeft(), request.getTop(), request.getRight(), request.getBottom(), subregs);
+			if (subregs.size() > size) {
+				reader.initRouteRegion(reader.getRoutingIndexes().get(i));
+			}
+		}
+		return subregs;
+	}
+
 	public void loadTileData(int x31, int y31, int zoomAround, final List<RouteDataObject> toFillIn) {
 		loadTileData(x31, y31, zoomAround, toFillIn, false);
 	}
@@ -661,7 +785,7 @@ public class RoutingContext {
 		if(calculationProgress != null) {
 			calculationProgress.maxLoadedTiles = Math.max(calculationProgress.maxLoadedTiles, getCurrentlyLoadedTiles());
 		}
-		Collections.sort(list, new Comparator<RoutingSubregionTile>() {
+		Comparator<RoutingSubregionTile> unloadOrder = new Comparator<RoutingSubregionTile>() {
 			private int pow(int base, int pw) {
 				int r = 1;
 				for (int i = 0; i < pw; i++) {
@@ -675,12 +799,17 @@ public class RoutingContext {
 				int v2 = (o2.access + 1) * pow(10, o2.getUnloadCont() -1);
 				return v1 < v2 ? -1 : (v1 == v2 ? 0 : 1);
 			}
-		});
+		};
+		Collections.sort(list, unloadOrder);
 		int i = 0;
 		while(getCurrentEstimatedSize() >= desirableSize && (list.size() - i) > loaded / 5 && i < list.size()) {
 			RoutingSubregionTile unload = list.get(i);
 			i++;
 //			System.out.println("Unload " + unload);
+			if (config.compactTileStore && unload.canPack()) {
+				unload.pack();
+				global.size += unload.getPackedSize();
+			}
 			unload.unload();
 			if(calculationProgress != null) {
 				calculationProgress.unloadedTiles ++;
@@ -689,6 +818,20 @@ public class RoutingContext {
 			// tile could be cleaned from routing tiles and deleted from whole list
 			
 		}
+		if (config.compactTileStore && getCurrentEstimatedSize() >= desirableSize) {
+			// packed tiles take memory as well, drop least used of them
+			List<RoutingSubregionTile> packed = new ArrayList<RoutingSubregionTile>();
+			for (RoutingSubregionTile t : subregionTiles) {
+				if (t.isPacked()) {
+					packed.add(t);
+				}
+			}
+			Collections.sort(packed, unloadOrder);
+			for (int j = 0; j < packed.size() && getCurrentEstimatedSize() >= desirableSize; j++) {
+				global.size -= packed.get(j).getPackedSize();
+				packed.get(j).dropPacked();
+			}
+		}
 		for(RoutingSubregionTile t : subregionTiles) {
 			t.access /= 3;
 		}
@@ -739,6 +882,9 @@ public class RoutingContext {
 		private int isLoaded = 0;
 		private TLongObjectMap<RouteSegment> routes = null;
 		private TLongHashSet excludedIds = null;
+		// objects accepted by router in order of loading, also excluded ones (to pack them when tile is unloaded)
+		private List<RouteDataObject> objects = null;
+		private PackedRouteTile packed = null;
 
 		public RoutingSubregionTile(RouteSubregion subregion) {
 			this.subregion = subregion;
@@ -843,15 +989,48 @@ public class RoutingContext {
 			}
 			searchResult = null;
 			routes = null;
+			objects = null;
+			if (packed == null) {
+				excludedIds = null;
+			}
+		}
+		
+		public boolean isPacked() {
+			return packed != null;
+		}
+		
+		boolean canPack() {
+			return objects != null && searchResult == null;
+		}
+		
+		// should be called before unload, excluded ids are kept with packed objects
+		void pack() {
+			packed = PackedRouteTile.pack(subregion.routeReg, objects);
+		}
+		
+		int getPackedSize() {
+			return packed == null ? 0 : packed.getEstimatedSize();
+		}
+		
+		void dropPacked() {
+			packed = null;
 			excludedIds = null;
 		}
 		
-		public void setLoadedNonNative(){
+		// loaded objects are kept only to be packed on unload
+		public void setLoadedNonNative(boolean keepObjects){
 			isLoaded = Math.abs(isLoaded) + 1;
 			routes = new TLongObjectHashMap<BinaryRoutePlanner.RouteSegment>();
+			objects = keepObjects ? new ArrayList<RouteDataObject>() : null;
 			tileStatistics = new TileStatistics();
 		}
 		
+		void addAccepted(RouteDataObject ro) {
+			if (objects != null) {
+				objects.add(ro);
+			}
+		}
+
 		public void add(RouteDataObject ro) {
 			tileStatistics.addObject(ro);
 			for (int i = 0; i < ro.pointsX.length; i++) {
@@ -947,6 +1126,49 @@ public class RoutingContext {
 		return map.keySet().toArray(new BinaryMapIndexReader[0]);
 	}
 
+	/**
+	 * Reads everything that is lazily initialized during routing (index metadata, route types, router tag rules),
+	 * so contexts created by {@link #copyForThread()} don't modify shared data and could route concurrently.
+	 */
+	void prepareThreadCopies() throws IOException {
+		for (BinaryMapIndexReader reader : map.keySet()) {
+			reader.preloadIndexMetadata();
+			for (RouteRegion reg : reader.getRoutingIndexes()) {
+				reg.findOrCreateRouteType(DirectionPoint.TAG, DirectionPoint.DELETE_TYPE);
+				config.router.registerRouteRegionTypes(reg);
+			}
+		}
+	}
+
+	/**
+	 * Context to route in another thread with own file handles (index metadata is shared) and router caches,
+	 * readers should be closed with {@link #closeThreadCopy()}
+	 */
+	RoutingContext copyForThread() throws IOException {
+		RoutingConfiguration cfg = config.copy(config.router.copyWithOwnCaches());
+		BinaryMapIndexReader[] readers = new BinaryMapIndexReader[map.size()];
+		int k = 0;
+		try {
+			for (BinaryMapIndexReader reader : map.keySet()) {
+				readers[k] = new BinaryMapIndexReader(new RandomAccessFile(reader.getFile(), "r"), reader);
+				k++;
+			}
+		} catch (IOException e) {
+			for (int i = 0; i < k; i++) {
+				readers[i].close();
+			}
+			throw e;
+		}
+		return new RoutingContext(this, cfg, readers);
+	}
+
+	void closeThreadCopy() throws IOException {
+		unloadAllData();
+		for (BinaryMapIndexReader reader : map.keySet()) {
+			reader.close();
+		}
+	}
+
 	public int getVisitedSegments() {
 		if (calculationProgress != null) {
 			return calculationProgress.visitedSegments;
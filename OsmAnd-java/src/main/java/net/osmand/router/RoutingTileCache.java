@@ -0,0 +1,161 @@
+package net.osmand.router;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide cache of decoded route subregion tiles shared by many {@link RoutingContext}.
+ * Tiles are keyed by route region (file), subregion file pointer and router profile with parameters,
+ * least recently used tiles are evicted when estimated size exceeds memory limit of routing
+ * ({@link RoutingConfiguration#memoryLimitation} of context loading tile), so cache doesn't need own budget.
+ * Tiles are shared between contexts using readers with the same route region objects
+ * (i.e. the same reader or readers leased from {@link net.osmand.binary.BinaryMapReaderPool}).
+ * Cached road objects are shared and must not be modified, so contexts with conditional tags
+ * (routeCalculationTime) or direction points don't use the cache.
+ */
+public class RoutingTileCache {
+
+	// memory limit of the last context which loaded tile
+	private long memoryLimit;
+	private long size;
+	private final Map<TileKey, CachedTile> tiles = new LinkedHashMap<TileKey, CachedTile>(256, 0.75f, true);
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	public static class CachedTile {
+		// all decoded objects in file order (null objects are skipped)
+		public final RouteDataObject[] objects;
+		// objects accepted by router access rules (impassable roads are checked by context)
+		public final BitSet accepted;
+		public final int estimatedSize;
+
+		CachedTile(RouteDataObject[] objects, BitSet accepted, int estimatedSize) {
+			this.objects = objects;
+			this.accepted = accepted;
+			this.estimatedSize = estimatedSize;
+		}
+	}
+
+	private static class TileKey {
+		private final RouteRegion region;
+		private final int filePointer;
+		private final String routerKey;
+
+		TileKey(RouteRegion region, int filePointer, String routerKey) {
+			this.region = region;
+			this.filePointer = filePointer;
+			this.routerKey = routerKey;
+		}
+
+		@Override
+		public int hashCode() {
+			return (System.identityHashCode(region) * 31 + filePointer) * 31 + routerKey.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof TileKey)) {
+				return false;
+			}
+			TileKey other = (TileKey) obj;
+			return region == other.region && filePointer == other.filePointer && routerKey.equals(other.routerKey);
+		}
+	}
+
+	public CachedTile getTile(BinaryMapIndexReader reader, RouteSubregion subregion, RoutingConfiguration config)
+			throws IOException {
+		GeneralRouter router = config.router;
+		TileKey key = new TileKey(subregion.routeReg, subregion.filePointer, router.getRouterKey());
+		synchronized (this) {
+			CachedTile tile = tiles.get(key);
+			if (tile != null) {
+				hits.incrementAndGet();
+				return tile;
+			}
+		}
+		misses.incrementAndGet();
+		// decode outside of lock (reader belongs to calling context)
+		List<RouteDataObject> res = reader.loadRouteIndexData(subregion);
+		List<RouteDataObject> objects = new ArrayList<RouteDataObject>(res.size());
+		BitSet accepted = new BitSet(res.size());
+		int estimatedSize = 0;
+		for (RouteDataObject ro : res) {
+			if (ro != null) {
+				if (router.isAccessible(ro)) {
+					accepted.set(objects.size());
+					estimatedSize += RoutingContext.getEstimatedSize(ro);
+				}
+				objects.add(ro);
+			}
+		}
+		CachedTile tile = new CachedTile(objects.toArray(new RouteDataObject[objects.size()]), accepted, estimatedSize);
+		synchronized (this) {
+			CachedTile existing = tiles.get(key);
+			if (existing != null) {
+				return existing;
+			}
+			tiles.put(key, tile);
+			size += tile.estimatedSize;
+			memoryLimit = config.memoryLimitation;
+			Iterator<CachedTile> it = tiles.values().iterator();
+			while (size > memoryLimit && it.hasNext()) {
+				CachedTile evict = it.next();
+				if (evict == tile) {
+					break;
+				}
+				it.remove();
+				size -= evict.estimatedSize;
+				evictions.incrementAndGet();
+			}
+		}
+		return tile;
+	}
+
+	public synchronized void clear() {
+		tiles.clear();
+		size = 0;
+	}
+
+	public synchronized long getEstimatedSize() {
+		return size;
+	}
+
+	public synchronized int getTilesCount() {
+		return tiles.size();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Routing tile cache: %d tiles, %.2f MB of %.2f MB, hits %d, misses %d, evictions %d",
+				getTilesCount(), getEstimatedSize() / (float) (1 << 20), memoryLimit / (float) (1 << 20),
+				getHits(), getMisses(), getEvictions());
+	}
+}
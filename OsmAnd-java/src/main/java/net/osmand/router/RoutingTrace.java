@@ -0,0 +1,271 @@
+package net.osmand.router;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Structured instrumentation of one routing request (enabled by {@link RouteCalculationProgress#trace}).
+ * Phases (tile loading, tile decoding, A*, result preparation) are recorded as timed events, frequent evaluations
+ * (router) are only aggregated, queue sizes are recorded as counters. Every time is added to histogram of its metric
+ * and passed to optional metrics sink (e.g. adapter to application metrics registry).
+ * Trace is exported in Chrome trace event format (chrome://tracing, Perfetto) to diagnose slow routes after the fact.
+ */
+public class RoutingTrace {
+
+	public static final String CATEGORY_TILES = "tiles";
+	public static final String CATEGORY_ROUTING = "routing";
+	public static final String CATEGORY_ROUTER = "router";
+	public static final String CATEGORY_PREPARATION = "preparation";
+
+	// max number of recorded events (histograms are still updated)
+	private static final int MAX_EVENTS = 1000000;
+
+	public interface MetricsSink {
+
+		void recordTime(String metric, String tag, long nanos);
+
+		void recordValue(String metric, String tag, double value);
+	}
+
+	public static class TimeHistogram {
+		// bucket i counts times in [2^i, 2^(i+1)) microseconds, first bucket also counts shorter times
+		private final long[] buckets = new long[32];
+		private long count;
+		private long totalNanos;
+		private long maxNanos;
+
+		void add(long nanos) {
+			long micros = nanos / 1000;
+			int bucket = micros <= 1 ? 0 : Math.min(buckets.length - 1, 63 - Long.numberOfLeadingZeros(micros));
+			buckets[bucket]++;
+			count++;
+			totalNanos += nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getTotalNanos() {
+			return totalNanos;
+		}
+
+		public long getMaxNanos() {
+			return maxNanos;
+		}
+
+		public long[] getBuckets() {
+			return buckets.clone();
+		}
+
+		// upper bound of bucket containing percentile (microseconds)
+		public long getPercentileMicros(double percentile) {
+			long limit = (long) Math.ceil(count * percentile);
+			long sum = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				sum += buckets[i];
+				if (sum >= limit && sum > 0) {
+					return 1l << (i + 1);
+				}
+			}
+			return 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.US, "%d calls, %.2f ms total, max %.2f ms, p50 < %d us, p99 < %d us",
+					count, totalNanos / 1e6, maxNanos / 1e6, getPercentileMicros(0.5), getPercentileMicros(0.99));
+		}
+	}
+
+	private static class TraceEvent {
+		final char phase;
+		final String category;
+		final String name;
+		final String tag;
+		final String detail;
+		final long tid;
+		final long ts;
+		final long dur;
+		final String[] series;
+		final double[] values;
+
+		TraceEvent(char phase, String category, String name, String tag, String detail, long ts, long dur,
+				String[] series, double[] values) {
+			this.phase = phase;
+			this.category = category;
+			this.name = name;
+			this.tag = tag;
+			this.detail = detail;
+			this.tid = Thread.currentThread().getId();
+			this.ts = ts;
+			this.dur = dur;
+			this.series = series;
+			this.values = values;
+		}
+	}
+
+	private final String name;
+	private final long startNanos = System.nanoTime();
+	private final List<TraceEvent> events = new ArrayList<TraceEvent>();
+	private final Map<String, TimeHistogram> histograms = new TreeMap<String, TimeHistogram>();
+	private MetricsSink sink;
+
+	public RoutingTrace(String name) {
+		this.name = name;
+	}
+
+	public void setSink(MetricsSink sink) {
+		this.sink = sink;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Records phase started at startNanos (System.nanoTime()) and finished now.
+	 */
+	public void complete(String category, String name, String tag, long startNanos) {
+		complete(category, name, tag, null, startNanos);
+	}
+
+	/**
+	 * Records phase with detail which is kept only in event (histogram is grouped by tag).
+	 */
+	public void complete(String category, String name, String tag, String detail, long startNanos) {
+		long now = System.nanoTime();
+		long dur = now - startNanos;
+		synchronized (this) {
+			if (events.size() < MAX_EVENTS) {
+				events.add(new TraceEvent('X', category, name, tag, detail, startNanos - this.startNanos, dur, null, null));
+			}
+			getHistogram(category, name, tag).add(dur);
+		}
+		if (sink != null) {
+			sink.recordTime(category + "." + name, tag, dur);
+		}
+	}
+
+	/**
+	 * Adds time of frequent evaluation to histogram without event.
+	 */
+	public void addTime(String category, String name, String tag, long nanos) {
+		synchronized (this) {
+			getHistogram(category, name, tag).add(nanos);
+		}
+		if (sink != null) {
+			sink.recordTime(category + "." + name, tag, nanos);
+		}
+	}
+
+	/**
+	 * Records current values of counter series (e.g. queue sizes).
+	 */
+	public void counter(String category, String name, String[] series, double[] values) {
+		long ts = System.nanoTime() - startNanos;
+		synchronized (this) {
+			if (events.size() < MAX_EVENTS) {
+				events.add(new TraceEvent('C', category, name, null, null, ts, 0, series, values));
+			}
+		}
+		if (sink != null) {
+			for (int i = 0; i < series.length; i++) {
+				sink.recordValue(category + "." + name, series[i], values[i]);
+			}
+		}
+	}
+
+	private TimeHistogram getHistogram(String category, String name, String tag) {
+		String key = category + "." + name + (tag == null ? "" : " [" + tag + "]");
+		TimeHistogram h = histograms.get(key);
+		if (h == null) {
+			h = new TimeHistogram();
+			histograms.put(key, h);
+		}
+		return h;
+	}
+
+	public synchronized Map<String, TimeHistogram> getHistograms() {
+		return new LinkedHashMap<String, TimeHistogram>(histograms);
+	}
+
+	public synchronized int getEventsCount() {
+		return events.size();
+	}
+
+	public synchronized JSONObject toChromeTrace() {
+		JSONArray traceEvents = new JSONArray();
+		JSONObject process = new JSONObject();
+		process.put("name", "process_name");
+		process.put("ph", "M");
+		process.put("pid", 1);
+		process.put("args", new JSONObject().put("name", name));
+		traceEvents.put(process);
+		for (TraceEvent e : events) {
+			JSONObject obj = new JSONObject();
+			obj.put("name", e.name);
+			obj.put("cat", e.category);
+			obj.put("ph", String.valueOf(e.phase));
+			obj.put("pid", 1);
+			obj.put("tid", e.tid);
+			obj.put("ts", e.ts / 1000.0);
+			JSONObject args = new JSONObject();
+			if (e.phase == 'X') {
+				obj.put("dur", e.dur / 1000.0);
+				if (e.tag != null) {
+					args.put("tag", e.tag);
+				}
+				if (e.detail != null) {
+					args.put("detail", e.detail);
+				}
+			} else {
+				for (int i = 0; i < e.series.length; i++) {
+					args.put(e.series[i], e.values[i]);
+				}
+			}
+			obj.put("args", args);
+			traceEvents.put(obj);
+		}
+		JSONObject summary = new JSONObject();
+		for (Map.Entry<String, TimeHistogram> h : histograms.entrySet()) {
+			summary.put(h.getKey(), h.getValue().toString());
+		}
+		JSONObject res = new JSONObject();
+		res.put("traceEvents", traceEvents);
+		res.put("displayTimeUnit", "ms");
+		res.put("otherData", new JSONObject().put("histograms", summary));
+		return res;
+	}
+
+	public void writeChromeTrace(File file) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(toChromeTrace().toString());
+		} finally {
+			writer.close();
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder("Routing trace ").append(name).append(": ").append(events.size()).append(" events");
+		for (Map.Entry<String, TimeHistogram> h : histograms.entrySet()) {
+			sb.append("\n  ").append(h.getKey()).append(": ").append(h.getValue());
+		}
+		return sb.toString();
+	}
+}
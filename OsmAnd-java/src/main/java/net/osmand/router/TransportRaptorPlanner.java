@@ -0,0 +1,283 @@
+package net.osmand.router;
+
+import net.osmand.data.LatLon;
+import net.osmand.data.TransportRoute;
+import net.osmand.router.TransportRoutePlanner.TransportRouteResultSegment;
+import net.osmand.util.MapUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Public transport routing with RAPTOR (round-based public transit routing, every round adds one more ride)
+ * over {@link TransportTimetable} built from routes stopping around start and end.
+ * Returns Pareto optimal routes by time and number of changes (within finishTimeSeconds from fastest route).
+ * Uses the same time model as {@link TransportRoutePlanner}: boarding and change time is added for every
+ * ride except first one, travel time is either stop time + distance / route speed or from schedule.
+ */
+public class TransportRaptorPlanner {
+
+	private static final int INF = Integer.MAX_VALUE;
+	// routes are loaded in bbox of start and end extended by walk radius and part of distance between them
+	private static final double AREA_EXTENSION = 0.25;
+
+	private TransportTimetable timetable;
+
+	public TransportTimetable getTimetable() {
+		return timetable;
+	}
+
+	public List<TransportRouteResult> buildRoute(TransportRoutingContext ctx, LatLon start, LatLon end) throws IOException {
+		ctx.startCalcTime = System.currentTimeMillis();
+		double totalDistance = MapUtils.getDistance(start, end);
+		timetable = TransportTimetable.build(ctx.cfg, loadRoutes(ctx, start, end, totalDistance));
+		return buildRoute(ctx, timetable, start, end);
+	}
+
+	public List<TransportRouteResult> buildRoute(TransportRoutingContext ctx, TransportTimetable tt, LatLon start, LatLon end) {
+		if (ctx.startCalcTime == 0) {
+			ctx.startCalcTime = System.currentTimeMillis();
+		}
+		TransportRoutingConfiguration cfg = ctx.cfg;
+		double totalDistance = MapUtils.getDistance(start, end);
+		int stops = tt.getStopsCount();
+		int rounds = cfg.maxNumberOfChanges + 1;
+
+		double finishTime = cfg.maxRouteTime;
+		ctx.finishTimeSeconds = cfg.finishTimeSeconds;
+		if (totalDistance > cfg.maxRouteDistance && cfg.maxRouteIncreaseSpeed > 0) {
+			int increaseTime = (int) ((totalDistance - cfg.maxRouteDistance) * 3.6 / cfg.maxRouteIncreaseSpeed);
+			finishTime += increaseTime;
+			ctx.finishTimeSeconds += increaseTime / 6;
+		}
+		int limit = (int) Math.min(INF - 1, finishTime + ctx.finishTimeSeconds);
+		double maxTravelTimeCmpToWalk = totalDistance / cfg.walkSpeed - cfg.changeTime / 2;
+		int transferPenalty = cfg.getChangeTime() + cfg.getBoardingTime();
+		int maxDeparture = cfg.scheduleMaxTime * 10;
+
+		// arrival at stop after round (by ride or walk transfer) and by ride only
+		int[][] arrival = new int[rounds + 1][stops];
+		int[][] rideArrival = new int[rounds + 1][stops];
+		// ride labels: route, indexes in routeStops where ride started and finished, trip (schedule)
+		int[][] rideRoute = new int[rounds + 1][stops];
+		int[][] rideBoard = new int[rounds + 1][stops];
+		int[][] rideAlight = new int[rounds + 1][stops];
+		int[][] rideTrip = new int[rounds + 1][stops];
+		// walk labels: ride stop where walk started (-1 for start point) and walk distance
+		int[][] walkFrom = new int[rounds + 1][stops];
+		float[][] walkDist = new float[rounds + 1][stops];
+		// round where arrival label was set (arrivals are carried over to next rounds)
+		int[][] labelRound = new int[rounds + 1][stops];
+		int[] best = new int[stops];
+		Arrays.fill(best, INF);
+		for (int k = 0; k <= rounds; k++) {
+			Arrays.fill(arrival[k], INF);
+			Arrays.fill(rideArrival[k], INF);
+		}
+
+		boolean[] marked = new boolean[stops];
+		TIntArrayList markedList = new TIntArrayList();
+		TIntArrayList egressStops = new TIntArrayList();
+		TIntArrayList egressTime = new TIntArrayList();
+		for (int s = 0; s < stops; s++) {
+			float d = (float) tt.getDistance(s, start.getLatitude(), start.getLongitude());
+			if (d <= cfg.walkRadius) {
+				arrival[0][s] = Math.round(d / cfg.walkSpeed);
+				best[s] = arrival[0][s];
+				walkFrom[0][s] = -1;
+				walkDist[0][s] = d;
+				marked[s] = true;
+				markedList.add(s);
+			}
+			d = (float) tt.getDistance(s, end.getLatitude(), end.getLongitude());
+			if (d <= cfg.walkRadius) {
+				egressStops.add(s);
+				egressTime.add(Math.round(d / cfg.walkSpeed));
+			}
+		}
+
+		int targetBound = limit;
+		int[] roundBestStop = new int[rounds + 1];
+		int[] roundBestTime = new int[rounds + 1];
+		Arrays.fill(roundBestStop, -1);
+		int[] routeQueue = new int[tt.getRoutesCount()];
+		Arrays.fill(routeQueue, INF);
+		TIntArrayList queuedRoutes = new TIntArrayList();
+		for (int k = 1; k <= rounds && !markedList.isEmpty(); k++) {
+			if (ctx.calculationProgress != null && ctx.calculationProgress.isCancelled) {
+				return null;
+			}
+			// collect routes of marked stops with earliest index to start scan from
+			queuedRoutes.clear();
+			for (int i = 0; i < markedList.size(); i++) {
+				int s = markedList.getQuick(i);
+				marked[s] = false;
+				for (int j = tt.stopRouteStart[s]; j < tt.stopRouteStart[s + 1]; j++) {
+					int r = tt.stopRoutes[j];
+					if (routeQueue[r] == INF) {
+						queuedRoutes.add(r);
+					}
+					routeQueue[r] = Math.min(routeQueue[r], tt.stopRouteIndex[j]);
+				}
+			}
+			markedList.clear();
+			int[] prev = arrival[k - 1];
+			System.arraycopy(prev, 0, arrival[k], 0, stops);
+			System.arraycopy(labelRound[k - 1], 0, labelRound[k], 0, stops);
+			int[] ride = rideArrival[k];
+			for (int q = 0; q < queuedRoutes.size(); q++) {
+				int r = queuedRoutes.getQuick(q);
+				int from = routeQueue[r];
+				routeQueue[r] = INF;
+				ctx.visitedRoutesCount++;
+				int board = -1;
+				// non schedule: arrival = boardOffset + routeTime, schedule: trip departure from first stop
+				int boardOffset = INF;
+				int trip = -1;
+				for (int i = from; i < tt.routeStart[r + 1]; i++) {
+					int s = tt.routeStops[i];
+					if (board != -1) {
+						int t = cfg.useSchedule ? tt.tripDeps[trip] + tt.routeTime[i] : boardOffset + tt.routeTime[i];
+						if (t < ride[s] && t < best[s] && t < targetBound) {
+							ride[s] = t;
+							best[s] = t;
+							rideRoute[k][s] = r;
+							rideBoard[k][s] = board;
+							rideAlight[k][s] = i;
+							rideTrip[k][s] = trip;
+							if (!marked[s]) {
+								marked[s] = true;
+								markedList.add(s);
+							}
+							ctx.visitedStops++;
+						}
+					}
+					if (prev[s] == INF) {
+						continue;
+					}
+					// no change penalty for boarding at stop reached by walk from start
+					int ready = prev[s] + (labelRound[k - 1][s] > 0 ? transferPenalty : 0);
+					if (cfg.useSchedule) {
+						int nt = tt.findTrip(r, i, ready);
+						if (nt != -1 && tt.tripDeps[nt] + tt.routeTime[i] <= maxDeparture
+								&& (trip == -1 || tt.tripDeps[nt] < tt.tripDeps[trip])) {
+							trip = nt;
+							board = i;
+						}
+					} else if (ready - tt.routeTime[i] < boardOffset) {
+						boardOffset = ready - tt.routeTime[i];
+						board = i;
+					}
+				}
+			}
+			// ride arrivals and walk transfers from them
+			int[] arr = arrival[k];
+			int rideMarked = markedList.size();
+			for (int i = 0; i < rideMarked; i++) {
+				int s = markedList.getQuick(i);
+				arr[s] = ride[s];
+				labelRound[k][s] = k;
+				walkFrom[k][s] = s;
+				walkDist[k][s] = 0;
+			}
+			for (int i = 0; i < rideMarked; i++) {
+				int s = markedList.getQuick(i);
+				for (int j = tt.transferStart[s]; j < tt.transferStart[s + 1]; j++) {
+					int to = tt.transferTo[j];
+					int t = ride[s] + Math.round(tt.transferDist[j] / cfg.walkSpeed);
+					if (t < arr[to] && t < best[to] && t < targetBound) {
+						arr[to] = t;
+						best[to] = t;
+						labelRound[k][to] = k;
+						walkFrom[k][to] = s;
+						walkDist[k][to] = tt.transferDist[j];
+						if (!marked[to]) {
+							marked[to] = true;
+							markedList.add(to);
+						}
+					}
+				}
+			}
+			// walk to end from stops reached by ride
+			for (int i = 0; i < egressStops.size(); i++) {
+				int s = egressStops.getQuick(i);
+				if (ride[s] != INF) {
+					int t = ride[s] + egressTime.getQuick(i);
+					if (t < targetBound) {
+						targetBound = t;
+						roundBestStop[k] = s;
+						roundBestTime[k] = t;
+					}
+				}
+			}
+		}
+
+		List<TransportRouteResult> results = new ArrayList<TransportRouteResult>();
+		int fastest = targetBound;
+		for (int k = 1; k <= rounds; k++) {
+			int s = roundBestStop[k];
+			if (s == -1 || roundBestTime[k] > fastest + ctx.finishTimeSeconds) {
+				continue;
+			}
+			if (roundBestTime[k] >= maxTravelTimeCmpToWalk && !results.isEmpty()) {
+				continue;
+			}
+			TransportRouteResult route = new TransportRouteResult(ctx);
+			route.setRouteTime(roundBestTime[k]);
+			route.setFinishWalkDist(tt.getDistance(s, end.getLatitude(), end.getLongitude()));
+			for (int kk = k; kk >= 1; ) {
+				int r = rideRoute[kk][s];
+				int board = rideBoard[kk][s];
+				int alight = rideAlight[kk][s];
+				int boardStop = tt.routeStops[board];
+				TransportRouteResultSegment sg = new TransportRouteResultSegment();
+				sg.route = tt.routes.get(r);
+				sg.start = tt.getRouteIndex(r, board);
+				sg.end = tt.getRouteIndex(r, alight);
+				sg.travelTime = tt.routeTime[alight] - tt.routeTime[board];
+				sg.travelDistApproximate = tt.routeDist[alight] - tt.routeDist[board];
+				sg.depTime = cfg.useSchedule ? cfg.scheduleTimeOfDay + (tt.tripDeps[rideTrip[kk][s]] + tt.routeTime[board]) / 10 : -1;
+				// board stop could be reached in earlier round than previous one
+				int prevRound = labelRound[kk - 1][boardStop];
+				sg.walkDist = walkDist[prevRound][boardStop];
+				sg.walkTime = sg.walkDist / cfg.walkSpeed;
+				route.segments.add(0, sg);
+				s = walkFrom[prevRound][boardStop];
+				kk = prevRound;
+			}
+			results.add(route);
+		}
+		Collections.sort(results, new Comparator<TransportRouteResult>() {
+			@Override
+			public int compare(TransportRouteResult o1, TransportRouteResult o2) {
+				return Double.compare(o1.getRouteTime(), o2.getRouteTime());
+			}
+		});
+		System.out.println(String.format(Locale.US, "RAPTOR calculated %.1f seconds, found %d results, timetable %d routes / %d stops / %d transfers, visited %d routes / %d stops, loaded %d tiles (%d ms read, %d ms total)",
+				(System.currentTimeMillis() - ctx.startCalcTime) / 1000.0, results.size(),
+				tt.getRoutesCount(), tt.getStopsCount(), tt.getTransfersCount(), ctx.visitedRoutesCount, ctx.visitedStops,
+				ctx.quadTree.size(), ctx.readTime / (1000 * 1000), ctx.loadTime / (1000 * 1000)));
+		return results;
+	}
+
+	private List<TransportRoute> loadRoutes(TransportRoutingContext ctx, LatLon start, LatLon end, double totalDistance)
+			throws IOException {
+		double ext = (ctx.cfg.walkRadius + totalDistance * AREA_EXTENSION) / MapUtils.getTileDistanceWidth(31);
+		int sx = MapUtils.get31TileNumberX(start.getLongitude());
+		int sy = MapUtils.get31TileNumberY(start.getLatitude());
+		int ex = MapUtils.get31TileNumberX(end.getLongitude());
+		int ey = MapUtils.get31TileNumberY(end.getLatitude());
+		int left = (int) Math.max(0, Math.min(sx, ex) - ext);
+		int right = (int) Math.min(Integer.MAX_VALUE, Math.max(sx, ex) + ext);
+		int top = (int) Math.max(0, Math.min(sy, ey) - ext);
+		int bottom = (int) Math.min(Integer.MAX_VALUE, Math.max(sy, ey) + ext);
+		return ctx.getTransportRoutes(left, top, right, bottom);
+	}
+}
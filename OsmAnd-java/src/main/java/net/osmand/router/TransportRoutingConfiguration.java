@@ -35,6 +35,10 @@ public class TransportRoutingConfiguration {
 	public int boardingTime = 180;
 	
 	public boolean useSchedule;
+
+	// shared cache of transport stop tiles between routing contexts (null - tiles are loaded by every context)
+	public TransportTileCache tileCache;
+
 	// 10 seconds based
 	public int scheduleTimeOfDay = 12 * 60 * 6; // 12:00 - 60*6*12
 	public int scheduleMaxTime = 50 * 6; // not appropriate variable, should be dynamic
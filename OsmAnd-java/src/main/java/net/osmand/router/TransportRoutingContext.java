@@ -8,10 +8,12 @@ import net.osmand.data.TransportStop;
 import net.osmand.router.TransportRoutePlanner.TransportRouteSegment;
 import net.osmand.util.MapUtils;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -47,6 +49,8 @@ public class TransportRoutingContext {
 
 	private final int walkRadiusIn31;
 	private final int walkChangeRadiusIn31;
+	// files of readers (path:length:lastModified) to share tiles in cache, so tiles of replaced file are not reused
+	private final String filesKey;
 
 	public TransportRoutingContext(TransportRoutingConfiguration cfg, NativeLibrary library, BinaryMapIndexReader... readers) {
 		this.cfg = cfg;
@@ -55,6 +59,13 @@ public class TransportRoutingContext {
 		quadTree = new TLongObjectHashMap<List<TransportRouteSegment>>();
 		this.library = library;
 		transportStopsReader = new TransportStopsRouteReader(Arrays.asList(readers));
+		List<String> files = new ArrayList<String>();
+		for (BinaryMapIndexReader r : readers) {
+			File f = r.getFile();
+			files.add(f.getAbsolutePath() + ":" + f.length() + ":" + f.lastModified());
+		}
+		Collections.sort(files);
+		filesKey = files.toString();
 	}
 
 	public List<TransportRouteSegment> getTransportStops(LatLon loc) throws IOException {
@@ -97,17 +108,91 @@ public class TransportRoutingContext {
 		return res;
 	}
 
+	/**
+	 * Returns all routes stopping in the box, tiles are loaded and cached the same way as for stops search.
+	 */
+	public List<TransportRoute> getTransportRoutes(int left31, int top31, int right31, int bottom31) throws IOException {
+		long nanoTime = System.nanoTime();
+		int pz = 31 - cfg.ZOOM_TO_LOAD_TILES;
+		TLongObjectHashMap<TransportRoute> routes = new TLongObjectHashMap<TransportRoute>();
+		List<TransportRoute> res = new ArrayList<TransportRoute>();
+		for (int x = left31 >> pz; x <= right31 >> pz; x++) {
+			for (int y = top31 >> pz; y <= bottom31 >> pz; y++) {
+				long tileId = (((long) x) << (cfg.ZOOM_TO_LOAD_TILES + 1)) + y;
+				List<TransportRouteSegment> list = quadTree.get(tileId);
+				if (list == null) {
+					list = loadTile(x, y);
+					quadTree.put(tileId, list);
+				}
+				for (TransportRouteSegment r : list) {
+					long id = r.road.getId();
+					if (!routes.containsKey(id)) {
+						routes.put(id, r.road);
+						res.add(r.road);
+					}
+				}
+			}
+		}
+		loadTime += System.nanoTime() - nanoTime;
+		return res;
+	}
+
 
 	private List<TransportRouteSegment> loadTile(int x, int y) throws IOException {
 		long nanoTime = System.nanoTime();
 		List<TransportRouteSegment> lst = new ArrayList<TransportRouteSegment>();
+		if (cfg.tileCache != null) {
+			TransportTileCache.CachedTile tile = cfg.tileCache.getTile(filesKey, cfg.ZOOM_TO_LOAD_TILES, x, y,
+					new TransportTileCache.TileLoader() {
+						@Override
+						public Collection<TransportStop> readStops(int x, int y) throws IOException {
+							return readTileStops(x, y);
+						}
+					});
+			for (int i = 0; i < tile.stops.length; i++) {
+				for (int k = tile.stopStart[i]; k < tile.stopStart[i + 1]; k++) {
+					addTransportSegment(lst, tile.routes[tile.stopRoutes[k]], tile.stopIndexes[k]);
+				}
+			}
+		} else {
+			loadTransportSegments(readTileStops(x, y), lst);
+		}
+		readTime += System.nanoTime() - nanoTime;
+		return lst;
+	}
+
+	private Collection<TransportStop> readTileStops(int x, int y) throws IOException {
 		int pz = (31 - cfg.ZOOM_TO_LOAD_TILES);
 		BinaryMapIndexReader.SearchRequest<TransportStop> sr = BinaryMapIndexReader.buildSearchTransportRequest(x << pz, (x + 1) << pz,
 				y << pz, (y + 1) << pz, -1, null);
-		Collection<TransportStop> stops = transportStopsReader.readMergedTransportStops(sr);
-		loadTransportSegments(stops, lst);
-		readTime += System.nanoTime() - nanoTime;
-		return lst;
+		return transportStopsReader.readMergedTransportStops(sr);
+	}
+
+	static int findStopIndex(TransportRoute route, TransportStop s) {
+		int stopIndex = -1;
+		double dist = TransportRoute.SAME_STOP;
+		for (int k = 0; k < route.getForwardStops().size(); k++) {
+			TransportStop st = route.getForwardStops().get(k);
+			if(st.getId().longValue() == s.getId().longValue() ) {
+				stopIndex = k;
+				break;
+			}
+			double d = MapUtils.getDistance(st.getLocation(), s.getLocation());
+			if (d < dist) {
+				stopIndex = k;
+				dist = d;
+			}
+		}
+		return stopIndex;
+	}
+
+	private void addTransportSegment(List<TransportRouteSegment> lst, TransportRoute route, int stopIndex) {
+		if (cfg != null && cfg.useSchedule) {
+			loadScheduleRouteSegment(lst, route, stopIndex);
+		} else {
+			TransportRouteSegment segment = new TransportRouteSegment(route, stopIndex);
+			lst.add(segment);
+		}
 	}
 
 	private void loadTransportSegments(Collection<TransportStop> stops, List<TransportRouteSegment> lst) throws IOException {
@@ -116,27 +201,9 @@ public class TransportRoutingContext {
 				continue;
 			}
 			for (TransportRoute route : s.getRoutes()) {
-				int stopIndex = -1;
-				double dist = TransportRoute.SAME_STOP;
-				for (int k = 0; k < route.getForwardStops().size(); k++) {
-					TransportStop st = route.getForwardStops().get(k);
-					if(st.getId().longValue() == s.getId().longValue() ) {
-						stopIndex = k;
-						break;
-					}
-					double d = MapUtils.getDistance(st.getLocation(), s.getLocation());
-					if (d < dist) {
-						stopIndex = k;
-						dist = d;
-					}
-				}
+				int stopIndex = findStopIndex(route, s);
 				if (stopIndex != -1) {
-					if (cfg != null && cfg.useSchedule) {
-						loadScheduleRouteSegment(lst, route, stopIndex);
-					} else {
-						TransportRouteSegment segment = new TransportRouteSegment(route, stopIndex);
-						lst.add(segment);
-					}
+					addTransportSegment(lst, route, stopIndex);
 				} else {
 					System.err.println(String.format(Locale.US, "Routing error: missing stop '%s' in route '%s' id: %d",
 							s.toString(), route.getRef(), route.getId() / 2));
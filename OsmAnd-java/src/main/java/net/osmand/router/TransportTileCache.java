@@ -0,0 +1,215 @@
+package net.osmand.router;
+
+import net.osmand.data.TransportRoute;
+import net.osmand.data.TransportStop;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+/**
+ * Process-wide cache of transport stop tiles shared by many {@link TransportRoutingContext}
+ * (see {@link TransportRoutingConfiguration#tileCache}).
+ * Tile keeps merged stops and for every stop its routes with precalculated stop index in route,
+ * so contexts don't read stops and don't scan route stops again.
+ * Tiles are keyed by files of readers (the same set of files with the same length and modification time), zoom and tile id,
+ * least recently used tiles are evicted when estimated size exceeds memory limit.
+ * Cached stops and routes are shared and must not be modified.
+ */
+public class TransportTileCache {
+
+	private final long memoryLimit;
+	private long size;
+	private final Map<TileKey, CachedTile> tiles = new LinkedHashMap<TileKey, CachedTile>(256, 0.75f, true);
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong readTime = new AtomicLong();
+	private final AtomicLong loadTime = new AtomicLong();
+
+	public TransportTileCache(long memoryLimit) {
+		this.memoryLimit = memoryLimit;
+	}
+
+	public static class CachedTile {
+		public final TransportStop[] stops;
+		public final TransportRoute[] routes;
+		// routes of stop i are routes[stopRoutes[k]] with stop index stopIndexes[k] for k in [stopStart[i], stopStart[i + 1])
+		public final int[] stopStart;
+		public final int[] stopRoutes;
+		public final int[] stopIndexes;
+		public final int estimatedSize;
+
+		CachedTile(TransportStop[] stops, TransportRoute[] routes, int[] stopStart, int[] stopRoutes, int[] stopIndexes,
+				int estimatedSize) {
+			this.stops = stops;
+			this.routes = routes;
+			this.stopStart = stopStart;
+			this.stopRoutes = stopRoutes;
+			this.stopIndexes = stopIndexes;
+			this.estimatedSize = estimatedSize;
+		}
+	}
+
+	interface TileLoader {
+		Collection<TransportStop> readStops(int x, int y) throws IOException;
+	}
+
+	private static class TileKey {
+		private final String files;
+		private final int zoom;
+		private final long tileId;
+
+		TileKey(String files, int zoom, long tileId) {
+			this.files = files;
+			this.zoom = zoom;
+			this.tileId = tileId;
+		}
+
+		@Override
+		public int hashCode() {
+			return (files.hashCode() * 31 + zoom) * 31 + (int) (tileId ^ (tileId >>> 32));
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof TileKey)) {
+				return false;
+			}
+			TileKey other = (TileKey) obj;
+			return zoom == other.zoom && tileId == other.tileId && files.equals(other.files);
+		}
+	}
+
+	CachedTile getTile(String files, int zoom, int x, int y, TileLoader loader) throws IOException {
+		TileKey key = new TileKey(files, zoom, (((long) x) << (zoom + 1)) + y);
+		synchronized (this) {
+			CachedTile tile = tiles.get(key);
+			if (tile != null) {
+				hits.incrementAndGet();
+				return tile;
+			}
+		}
+		misses.incrementAndGet();
+		// read outside of lock (readers belong to calling context)
+		long nanoTime = System.nanoTime();
+		Collection<TransportStop> stops = loader.readStops(x, y);
+		long read = System.nanoTime();
+		readTime.addAndGet(read - nanoTime);
+		CachedTile tile = buildTile(stops);
+		loadTime.addAndGet(System.nanoTime() - nanoTime);
+		synchronized (this) {
+			CachedTile existing = tiles.get(key);
+			if (existing != null) {
+				return existing;
+			}
+			tiles.put(key, tile);
+			size += tile.estimatedSize;
+			Iterator<CachedTile> it = tiles.values().iterator();
+			while (size > memoryLimit && it.hasNext()) {
+				CachedTile evict = it.next();
+				if (evict == tile) {
+					break;
+				}
+				it.remove();
+				size -= evict.estimatedSize;
+				evictions.incrementAndGet();
+			}
+		}
+		return tile;
+	}
+
+	private static CachedTile buildTile(Collection<TransportStop> loaded) {
+		TLongObjectHashMap<Integer> routeIds = new TLongObjectHashMap<Integer>();
+		List<TransportRoute> routes = new ArrayList<TransportRoute>();
+		List<TransportStop> stops = new ArrayList<TransportStop>();
+		TIntArrayList stopStart = new TIntArrayList();
+		TIntArrayList stopRoutes = new TIntArrayList();
+		TIntArrayList stopIndexes = new TIntArrayList();
+		int estimatedSize = 0;
+		for (TransportStop s : loaded) {
+			if (s.isDeleted() || s.getRoutes() == null) {
+				continue;
+			}
+			stops.add(s);
+			stopStart.add(stopRoutes.size());
+			estimatedSize += 200;
+			for (TransportRoute route : s.getRoutes()) {
+				int stopIndex = TransportRoutingContext.findStopIndex(route, s);
+				if (stopIndex == -1) {
+					System.err.println(String.format(Locale.US, "Routing error: missing stop '%s' in route '%s' id: %d",
+							s.toString(), route.getRef(), route.getId() / 2));
+					continue;
+				}
+				Integer ind = routeIds.get(route.getId());
+				if (ind == null) {
+					ind = routes.size();
+					routeIds.put(route.getId(), ind);
+					routes.add(route);
+					estimatedSize += 150 + 16 * route.getForwardStops().size();
+				}
+				stopRoutes.add(ind);
+				stopIndexes.add(stopIndex);
+				estimatedSize += 8;
+			}
+		}
+		stopStart.add(stopRoutes.size());
+		return new CachedTile(stops.toArray(new TransportStop[stops.size()]), routes.toArray(new TransportRoute[routes.size()]),
+				stopStart.toArray(), stopRoutes.toArray(), stopIndexes.toArray(), estimatedSize);
+	}
+
+	public synchronized void clear() {
+		tiles.clear();
+		size = 0;
+	}
+
+	public synchronized long getEstimatedSize() {
+		return size;
+	}
+
+	public synchronized int getTilesCount() {
+		return tiles.size();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	// nanoseconds spent to read stops of missed tiles
+	public long getReadTime() {
+		return readTime.get();
+	}
+
+	// nanoseconds spent to read and index missed tiles
+	public long getLoadTime() {
+		return loadTime.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Transport tile cache: %d tiles, %.2f MB of %.2f MB, hits %d, misses %d, evictions %d, read %d ms, load %d ms",
+				getTilesCount(), getEstimatedSize() / (float) (1 << 20), memoryLimit / (float) (1 << 20),
+				getHits(), getMisses(), getEvictions(), getReadTime() / 1000000, getLoadTime() / 1000000);
+	}
+}
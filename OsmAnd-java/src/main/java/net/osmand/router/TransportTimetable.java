@@ -0,0 +1,236 @@
+package net.osmand.router;
+
+import net.osmand.data.LatLon;
+import net.osmand.data.TransportRoute;
+import net.osmand.data.TransportSchedule;
+import net.osmand.data.TransportStop;
+import net.osmand.util.MapUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+/**
+ * Compact array based timetable of transport routes used by {@link TransportRaptorPlanner}.
+ * Stops are merged by id, stops of every route are kept in order of route forward stops
+ * (so route position is the same index as in {@link TransportRoute#getForwardStops()}).
+ * All times are in seconds, schedule departures are counted from {@link TransportRoutingConfiguration#scheduleTimeOfDay}.
+ */
+public class TransportTimetable {
+
+	final TransportRoutingConfiguration cfg;
+	final List<TransportRoute> routes = new ArrayList<TransportRoute>();
+	final TransportStop[] stops;
+	final double[] stopLat;
+	final double[] stopLon;
+
+	// stops of route r are routeStops[routeStart[r] .. routeStart[r + 1])
+	final int[] routeStart;
+	final int[] routeStops;
+	// travel time and distance from first stop of route (for every element of routeStops)
+	final int[] routeTime;
+	final float[] routeDist;
+	// sorted departures from first stop of route r are tripDeps[tripStart[r] .. tripStart[r + 1]) (schedule only)
+	final int[] tripStart;
+	final int[] tripDeps;
+
+	// routes of stop s are stopRoutes[stopRouteStart[s] .. stopRouteStart[s + 1]) with index in routeStops
+	final int[] stopRouteStart;
+	final int[] stopRoutes;
+	final int[] stopRouteIndex;
+
+	// walking transfers (in walkChangeRadius) from stop s are transferTo[transferStart[s] .. transferStart[s + 1])
+	final int[] transferStart;
+	final int[] transferTo;
+	final float[] transferDist;
+
+	private TransportTimetable(TransportRoutingConfiguration cfg, List<TransportRoute> loaded) {
+		this.cfg = cfg;
+		TLongObjectHashMap<Integer> stopIds = new TLongObjectHashMap<Integer>();
+		List<TransportStop> stopsList = new ArrayList<TransportStop>();
+		TIntArrayList rStart = new TIntArrayList();
+		TIntArrayList rStops = new TIntArrayList();
+		TIntArrayList rTime = new TIntArrayList();
+		List<Float> rDist = new ArrayList<Float>();
+		TIntArrayList tStart = new TIntArrayList();
+		TIntArrayList tDeps = new TIntArrayList();
+		for (TransportRoute route : loaded) {
+			float speed = cfg.getSpeedByRouteType(route.getType());
+			TransportSchedule schedule = route.getSchedule();
+			List<TransportStop> forwardStops = route.getForwardStops();
+			int length = forwardStops.size();
+			if (cfg.useSchedule) {
+				if (schedule == null) {
+					continue;
+				}
+				// route can't be traveled further than stop intervals are known
+				length = Math.min(length, schedule.avgStopIntervals.size() + 1);
+			}
+			if (speed == 0 || length < 2) {
+				continue;
+			}
+			routes.add(route);
+			rStart.add(rStops.size());
+			tStart.add(tDeps.size());
+			double time = 0;
+			double dist = 0;
+			for (int i = 0; i < length; i++) {
+				TransportStop stop = forwardStops.get(i);
+				if (i > 0) {
+					double segmentDist = MapUtils.getDistance(forwardStops.get(i - 1).getLocation(), stop.getLocation());
+					dist += segmentDist;
+					if (cfg.useSchedule) {
+						time += schedule.avgStopIntervals.getQuick(i - 1) * 10;
+					} else {
+						time += cfg.stopTime + segmentDist / speed;
+					}
+				}
+				Integer ind = stopIds.get(stop.getId());
+				if (ind == null) {
+					ind = stopsList.size();
+					stopIds.put(stop.getId(), ind);
+					stopsList.add(stop);
+				}
+				rStops.add(ind);
+				rTime.add((int) Math.round(time));
+				rDist.add((float) dist);
+			}
+			if (cfg.useSchedule) {
+				int t = 0;
+				for (int i = 0; i < schedule.tripIntervals.size(); i++) {
+					t += schedule.tripIntervals.getQuick(i);
+					tDeps.add((t - cfg.scheduleTimeOfDay) * 10);
+				}
+			}
+		}
+		rStart.add(rStops.size());
+		tStart.add(tDeps.size());
+		routeStart = rStart.toArray();
+		routeStops = rStops.toArray();
+		routeTime = rTime.toArray();
+		routeDist = new float[rDist.size()];
+		for (int i = 0; i < routeDist.length; i++) {
+			routeDist[i] = rDist.get(i);
+		}
+		tripStart = tStart.toArray();
+		tripDeps = tDeps.toArray();
+
+		stops = stopsList.toArray(new TransportStop[stopsList.size()]);
+		stopLat = new double[stops.length];
+		stopLon = new double[stops.length];
+		for (int i = 0; i < stops.length; i++) {
+			LatLon l = stops[i].getLocation();
+			stopLat[i] = l.getLatitude();
+			stopLon[i] = l.getLongitude();
+		}
+		// index stop -> routes
+		stopRouteStart = new int[stops.length + 1];
+		for (int s : routeStops) {
+			stopRouteStart[s + 1]++;
+		}
+		for (int i = 0; i < stops.length; i++) {
+			stopRouteStart[i + 1] += stopRouteStart[i];
+		}
+		stopRoutes = new int[routeStops.length];
+		stopRouteIndex = new int[routeStops.length];
+		int[] fill = new int[stops.length];
+		for (int r = 0; r < routes.size(); r++) {
+			for (int i = routeStart[r]; i < routeStart[r + 1]; i++) {
+				int s = routeStops[i];
+				int p = stopRouteStart[s] + fill[s]++;
+				stopRoutes[p] = r;
+				stopRouteIndex[p] = i;
+			}
+		}
+		// transfers by grid with cell of walk change radius
+		int cell = Math.max(1, (int) (cfg.walkChangeRadius / MapUtils.getTileDistanceWidth(31)));
+		TLongObjectHashMap<TIntArrayList> grid = new TLongObjectHashMap<TIntArrayList>();
+		for (int i = 0; i < stops.length; i++) {
+			long key = cellKey(stops[i].x31 / cell, stops[i].y31 / cell);
+			TIntArrayList l = grid.get(key);
+			if (l == null) {
+				l = new TIntArrayList(4);
+				grid.put(key, l);
+			}
+			l.add(i);
+		}
+		TIntArrayList tTo = new TIntArrayList();
+		List<Float> tDist = new ArrayList<Float>();
+		transferStart = new int[stops.length + 1];
+		for (int i = 0; i < stops.length; i++) {
+			transferStart[i] = tTo.size();
+			int cx = stops[i].x31 / cell;
+			int cy = stops[i].y31 / cell;
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					TIntArrayList l = grid.get(cellKey(cx + dx, cy + dy));
+					if (l == null) {
+						continue;
+					}
+					for (int k = 0; k < l.size(); k++) {
+						int j = l.getQuick(k);
+						if (j != i) {
+							double d = getDistance(i, stopLat[j], stopLon[j]);
+							if (d <= cfg.walkChangeRadius) {
+								tTo.add(j);
+								tDist.add((float) d);
+							}
+						}
+					}
+				}
+			}
+		}
+		transferStart[stops.length] = tTo.size();
+		transferTo = tTo.toArray();
+		transferDist = new float[tDist.size()];
+		for (int i = 0; i < transferDist.length; i++) {
+			transferDist[i] = tDist.get(i);
+		}
+	}
+
+	private static long cellKey(int x, int y) {
+		return (((long) x) << 32) + y;
+	}
+
+	public static TransportTimetable build(TransportRoutingConfiguration cfg, List<TransportRoute> routes) {
+		return new TransportTimetable(cfg, routes);
+	}
+
+	double getDistance(int stop, double lat, double lon) {
+		return MapUtils.getDistance(stopLat[stop], stopLon[stop], lat, lon);
+	}
+
+	int getRouteIndex(int route, int routeStopIndex) {
+		return routeStopIndex - routeStart[route];
+	}
+
+	// first trip of route departing from route stop (index in routeStops) not earlier than time, -1 if there is no such trip
+	int findTrip(int route, int routeStopIndex, int time) {
+		int offset = routeTime[routeStopIndex];
+		int lo = tripStart[route];
+		int hi = tripStart[route + 1];
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (tripDeps[mid] + offset < time) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo < tripStart[route + 1] ? lo : -1;
+	}
+
+	public int getStopsCount() {
+		return stops.length;
+	}
+
+	public int getRoutesCount() {
+		return routes.size();
+	}
+
+	public int getTransfersCount() {
+		return transferTo.length;
+	}
+}
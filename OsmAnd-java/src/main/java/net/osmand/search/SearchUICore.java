@@ -5,6 +5,7 @@ import net.osmand.Collator;
 import net.osmand.PlatformUtil;
 import net.osmand.ResultMatcher;
 import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
 import net.osmand.data.Amenity;
 import net.osmand.data.City;
 import net.osmand.data.LatLon;
@@ -39,12 +40,20 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -62,6 +71,8 @@ public class SearchUICore {
 
 	private ThreadPoolExecutor singleThreadedExecutor;
 	private LinkedBlockingQueue<Runnable> taskQueue;
+	// executor to search maps in parallel (null - maps are searched one by one in search thread)
+	private ThreadPoolExecutor regionsExecutor;
 	private Runnable onSearchStart = null;
 	private Runnable onResultsComplete = null;
 	private AtomicInteger requestNumber = new AtomicInteger();
@@ -124,11 +135,15 @@ public class SearchUICore {
 				LOG.info("Add search results resortAll=" + (resortAll ? "true" : "false") + " removeDuplicates=" + (removeDuplicates ? "true" : "false") + " Results=" + sr.size() + " Current results=" + this.searchResults.size());
 			}
 			if (resortAll) {
-				this.searchResults.addAll(sr);
-				sortSearchResults();
-				if (removeDuplicates) {
-					filterSearchDuplicateResults();
+				TopSearchResults top = new TopSearchResults(phrase, Integer.MAX_VALUE, removeDuplicates);
+				for (SearchResult r : searchResults) {
+					top.add(r);
+				}
+				for (SearchResult r : sr) {
+					top.add(r);
 				}
+				searchResults.clear();
+				searchResults.addAll(top.getResults());
 			} else {
 				if (!removeDuplicates) {
 					this.searchResults.addAll(sr);
@@ -183,6 +198,18 @@ public class SearchUICore {
 			return this;
 		}
 
+		/**
+		 * Adds results of search, they are sorted and duplicates are removed (while they are found
+		 * if matcher collects top results).
+		 */
+		public SearchResultCollection addSearchResults(SearchResultMatcher rm) {
+			if (!searchResults.isEmpty() || rm.topResults == null) {
+				return addSearchResults(rm.getRequestResults(), true, true);
+			}
+			searchResults.addAll(rm.getRequestResults());
+			return this;
+		}
+
 		public boolean hasSearchResults() {
 			return !Algorithms.isEmpty(searchResults);
 		}
@@ -318,6 +345,23 @@ public class SearchUICore {
 		this.totalLimit = totalLimit;
 	}
 
+	/**
+	 * Apis are called one by one in order of priority, but every api could search maps in parallel
+	 * (results are published in the same order as by search of maps one by one).
+	 * @param threads max number of threads searching maps (1 - maps are searched in search thread)
+	 */
+	public void setSearchParallelism(int threads) {
+		if (regionsExecutor != null) {
+			regionsExecutor.shutdown();
+			regionsExecutor = null;
+		}
+		if (threads > 1) {
+			regionsExecutor = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>());
+			regionsExecutor.allowCoreThreadTimeOut(true);
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	public <T> T getApiByClass(Class<T> cl) {
 		for (SearchCoreAPI a : apis) {
@@ -352,13 +396,21 @@ public class SearchUICore {
 			preparePhrase(sphrase);
 			AtomicInteger ai = new AtomicInteger();
 			SearchResultMatcher rm = new SearchResultMatcher(matcher, sphrase, ai.get(), ai, totalLimit);
+			rm.regionsExecutor = regionsExecutor;
+			if (resortAll && removeDuplicates) {
+				rm.collectTopResults();
+			}
 			api.search(sphrase, rm);
 
 			SearchResultCollection collection = new SearchResultCollection(sphrase);
-			if (rm.totalLimit != -1 && rm.count > rm.totalLimit) {
+			if (rm.isLimitExceeded()) {
 				collection.setUseLimit(true);
 			}
-			collection.addSearchResults(rm.getRequestResults(), resortAll, removeDuplicates);
+			if (resortAll && removeDuplicates) {
+				collection.addSearchResults(rm);
+			} else {
+				collection.addSearchResults(rm.getRequestResults(), resortAll, removeDuplicates);
+			}
 			if (debugMode) {
 				LOG.info("Finish shallow search <" + sphrase + "> Results=" + rm.getRequestResults().size());
 			}
@@ -497,12 +549,13 @@ public class SearchUICore {
 		}
 		final SearchPhrase searchPhrase = this.phrase.generateNewPhrase(text, searchSettings);
 		final SearchResultMatcher rm = new SearchResultMatcher(null, searchPhrase, requestNumber.get(), requestNumber, totalLimit);
+		rm.collectTopResults();
 		searchInternal(searchPhrase, rm);
 		SearchResultCollection resultCollection = new SearchResultCollection(searchPhrase);
-		if (rm.totalLimit != -1 && rm.count > rm.totalLimit) {
+		if (rm.isLimitExceeded()) {
 			resultCollection.setUseLimit(true);
 		}
-		resultCollection.addSearchResults(rm.getRequestResults(), true, true);
+		resultCollection.addSearchResults(rm);
 		return resultCollection;
 	}
 
@@ -526,6 +579,7 @@ public class SearchUICore {
 						onSearchStart.run();
 					}
 					final SearchResultMatcher rm = new SearchResultMatcher(matcher, phrase, request, requestNumber, totalLimit);
+					rm.collectTopResults();
 					if (debugMode) {
 						LOG.info("Starting search <" + phrase.toString() + ">");
 					}
@@ -569,7 +623,7 @@ public class SearchUICore {
 								if (debugMode) {
 									LOG.info("Current data filtered <" + phrase + "> Results=" + quickRes.searchResults.size());
 								}
-								if (rm.totalLimit != -1 && rm.count > rm.totalLimit) {
+								if (rm.isLimitExceeded()) {
 									quickRes.setUseLimit(true);
 								}
 								if (!rm.isCancelled()) {
@@ -591,13 +645,13 @@ public class SearchUICore {
 					searchInternal(phrase, rm);
 					if (!rm.isCancelled()) {
 						SearchResultCollection collection = new SearchResultCollection(phrase);
-						if (rm.totalLimit != -1 && rm.count > rm.totalLimit) {
+						if (rm.isLimitExceeded()) {
 							collection.setUseLimit(true);
 						}
 						if (debugMode) {
 							LOG.info("Processing search results <" + phrase + ">");
 						}
-						collection.addSearchResults(rm.getRequestResults(), true, true);
+						collection.addSearchResults(rm);
 						if (debugMode) {
 							LOG.info("Finishing search <" + phrase + "> Results=" + rm.getRequestResults().size());
 						}
@@ -682,6 +736,7 @@ public class SearchUICore {
 
 	void searchInternal(final SearchPhrase phrase, SearchResultMatcher matcher) {
 		preparePhrase(phrase);
+		matcher.regionsExecutor = regionsExecutor;
 		ArrayList<SearchCoreAPI> lst = new ArrayList<>(apis);
 		Collections.sort(lst, new Comparator<SearchCoreAPI>() {
 
@@ -702,11 +757,12 @@ public class SearchUICore {
 				if (debugMode) {
 					LOG.info("Run API search <" + phrase + "> API=<" + api + ">");
 				}
+				long startTime = System.currentTimeMillis();
 				api.search(phrase, matcher);
 				if (debugMode) {
 					LOG.info("API search finishing <" + phrase + "> API=<" + api + ">");
 				}
-				matcher.apiSearchFinished(api, phrase);
+				matcher.apiSearchFinished(api, phrase, System.currentTimeMillis() - startTime);
 				if (debugMode) {
 					LOG.info("API search done <" + phrase + "> API=<" + api + ">");
 				}
@@ -732,6 +788,208 @@ public class SearchUICore {
 		}
 	}
 
+	/**
+	 * Search of one api in one map (see {@link SearchResultMatcher#searchRegions}).
+	 */
+	public static abstract class RegionSearchTask {
+
+		/**
+		 * Searches map and publishes results to matcher of map, could be called in other thread
+		 * in parallel with other maps (matcher of map is not shared with other threads).
+		 */
+		public abstract void search(BinaryMapIndexReader region, SearchResultMatcher regionMatcher) throws IOException;
+
+		/**
+		 * Filters results of all maps (e.g. same object from another map) before they are published,
+		 * called in search thread in order of maps.
+		 */
+		public boolean accept(SearchResult result) {
+			return true;
+		}
+
+		/**
+		 * The best result (by {@link SearchResultComparator}) which could be found in map, search of map is skipped
+		 * when all best results of limited search are better. Called in search thread.
+		 * @return null if any result could be found
+		 */
+		public SearchResult getBestResult(BinaryMapIndexReader region) {
+			return null;
+		}
+	}
+
+	// matcher of one map : results are published to main matcher directly or buffered if map is searched in other thread
+	private static class RegionResultMatcher extends SearchResultMatcher {
+		private final SearchResultMatcher main;
+		private final RegionSearchTask task;
+		private final List<SearchResult> buffer;
+
+		RegionResultMatcher(SearchResultMatcher main, RegionSearchTask task, boolean buffered) {
+			super(null, main.phrase, main.request, main.requestNumber, -1);
+			this.main = main;
+			this.task = task;
+			this.buffer = buffered ? new ArrayList<SearchResult>() : null;
+			setParentSearchResult(main.getParentSearchResult());
+		}
+
+		@Override
+		public boolean publish(SearchResult object) {
+			if (buffer != null) {
+				object.parentSearchResult = getParentSearchResult();
+				buffer.add(object);
+				return true;
+			}
+			if (!task.accept(object)) {
+				return false;
+			}
+			SearchResult prev = main.setParentSearchResult(getParentSearchResult());
+			boolean published = main.publish(object);
+			main.setParentSearchResult(prev);
+			return published;
+		}
+
+		// publishes results in search thread
+		void publishBuffered() {
+			if (getExportedObjects() != null) {
+				for (MapObject object : getExportedObjects()) {
+					main.exportObject(main.phrase, object);
+				}
+			}
+			if (getExportedCities() != null) {
+				for (City city : getExportedCities()) {
+					main.exportCity(main.phrase, city);
+				}
+			}
+			for (SearchResult object : buffer) {
+				if (main.isCancelled()) {
+					break;
+				}
+				if (task.accept(object)) {
+					SearchResult prev = main.setParentSearchResult(object.parentSearchResult);
+					main.publish(object);
+					main.setParentSearchResult(prev);
+				}
+			}
+		}
+
+		@Override
+		public void exportObject(SearchPhrase phrase, MapObject object) {
+			if (buffer != null) {
+				super.exportObject(phrase, object);
+			} else {
+				main.exportObject(phrase, object);
+			}
+		}
+
+		@Override
+		public void exportCity(SearchPhrase phrase, City city) {
+			if (buffer != null) {
+				super.exportCity(phrase, city);
+			} else {
+				main.exportCity(phrase, city);
+			}
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return main.isCancelled();
+		}
+	}
+
+	/**
+	 * The best results (by {@link SearchResultComparator}) of search. Memory and sorting depend on limit, not on number
+	 * of found results: result worse than all kept results is dropped as soon as it is published.
+	 * Of results at the same place (~10 m) with the same type and name (same by
+	 * {@link SearchResultCollection#sameSearchResult}) only the best is kept, other duplicates are filtered
+	 * from sorted results.
+	 */
+	static class TopSearchResults {
+		// ~11 m, results of one cell are closer than similarity radius of same results (30 m)
+		private static final double DUPLICATE_CELL = 1e-4;
+		private static final int INITIAL_CAPACITY = 64;
+
+		private final SearchPhrase phrase;
+		private final int limit;
+		private final boolean removeDuplicates;
+		private final SearchResultComparator cmp;
+		private final PriorityQueue<SearchResult> worstFirst;
+		private final Map<String, SearchResult> byPlace = new HashMap<>();
+		private List<SearchResult> sorted;
+
+		TopSearchResults(SearchPhrase phrase, int limit, boolean removeDuplicates) {
+			this.phrase = phrase;
+			this.limit = limit;
+			this.removeDuplicates = removeDuplicates;
+			this.cmp = new SearchResultComparator(phrase);
+			this.worstFirst = new PriorityQueue<>(Math.max(1, Math.min(limit, INITIAL_CAPACITY)),
+					Collections.reverseOrder(cmp));
+		}
+
+		void add(SearchResult r) {
+			if (limit <= 0) {
+				return;
+			}
+			String place = removeDuplicates ? getPlaceKey(r) : null;
+			SearchResult same = place == null ? null : byPlace.get(place);
+			if (same != null) {
+				if (cmp.compare(r, same) >= 0) {
+					return;
+				}
+				worstFirst.remove(same);
+			} else if (worstFirst.size() >= limit) {
+				SearchResult worst = worstFirst.peek();
+				if (cmp.compare(r, worst) >= 0) {
+					return;
+				}
+				worstFirst.poll();
+				String worstPlace = removeDuplicates ? getPlaceKey(worst) : null;
+				if (worstPlace != null) {
+					byPlace.remove(worstPlace);
+				}
+			}
+			worstFirst.add(r);
+			if (place != null) {
+				byPlace.put(place, r);
+			}
+			sorted = null;
+		}
+
+		/**
+		 * @param bound the best result that could be found by further search (e.g. in other map)
+		 * @return true if limit is reached and all kept results are better than bound by search distance
+		 * (or by word count and phrase match weight)
+		 */
+		boolean outranks(SearchResult bound) {
+			if (limit <= 0 || worstFirst.size() < limit) {
+				return false;
+			}
+			return cmp.compareTillSearchDistance(worstFirst.peek(), bound) < 0;
+		}
+
+		List<SearchResult> getResults() {
+			if (sorted == null) {
+				sorted = new ArrayList<>(worstFirst);
+				Collections.sort(sorted, cmp);
+				if (removeDuplicates) {
+					// same results of neighbour cells, only nearest results are compared
+					new SearchResultCollection(phrase).filterSearchDuplicateResults(sorted);
+				}
+			}
+			return sorted;
+		}
+
+		// results with the same key are same by sameSearchResult (null if it can't be decided by key)
+		static String getPlaceKey(SearchResult r) {
+			if (r.location == null || r.localeName == null || r.objectType == null
+					|| ObjectType.isTopVisible(r.objectType) || r.objectType == ObjectType.STREET
+					|| r.objectType == ObjectType.INDEX_ITEM || r.objectType == ObjectType.GPX_TRACK) {
+				return null;
+			}
+			String type = r.object instanceof Amenity ? ((Amenity) r.object).getType().getKeyName() : "";
+			return r.objectType.name() + " " + type + " " + Math.round(r.location.getLatitude() / DUPLICATE_CELL) + " "
+					+ Math.round(r.location.getLongitude() / DUPLICATE_CELL) + " " + r.localeName;
+		}
+	}
+
 	public static class SearchResultMatcher implements ResultMatcher<SearchResult> {
 		private final List<SearchResult> requestResults = new ArrayList<>();
 		private final ResultMatcher<SearchResult> matcher;
@@ -743,6 +1001,13 @@ public class SearchUICore {
 		private SearchPhrase phrase;
 		private List<MapObject> exportedObjects;
 		private List<City> exportedCities;
+		ExecutorService regionsExecutor;
+		// the best results of search (less than total limit if search is limited), instead of raw results
+		// when results are going to be sorted and duplicates removed
+		private TopSearchResults topResults;
+		// results of maps which weren't searched (or searched partially) couldn't get to the best results
+		private volatile boolean limitExceeded;
+		private volatile SearchRequest<?> searchRequest;
 
 		public SearchResultMatcher(ResultMatcher<SearchResult> matcher, SearchPhrase phrase, int request,
 								   AtomicInteger requestNumber, int totalLimit) {
@@ -753,6 +1018,17 @@ public class SearchUICore {
 			this.totalLimit = totalLimit;
 		}
 
+		/**
+		 * Keeps only the best results sorted and without duplicates (should be called before search), maps which
+		 * results couldn't get to them are not searched.
+		 */
+		void collectTopResults() {
+			if (phrase != null) {
+				// less than total limit results are kept
+				topResults = new TopSearchResults(phrase, totalLimit != -1 ? totalLimit - 1 : Integer.MAX_VALUE, true);
+			}
+		}
+
 		public SearchResult setParentSearchResult(SearchResult parentSearchResult) {
 			SearchResult prev = this.parentSearchResult;
 			this.parentSearchResult = parentSearchResult;
@@ -764,11 +1040,43 @@ public class SearchUICore {
 		}
 
 		public List<SearchResult> getRequestResults() {
-			return requestResults;
+			return topResults != null ? topResults.getResults() : requestResults;
 		}
 
 		public int getCount() {
-			return requestResults.size();
+			return totalLimit == -1 ? count : Math.min(count, totalLimit - 1);
+		}
+
+		/**
+		 * @return true if more results than total limit are found or search of maps was stopped because their results
+		 * couldn't get to the best results
+		 */
+		public boolean isLimitExceeded() {
+			return limitExceeded || (totalLimit != -1 && count > totalLimit);
+		}
+
+		/**
+		 * Request of map searched by this matcher, it's stopped by {@link SearchRequest#limitExceeded()}
+		 * when results of map couldn't get to the best results.
+		 */
+		public void setSearchRequest(SearchRequest<?> searchRequest) {
+			this.searchRequest = searchRequest;
+			if (limitExceeded) {
+				searchRequest.setLimitExceeded(true);
+			}
+		}
+
+		void setLimitExceeded() {
+			limitExceeded = true;
+			SearchRequest<?> req = searchRequest;
+			if (req != null) {
+				req.setLimitExceeded(true);
+			}
+		}
+
+		// all kept results are better than any result of map (bound is the best result of map)
+		private boolean outranks(SearchResult bound) {
+			return bound != null && topResults != null && topResults.outranks(bound);
 		}
 
 		public void searchStarted(SearchPhrase phrase) {
@@ -796,27 +1104,132 @@ public class SearchUICore {
 		}
 
 		public void apiSearchFinished(SearchCoreAPI api, SearchPhrase phrase) {
+			apiSearchFinished(api, phrase, 0);
+		}
+
+		public void apiSearchFinished(SearchCoreAPI api, SearchPhrase phrase, long searchTime) {
 			if (matcher != null) {
 				SearchResult sr = new SearchResult(phrase);
 				sr.objectType = ObjectType.SEARCH_API_FINISHED;
 				sr.object = api;
 				sr.parentSearchResult = parentSearchResult;
+				sr.searchTime = searchTime;
 				matcher.publish(sr);
 			}
 		}
 
 		public void apiSearchRegionFinished(SearchCoreAPI api, BinaryMapIndexReader region, SearchPhrase phrase) {
+			apiSearchRegionFinished(api, region, phrase, 0);
+		}
+
+		public void apiSearchRegionFinished(SearchCoreAPI api, BinaryMapIndexReader region, SearchPhrase phrase,
+				long searchTime) {
 			if (matcher != null) {
 				SearchResult sr = new SearchResult(phrase);
 				sr.objectType = ObjectType.SEARCH_API_REGION_FINISHED;
 				sr.object = api;
 				sr.parentSearchResult = parentSearchResult;
 				sr.file = region;
+				sr.searchTime = searchTime;
 				matcher.publish(sr);
 				if (debugMode) {
-					LOG.info("API region search done <" + phrase + "> API=<" + api + "> Region=<" + region.getFile().getName() + ">");
+					LOG.info("API region search done <" + phrase + "> API=<" + api + "> Region=<" + region.getFile().getName()
+							+ "> Time=" + searchTime + " ms");
+				}
+			}
+		}
+
+		/**
+		 * Searches maps one by one or in parallel (if search parallelism is set). Results of maps searched in parallel
+		 * are published in order of maps, so priority of results, total limit and cancellation work the same way
+		 * as for search one by one. Search time of every map is reported by apiSearchRegionFinished.
+		 */
+		public void searchRegions(SearchCoreAPI api, SearchPhrase phrase, Iterator<BinaryMapIndexReader> regions,
+				final RegionSearchTask task) throws IOException {
+			if (regionsExecutor == null) {
+				while (regions.hasNext()) {
+					BinaryMapIndexReader r = regions.next();
+					long startTime = System.currentTimeMillis();
+					if (outranks(getBestResult(task, r))) {
+						limitExceeded = true;
+					} else {
+						task.search(r, new RegionResultMatcher(this, task, false));
+					}
+					apiSearchRegionFinished(api, r, phrase, System.currentTimeMillis() - startTime);
 				}
+				return;
 			}
+			List<BinaryMapIndexReader> regionsList = new ArrayList<>();
+			List<SearchResult> bounds = new ArrayList<>();
+			List<Future<Long>> futures = new ArrayList<>();
+			List<RegionResultMatcher> matchers = new ArrayList<>();
+			while (regions.hasNext()) {
+				final BinaryMapIndexReader r = regions.next();
+				final RegionResultMatcher regionMatcher = new RegionResultMatcher(this, task, true);
+				regionsList.add(r);
+				bounds.add(getBestResult(task, r));
+				matchers.add(regionMatcher);
+				futures.add(regionsExecutor.submit(new Callable<Long>() {
+					@Override
+					public Long call() throws Exception {
+						long startTime = System.currentTimeMillis();
+						if (!regionMatcher.isCancelled() && !regionMatcher.isLimitExceeded()) {
+							task.search(r, regionMatcher);
+						}
+						return System.currentTimeMillis() - startTime;
+					}
+				}));
+			}
+			try {
+				for (int i = 0; i < futures.size(); i++) {
+					long searchTime;
+					try {
+						searchTime = futures.get(i).get();
+					} catch (ExecutionException e) {
+						if (e.getCause() instanceof IOException) {
+							throw (IOException) e.getCause();
+						} else if (e.getCause() instanceof RuntimeException) {
+							throw (RuntimeException) e.getCause();
+						}
+						throw new IllegalStateException(e.getCause());
+					} catch (InterruptedException e) {
+						throw new IOException(e);
+					}
+					if (isCancelled()) {
+						break;
+					}
+					if (matchers.get(i).isLimitExceeded()) {
+						limitExceeded = true;
+					} else {
+						matchers.get(i).publishBuffered();
+					}
+					if (isCancelled()) {
+						break;
+					}
+					apiSearchRegionFinished(api, regionsList.get(i), phrase, searchTime);
+					// stop search of next maps which results couldn't get to the best results
+					for (int j = i + 1; j < futures.size(); j++) {
+						if (!matchers.get(j).isLimitExceeded() && outranks(bounds.get(j))) {
+							matchers.get(j).setLimitExceeded();
+						}
+					}
+				}
+			} finally {
+				for (Future<Long> f : futures) {
+					f.cancel(false);
+				}
+			}
+		}
+
+		private SearchResult getBestResult(RegionSearchTask task, BinaryMapIndexReader region) {
+			if (topResults == null) {
+				return null;
+			}
+			SearchResult bound = task.getBestResult(region);
+			if (bound != null) {
+				bound.parentSearchResult = parentSearchResult;
+			}
+			return bound;
 		}
 
 		@Override
@@ -844,7 +1257,9 @@ public class SearchUICore {
 			object.parentSearchResult = parentSearchResult;
 			if (matcher == null || matcher.publish(object)) {
 				count++;
-				if (totalLimit == -1 || count < totalLimit) {
+				if (topResults != null) {
+					topResults.add(object);
+				} else if (totalLimit == -1 || count < totalLimit) {
 					requestResults.add(object);
 				}
 				return true;
@@ -1155,5 +1570,16 @@ public class SearchUICore {
 			return 0;
 		}
 
+		// compares by steps till search distance (0 if results are sorted by name)
+		int compareTillSearchDistance(SearchResult o1, SearchResult o2) {
+			for (ResultCompareStep step : ResultCompareStep.values()) {
+				int r = step.compare(o1, o2, this);
+				if (r != 0 || step == ResultCompareStep.SEARCH_DISTANCE_IF_NOT_BY_NAME) {
+					return r;
+				}
+			}
+			return 0;
+		}
+
 	}
 }
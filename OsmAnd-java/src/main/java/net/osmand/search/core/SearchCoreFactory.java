@@ -14,6 +14,8 @@ import net.osmand.CollatorStringMatcher.StringMatcherMode;
 import net.osmand.ResultMatcher;
 import net.osmand.binary.BinaryMapAddressReaderAdapter;
 import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapPoiReaderAdapter;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiRegion;
 import net.osmand.binary.BinaryMapIndexReader.SearchPoiTypeFilter;
 import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
 import net.osmand.binary.CommonWords;
@@ -30,9 +32,11 @@ import net.osmand.osm.AbstractPoiType;
 import net.osmand.osm.MapPoiTypes;
 import net.osmand.osm.PoiCategory;
 import net.osmand.osm.PoiType;
+import net.osmand.search.SearchUICore.RegionSearchTask;
 import net.osmand.search.SearchUICore.SearchResultMatcher;
 import net.osmand.search.core.SearchPhrase.NameStringMatcher;
 import net.osmand.search.core.SearchPhrase.SearchPhraseDataType;
+import net.osmand.search.core.SearchPhrase.UnknownWordsMatchers;
 import net.osmand.util.Algorithms;
 import net.osmand.util.GeoPointParserUtil;
 import net.osmand.util.GeoPointParserUtil.GeoParsedPoint;
@@ -59,6 +63,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 
@@ -570,10 +575,57 @@ public class SearchCoreFactory {
 		private static final int BBOX_RADIUS_POI_IN_CITY = 25 * 1000;
 		private static final int FIRST_WORD_MIN_LENGTH = 3;
 
+		// amenities found by previous search, used when search word is extended (e.g. next typed character)
+		private volatile FoundAmenities previousSearch;
+		private final AtomicInteger searchCount = new AtomicInteger();
+		private final AtomicInteger refinedSearchCount = new AtomicInteger();
+
 		public SearchAmenityByNameAPI() {
 			super(ObjectType.POI);
 		}
 
+		// amenities matched by name in maps (not filtered by search phrase)
+		private static class FoundAmenities {
+			final String searchWord;
+			final int radiusLevel;
+			final QuadRect bbox;
+			final BinaryMapIndexReader fileRequest;
+			final List<BinaryMapIndexReader> regions = new ArrayList<>();
+			final Map<BinaryMapIndexReader, List<Amenity>> amenities = new ConcurrentHashMap<>();
+			volatile boolean complete = true;
+
+			FoundAmenities(SearchPhrase phrase, String searchWord, QuadRect bbox) {
+				this.searchWord = searchWord.toLowerCase();
+				this.radiusLevel = phrase.getRadiusLevel();
+				this.bbox = bbox;
+				this.fileRequest = phrase.getFileRequest();
+			}
+
+			// amenities matching extended search word are subset of found amenities
+			boolean isRefinedBy(FoundAmenities next) {
+				return complete && next.searchWord.startsWith(searchWord) && radiusLevel == next.radiusLevel
+						&& fileRequest == next.fileRequest && regions.equals(next.regions)
+						&& bbox.left == next.bbox.left && bbox.right == next.bbox.right
+						&& bbox.top == next.bbox.top && bbox.bottom == next.bbox.bottom;
+			}
+
+			int size() {
+				int size = 0;
+				for (List<Amenity> l : amenities.values()) {
+					size += l.size();
+				}
+				return size;
+			}
+		}
+
+		/**
+		 * @return number of searches and number of searches which filtered amenities of previous search
+		 * without reading maps (when search word is extended)
+		 */
+		public int[] getRefinedSearchStats() {
+			return new int[] { searchCount.get(), refinedSearchCount.get() };
+		}
+
 		@Override
 		public boolean search(final SearchPhrase phrase, final SearchResultMatcher resultMatcher) throws IOException {
 			if (!phrase.isUnknownSearchWordPresent()) {
@@ -586,30 +638,131 @@ public class SearchCoreFactory {
 			// Take into account POI [bar] - 'Hospital 512'
 			// BEFORE: it was searching exact match of whole phrase.getUnknownSearchPhrase() [ Check feedback ] 
 
-			final BinaryMapIndexReader[] currentFile = new BinaryMapIndexReader[1];
 			Iterator<BinaryMapIndexReader> offlineIterator = phrase.getRadiusOfflineIndexes(BBOX_RADIUS,
 					SearchPhraseDataType.POI);
-			String searchWord = phrase.getUnknownWordToSearch();
-			final NameStringMatcher nm = phrase.getMainUnknownNameStringMatcher();
-			QuadRect bbox = phrase.getFileRequest() != null ? phrase.getRadiusBBoxToSearch(BBOX_RADIUS_POI_IN_CITY) : phrase.getRadiusBBoxToSearch(BBOX_RADIUS_INSIDE);
+			final String searchWord = phrase.getUnknownWordToSearch();
+			final QuadRect bbox = phrase.getFileRequest() != null ? phrase.getRadiusBBoxToSearch(BBOX_RADIUS_POI_IN_CITY) : phrase.getRadiusBBoxToSearch(BBOX_RADIUS_INSIDE);
 			final Set<String> ids = new HashSet<String>();
+			BinaryMapIndexReader fileRequest = phrase.getFileRequest();
+			if (fileRequest != null) {
+				offlineIterator = Collections.singletonList(fileRequest).iterator();
+			}
+			final FoundAmenities found = new FoundAmenities(phrase, searchWord, bbox);
+			while (offlineIterator.hasNext()) {
+				found.regions.add(offlineIterator.next());
+			}
+			FoundAmenities previous = previousSearch;
+			final FoundAmenities refined = previous != null && !phrase.getSettings().isExportObjects()
+					&& previous.isRefinedBy(found) ? previous : null;
+			searchCount.incrementAndGet();
+			if (refined != null) {
+				refinedSearchCount.incrementAndGet();
+			}
+			RegionSearchTask task = new RegionSearchTask() {
+				@Override
+				public void search(BinaryMapIndexReader region, SearchResultMatcher regionMatcher) throws IOException {
+					// results of search in selected city file don't have file
+					BinaryMapIndexReader resultFile = phrase.getFileRequest() != null ? null : region;
+					List<Amenity> regionFound = new ArrayList<>();
+					SearchRequest<Amenity> req = buildSearchPoiRequest(phrase, phrase.createUnknownWordsMatchers(),
+							regionMatcher, resultFile, searchWord, bbox, regionFound);
+					regionMatcher.setSearchRequest(req);
+					if (refined != null) {
+						CollatorStringMatcher matcher = BinaryMapPoiReaderAdapter.getPoiNameMatcher(searchWord);
+						for (Amenity am : refined.amenities.get(region)) {
+							if (req.isCancelled() || req.limitExceeded()) {
+								break;
+							}
+							if (BinaryMapPoiReaderAdapter.matchesPoiName(matcher, am)) {
+								req.collectRawData(am);
+								req.publish(am);
+							}
+						}
+					} else {
+						region.searchPoiByName(req);
+					}
+					if (regionFound.size() > LIMIT || regionMatcher.isCancelled() || req.limitExceeded()) {
+						found.complete = false;
+					}
+					found.amenities.put(region, regionFound);
+				}
 
-			ResultMatcher<Amenity> rawDataCollector = null;
-			if (phrase.getSettings().isExportObjects()) {
-				rawDataCollector = new ResultMatcher<Amenity>() {
-					@Override
-					public boolean publish(Amenity object) {
+				@Override
+				public SearchResult getBestResult(BinaryMapIndexReader region) {
+					return getBestPoiByNameResult(phrase, region);
+				}
+
+				@Override
+				public boolean accept(SearchResult result) {
+					Amenity object = (Amenity) result.object;
+					return ids.add(object.getType().getKeyName() + "_" + object.getId());
+				}
+			};
+
+			resultMatcher.searchRegions(this, phrase, found.regions.iterator(), task);
+			previousSearch = found.complete && !resultMatcher.isCancelled() && found.amenities.size() == found.regions.size()
+					&& found.size() <= LIMIT ? found : null;
+			return true;
+		}
+
+		// result with all unknown words at the nearest point of map (null if it's unknown)
+		private SearchResult getBestPoiByNameResult(SearchPhrase phrase, BinaryMapIndexReader region) {
+			LatLon loc = phrase.getLastTokenLocation();
+			if (loc == null || phrase.isSortByName() || region.getPoiIndexes().isEmpty()) {
+				return null;
+			}
+			int x = MapUtils.get31TileNumberX(loc.getLongitude());
+			int y = MapUtils.get31TileNumberY(loc.getLatitude());
+			double minDistance = Double.POSITIVE_INFINITY;
+			for (PoiRegion poiRegion : region.getPoiIndexes()) {
+				int px = Math.max(poiRegion.getLeft31(), Math.min(poiRegion.getRight31(), x));
+				int py = Math.max(poiRegion.getTop31(), Math.min(poiRegion.getBottom31(), y));
+				minDistance = Math.min(minDistance, MapUtils.getDistance(loc, MapUtils.get31LatitudeY(py),
+						MapUtils.get31LongitudeX(px)));
+			}
+			final double distance = minDistance;
+			SearchResult sr = new SearchResult(phrase) {
+				@Override
+				public double getSearchDistance(LatLon location) {
+					return priority - 1 / (1 + priorityDistance * distance);
+				}
+			};
+			StringBuilder name = new StringBuilder(phrase.getFirstUnknownSearchWord());
+			for (String w : phrase.getUnknownSearchWords()) {
+				name.append(" ").append(w);
+			}
+			// all words are matched and name is equal to phrase
+			sr.localeName = name.toString();
+			sr.firstUnknownWordMatches = true;
+			sr.otherWordsMatch = new TreeSet<>(phrase.getUnknownSearchWords());
+			sr.location = loc;
+			sr.objectType = ObjectType.POI;
+			sr.priority = SEARCH_AMENITY_BY_NAME_PRIORITY;
+			sr.priorityDistance = Math.min(SEARCH_AMENITY_BY_NAME_CITY_PRIORITY_DISTANCE,
+					SEARCH_AMENITY_BY_NAME_TOWN_PRIORITY_DISTANCE);
+			return sr;
+		}
+
+		private SearchRequest<Amenity> buildSearchPoiRequest(final SearchPhrase phrase, final UnknownWordsMatchers wm,
+				final SearchResultMatcher resultMatcher, final BinaryMapIndexReader file, String searchWord, QuadRect bbox,
+				final List<Amenity> found) {
+			final NameStringMatcher nm = wm.getMainUnknownNameStringMatcher();
+			ResultMatcher<Amenity> rawDataCollector = new ResultMatcher<Amenity>() {
+				@Override
+				public boolean publish(Amenity object) {
+					found.add(object);
+					if (phrase.getSettings().isExportObjects()) {
 						resultMatcher.exportObject(phrase, object);
-						return true;
 					}
+					return true;
+				}
 
-					@Override
-					public boolean isCancelled() {
-						return false;
-					}
-				};
-			}
-			SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest((int) bbox.centerX(),
+				@Override
+				public boolean isCancelled() {
+					return false;
+				}
+			};
+			return BinaryMapIndexReader.buildSearchPoiRequest((int) bbox.centerX(),
 					(int) bbox.centerY(), searchWord, (int) bbox.left, (int) bbox.right, (int) bbox.top,
 					(int) bbox.bottom, new ResultMatcher<Amenity>() {
 						int limit = 0;
@@ -622,10 +775,6 @@ public class SearchCoreFactory {
 							if (limit++ > LIMIT) {
 								return false;
 							}
-							String poiID = object.getType().getKeyName() + "_" + object.getId();
-							if (ids.contains(poiID)) {
-								return false;
-							}
 							SearchResult sr = new SearchResult(phrase);
 							sr.otherNames = object.getOtherNames(true);
 							sr.localeName = object.getName(phrase.getSettings().getLang(),
@@ -636,7 +785,7 @@ public class SearchCoreFactory {
 							}
 							sr.object = object;
 							sr.preferredZoom = 17;
-							sr.file = currentFile[0];
+							sr.file = file;
 							sr.location = object.getLocation();
 							if (object.getSubType().equals("city") || object.getSubType().equals("country")) {
 								sr.priorityDistance = SEARCH_AMENITY_BY_NAME_CITY_PRIORITY_DISTANCE;
@@ -647,10 +796,10 @@ public class SearchCoreFactory {
 								sr.priorityDistance = 1;
 							}
 							sr.priority = SEARCH_AMENITY_BY_NAME_PRIORITY;
-							phrase.countUnknownWordsMatchMainResult(sr);
+							wm.countUnknownWordsMatchMainResult(sr);
 							sr.objectType = ObjectType.POI;
+							// duplicates from other maps are filtered by search task
 							resultMatcher.publish(sr);
-							ids.add(poiID);
 							return false;
 						}
 
@@ -659,22 +808,6 @@ public class SearchCoreFactory {
 							return resultMatcher.isCancelled() && (limit < LIMIT);
 						}
 					}, rawDataCollector);
-			
-			BinaryMapIndexReader fileRequest = phrase.getFileRequest();
-			if (fileRequest != null) {
-				fileRequest.searchPoiByName(req);
-				resultMatcher.apiSearchRegionFinished(this, fileRequest, phrase);
-			} else {
-				while (offlineIterator.hasNext()) {
-					BinaryMapIndexReader r = offlineIterator.next();
-					currentFile[0] = r;
-					r.searchPoiByName(req);
-					
-					resultMatcher.apiSearchRegionFinished(this, r, phrase);
-				}
-			}
-			
-			return true;
 		}
 
 		@Override
@@ -1051,7 +1184,7 @@ public class SearchCoreFactory {
 			SearchPoiTypeFilter poiTypeFilter = null;
 			String nameFilter = null;
 			int countExtraWords = 0;
-			Set<String> poiAdditionals = new LinkedHashSet<>();
+			final Set<String> poiAdditionals = new LinkedHashSet<>();
 			if (phrase.isLastWord(ObjectType.POI_TYPE)) {
 				Object obj = phrase.getLastSelectedWord().getResult().object;
 				if (obj instanceof AbstractPoiType) {
@@ -1107,20 +1240,32 @@ public class SearchCoreFactory {
 						radius = BBOX_RADIUS_NEAREST;
 					}
 				}
-				QuadRect bbox = phrase.getRadiusBBoxToSearch(radius);
+				final QuadRect bbox = phrase.getRadiusBBoxToSearch(radius);
 				List<BinaryMapIndexReader> offlineIndexes = phrase.getOfflineIndexes();
-				Set<String> searchedPois = new TreeSet<>();
-				for (BinaryMapIndexReader r : offlineIndexes) {
-					ResultMatcher<Amenity> rm = getResultMatcher(phrase, poiTypeFilter, resultMatcher, nameFilter, r,
-							searchedPois, poiAdditionals, countExtraWords);
-					if (poiTypeFilter instanceof CustomSearchPoiFilter) {
-						rm = ((CustomSearchPoiFilter) poiTypeFilter).wrapResultMatcher(rm);
+				final Set<String> searchedPois = new TreeSet<>();
+				final SearchPoiTypeFilter filter = poiTypeFilter;
+				final String nmFilter = nameFilter;
+				final int extraWords = countExtraWords;
+				RegionSearchTask task = new RegionSearchTask() {
+					@Override
+					public void search(BinaryMapIndexReader region, SearchResultMatcher regionMatcher) throws IOException {
+						ResultMatcher<Amenity> rm = getResultMatcher(phrase, filter, regionMatcher, nmFilter, region,
+								new TreeSet<String>(), poiAdditionals, extraWords);
+						if (filter instanceof CustomSearchPoiFilter) {
+							rm = ((CustomSearchPoiFilter) filter).wrapResultMatcher(rm);
+						}
+						SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest((int) bbox.left,
+								(int) bbox.right, (int) bbox.top, (int) bbox.bottom, -1, filter, rm);
+						region.searchPoi(req);
 					}
-					SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest((int) bbox.left,
-							(int) bbox.right, (int) bbox.top, (int) bbox.bottom, -1, poiTypeFilter, rm);
-					r.searchPoi(req);
-					resultMatcher.apiSearchRegionFinished(this, r, phrase);
-				}
+
+					@Override
+					public boolean accept(SearchResult result) {
+						Amenity object = (Amenity) result.object;
+						return searchedPois.add(object.getType().getKeyName() + "_" + object.getId());
+					}
+				};
+				resultMatcher.searchRegions(this, phrase, offlineIndexes.iterator(), task);
 			}
 			return true;
 		}
@@ -1133,6 +1278,7 @@ public class SearchCoreFactory {
 
 
 			final NameStringMatcher ns = nameFilter == null ? null : new NameStringMatcher(nameFilter, CHECK_STARTS_FROM_SPACE);
+			final UnknownWordsMatchers wm = phrase.createUnknownWordsMatchers();
 			return new ResultMatcher<Amenity>() {
 
 				@Override
@@ -1172,18 +1318,18 @@ public class SearchCoreFactory {
 					}
 					if (ns != null) {
 						if (ns.matches(res.localeName) || ns.matches(res.otherNames)) {
-							phrase.countUnknownWordsMatchMainResult(res, countExtraWords);
+							wm.countUnknownWordsMatchMainResult(res, countExtraWords);
 						} else {
 							String ref = object.getTagContent(Amenity.REF, null);
 							if (ref == null || !ns.matches(ref)) {
 								return false;
 							} else {
-								phrase.countUnknownWordsMatch(res, ref, null, countExtraWords);
+								wm.countUnknownWordsMatch(res, ref, null, countExtraWords);
 								res.localeName += " " + ref;
 							}
 						}
 					} else {
-						phrase.countUnknownWordsMatch(res, "", null, countExtraWords);
+						wm.countUnknownWordsMatch(res, "", null, countExtraWords);
 					}
 
 					res.object = object;
@@ -51,9 +51,7 @@ public class SearchPhrase {
 	private boolean mainUnknownSearchWordComplete;
 
 	// Name Searchers
-	private NameStringMatcher firstUnknownNameStringMatcher;
-	private NameStringMatcher mainUnknownNameStringMatcher;
-	private List<NameStringMatcher> unknownWordsMatcher = new ArrayList<>();
+	private UnknownWordsMatchers unknownWordsMatchers = new UnknownWordsMatchers();
 
 	private AbstractPoiType unselectedPoiType;
 	
@@ -570,27 +568,24 @@ public class SearchPhrase {
 	}
 
 	public NameStringMatcher getMainUnknownNameStringMatcher() {
-		calcMainUnknownWordToSearch();
-		if (mainUnknownNameStringMatcher == null) {
-			mainUnknownNameStringMatcher = getNameStringMatcher(mainUnknownWordToSearch, mainUnknownSearchWordComplete);
-		}
-		return mainUnknownNameStringMatcher;
+		return unknownWordsMatchers.getMainUnknownNameStringMatcher();
 	}
 	
 	public NameStringMatcher getFirstUnknownNameStringMatcher() {
-		if (firstUnknownNameStringMatcher == null) {
-			firstUnknownNameStringMatcher = getNameStringMatcher(firstUnknownSearchWord, isFirstUnknownSearchWordComplete());
-		}
-		return firstUnknownNameStringMatcher;
+		return unknownWordsMatchers.getFirstUnknownNameStringMatcher();
 	}
 
 	public NameStringMatcher getUnknownNameStringMatcher(int i) {
-		while (unknownWordsMatcher.size() <= i) {
-			int ind = unknownWordsMatcher.size();
-			boolean completeMatch = ind < otherUnknownWords.size() - 1 || isLastUnknownSearchWordComplete();
-			unknownWordsMatcher.add(getNameStringMatcher(otherUnknownWords.get(ind), completeMatch));
-		}
-		return unknownWordsMatcher.get(i);
+		return unknownWordsMatchers.getUnknownNameStringMatcher(i);
+	}
+
+	/**
+	 * Matchers of unknown words aren't thread safe (collator), so task searching map in own thread
+	 * creates own matchers.
+	 */
+	public UnknownWordsMatchers createUnknownWordsMatchers() {
+		calcMainUnknownWordToSearch();
+		return new UnknownWordsMatchers();
 	}
 
 	private NameStringMatcher getNameStringMatcher(String word, boolean complete) {
@@ -800,49 +795,95 @@ public class SearchPhrase {
 	}
 	
 	public int countUnknownWordsMatchMainResult(SearchResult sr) {
-		return countUnknownWordsMatch(sr, sr.localeName, sr.otherNames, 0);
+		return unknownWordsMatchers.countUnknownWordsMatchMainResult(sr);
 	}
 	
 	public int countUnknownWordsMatchMainResult(SearchResult sr, int amountMatchingWords) {
-		return countUnknownWordsMatch(sr, sr.localeName, sr.otherNames, amountMatchingWords);
+		return unknownWordsMatchers.countUnknownWordsMatchMainResult(sr, amountMatchingWords);
 	}
 	
 	
 	public int countUnknownWordsMatch(SearchResult sr, String localeName, Collection<String> otherNames, int amountMatchingWords) {
-		int r = 0;
-		if (otherUnknownWords.size() > 0) {
-			for (int i = 0; i < otherUnknownWords.size(); i++) {
-				boolean match = false;
-				if (i < amountMatchingWords - 1) {
-					match = true;
-				} else {
-					NameStringMatcher ms = getUnknownNameStringMatcher(i);
-					if (ms.matches(localeName) || ms.matches(otherNames)) {
+		return unknownWordsMatchers.countUnknownWordsMatch(sr, localeName, otherNames, amountMatchingWords);
+	}
+
+	public class UnknownWordsMatchers {
+
+		private NameStringMatcher firstUnknownNameStringMatcher;
+		private NameStringMatcher mainUnknownNameStringMatcher;
+		private List<NameStringMatcher> unknownWordsMatcher = new ArrayList<>();
+
+		private UnknownWordsMatchers() {
+		}
+
+		public NameStringMatcher getMainUnknownNameStringMatcher() {
+			calcMainUnknownWordToSearch();
+			if (mainUnknownNameStringMatcher == null) {
+				mainUnknownNameStringMatcher = getNameStringMatcher(mainUnknownWordToSearch, mainUnknownSearchWordComplete);
+			}
+			return mainUnknownNameStringMatcher;
+		}
+
+		public NameStringMatcher getFirstUnknownNameStringMatcher() {
+			if (firstUnknownNameStringMatcher == null) {
+				firstUnknownNameStringMatcher = getNameStringMatcher(firstUnknownSearchWord, isFirstUnknownSearchWordComplete());
+			}
+			return firstUnknownNameStringMatcher;
+		}
+
+		public NameStringMatcher getUnknownNameStringMatcher(int i) {
+			while (unknownWordsMatcher.size() <= i) {
+				int ind = unknownWordsMatcher.size();
+				boolean completeMatch = ind < otherUnknownWords.size() - 1 || isLastUnknownSearchWordComplete();
+				unknownWordsMatcher.add(getNameStringMatcher(otherUnknownWords.get(ind), completeMatch));
+			}
+			return unknownWordsMatcher.get(i);
+		}
+
+		public int countUnknownWordsMatchMainResult(SearchResult sr) {
+			return countUnknownWordsMatch(sr, sr.localeName, sr.otherNames, 0);
+		}
+
+		public int countUnknownWordsMatchMainResult(SearchResult sr, int amountMatchingWords) {
+			return countUnknownWordsMatch(sr, sr.localeName, sr.otherNames, amountMatchingWords);
+		}
+
+		public int countUnknownWordsMatch(SearchResult sr, String localeName, Collection<String> otherNames, int amountMatchingWords) {
+			int r = 0;
+			if (otherUnknownWords.size() > 0) {
+				for (int i = 0; i < otherUnknownWords.size(); i++) {
+					boolean match = false;
+					if (i < amountMatchingWords - 1) {
 						match = true;
+					} else {
+						NameStringMatcher ms = getUnknownNameStringMatcher(i);
+						if (ms.matches(localeName) || ms.matches(otherNames)) {
+							match = true;
+						}
 					}
-				}
-				if (match) {
-					if (sr.otherWordsMatch == null) {
-						sr.otherWordsMatch = new TreeSet<>();
+					if (match) {
+						if (sr.otherWordsMatch == null) {
+							sr.otherWordsMatch = new TreeSet<>();
+						}
+						sr.otherWordsMatch.add(otherUnknownWords.get(i));
+						r++;
 					}
-					sr.otherWordsMatch.add(otherUnknownWords.get(i));
-					r++;
 				}
 			}
-		}
-		if (amountMatchingWords > 0) {
-			sr.firstUnknownWordMatches = true;
-			r++;
-		} else {
-			boolean match = localeName.equals(getFirstUnknownSearchWord())
-					|| getFirstUnknownNameStringMatcher().matches(localeName)
-					|| getFirstUnknownNameStringMatcher().matches(otherNames);
-			if(match) {
+			if (amountMatchingWords > 0) {
+				sr.firstUnknownWordMatches = true;
 				r++;
+			} else {
+				boolean match = localeName.equals(getFirstUnknownSearchWord())
+						|| getFirstUnknownNameStringMatcher().matches(localeName)
+						|| getFirstUnknownNameStringMatcher().matches(otherNames);
+				if(match) {
+					r++;
+				}
+				sr.firstUnknownWordMatches =  match || sr.firstUnknownWordMatches;
 			}
-			sr.firstUnknownWordMatches =  match || sr.firstUnknownWordMatches;
+			return r;
 		}
-		return r;
 	}
 	
 	public String getLastUnknownSearchWord() {
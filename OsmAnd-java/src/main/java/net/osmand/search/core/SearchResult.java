@@ -53,6 +53,8 @@ public class SearchResult {
 	public String localeRelatedObjectName;
 	public Object relatedObject;
 	public double distRelatedObjectName;
+	// search time (ms) of api or api in map (SEARCH_API_FINISHED, SEARCH_API_REGION_FINISHED)
+	public long searchTime;
 
 	private double unknownPhraseMatchWeight = 0;
 
@@ -0,0 +1,116 @@
+package net.osmand;
+
+import net.osmand.CollatorStringMatcher.StringMatcherMode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares matching of ascii names (weights of chars) with collator matching for all modes in several locales.
+ */
+public class CollatorStringMatcherTest {
+
+	private static final String[] WORDS = { "Main", "street", "St.", "Auhofstraße", "Auhofstrasse", "Vasagatan",
+			"Wasa", "Istanbul", "ılıca", "İzmir", "Løkken", "Aalborg", "Champs-Élysées", "Champs Elysees",
+			"Москва", "Красная", "ул.", "O'Connell", "Kaiser", "kaiserstr", "12", "5a", "-", "&", "Cafe", "Café",
+			"Dvořák", "Chodov", "Łódź", "Lodz", "vw", "ww", "Zürich", "Zurich", "Hof" };
+	private static final String[] LOCALES = { "en", "de", "sv", "fi", "da", "tr", "cs", "ru", "es", "hu" };
+
+	@Test
+	public void testAsciiMatchesEqualsCollatorMatches() {
+		Locale def = Locale.getDefault();
+		try {
+			for (String lang : LOCALES) {
+				Locale.setDefault(new Locale(lang));
+				Random rnd = new Random(lang.hashCode());
+				List<String> names = new ArrayList<String>();
+				for (int i = 0; i < 100; i++) {
+					names.add(randomName(rnd));
+				}
+				for (int i = 0; i < 40; i++) {
+					String part = randomPart(rnd, names.get(rnd.nextInt(names.size())));
+					for (StringMatcherMode mode : StringMatcherMode.values()) {
+						CollatorStringMatcher matcher = new CollatorStringMatcher(part, mode);
+						String simplified = simplifiedPart(part, mode);
+						for (String name : names) {
+							boolean expected = CollatorStringMatcher.cmatches(matcher.getCollator(), name,
+									simplified, mode(part, mode));
+							Assert.assertEquals(lang + " " + mode + " '" + name + "' '" + part + "'", expected,
+									matcher.matches(name));
+						}
+					}
+				}
+			}
+		} finally {
+			Locale.setDefault(def);
+		}
+	}
+
+	@Test
+	public void testAsciiWeights() {
+		Locale def = Locale.getDefault();
+		try {
+			Locale.setDefault(Locale.ENGLISH);
+			int[] weights = CollatorStringMatcher.buildAsciiWeights(OsmAndCollator.primaryCollator());
+			Assert.assertNotNull(weights);
+			Assert.assertEquals(weights['a'], weights['A']);
+			Assert.assertNotEquals(weights['v'], weights['w']);
+			Assert.assertEquals(0, weights[' ']);
+			Locale.setDefault(new Locale("sv"));
+			weights = CollatorStringMatcher.buildAsciiWeights(OsmAndCollator.primaryCollator());
+			if (weights != null) {
+				Assert.assertEquals(weights['v'], weights['w']);
+			}
+		} finally {
+			Locale.setDefault(def);
+		}
+	}
+
+	// same part and mode as prepared by CollatorStringMatcher constructor
+	private String simplifiedPart(String part, StringMatcherMode mode) {
+		part = part.toLowerCase(Locale.getDefault()).replace("ß", "ss");
+		if (part.endsWith(".")) {
+			part = part.substring(0, part.length() - 1);
+		}
+		return part;
+	}
+
+	private StringMatcherMode mode(String part, StringMatcherMode mode) {
+		part = part.toLowerCase(Locale.getDefault()).replace("ß", "ss");
+		if (part.endsWith(".")) {
+			if (mode == StringMatcherMode.CHECK_EQUALS_FROM_SPACE) {
+				return StringMatcherMode.CHECK_STARTS_FROM_SPACE;
+			} else if (mode == StringMatcherMode.CHECK_EQUALS) {
+				return StringMatcherMode.CHECK_ONLY_STARTS_WITH;
+			}
+		}
+		return mode;
+	}
+
+	private String randomName(Random rnd) {
+		StringBuilder sb = new StringBuilder();
+		int words = 1 + rnd.nextInt(3);
+		for (int i = 0; i < words; i++) {
+			if (i > 0) {
+				sb.append(rnd.nextInt(5) == 0 ? "-" : " ");
+			}
+			sb.append(WORDS[rnd.nextInt(WORDS.length)]);
+		}
+		return sb.toString();
+	}
+
+	private String randomPart(Random rnd, String name) {
+		if (rnd.nextInt(5) == 0) {
+			return WORDS[rnd.nextInt(WORDS.length)];
+		}
+		int start = rnd.nextInt(name.length());
+		int end = start + 1 + rnd.nextInt(name.length() - start);
+		String part = name.substring(start, end);
+		return rnd.nextBoolean() ? part.toUpperCase(Locale.ENGLISH) : part;
+	}
+}
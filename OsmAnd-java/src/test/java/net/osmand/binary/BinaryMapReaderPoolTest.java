@@ -0,0 +1,133 @@
+package net.osmand.binary;
+
+import net.osmand.osm.MapPoiTypes;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks leases of reader pool with more files than max open files and with threads contending for handles
+ * (leases should never wait forever).
+ */
+public class BinaryMapReaderPoolTest {
+
+	private static final int FILES = 3;
+
+	private final List<File> files = new ArrayList<File>();
+
+	@Rule
+	public final TestMapReaders maps = new TestMapReaders();
+
+	@BeforeClass
+	public static void setUpPoiTypes() {
+		MapPoiTypes.setDefault(new MapPoiTypes("src/test/resources/poi_types.xml"));
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		for (int i = 0; i < FILES; i++) {
+			files.add(maps.createMapFile());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testOverCapacity() throws Exception {
+		BinaryMapReaderPool pool = createPool(FILES - 1);
+		try {
+			pool.leaseAll();
+			Assert.fail("All files can't be leased together");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		Assert.assertEquals(0, pool.getOpenFiles());
+
+		// thread holding leases opens reader over the cap instead of waiting for itself
+		List<BinaryMapIndexReader> leased = new ArrayList<BinaryMapIndexReader>();
+		for (File f : files) {
+			leased.add(pool.lease(f));
+		}
+		Assert.assertSame(leased.get(0), pool.lease(files.get(0)));
+		Assert.assertEquals(FILES, pool.getOpenFiles());
+		Assert.assertEquals(1, pool.getStats().overflowReaders.get());
+		pool.release(leased.get(0));
+		for (BinaryMapIndexReader r : leased) {
+			pool.release(r);
+		}
+		Assert.assertEquals(FILES - 1, pool.getOpenFiles());
+		try {
+			pool.release(leased.get(0));
+			Assert.fail("Reader is already released");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		pool.close();
+		Assert.assertEquals(0, pool.getOpenFiles());
+	}
+
+	@Test(timeout = 30000)
+	public void testContendedLeases() throws Exception {
+		final BinaryMapReaderPool pool = createPool(FILES);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int t = 0; t < 4; t++) {
+				final Random rnd = new Random(t);
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						for (int i = 0; i < 500; i++) {
+							if (rnd.nextBoolean()) {
+								BinaryMapIndexReader[] all = pool.leaseAll();
+								Assert.assertEquals(FILES, all.length);
+								pool.releaseAll(all);
+							} else {
+								// partial sets leased in random order
+								List<File> order = new ArrayList<File>(files);
+								Collections.shuffle(order, rnd);
+								List<BinaryMapIndexReader> leased = new ArrayList<BinaryMapIndexReader>();
+								for (File f : order.subList(0, 1 + rnd.nextInt(FILES))) {
+									leased.add(pool.lease(f));
+									Thread.yield();
+								}
+								for (BinaryMapIndexReader r : leased) {
+									pool.release(r);
+								}
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> f : futures) {
+				f.get(20, TimeUnit.SECONDS);
+			}
+			Assert.assertTrue(pool.getOpenFiles() <= FILES);
+		} finally {
+			executor.shutdownNow();
+			pool.close();
+		}
+	}
+
+	private BinaryMapReaderPool createPool(int maxOpenFiles) throws IOException {
+		BinaryMapReaderPool pool = new BinaryMapReaderPool(maxOpenFiles, false);
+		for (File f : files) {
+			pool.registerFile(f);
+		}
+		return pool;
+	}
+}
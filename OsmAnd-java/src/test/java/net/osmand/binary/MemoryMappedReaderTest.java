@@ -0,0 +1,193 @@
+package net.osmand.binary;
+
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.data.Amenity;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MappedFileInput;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares results of raf and memory mapped readers: streams on synthetic file read with small mapped chunks
+ * (values split by chunk boundaries, positions after 2 GB) and readers of test map.
+ * Timings of both backends are measured by BinaryMapIndexReaderBenchmark (memoryMapped parameter).
+ */
+public class MemoryMappedReaderTest {
+
+	private static final int VALUES = 500;
+	private static final int CHUNK_SIZE = 7;
+
+	@Rule
+	public final TestMapReaders maps = new TestMapReaders();
+
+	@Test
+	public void testMappedStreamMatchesRaf() throws IOException {
+		File file = File.createTempFile("mapped", ".bin");
+		file.deleteOnExit();
+		List<Long> positions = new ArrayList<Long>();
+		FileOutputStream fout = new FileOutputStream(file);
+		CodedOutputStream out = CodedOutputStream.newInstance(fout);
+		for (int i = 0; i < VALUES; i++) {
+			positions.add(out.getWrittenBytes());
+			writeValue(out, i);
+		}
+		out.flush();
+		fout.close();
+		RandomAccessFile mappedRaf = new RandomAccessFile(file, "r");
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			CodedInputStream rafIS = CodedInputStream.newInstance(raf);
+			CodedInputStream mappedIS = CodedInputStream.newInstance(MappedFileInput.map(mappedRaf.getChannel(), CHUNK_SIZE));
+			for (int i = 0; i < VALUES; i++) {
+				Assert.assertEquals(positions.get(i).longValue(), mappedIS.getTotalBytesReadLong());
+				checkValue(mappedIS, i);
+				checkValue(rafIS, i);
+			}
+			Assert.assertTrue(mappedIS.isAtEnd());
+			// seeks back and forth
+			Random rnd = new Random(1);
+			for (int k = 0; k < VALUES; k++) {
+				int i = rnd.nextInt(VALUES);
+				mappedIS.seek(positions.get(i));
+				checkValue(mappedIS, i);
+			}
+			// limits and skips
+			mappedIS.seek(positions.get(10));
+			long oldLimit = mappedIS.pushLimitLong(positions.get(20) - positions.get(10));
+			mappedIS.skipRawBytes((int) (positions.get(19) - positions.get(10)));
+			checkValue(mappedIS, 19);
+			Assert.assertTrue(mappedIS.isAtEnd());
+			mappedIS.popLimit(oldLimit);
+			checkValue(mappedIS, 20);
+		} finally {
+			raf.close();
+			mappedRaf.close();
+		}
+	}
+
+	@Test
+	public void testMappedStreamAfter2Gb() throws IOException {
+		File file = File.createTempFile("mapped", ".bin");
+		file.deleteOnExit();
+		long offset = (5l << 30) / 2;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			// sparse file, only the tail is written
+			raf.setLength(offset);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+			writeValue(out, 1);
+			writeValue(out, 2);
+			out.flush();
+			raf.seek(offset);
+			raf.write(bytes.toByteArray());
+			CodedInputStream mappedIS = CodedInputStream.newInstance(MappedFileInput.map(raf.getChannel()));
+			mappedIS.seek(offset);
+			Assert.assertEquals(offset, mappedIS.getTotalBytesReadLong());
+			long oldLimit = mappedIS.pushLimitLong(bytes.size());
+			checkValue(mappedIS, 1);
+			checkValue(mappedIS, 2);
+			Assert.assertTrue(mappedIS.isAtEnd());
+			mappedIS.popLimit(oldLimit);
+			Assert.assertEquals(offset + bytes.size(), mappedIS.getTotalBytesReadLong());
+			try {
+				mappedIS.getTotalBytesRead();
+				Assert.fail("Position after 2 GB doesn't fit int");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+		} finally {
+			raf.close();
+			file.delete();
+		}
+	}
+
+	private void writeValue(CodedOutputStream out, int i) throws IOException {
+		out.writeUInt32NoTag(i * 1000);
+		out.writeFixed32NoTag(i);
+		out.writeInt64NoTag(-i * 100000000l);
+		out.writeStringNoTag(name(i));
+		byte[] data = new byte[i % 50];
+		Arrays.fill(data, (byte) i);
+		out.writeBytesNoTag(ByteString.copyFrom(data));
+	}
+
+	private void checkValue(CodedInputStream in, int i) throws IOException {
+		Assert.assertEquals(i * 1000, in.readUInt32());
+		Assert.assertEquals(i, in.readFixed32());
+		Assert.assertEquals(-i * 100000000l, in.readInt64());
+		Assert.assertEquals(name(i), in.readString());
+		byte[] data = new byte[i % 50];
+		Arrays.fill(data, (byte) i);
+		Assert.assertArrayEquals(data, in.readBytes().toByteArray());
+	}
+
+	private String name(int i) {
+		StringBuilder b = new StringBuilder();
+		for (int k = 0; k < i % 20; k++) {
+			b.append(k % 2 == 0 ? "улица " : "street ");
+		}
+		return b.toString();
+	}
+
+	@Test
+	public void testMappedReaderMatchesRaf() throws IOException {
+		File file = new File(TestMapReaders.ROUTING_OBF);
+		Assume.assumeTrue(file.exists());
+		BinaryMapIndexReader raf = maps.register(new BinaryMapIndexReader(new RandomAccessFile(file, "r"), file, true, false));
+		BinaryMapIndexReader mapped = maps.register(new BinaryMapIndexReader(new RandomAccessFile(file, "r"), file, true, true));
+		BinaryMapIndexReader mappedClone = maps.register(new BinaryMapIndexReader(new RandomAccessFile(file, "r"), mapped));
+		Assert.assertTrue(mapped.isMemoryMapped());
+		Assert.assertTrue(mappedClone.isMemoryMapped());
+		Assert.assertFalse(raf.isMemoryMapped());
+
+		Assert.assertEquals(raf.getIndexes().size(), mapped.getIndexes().size());
+		Assert.assertEquals(countMapObjects(raf), countMapObjects(mapped));
+		Assert.assertEquals(countPoi(raf), countPoi(mapped));
+		Assert.assertEquals(countRouteObjects(raf), countRouteObjects(mapped));
+		Assert.assertEquals(countRouteObjects(raf), countRouteObjects(mappedClone));
+	}
+
+	private int countMapObjects(BinaryMapIndexReader reader) throws IOException {
+		SearchRequest<BinaryMapDataObject> req = BinaryMapIndexReader.buildSearchRequest(0, Integer.MAX_VALUE, 0,
+				Integer.MAX_VALUE, 15, null, null);
+		return reader.searchMapIndex(req).size();
+	}
+
+	private int countPoi(BinaryMapIndexReader reader) throws IOException {
+		SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(0, Integer.MAX_VALUE, 0,
+				Integer.MAX_VALUE, -1, BinaryMapIndexReader.ACCEPT_ALL_POI_TYPE_FILTER, null);
+		return reader.searchPoi(req).size();
+	}
+
+	private int countRouteObjects(BinaryMapIndexReader reader) throws IOException {
+		int count = 0;
+		for (RouteRegion reg : reader.getRoutingIndexes()) {
+			SearchRequest<RouteDataObject> req = BinaryMapIndexReader.buildSearchRouteRequest(0, Integer.MAX_VALUE,
+					0, Integer.MAX_VALUE, null);
+			List<RouteSubregion> subregions = reader.searchRouteIndexTree(req, reg.getSubregions());
+			for (RouteSubregion sub : new ArrayList<RouteSubregion>(subregions)) {
+				count += reader.loadRouteIndexData(sub).size();
+			}
+		}
+		return count;
+	}
+}
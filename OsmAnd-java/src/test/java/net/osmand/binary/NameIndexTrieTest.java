@@ -0,0 +1,156 @@
+package net.osmand.binary;
+
+import gnu.trove.list.array.TIntArrayList;
+
+import net.osmand.Collator;
+import net.osmand.OsmAndCollator;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiRegion;
+import net.osmand.osm.MapPoiTypes;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Compares search in name index kept in memory with search reading index from file
+ * and checks eviction of name indexes by memory limit of cache.
+ */
+public class NameIndexTrieTest {
+
+	private static final String LETTERS = "abcdeäéks";
+
+	@Rule
+	public final TestMapReaders maps = new TestMapReaders();
+
+	@BeforeClass
+	public static void setUp() {
+		MapPoiTypes.setDefault(new MapPoiTypes("src/test/resources/poi_types.xml"));
+	}
+
+	@Test
+	public void testSearchEqualsFileSearch() throws IOException {
+		Random rnd = new Random(1);
+		List<String> names = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			names.add(randomWord(rnd, 1 + rnd.nextInt(6)));
+		}
+		Collator collator = OsmAndCollator.primaryCollator();
+		BinaryMapIndexReader reader = maps.openReader(maps.createMapFile(writeTable(names, 0, rnd)));
+		NameIndexCache cache = NameIndexCache.getDefault();
+		long memoryLimit = cache.getMemoryLimit();
+		PoiRegion part = new PoiRegion();
+		PoiRegion fileSearch = new PoiRegion();
+		cache.put(fileSearch, NameIndexTrie.NOT_CACHED);
+		try {
+			search(reader, part, Arrays.asList("ab"), new ArrayList<TIntArrayList>(), new TIntArrayList());
+			NameIndexTrie trie = cache.get(part);
+			Assert.assertNotSame(NameIndexTrie.NOT_CACHED, trie);
+			for (int i = 0; i < 300; i++) {
+				List<String> queries = new ArrayList<>();
+				for (int k = 1 + rnd.nextInt(2); k > 0; k--) {
+					String q = randomWord(rnd, 1 + rnd.nextInt(5));
+					queries.add(rnd.nextBoolean() ? q.toUpperCase() : q);
+				}
+				List<TIntArrayList> expected = new ArrayList<>();
+				TIntArrayList expectedChars = new TIntArrayList();
+				search(reader, fileSearch, queries, expected, expectedChars);
+				List<TIntArrayList> actual = new ArrayList<>();
+				TIntArrayList actualChars = new TIntArrayList();
+				for (int k = 0; k < queries.size(); k++) {
+					actual.add(new TIntArrayList());
+					actualChars.add(0);
+				}
+				trie.search(collator, queries, actual, actualChars);
+				Assert.assertEquals(queries.toString(), expected, actual);
+				Assert.assertEquals(queries.toString(), expectedChars, actualChars);
+			}
+
+			// least recently used table is evicted by table of other part
+			cache.setMemoryLimit(cache.getEstimatedSize() - 1);
+			Assert.assertNull(cache.get(part));
+			cache.setMemoryLimit(trie.getEstimatedSize() * 3 / 2);
+			PoiRegion other = new PoiRegion();
+			search(reader, part, Arrays.asList("ab"), new ArrayList<TIntArrayList>(), new TIntArrayList());
+			search(reader, other, Arrays.asList("ab"), new ArrayList<TIntArrayList>(), new TIntArrayList());
+			Assert.assertNull(cache.get(part));
+			Assert.assertNotSame(NameIndexTrie.NOT_CACHED, cache.get(other));
+			Assert.assertTrue(cache.getEstimatedSize() <= cache.getMemoryLimit());
+
+			// table bigger than memory limit is read from file
+			cache.setMemoryLimit(trie.getEstimatedSize() - 1);
+			List<TIntArrayList> expected = new ArrayList<>();
+			search(reader, fileSearch, Arrays.asList("Ké"), expected, new TIntArrayList());
+			List<TIntArrayList> actual = new ArrayList<>();
+			search(reader, part, Arrays.asList("Ké"), actual, new TIntArrayList());
+			Assert.assertSame(NameIndexTrie.NOT_CACHED, cache.get(part));
+			Assert.assertEquals(expected, actual);
+			Assert.assertFalse(actual.get(0).isEmpty());
+		} finally {
+			cache.setMemoryLimit(memoryLimit);
+			cache.clear();
+		}
+	}
+
+	private void search(BinaryMapIndexReader reader, BinaryIndexPart part, List<String> queries,
+			List<TIntArrayList> offsets, TIntArrayList chars) throws IOException {
+		for (int k = 0; k < queries.size(); k++) {
+			offsets.add(new TIntArrayList());
+			chars.add(0);
+		}
+		reader.codedIS.seek(0);
+		int oldLimit = reader.codedIS.pushLimit((int) reader.getFile().length());
+		reader.searchIndexedStringTable(part, OsmAndCollator.primaryCollator(), queries, offsets, chars);
+		reader.codedIS.popLimit(oldLimit);
+	}
+
+	// table keys are the next 2 letters of names, every key has offset and subtable of longer names
+	private byte[] writeTable(List<String> names, int prefixLength, Random rnd) throws IOException {
+		Map<String, List<String>> byKey = new TreeMap<>();
+		for (String name : names) {
+			if (name.length() > prefixLength) {
+				String key = name.substring(prefixLength, Math.min(name.length(), prefixLength + 2));
+				if (!byKey.containsKey(key)) {
+					byKey.put(key, new ArrayList<String>());
+				}
+				byKey.get(key).add(name);
+			}
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CodedOutputStream cos = CodedOutputStream.newInstance(bytes);
+		for (Map.Entry<String, List<String>> e : byKey.entrySet()) {
+			cos.writeString(OsmandOdb.IndexedStringTable.KEY_FIELD_NUMBER, e.getKey());
+			cos.writeTag(OsmandOdb.IndexedStringTable.VAL_FIELD_NUMBER, WireFormat.WIRETYPE_FIXED32);
+			int val = rnd.nextInt(1 << 20);
+			cos.writeRawBytes(new byte[] { (byte) (val >> 24), (byte) (val >> 16), (byte) (val >> 8), (byte) val });
+			byte[] sub = writeTable(e.getValue(), prefixLength + 2, rnd);
+			if (sub.length > 0) {
+				cos.writeTag(OsmandOdb.IndexedStringTable.SUBTABLES_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+				cos.writeRawVarint32(sub.length);
+				cos.writeRawBytes(sub);
+			}
+		}
+		cos.flush();
+		return bytes.toByteArray();
+	}
+
+	private String randomWord(Random rnd, int len) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < len; i++) {
+			sb.append(LETTERS.charAt(rnd.nextInt(LETTERS.length())));
+		}
+		return sb.toString();
+	}
+}
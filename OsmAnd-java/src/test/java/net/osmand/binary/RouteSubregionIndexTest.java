@@ -0,0 +1,144 @@
+package net.osmand.binary;
+
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that subregion index returns the same leaves as route tree search (synthetic tree)
+ * and that leaves stored in cached index match leaves read from file.
+ */
+public class RouteSubregionIndexTest {
+
+	@Rule
+	public final TestMapReaders maps = new TestMapReaders();
+
+	@Test
+	public void testIndexMatchesTreeSearch() {
+		Random rnd = new Random(7);
+		RouteRegion reg = new RouteRegion();
+		List<RouteSubregion> roots = new ArrayList<RouteSubregion>();
+		int base = 1 << 30;
+		for (int i = 0; i < 3; i++) {
+			int left = base + i * (1 << 24);
+			roots.add(createTree(reg, rnd, left, base, left + (1 << 24), base + (1 << 24), 0));
+		}
+		RouteSubregionIndex index = RouteSubregionIndex.fromTree(roots);
+		Assert.assertNotNull(index);
+		for (int i = 0; i < 2000; i++) {
+			int zoom = 10 + rnd.nextInt(8);
+			int shift = 31 - zoom;
+			int x = (base >> shift) + rnd.nextInt((3 << (24 - shift)) + 1);
+			int y = (base >> shift) + rnd.nextInt((1 << (24 - shift)) + 1);
+			int left = x << shift;
+			int top = y << shift;
+			int right = (x + 1) << shift;
+			int bottom = (y + 1) << shift;
+			List<RouteSubregion> expected = searchTree(roots, left, top, right, bottom, new ArrayList<RouteSubregion>());
+			List<RouteSubregion> actual = index.search(left, top, right, bottom, new ArrayList<RouteSubregion>());
+			Assert.assertEquals(expected, actual);
+		}
+		List<RouteSubregion> all = searchTree(roots, 0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE, new ArrayList<RouteSubregion>());
+		Assert.assertEquals(all.size(), index.getLeavesCount());
+		Assert.assertEquals(all, index.search(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE, new ArrayList<RouteSubregion>()));
+
+		RouteSubregionIndex packed = RouteSubregionIndex.fromPacked(reg, RouteSubregionIndex.pack(all));
+		List<RouteSubregion> restored = packed.search(base, base, base + (1 << 22), base + (1 << 22), new ArrayList<RouteSubregion>());
+		List<RouteSubregion> expected = searchTree(roots, base, base, base + (1 << 22), base + (1 << 22), new ArrayList<RouteSubregion>());
+		Assert.assertEquals(filePointers(expected), filePointers(restored));
+		roots.get(1).subregions.get(0).subregions = null;
+		Assert.assertNull(RouteSubregionIndex.fromTree(roots));
+	}
+
+	@Test
+	public void testCachedLeaves() throws IOException {
+		BinaryMapIndexReader reader = maps.openRoutingMap();
+		File file = reader.getFile();
+		CachedOsmandIndexes cache = new CachedOsmandIndexes();
+		cache.addToCache(reader, file);
+		File cacheFile = File.createTempFile("indexes", ".cache");
+		cacheFile.deleteOnExit();
+		cache.writeToFile(cacheFile);
+
+		CachedOsmandIndexes restoredCache = new CachedOsmandIndexes();
+		restoredCache.readFromFile(cacheFile, CachedOsmandIndexes.VERSION);
+		BinaryMapIndexReader cached = maps.register(restoredCache.getReader(file, true));
+		SearchRequest<RouteDataObject> req = BinaryMapIndexReader.buildSearchRouteRequest(0, Integer.MAX_VALUE, 0,
+				Integer.MAX_VALUE, null);
+		Assert.assertEquals(reader.getRoutingIndexes().size(), cached.getRoutingIndexes().size());
+		for (int i = 0; i < reader.getRoutingIndexes().size(); i++) {
+			RouteRegion reg = reader.getRoutingIndexes().get(i);
+			RouteRegion cachedReg = cached.getRoutingIndexes().get(i);
+			Assert.assertNotNull(cachedReg.cachedLeaves);
+			RouteSubregionIndex index = cachedReg.getSubregionIndex(false);
+			for (RouteSubregion root : reg.getSubregions()) {
+				// query every root box and its quarter
+				int[][] boxes = new int[][] { { root.left, root.top, root.right, root.bottom },
+						{ root.left, root.top, (root.left + root.right) >>> 1, (root.top + root.bottom) >>> 1 } };
+				for (int[] b : boxes) {
+					req = BinaryMapIndexReader.buildSearchRouteRequest(b[0], b[2], b[1], b[3], null);
+					List<RouteSubregion> expected = reader.searchRouteIndexTree(req, reg.getSubregions());
+					List<RouteSubregion> actual = index.search(b[0], b[1], b[2], b[3], new ArrayList<RouteSubregion>());
+					Assert.assertEquals(filePointers(expected), filePointers(actual));
+				}
+			}
+		}
+	}
+
+	private RouteSubregion createTree(RouteRegion reg, Random rnd, int left, int top, int right, int bottom, int depth) {
+		RouteSubregion rs = new RouteSubregion(reg);
+		rs.left = left;
+		rs.top = top;
+		rs.right = right;
+		rs.bottom = bottom;
+		rs.filePointer = rnd.nextInt(Integer.MAX_VALUE);
+		rs.subregions = new ArrayList<RouteSubregion>();
+		boolean split = depth < 2 || (depth < 9 && rnd.nextInt(4) != 0);
+		if (!split || rnd.nextInt(10) == 0) {
+			rs.shiftToData = 1;
+		}
+		if (split) {
+			int cx = (int) (((long) left + right) / 2);
+			int cy = (int) (((long) top + bottom) / 2);
+			rs.subregions.add(createTree(reg, rnd, left, top, cx, cy, depth + 1));
+			rs.subregions.add(createTree(reg, rnd, cx, top, right, cy, depth + 1));
+			rs.subregions.add(createTree(reg, rnd, left, cy, cx, bottom, depth + 1));
+			rs.subregions.add(createTree(reg, rnd, cx, cy, right, bottom, depth + 1));
+			Collections.shuffle(rs.subregions, rnd);
+		}
+		return rs;
+	}
+
+	// same traversal as BinaryMapRouteReaderAdapter.searchRouteRegionTree
+	private List<RouteSubregion> searchTree(List<RouteSubregion> list, int left, int top, int right, int bottom,
+			List<RouteSubregion> toLoad) {
+		for (RouteSubregion rs : list) {
+			if (right >= rs.left && left <= rs.right && top <= rs.bottom && bottom >= rs.top) {
+				searchTree(rs.subregions, left, top, right, bottom, toLoad);
+				if (rs.shiftToData != 0) {
+					toLoad.add(rs);
+				}
+			}
+		}
+		return toLoad;
+	}
+
+	private List<Integer> filePointers(List<RouteSubregion> list) {
+		List<Integer> res = new ArrayList<Integer>();
+		for (RouteSubregion rs : list) {
+			res.add(rs.filePointer);
+		}
+		return res;
+	}
+}
@@ -0,0 +1,135 @@
+package net.osmand.binary;
+
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+
+import com.google.protobuf.CodedOutputStream;
+
+import org.junit.Assume;
+import org.junit.rules.ExternalResource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test rule with map readers and temporary map files of test, readers are closed and files are deleted after test.
+ */
+public class TestMapReaders extends ExternalResource {
+
+	public static final String ROUTING_OBF = "src/test/resources/Routing_test.obf";
+
+	private final List<BinaryMapIndexReader> readers = new ArrayList<BinaryMapIndexReader>();
+	private final List<File> files = new ArrayList<File>();
+
+	public interface RoadsLoader {
+
+		List<RouteDataObject> loadRoads(RouteSubregion subregion);
+	}
+
+	/**
+	 * Reader of test routing map, test is skipped if map is not available.
+	 */
+	public BinaryMapIndexReader openRoutingMap() throws IOException {
+		File file = new File(ROUTING_OBF);
+		Assume.assumeTrue(file.exists());
+		return register(new BinaryMapIndexReader(new RandomAccessFile(file, "r"), file));
+	}
+
+	/**
+	 * Temporary map file without indexes.
+	 */
+	public File createMapFile() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CodedOutputStream cos = CodedOutputStream.newInstance(bytes);
+		cos.writeUInt32(OsmandOdb.OsmAndStructure.VERSION_FIELD_NUMBER, 2);
+		cos.writeUInt32(OsmandOdb.OsmAndStructure.VERSIONCONFIRM_FIELD_NUMBER, 2);
+		cos.flush();
+		return createMapFile(bytes.toByteArray());
+	}
+
+	public File createMapFile(byte[] content) throws IOException {
+		File file = File.createTempFile("test", ".obf");
+		file.deleteOnExit();
+		files.add(file);
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Not initialized reader of file (indexes are not read).
+	 */
+	public BinaryMapIndexReader openReader(File file) throws IOException {
+		return register(new BinaryMapIndexReader(new RandomAccessFile(file, "r"), file, false));
+	}
+
+	/**
+	 * Reader of temporary map file with routing region, roads of subregions (walked without subregion index)
+	 * are returned by loader.
+	 */
+	public BinaryMapIndexReader createRoutingReader(File file, RouteRegion reg, final RoadsLoader loader)
+			throws IOException {
+		final List<RouteRegion> regions = Collections.singletonList(reg);
+		return register(new BinaryMapIndexReader(new RandomAccessFile(file, "r"), file, false) {
+			@Override
+			public List<RouteRegion> getRoutingIndexes() {
+				return regions;
+			}
+
+			@Override
+			public List<RouteSubregion> searchRouteIndexTree(SearchRequest<?> req, List<RouteSubregion> list) {
+				List<RouteSubregion> res = new ArrayList<RouteSubregion>();
+				for (RouteSubregion rs : list) {
+					if (req.intersects(rs.left, rs.top, rs.right, rs.bottom)) {
+						res.add(rs);
+					}
+				}
+				return res;
+			}
+
+			@Override
+			public List<RouteDataObject> loadRouteIndexData(RouteSubregion rs) {
+				return loader.loadRoads(rs);
+			}
+		});
+	}
+
+	public BinaryMapIndexReader createRoutingReader(RouteRegion reg, RoadsLoader loader) throws IOException {
+		return createRoutingReader(createMapFile(), reg, loader);
+	}
+
+	/**
+	 * Reader is closed after test.
+	 */
+	public BinaryMapIndexReader register(BinaryMapIndexReader reader) {
+		readers.add(reader);
+		return reader;
+	}
+
+	@Override
+	protected void after() {
+		for (BinaryMapIndexReader reader : readers) {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				// file is deleted anyway
+			}
+		}
+		readers.clear();
+		for (File file : files) {
+			file.delete();
+		}
+		files.clear();
+	}
+}
@@ -0,0 +1,78 @@
+package net.osmand.binary;
+
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks that threads looking up types combinations of shared region and road objects get the same dense indexes.
+ */
+public class TypesCombinationTest {
+
+	private static final int COMBINATIONS = 2000;
+
+	@Test
+	public void testConcurrentTypesCombinations() throws Exception {
+		final RouteRegion reg = new RouteRegion();
+		final List<RouteDataObject> roads = new ArrayList<RouteDataObject>();
+		Random rnd = new Random(1);
+		for (int i = 0; i < COMBINATIONS; i++) {
+			RouteDataObject ro = new RouteDataObject(reg);
+			ro.types = new int[] { i % 50, 50 + i / 50, rnd.nextInt(3) == 0 ? 1000 + i : 1000 };
+			roads.add(ro);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<int[]>> futures = new ArrayList<Future<int[]>>();
+		try {
+			for (int t = 0; t < 4; t++) {
+				final Random trnd = new Random(t);
+				futures.add(executor.submit(new Callable<int[]>() {
+					@Override
+					public int[] call() {
+						int[] res = new int[COMBINATIONS];
+						for (int k = 0; k < COMBINATIONS * 3; k++) {
+							int i = trnd.nextInt(COMBINATIONS);
+							int ind = trnd.nextBoolean() ? roads.get(i).getTypesCombination()
+									: reg.getTypesCombination(roads.get(i).types.clone());
+							Assert.assertTrue(res[i] == 0 || res[i] == ind + 1);
+							res[i] = ind + 1;
+						}
+						return res;
+					}
+				}));
+			}
+			Map<String, Integer> indexes = new HashMap<String, Integer>();
+			for (Future<int[]> f : futures) {
+				int[] res = f.get();
+				for (int i = 0; i < COMBINATIONS; i++) {
+					if (res[i] != 0) {
+						String key = Arrays.toString(roads.get(i).types);
+						Integer ind = indexes.get(key);
+						Assert.assertTrue(ind == null || ind == res[i] - 1);
+						indexes.put(key, res[i] - 1);
+					}
+				}
+			}
+			for (RouteDataObject ro : roads) {
+				Integer ind = indexes.get(Arrays.toString(ro.types));
+				Assert.assertEquals(ind == null ? reg.getTypesCombination(ro.types) : ind.intValue(), ro.getTypesCombination());
+			}
+			// all types are distinct and indexes are dense
+			Assert.assertEquals(COMBINATIONS, reg.getTypesCombination(new int[] { -1 }));
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
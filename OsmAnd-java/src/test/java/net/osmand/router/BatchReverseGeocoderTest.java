@@ -0,0 +1,121 @@
+package net.osmand.router;
+
+import net.osmand.ResultMatcher;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter;
+import net.osmand.binary.GeocodingUtilities;
+import net.osmand.binary.GeocodingUtilities.GeocodingResult;
+import net.osmand.binary.TestMapReaders;
+import net.osmand.router.BatchReverseGeocoder.BatchGeocodingResult;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+import net.osmand.util.MapUtils;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks spatial sorting of batch points and compares batch (parallel, shared caches) reverse geocoding
+ * with geocoding of every point separately on test map.
+ */
+public class BatchReverseGeocoderTest {
+
+	private static final int POINTS = 40;
+
+	@Rule
+	public final TestMapReaders maps = new TestMapReaders();
+
+	@Test
+	public void testSortByTiles() {
+		Random rnd = new Random(1);
+		double[] latLons = new double[2000];
+		for (int i = 0; i < latLons.length; i += 2) {
+			latLons[i] = 52 + rnd.nextDouble() * 0.1;
+			latLons[i + 1] = 4.8 + rnd.nextDouble() * 0.1;
+		}
+		long[] sorted = BatchReverseGeocoder.sortByTiles(latLons, 16);
+		boolean[] seen = new boolean[latLons.length / 2];
+		for (long s : sorted) {
+			seen[(int) s] = true;
+		}
+		for (boolean s : seen) {
+			Assert.assertTrue(s);
+		}
+		int[] chunks = BatchReverseGeocoder.splitByTiles(sorted, 16);
+		Assert.assertEquals(0, chunks[0]);
+		Assert.assertEquals(sorted.length, chunks[chunks.length - 1]);
+		for (int c = 1; c < chunks.length - 1; c++) {
+			Assert.assertTrue(chunks[c] > chunks[c - 1]);
+			// chunk starts with the new tile
+			Assert.assertNotEquals(sorted[chunks[c]] >>> 32, sorted[chunks[c] - 1] >>> 32);
+			int i = chunks[c];
+			double lat = latLons[2 * (int) sorted[i]];
+			double lon = latLons[2 * (int) sorted[i] + 1];
+			double prevLat = latLons[2 * (int) sorted[i - 1]];
+			double prevLon = latLons[2 * (int) sorted[i - 1] + 1];
+			Assert.assertFalse((int) MapUtils.getTileNumberX(16, lon) == (int) MapUtils.getTileNumberX(16, prevLon)
+					&& (int) MapUtils.getTileNumberY(16, lat) == (int) MapUtils.getTileNumberY(16, prevLat));
+		}
+	}
+
+	@Test
+	public void testSortByTilesWithHighBitOfCode() {
+		// tile y of southern point sets the highest bit of Morton code
+		double[] latLons = { -10, 0, 10, 0 };
+		long[] sorted = BatchReverseGeocoder.sortByTiles(latLons, 16);
+		Assert.assertEquals(1, (int) sorted[0]);
+		Assert.assertEquals(0, (int) sorted[1]);
+	}
+
+	@Test
+	public void testBatchEqualsSinglePoints() throws Exception {
+		BinaryMapIndexReader reader = maps.openRoutingMap();
+		BinaryMapIndexReader[] readers = { reader };
+		List<BinaryMapIndexReader> list = Collections.singletonList(reader);
+		RoutingConfiguration config = RoutingConfiguration.getDefault().build("geocoding",
+				new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+						RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT), new HashMap<String, String>());
+		RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+		BinaryMapRouteReaderAdapter.RouteRegion reg = reader.getRoutingIndexes().get(0);
+		Random rnd = new Random(2);
+		double[] latLons = new double[POINTS * 2];
+		for (int i = 0; i < latLons.length; i += 2) {
+			latLons[i] = reg.getTopLatitude() + (reg.getBottomLatitude() - reg.getTopLatitude()) * rnd.nextDouble();
+			latLons[i + 1] = reg.getLeftLongitude() + (reg.getRightLongitude() - reg.getLeftLongitude()) * rnd.nextDouble();
+		}
+		GeocodingUtilities geocoding = new GeocodingUtilities();
+		final String[] expected = new String[POINTS];
+		for (int i = 0; i < POINTS; i++) {
+			RoutingContext ctx = fe.buildRoutingContext(config, null, readers, RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+			List<GeocodingResult> roads = geocoding.reverseGeocodingSearch(ctx, latLons[2 * i], latLons[2 * i + 1], false);
+			expected[i] = geocoding.sortGeocodingResults(list, roads).toString();
+		}
+
+		RoutingContext ctx = fe.buildRoutingContext(config, null, readers, RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+		BatchReverseGeocoder batch = new BatchReverseGeocoder(ctx, list);
+		batch.setParallelism(3, null);
+		final String[] actual = new String[POINTS];
+		int geocoded = batch.reverseGeocode(latLons, new ResultMatcher<BatchGeocodingResult>() {
+			@Override
+			public boolean publish(BatchGeocodingResult object) {
+				Assert.assertNull(actual[object.index]);
+				actual[object.index] = object.results.toString();
+				return true;
+			}
+
+			@Override
+			public boolean isCancelled() {
+				return false;
+			}
+		});
+		Assert.assertEquals(POINTS, geocoded);
+		for (int i = 0; i < POINTS; i++) {
+			Assert.assertEquals("Point " + i, expected[i], actual[i]);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package net.osmand.router;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.binary.TestMapReaders;
+import net.osmand.data.LatLon;
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+import net.osmand.util.MapUtils;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Builds contraction hierarchy for test map, checks sidecar file round trip and compares
+ * routes between random junctions with A* (hierarchy doesn't count turn time, so it can't be slower).
+ * Checks that hierarchy is used only by router it was built with.
+ */
+public class ContractionHierarchyTest {
+
+	private static final int ROUTES = 10;
+
+	@Rule
+	public final TestMapReaders maps = new TestMapReaders();
+
+	@Test
+	public void testHierarchyRoutes() throws Exception {
+		BinaryMapIndexReader[] readers = { maps.openRoutingMap() };
+		RoutingConfiguration config = RoutingConfiguration.getDefault().build("car",
+				new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+						RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT), new HashMap<String, String>());
+
+		ContractionHierarchyBuilder builder = new ContractionHierarchyBuilder(config.router);
+		builder.addRoads(readers[0]);
+		ContractionHierarchy built = builder.build();
+		File sidecar = File.createTempFile("routing_test", ".och");
+		sidecar.deleteOnExit();
+		built.writeToFile(sidecar);
+		ContractionHierarchy ch = ContractionHierarchy.readFromFile(sidecar);
+		Assert.assertEquals(built.getNodesCount(), ch.getNodesCount());
+		Assert.assertEquals(built.getEdgesCount(), ch.getEdgesCount());
+		Assert.assertEquals(built.getProfile(), ch.getProfile());
+
+		RoutePlannerFrontEnd astar = new RoutePlannerFrontEnd();
+		RoutePlannerFrontEnd hierarchy = new RoutePlannerFrontEnd();
+		hierarchy.setContractionHierarchy(ch);
+		Random rnd = new Random(11);
+		long astarTime = 0;
+		long chTime = 0;
+		for (int i = 0; i < ROUTES; i++) {
+			LatLon start = nodeLocation(ch, rnd.nextInt(ch.getNodesCount()));
+			LatLon end = nodeLocation(ch, rnd.nextInt(ch.getNodesCount()));
+
+			RoutingContext actx = astar.buildRoutingContext(config, null, readers,
+					RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+			long t = System.nanoTime();
+			List<RouteSegmentResult> ares = astar.searchRoute(actx, start, end, null);
+			astarTime += System.nanoTime() - t;
+
+			RoutingContext hctx = hierarchy.buildRoutingContext(config, null, readers,
+					RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+			t = System.nanoTime();
+			List<RouteSegmentResult> hres = hierarchy.searchRoute(hctx, start, end, null);
+			chTime += System.nanoTime() - t;
+			if (ares == null || ares.isEmpty()) {
+				continue;
+			}
+			Assert.assertNotNull(hres);
+			Assert.assertFalse(hres.isEmpty());
+			Assert.assertTrue(hctx.routingTime + " > " + actx.routingTime, hctx.routingTime <= actx.routingTime + 5);
+		}
+		System.out.println(String.format("A* %.2f ms, contraction hierarchy %.2f ms (%d routes, %d nodes, %d edges)",
+				astarTime / 1e6, chTime / 1e6, ROUTES, ch.getNodesCount(), ch.getEdgesCount()));
+	}
+
+	@Test
+	public void testApplicableForBuildRouter() throws Exception {
+		GeneralRouter base = new GeneralRouter(GeneralRouterProfile.CAR, new HashMap<String, String>());
+		GeneralRouter router = new GeneralRouter(base, Collections.<String, String>emptyMap());
+		RouteRegion reg = new RouteRegion();
+		reg.initRouteEncodingRule(0, "highway", "primary");
+		ContractionHierarchyBuilder builder = new ContractionHierarchyBuilder(router);
+		for (int i = 0; i < 3; i++) {
+			RouteDataObject road = new RouteDataObject(reg);
+			road.id = (i + 1) << RouteResultPreparation.SHIFT_ID;
+			road.types = new int[] { 0 };
+			road.pointsX = new int[] { (1 << 30) + i * 1000, (1 << 30) + (i + 1) * 1000 };
+			road.pointsY = new int[] { 1 << 30, 1 << 30 };
+			builder.addRoad(road);
+		}
+		File sidecar = File.createTempFile("routing_test", ".och");
+		sidecar.deleteOnExit();
+		builder.build().writeToFile(sidecar);
+		ContractionHierarchy ch = ContractionHierarchy.readFromFile(sidecar);
+		Assert.assertEquals(router.getRouterKey(), ch.getRouterKey());
+
+		Assert.assertTrue(ch.isApplicable(createContext(new GeneralRouter(base, Collections.<String, String>emptyMap()))));
+		Map<String, String> params = new HashMap<String, String>();
+		params.put(GeneralRouter.USE_SHORTEST_WAY, "true");
+		Assert.assertFalse(ch.isApplicable(createContext(new GeneralRouter(base, params))));
+		GeneralRouter changed = new GeneralRouter(base, Collections.<String, String>emptyMap());
+		changed.addAttribute("maxSpeed", "50");
+		Assert.assertFalse(ch.isApplicable(createContext(changed)));
+	}
+
+	private RoutingContext createContext(GeneralRouter router) {
+		RoutingConfiguration config = new RoutingConfiguration();
+		config.router = router;
+		return new RoutingContext(config, null, new BinaryMapIndexReader[0], RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+	}
+
+	private LatLon nodeLocation(ContractionHierarchy ch, int node) {
+		return new LatLon(MapUtils.get31LatitudeY(ch.nodeY[node]), MapUtils.get31LongitudeX(ch.nodeX[node]));
+	}
+}
@@ -0,0 +1,160 @@
+package net.osmand.router;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.binary.TestMapReaders;
+import net.osmand.data.LatLon;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxRouteApproximation;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+import net.osmand.util.MapUtils;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Checks that track approximated by parallel chunks is stitched on common road points
+ * and matches track approximated at once.
+ */
+public class GpxChunksApproximationTest {
+
+	@Rule
+	public final TestMapReaders maps = new TestMapReaders();
+
+	@Test
+	public void testStitchOnCommonRoadPoint() {
+		RouteRegion reg = new RouteRegion();
+		RouteDataObject a = createRoad(reg, 1);
+		RouteDataObject b = createRoad(reg, 2);
+		List<GpxPoint> gpxPoints = createPoints(10, 0);
+		// previous chunk: step 0 -> 3 by road a, step 3 -> 6 till the middle of road b
+		List<GpxPoint> first = createPoints(7, 0);
+		setStep(first, 0, 3, new RouteSegmentResult(a, 0, 5));
+		setStep(first, 3, 6, new RouteSegmentResult(a, 5, 9), new RouteSegmentResult(b, 0, 3));
+		// next chunk starts at gpx point 4, its first step shares road a from point 7 with previous chunk
+		List<GpxPoint> second = createPoints(6, 4);
+		setStep(second, 0, 2, new RouteSegmentResult(a, 7, 9), new RouteSegmentResult(b, 0, 2));
+		setStep(second, 2, 5, new RouteSegmentResult(b, 2, 9));
+
+		RoutePlannerFrontEnd.stitchGpxChunks(gpxPoints, Arrays.asList(first, second), new int[] { 0, 4 });
+		Assert.assertEquals(Arrays.asList("1:0-5", "1:5-7", "1:7-9", "2:0-2", "2:2-9"), walkRoute(gpxPoints));
+	}
+
+	@Test
+	public void testStitchWithoutCommonRoadPoint() {
+		RouteRegion reg = new RouteRegion();
+		RouteDataObject a = createRoad(reg, 1);
+		RouteDataObject b = createRoad(reg, 2);
+		List<GpxPoint> gpxPoints = createPoints(10, 0);
+		List<GpxPoint> first = createPoints(7, 0);
+		setStep(first, 0, 6, new RouteSegmentResult(a, 0, 9));
+		// next chunk goes in the opposite direction of road a, so it's attached after previous chunk
+		List<GpxPoint> second = createPoints(6, 4);
+		setStep(second, 0, 2, new RouteSegmentResult(a, 9, 5));
+		setStep(second, 2, 5, new RouteSegmentResult(b, 0, 9));
+
+		RoutePlannerFrontEnd.stitchGpxChunks(gpxPoints, Arrays.asList(first, second), new int[] { 0, 4 });
+		Assert.assertEquals(Arrays.asList("1:0-9", "2:0-9"), walkRoute(gpxPoints));
+	}
+
+	@Test
+	public void testChunkedMatchesUnchunked() throws Exception {
+		BinaryMapIndexReader[] readers = { maps.openRoutingMap() };
+		RouteRegion reg = readers[0].getRoutingIndexes().get(0);
+		RoutingConfiguration config = RoutingConfiguration.getDefault().build("car",
+				new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+						RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT), new HashMap<String, String>());
+		RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+		LatLon start = new LatLon(reg.getBottomLatitude(), reg.getLeftLongitude());
+		LatLon end = new LatLon(reg.getTopLatitude(), reg.getRightLongitude());
+		List<RouteSegmentResult> route = fe.searchRoute(fe.buildRoutingContext(config, null, readers,
+				RoutePlannerFrontEnd.RouteCalculationMode.NORMAL), start, end, null);
+		Assume.assumeTrue(route != null && !route.isEmpty());
+		List<LatLon> track = HMMMapMatcherTest.sampleTrack(route, null);
+		double trackLength = getLength(route);
+
+		GpxRouteApproximation unchunked = approximate(fe, config, readers, track);
+		// at least 4 chunks with overlaps to stitch
+		fe.setGpxApproximationParallelism(2, trackLength / 4, null);
+		GpxRouteApproximation chunked = approximate(fe, config, readers, track);
+
+		Assert.assertFalse(chunked.result.isEmpty());
+		Assert.assertTrue(chunked.routeGapDistance + " > " + unchunked.routeGapDistance,
+				chunked.routeGapDistance <= unchunked.routeGapDistance + 1);
+		Assert.assertTrue(chunked.routeDistanceUnmatched + " > " + unchunked.routeDistanceUnmatched,
+				chunked.routeDistanceUnmatched <= unchunked.routeDistanceUnmatched + 1);
+		double chunkedLength = getLength(chunked.result);
+		double unchunkedLength = getLength(unchunked.result);
+		Assert.assertEquals(unchunkedLength, chunkedLength, unchunkedLength * 0.01);
+	}
+
+	private static GpxRouteApproximation approximate(RoutePlannerFrontEnd fe, RoutingConfiguration config,
+			BinaryMapIndexReader[] readers, List<LatLon> track) throws Exception {
+		GpxRouteApproximation gctx = new GpxRouteApproximation(fe.buildRoutingContext(config, null, readers,
+				RoutePlannerFrontEnd.RouteCalculationMode.NORMAL));
+		List<GpxPoint> points = new ArrayList<GpxPoint>();
+		fe.appendGpxPoints(gctx, points, track);
+		return fe.searchGpxRoute(gctx, points, null);
+	}
+
+	private static double getLength(List<RouteSegmentResult> route) {
+		double len = 0;
+		for (RouteSegmentResult r : route) {
+			int inc = r.isForwardDirection() ? 1 : -1;
+			for (int i = r.getStartPointIndex(); i != r.getEndPointIndex(); i += inc) {
+				len += MapUtils.getDistance(r.getPoint(i), r.getPoint(i + inc));
+			}
+		}
+		return len;
+	}
+
+	private static RouteDataObject createRoad(RouteRegion reg, long id) {
+		RouteDataObject ro = new RouteDataObject(reg);
+		ro.id = id;
+		ro.pointsX = new int[10];
+		ro.pointsY = new int[10];
+		return ro;
+	}
+
+	private static List<GpxPoint> createPoints(int size, int offset) {
+		List<GpxPoint> points = new ArrayList<GpxPoint>();
+		for (int i = 0; i < size; i++) {
+			GpxPoint p = new GpxPoint();
+			p.ind = i;
+			p.loc = new LatLon(0, (i + offset) * 0.001);
+			points.add(p);
+		}
+		return points;
+	}
+
+	private static void setStep(List<GpxPoint> points, int ind, int targetInd, RouteSegmentResult... route) {
+		GpxPoint p = points.get(ind);
+		p.routeToTarget = new ArrayList<RouteSegmentResult>(Arrays.asList(route));
+		p.targetInd = targetInd;
+	}
+
+	// route segments in the order calculateGpxRoute adds them
+	private static List<String> walkRoute(List<GpxPoint> gpxPoints) {
+		List<String> res = new ArrayList<String>();
+		for (int i = 0; i < gpxPoints.size(); ) {
+			GpxPoint p = gpxPoints.get(i);
+			if (p.routeToTarget != null && !p.routeToTarget.isEmpty()) {
+				for (RouteSegmentResult r : p.routeToTarget) {
+					res.add(r.getObject().getId() + ":" + r.getStartPointIndex() + "-" + r.getEndPointIndex());
+				}
+				i = p.targetInd;
+			} else {
+				i++;
+			}
+		}
+		return res;
+	}
+}
@@ -0,0 +1,80 @@
+package net.osmand.router;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.TestMapReaders;
+import net.osmand.data.LatLon;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxRouteApproximation;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Approximates recorded track in 2 parts (the second part with extendGpxRoute) and checks that route and turns
+ * are the same as for approximation of the whole track.
+ */
+public class GpxRouteExtensionTest {
+
+	@Rule
+	public final TestMapReaders maps = new TestMapReaders();
+
+	@Test
+	public void testExtendedMatchesWholeTrack() throws Exception {
+		BinaryMapIndexReader[] readers = { maps.openRoutingMap() };
+		RouteRegion reg = readers[0].getRoutingIndexes().get(0);
+		RoutingConfiguration config = RoutingConfiguration.getDefault().build("car",
+				new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+						RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT), new HashMap<String, String>());
+		RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+		double lat = reg.getTopLatitude() - reg.getBottomLatitude();
+		double lon = reg.getRightLongitude() - reg.getLeftLongitude();
+		LatLon start = new LatLon(reg.getBottomLatitude() + lat * 0.3, reg.getLeftLongitude() + lon * 0.3);
+		LatLon end = new LatLon(reg.getBottomLatitude() + lat * 0.7, reg.getLeftLongitude() + lon * 0.7);
+		List<RouteSegmentResult> route = fe.searchRoute(fe.buildRoutingContext(config, null, readers,
+				RoutePlannerFrontEnd.RouteCalculationMode.NORMAL), start, end, null);
+		Assume.assumeTrue(route != null && !route.isEmpty());
+		List<LatLon> track = HMMMapMatcherTest.sampleTrack(route, null);
+		Assume.assumeTrue(track.size() > 4);
+
+		GpxRouteApproximation whole = newApproximation(fe, config, readers);
+		List<GpxPoint> wholePoints = new ArrayList<GpxPoint>();
+		fe.appendGpxPoints(whole, wholePoints, track);
+		whole = fe.searchGpxRoute(whole, wholePoints, null);
+
+		GpxRouteApproximation extended = newApproximation(fe, config, readers);
+		List<GpxPoint> points = new ArrayList<GpxPoint>();
+		int half = track.size() / 2;
+		fe.appendGpxPoints(extended, points, track.subList(0, half));
+		extended = fe.searchGpxRoute(extended, points, null);
+		fe.appendGpxPoints(extended, points, track.subList(half, track.size()));
+		extended = fe.extendGpxRoute(extended, points, null);
+
+		Assert.assertFalse(whole.result.isEmpty());
+		Assert.assertEquals(describe(whole.result), describe(extended.result));
+	}
+
+	private static GpxRouteApproximation newApproximation(RoutePlannerFrontEnd fe, RoutingConfiguration config,
+			BinaryMapIndexReader[] readers) {
+		return new GpxRouteApproximation(fe.buildRoutingContext(config, null, readers,
+				RoutePlannerFrontEnd.RouteCalculationMode.NORMAL));
+	}
+
+	// roads with turns of route
+	private static List<String> describe(List<RouteSegmentResult> result) {
+		List<String> res = new ArrayList<String>();
+		for (RouteSegmentResult r : result) {
+			TurnType t = r.getTurnType();
+			res.add(r.getObject().getId() + ":" + r.getStartPointIndex() + "-" + r.getEndPointIndex()
+					+ (t == null ? "" : " " + t.toXmlString()));
+		}
+		return res;
+	}
+}
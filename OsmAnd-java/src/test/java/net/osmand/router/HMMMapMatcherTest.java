@@ -0,0 +1,116 @@
+package net.osmand.router;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.TestMapReaders;
+import net.osmand.data.LatLon;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+import net.osmand.router.RoutePlannerFrontEnd.GpxRouteApproximation;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+import net.osmand.util.MapUtils;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Samples noisy track along calculated route and checks that map matching restores it.
+ */
+public class HMMMapMatcherTest {
+
+	private static final double SAMPLE_DISTANCE = 60;
+	private static final double NOISE = 8;
+
+	@Rule
+	public final TestMapReaders maps = new TestMapReaders();
+
+	@Test
+	public void testMatchNoisyTrack() throws Exception {
+		BinaryMapIndexReader[] readers = { maps.openRoutingMap() };
+		RouteRegion reg = readers[0].getRoutingIndexes().get(0);
+		RoutingConfiguration config = RoutingConfiguration.getDefault().build("car",
+				new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+						RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT), new HashMap<String, String>());
+		RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+		double lat = reg.getTopLatitude() - reg.getBottomLatitude();
+		double lon = reg.getRightLongitude() - reg.getLeftLongitude();
+		LatLon start = new LatLon(reg.getBottomLatitude() + lat * 0.4, reg.getLeftLongitude() + lon * 0.4);
+		LatLon end = new LatLon(reg.getBottomLatitude() + lat * 0.6, reg.getLeftLongitude() + lon * 0.6);
+		List<RouteSegmentResult> route = fe.searchRoute(fe.buildRoutingContext(config, null, readers,
+				RoutePlannerFrontEnd.RouteCalculationMode.NORMAL), start, end, null);
+		Assume.assumeTrue(route != null && !route.isEmpty());
+		List<LatLon> track = sampleTrack(route, new Random(11));
+
+		config.hmmApproximation = true;
+		GpxRouteApproximation gctx = new GpxRouteApproximation(fe.buildRoutingContext(config, null, readers,
+				RoutePlannerFrontEnd.RouteCalculationMode.NORMAL));
+		List<GpxPoint> points = new ArrayList<GpxPoint>();
+		fe.appendGpxPoints(gctx, points, track);
+		gctx = fe.searchGpxRoute(gctx, points, null);
+		Assert.assertFalse(gctx.result.isEmpty());
+		Assert.assertTrue(gctx.toString(), gctx.routeDistanceUnmatched < gctx.routeDistance * 0.1);
+		// matched route follows original one
+		List<LatLon> matched = sampleTrack(gctx.result, null);
+		int close = 0;
+		for (LatLon l : matched) {
+			if (distanceToRoute(route, l) < 2 * NOISE + 10) {
+				close++;
+			}
+		}
+		Assert.assertTrue(close + " of " + matched.size(), close >= matched.size() * 0.9);
+	}
+
+	// points along route every SAMPLE_DISTANCE with gaussian noise (if random is set)
+	static List<LatLon> sampleTrack(List<RouteSegmentResult> route, Random rnd) {
+		List<LatLon> res = new ArrayList<LatLon>();
+		double toNext = 0;
+		LatLon prev = null;
+		for (RouteSegmentResult r : route) {
+			int inc = r.isForwardDirection() ? 1 : -1;
+			for (int i = r.getStartPointIndex(); ; i += inc) {
+				LatLon p = r.getPoint(i);
+				if (prev != null) {
+					double d = MapUtils.getDistance(prev, p);
+					double passed = 0;
+					while (passed + toNext <= d) {
+						passed += toNext;
+						double k = passed / d;
+						LatLon s = new LatLon(prev.getLatitude() + (p.getLatitude() - prev.getLatitude()) * k,
+								prev.getLongitude() + (p.getLongitude() - prev.getLongitude()) * k);
+						if (rnd != null) {
+							s = MapUtils.rhumbDestinationPoint(s, rnd.nextGaussian() * NOISE, rnd.nextDouble() * 360);
+						}
+						res.add(s);
+						toNext = SAMPLE_DISTANCE;
+					}
+					toNext -= d - passed;
+				}
+				prev = p;
+				if (i == r.getEndPointIndex()) {
+					break;
+				}
+			}
+		}
+		return res;
+	}
+
+	private static double distanceToRoute(List<RouteSegmentResult> route, LatLon l) {
+		double min = Double.POSITIVE_INFINITY;
+		for (RouteSegmentResult r : route) {
+			int inc = r.isForwardDirection() ? 1 : -1;
+			for (int i = r.getStartPointIndex(); i != r.getEndPointIndex(); i += inc) {
+				LatLon a = r.getPoint(i);
+				LatLon b = r.getPoint(i + inc);
+				min = Math.min(min, MapUtils.getOrthogonalDistance(l.getLatitude(), l.getLongitude(),
+						a.getLatitude(), a.getLongitude(), b.getLatitude(), b.getLongitude()));
+			}
+		}
+		return min;
+	}
+}
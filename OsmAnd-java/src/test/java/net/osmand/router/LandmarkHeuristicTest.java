@@ -0,0 +1,331 @@
+package net.osmand.router;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.binary.TestMapReaders;
+import net.osmand.binary.TestMapReaders.RoadsLoader;
+import net.osmand.data.LatLon;
+import net.osmand.osm.MapPoiTypes;
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+import net.osmand.util.MapUtils;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks that landmark bound never exceeds exact route time on synthetic grid with holes (and sidecar round trip),
+ * that tables are used only with router and map files they were calculated for
+ * and that A* with landmarks finds routes with the same time on synthetic grid and on test map.
+ */
+public class LandmarkHeuristicTest {
+
+	private static final int GRID = 30;
+	// ~300 m between grid points
+	private static final int STEP = 1 << 15;
+	private static final int ROUTES = 10;
+
+	@Rule
+	public final TestMapReaders maps = new TestMapReaders();
+
+	@BeforeClass
+	public static void setUp() {
+		MapPoiTypes.setDefault(new MapPoiTypes("src/test/resources/poi_types.xml"));
+	}
+
+	@Test
+	public void testBoundIsLowerThanRouteTime() throws Exception {
+		Random rnd = new Random(5);
+		GeneralRouter router = new GeneralRouter(GeneralRouterProfile.BICYCLE, new LinkedHashMap<String, String>());
+		int base = 1 << 30;
+		List<RouteDataObject> roads = createGrid(new RouteRegion(), rnd);
+		LandmarkHeuristicBuilder builder = new LandmarkHeuristicBuilder(router);
+		builder.setLandmarksCount(4);
+		for (RouteDataObject ro : roads) {
+			builder.addRoad(ro);
+		}
+		Assert.assertEquals(roads.size(), builder.getRoadsCount());
+		LandmarkHeuristic built = builder.build();
+		File sidecar = File.createTempFile("grid", LandmarkHeuristic.FILE_EXT);
+		sidecar.deleteOnExit();
+		built.writeToFile(sidecar);
+		LandmarkHeuristic landmarks = LandmarkHeuristic.readFromFile(sidecar);
+		Assert.assertEquals(4, landmarks.getLandmarksCount());
+		Assert.assertEquals(built.getCellsCount(), landmarks.getCellsCount());
+		Assert.assertEquals(GeneralRouterProfile.BICYCLE, landmarks.getProfile());
+
+		int better = 0;
+		for (int i = 0; i < 20; i++) {
+			int sx = rnd.nextInt(GRID);
+			int sy = rnd.nextInt(GRID);
+			double[] times = routeTimes(router, roads, base + sx * STEP, base + sy * STEP);
+			for (int k = 0; k < GRID * GRID; k++) {
+				int x = base + (k / GRID) * STEP;
+				int y = base + (k % GRID) * STEP;
+				float bound = landmarks.lowerBound(base + sx * STEP, base + sy * STEP, x, y);
+				if (times[k] == Double.POSITIVE_INFINITY) {
+					continue;
+				}
+				Assert.assertTrue(bound + " > " + times[k], bound <= times[k] + 1e-3);
+				double straight = BinaryRoutePlanner.squareRootDist(base + sx * STEP, base + sy * STEP, x, y)
+						/ router.getMaxSpeed();
+				if (bound > straight) {
+					better++;
+				}
+			}
+		}
+		Assert.assertTrue(better > 0);
+	}
+
+	@Test
+	public void testApplicableForRouterAndMaps() throws Exception {
+		RouteRegion reg = new RouteRegion();
+		List<RouteDataObject> roads = createGrid(reg, new Random(7));
+		File file = maps.createMapFile();
+		BinaryMapIndexReader reader = createReader(file, reg, roads);
+		RoutingConfiguration config = createConfig(new LinkedHashMap<String, String>());
+		LandmarkHeuristicBuilder builder = new LandmarkHeuristicBuilder(config.router);
+		builder.setLandmarksCount(4);
+		builder.addRoads(reader);
+		LandmarkHeuristic landmarks = builder.build();
+		Assert.assertEquals(roads.size(), builder.getRoadsCount());
+		Assert.assertTrue(landmarks.isApplicable(createContext(config, reader)));
+
+		// router with other parameters or attributes has other route times
+		Map<String, String> params = new LinkedHashMap<String, String>();
+		params.put("avoid_unpaved", "true");
+		Assert.assertFalse(landmarks.isApplicable(createContext(createConfig(params), reader)));
+		RoutingConfiguration changed = createConfig(new LinkedHashMap<String, String>());
+		changed.router.addAttribute("maxSpeed", "20");
+		Assert.assertFalse(landmarks.isApplicable(createContext(changed, reader)));
+
+		// roads of other routing file could make routes shorter than bound
+		RouteRegion otherReg = new RouteRegion();
+		BinaryMapIndexReader otherReader = createReader(maps.createMapFile(), otherReg, createGrid(otherReg, new Random(8)));
+		Assert.assertFalse(landmarks.isApplicable(createContext(config, reader, otherReader)));
+
+		// sidecar is used only with the same version of map file
+		File sidecar = LandmarkHeuristic.getSidecarFile(file, "bicycle");
+		sidecar.deleteOnExit();
+		landmarks.writeToFile(sidecar);
+		LandmarkHeuristic read = LandmarkHeuristic.readSidecarFile(file, "bicycle");
+		Assert.assertNotNull(read);
+		Assert.assertEquals(landmarks.getRouterKey(), read.getRouterKey());
+		Assert.assertTrue(read.isApplicable(createContext(config, reader)));
+		Assert.assertTrue(file.setLastModified(file.lastModified() - 60000));
+		Assert.assertNull(LandmarkHeuristic.readSidecarFile(file, "bicycle"));
+		Assert.assertFalse(read.isApplicable(createContext(config, reader)));
+		sidecar.delete();
+	}
+
+	@Test
+	public void testLandmarkRoutesOnGrid() throws Exception {
+		RouteRegion reg = new RouteRegion();
+		Random rnd = new Random(11);
+		List<RouteDataObject> roads = createGrid(reg, rnd);
+		BinaryMapIndexReader reader = createReader(maps.createMapFile(), reg, roads);
+		RoutingConfiguration config = createConfig(new LinkedHashMap<String, String>());
+		LandmarkHeuristicBuilder builder = new LandmarkHeuristicBuilder(config.router);
+		builder.setLandmarksCount(4);
+		builder.addRoads(reader);
+		RoutingConfiguration altConfig = createConfig(new LinkedHashMap<String, String>());
+		altConfig.landmarkHeuristic = builder.build();
+
+		RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+		int routes = 0;
+		int visited = 0;
+		int altVisited = 0;
+		for (int i = 0; i < ROUTES; i++) {
+			// points in the middle of roads, so start and end segments are not ambiguous
+			LatLon start = middlePoint(roads.get(rnd.nextInt(roads.size())));
+			LatLon end = middlePoint(roads.get(rnd.nextInt(roads.size())));
+			RoutingContext ctx = createContext(config, reader);
+			List<RouteSegmentResult> res = fe.searchRoute(ctx, start, end, null);
+			RoutingContext altCtx = createContext(altConfig, reader);
+			List<RouteSegmentResult> altRes = fe.searchRoute(altCtx, start, end, null);
+			if (res == null || res.isEmpty()) {
+				continue;
+			}
+			Assert.assertNotNull(altRes);
+			Assert.assertNotNull(altCtx.landmarks);
+			// all roads have the same speed, so optimal routes have the same length
+			Assert.assertEquals(routeDistance(res), routeDistance(altRes), 1);
+			visited += ctx.calculationProgress.visitedSegments;
+			altVisited += altCtx.calculationProgress.visitedSegments;
+			routes++;
+		}
+		Assert.assertTrue(routes > 0);
+		Assert.assertTrue(altVisited + " >= " + visited, altVisited < visited);
+	}
+
+	@Test
+	public void testLandmarkRoutes() throws Exception {
+		BinaryMapIndexReader[] readers = { maps.openRoutingMap() };
+		RoutingConfiguration config = RoutingConfiguration.getDefault().build("bicycle",
+				new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+						RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT), new HashMap<String, String>());
+		LandmarkHeuristicBuilder builder = new LandmarkHeuristicBuilder(config.router);
+		builder.addRoads(readers[0]);
+		LandmarkHeuristic landmarks = builder.build();
+		Assume.assumeTrue(landmarks.getLandmarksCount() > 0);
+		RoutingConfiguration altConfig = config.copy(config.router);
+		altConfig.landmarkHeuristic = landmarks;
+
+		RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+		Random rnd = new Random(3);
+		int visited = 0;
+		int altVisited = 0;
+		for (int i = 0; i < ROUTES; i++) {
+			LatLon start = landmarkLocation(landmarks, rnd.nextInt(landmarks.getLandmarksCount()));
+			LatLon end = landmarkLocation(landmarks, rnd.nextInt(landmarks.getLandmarksCount()));
+			RoutingContext ctx = fe.buildRoutingContext(config, null, readers,
+					RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+			ctx.calculationProgress = new RouteCalculationProgress();
+			List<RouteSegmentResult> res = fe.searchRoute(ctx, start, end, null);
+			RoutingContext altCtx = fe.buildRoutingContext(altConfig, null, readers,
+					RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+			altCtx.calculationProgress = new RouteCalculationProgress();
+			List<RouteSegmentResult> altRes = fe.searchRoute(altCtx, start, end, null);
+			if (res == null || res.isEmpty()) {
+				continue;
+			}
+			Assert.assertNotNull(altRes);
+			Assert.assertEquals(ctx.routingTime, altCtx.routingTime, 1);
+			visited += ctx.calculationProgress.visitedSegments;
+			altVisited += altCtx.calculationProgress.visitedSegments;
+		}
+		System.out.println(String.format("Visited segments: A* %d, A* with landmarks %d", visited, altVisited));
+	}
+
+	private List<RouteDataObject> createGrid(RouteRegion reg, Random rnd) {
+		reg.initRouteEncodingRule(0, "highway", "cycleway");
+		int base = 1 << 30;
+		List<RouteDataObject> roads = new ArrayList<RouteDataObject>();
+		long id = 1;
+		for (int i = 0; i < GRID; i++) {
+			for (int j = 0; j < GRID; j++) {
+				// holes make detours, so straight line bound is weak
+				if (i + 1 < GRID && rnd.nextInt(3) != 0) {
+					roads.add(createRoad(reg, id++, base + i * STEP, base + j * STEP, base + (i + 1) * STEP, base + j * STEP));
+				}
+				if (j + 1 < GRID && rnd.nextInt(3) != 0) {
+					roads.add(createRoad(reg, id++, base + i * STEP, base + j * STEP, base + i * STEP, base + (j + 1) * STEP));
+				}
+			}
+		}
+		return roads;
+	}
+
+	// reader of grid roads with one route subregion
+	private BinaryMapIndexReader createReader(File file, RouteRegion reg, final List<RouteDataObject> roads)
+			throws IOException {
+		int base = 1 << 30;
+		RouteSubregion sub = new RouteSubregion(reg);
+		sub.left = base;
+		sub.top = base;
+		sub.right = base + GRID * STEP;
+		sub.bottom = base + GRID * STEP;
+		sub.filePointer = 1;
+		sub.shiftToData = 1;
+		reg.getSubregions().add(sub);
+		return maps.createRoutingReader(file, reg, new RoadsLoader() {
+			@Override
+			public List<RouteDataObject> loadRoads(RouteSubregion subregion) {
+				return roads;
+			}
+		});
+	}
+
+	private RoutingConfiguration createConfig(Map<String, String> params) {
+		RoutingConfiguration config = new RoutingConfiguration();
+		config.router = new GeneralRouter(GeneralRouterProfile.BICYCLE, params);
+		config.memoryLimitation = RoutingConfiguration.DEFAULT_MEMORY_LIMIT * (1l << 20);
+		return config;
+	}
+
+	private RoutingContext createContext(RoutingConfiguration config, BinaryMapIndexReader... readers) {
+		RoutingContext ctx = new RoutingContext(config, null, readers, RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+		ctx.calculationProgress = new RouteCalculationProgress();
+		return ctx;
+	}
+
+	private LatLon middlePoint(RouteDataObject ro) {
+		int x = ro.getPoint31XTile(0) + (ro.getPoint31XTile(1) - ro.getPoint31XTile(0)) / 2;
+		int y = ro.getPoint31YTile(0) + (ro.getPoint31YTile(1) - ro.getPoint31YTile(0)) / 2;
+		return new LatLon(MapUtils.get31LatitudeY(y), MapUtils.get31LongitudeX(x));
+	}
+
+	private double routeDistance(List<RouteSegmentResult> route) {
+		double dist = 0;
+		for (RouteSegmentResult r : route) {
+			dist += r.getDistance();
+		}
+		return dist;
+	}
+
+	// exact route times from point to every grid point (Dijkstra over road points)
+	private double[] routeTimes(VehicleRouter router, List<RouteDataObject> roads, int x, int y) {
+		int n = GRID * GRID;
+		double[] dist = new double[n];
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		boolean[] settled = new boolean[n];
+		dist[gridIndex(x, y)] = 0;
+		while (true) {
+			int best = -1;
+			for (int k = 0; k < n; k++) {
+				if (!settled[k] && dist[k] != Double.POSITIVE_INFINITY && (best == -1 || dist[k] < dist[best])) {
+					best = k;
+				}
+			}
+			if (best == -1) {
+				return dist;
+			}
+			settled[best] = true;
+			for (RouteDataObject ro : roads) {
+				for (int p = 0; p < 2; p++) {
+					int from = gridIndex(ro.getPoint31XTile(p), ro.getPoint31YTile(p));
+					int to = gridIndex(ro.getPoint31XTile(1 - p), ro.getPoint31YTile(1 - p));
+					if (from == best) {
+						double t = ContractionHierarchy.segmentTime(router, ro, p, 1 - p);
+						if (t >= 0 && dist[best] + t < dist[to]) {
+							dist[to] = dist[best] + t;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private int gridIndex(int x, int y) {
+		int base = 1 << 30;
+		return ((x - base) / STEP) * GRID + (y - base) / STEP;
+	}
+
+	private RouteDataObject createRoad(RouteRegion reg, long id, int x1, int y1, int x2, int y2) {
+		RouteDataObject road = new RouteDataObject(reg);
+		road.id = id << RouteResultPreparation.SHIFT_ID;
+		road.types = new int[] { 0 };
+		road.pointsX = new int[] { x1, x2 };
+		road.pointsY = new int[] { y1, y2 };
+		return road;
+	}
+
+	private LatLon landmarkLocation(LandmarkHeuristic landmarks, int i) {
+		return new LatLon(MapUtils.get31LatitudeY(landmarks.landmarkY[i]), MapUtils.get31LongitudeX(landmarks.landmarkX[i]));
+	}
+}
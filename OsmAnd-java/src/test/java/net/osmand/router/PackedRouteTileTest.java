@@ -0,0 +1,88 @@
+package net.osmand.router;
+
+import net.osmand.binary.RouteDataObject;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Packs random road objects to off-heap tile and checks that unpacked objects are the same.
+ */
+public class PackedRouteTileTest {
+
+	private static final int ROADS = 500;
+
+	@Test
+	public void testPackUnpack() {
+		Random rnd = new Random(3);
+		List<RouteDataObject> objects = new ArrayList<RouteDataObject>();
+		for (int i = 0; i < ROADS; i++) {
+			objects.add(randomObject(rnd));
+		}
+		PackedRouteTile tile = PackedRouteTile.pack(null, objects);
+		Assert.assertEquals(ROADS, tile.getRoadsCount());
+		RouteDataObject[] res = tile.unpack();
+		Assert.assertEquals(ROADS, res.length);
+		int estimatedSize = 0;
+		for (int i = 0; i < ROADS; i++) {
+			RouteDataObject o = objects.get(i);
+			RouteDataObject r = res[i];
+			estimatedSize += RoutingContext.getEstimatedSize(o);
+			Assert.assertEquals(o.id, r.id);
+			Assert.assertArrayEquals(o.pointsX, r.pointsX);
+			Assert.assertArrayEquals(o.pointsY, r.pointsY);
+			Assert.assertArrayEquals(o.types, r.types);
+			Assert.assertArrayEquals(o.restrictions, r.restrictions);
+			Assert.assertArrayEquals(o.restrictionsVia, r.restrictionsVia);
+			Assert.assertArrayEquals(o.pointTypes, r.pointTypes);
+			Assert.assertArrayEquals(o.pointNameTypes, r.pointNameTypes);
+			Assert.assertArrayEquals(o.pointNames, r.pointNames);
+			Assert.assertArrayEquals(o.nameIds, r.nameIds);
+			Assert.assertEquals(o.names, r.names);
+		}
+		Assert.assertTrue(tile.getEstimatedSize() + " >= " + estimatedSize / 4,
+				tile.getEstimatedSize() < estimatedSize / 4);
+	}
+
+	private RouteDataObject randomObject(Random rnd) {
+		int len = 2 + rnd.nextInt(20);
+		String[] names = rnd.nextBoolean() ? new String[] { "Straße " + rnd.nextInt(100) } : new String[0];
+		int[] nameIds = names.length > 0 ? new int[] { rnd.nextInt(50) } : new int[0];
+		RouteDataObject o = new RouteDataObject(null, nameIds, names);
+		o.id = rnd.nextBoolean() ? rnd.nextInt(1 << 30) << 6 : -rnd.nextInt(1000);
+		o.pointsX = new int[len];
+		o.pointsY = new int[len];
+		int x = rnd.nextInt(Integer.MAX_VALUE);
+		int y = rnd.nextInt(Integer.MAX_VALUE);
+		for (int i = 0; i < len; i++) {
+			x += rnd.nextInt(2000) - 1000;
+			y += rnd.nextInt(2000) - 1000;
+			o.pointsX[i] = x;
+			o.pointsY[i] = y;
+		}
+		o.types = new int[1 + rnd.nextInt(6)];
+		for (int i = 0; i < o.types.length; i++) {
+			o.types[i] = rnd.nextInt(3000);
+		}
+		if (rnd.nextInt(5) == 0) {
+			o.restrictions = new long[] { ((long) rnd.nextInt(1 << 30) << 3) | rnd.nextInt(8) };
+			o.restrictionsVia = new long[] { rnd.nextBoolean() ? 0 : rnd.nextInt() };
+		}
+		if (rnd.nextInt(4) == 0) {
+			o.pointTypes = new int[len][];
+			o.pointTypes[rnd.nextInt(len)] = new int[] { rnd.nextInt(3000), rnd.nextInt(3000) };
+		}
+		if (rnd.nextInt(10) == 0) {
+			o.pointNameTypes = new int[len][];
+			o.pointNames = new String[len][];
+			int p = rnd.nextInt(len);
+			o.pointNameTypes[p] = new int[] { rnd.nextInt(50) };
+			o.pointNames[p] = new String[] { "Stop " + rnd.nextInt(10) };
+		}
+		return o;
+	}
+}
@@ -0,0 +1,147 @@
+package net.osmand.router;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.binary.TestMapReaders;
+import net.osmand.data.LatLon;
+import net.osmand.router.BinaryRoutePlanner.FinalRouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+import net.osmand.util.MapUtils;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Checks segments kept in reverse search tree (route first, then the fastest to target) and compares
+ * recalculation from point near route using kept tree with full calculation on test map.
+ */
+public class ReverseSearchTreeTest {
+
+	@Rule
+	public final TestMapReaders maps = new TestMapReaders();
+
+	@Test
+	public void testBuildTree() {
+		RouteRegion reg = new RouteRegion();
+		reg.initRouteEncodingRule(0, "highway", "primary");
+		RouteDataObject road = createRoad(reg, 1, 6);
+		RouteDataObject side = createRoad(reg, 2, 3);
+		RoutingConfiguration config = new RoutingConfiguration();
+		RoutingContext ctx = new RoutingContext(config, null, new BinaryMapIndexReader[0],
+				RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+
+		// reverse search from target (point 5) till point 2
+		TLongObjectHashMap<RouteSegment> visited = new TLongObjectHashMap<RouteSegment>();
+		RouteSegment r54 = visit(visited, road, 5, 4, RouteSegment.NULL, 1);
+		RouteSegment r43 = visit(visited, road, 4, 3, r54, 2);
+		RouteSegment r32 = visit(visited, road, 3, 2, r43, 3);
+		RouteSegment s10 = visit(visited, side, 1, 0, r54, 10);
+		visit(visited, side, 2, 1, s10, 11);
+		// forward search from start (point 0) met reverse search on segment 2 -> 3
+		RouteSegment f01 = new RouteSegment(road, 0, 1);
+		f01.setParentRoute(RouteSegment.NULL);
+		f01.distanceFromStart = 1;
+		RouteSegment f12 = new RouteSegment(road, 1, 2);
+		f12.setParentRoute(f01);
+		f12.distanceFromStart = 2;
+		FinalRouteSegment frs = new FinalRouteSegment(road, 2, 3);
+		frs.setParentRoute(f12);
+		frs.opposite = r32;
+		frs.distanceFromStart = r32.distanceFromStart + f12.distanceFromStart;
+		RouteSegmentPoint end = new RouteSegmentPoint(road, 5, 0);
+
+		ReverseSearchTree tree = ReverseSearchTree.build(ctx, end, frs, visited, 5);
+		// 3 visited segments and 1 forward segment of route, the fastest side segment
+		Assert.assertEquals(5, tree.getSegmentsCount());
+		Assert.assertEquals(4, time(tree, BinaryRoutePlanner.calculateRoutePointInternalId(road, 2, 1)), 0);
+		Assert.assertEquals(3, time(tree, BinaryRoutePlanner.calculateRoutePointId(r32)), 0);
+		Assert.assertEquals(10, time(tree, BinaryRoutePlanner.calculateRoutePointId(s10)), 0);
+		Assert.assertTrue(Float.isNaN(time(tree, BinaryRoutePlanner.calculateRoutePointInternalId(side, 2, 1))));
+		Assert.assertTrue(Float.isNaN(time(tree, BinaryRoutePlanner.calculateRoutePointInternalId(road, 1, 0))));
+		for (int i = 0; i < tree.getSegmentsCount(); i++) {
+			int p = tree.parents[i];
+			Assert.assertTrue(p == -1 || tree.times[p] < tree.times[i]);
+		}
+
+		config.reverseSearchTreeExpiration = 60 * 1000;
+		Assert.assertTrue(tree.isApplicable(ctx, end));
+		Assert.assertFalse(tree.isApplicable(ctx, new RouteSegmentPoint(road, 4, 0)));
+		config.reverseSearchTreeExpiration = -1;
+		Assert.assertFalse(tree.isApplicable(ctx, end));
+	}
+
+	@Test
+	public void testRecalculationWithTree() throws Exception {
+		BinaryMapIndexReader[] readers = { maps.openRoutingMap() };
+		RoutingConfiguration config = RoutingConfiguration.getDefault().build("car",
+				new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+						RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT), new HashMap<String, String>());
+		config.reverseSearchTreeMaxSegments = 1 << 20;
+		RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+		RouteRegion reg = readers[0].getRoutingIndexes().get(0);
+		LatLon start = new LatLon(reg.getTopLatitude(), reg.getLeftLongitude());
+		LatLon end = new LatLon(reg.getBottomLatitude(), reg.getRightLongitude());
+		RoutingContext ctx = fe.buildRoutingContext(config, null, readers, RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+		ctx.calculationProgress = new RouteCalculationProgress();
+		List<RouteSegmentResult> route = fe.searchRoute(ctx, start, end, null);
+		Assume.assumeTrue(route != null && route.size() > 2);
+		Assert.assertNotNull(ctx.reverseSearchTree);
+
+		// deviation ~100 m from the first third of route
+		LatLon onRoute = route.get(route.size() / 3).getStartPoint();
+		LatLon deviated = MapUtils.rhumbDestinationPoint(onRoute, 100, 45);
+		RoutingContext full = fe.buildRoutingContext(config, null, readers, RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+		full.calculationProgress = new RouteCalculationProgress();
+		fe.searchRoute(full, deviated, end, null);
+		RoutingContext recalc = fe.buildRoutingContext(config, null, readers, RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+		recalc.calculationProgress = new RouteCalculationProgress();
+		recalc.reverseSearchTree = ctx.reverseSearchTree;
+		List<RouteSegmentResult> res = fe.searchRoute(recalc, deviated, end, null);
+		Assert.assertNotNull(res);
+		Assert.assertEquals(full.routingTime, recalc.routingTime, full.routingTime * 0.01 + 1);
+		Assert.assertTrue(recalc.calculationProgress.visitedSegments <= full.calculationProgress.visitedSegments);
+		System.out.println(String.format("Visited segments: full %d, with reverse search tree %d",
+				full.calculationProgress.visitedSegments, recalc.calculationProgress.visitedSegments));
+	}
+
+	private RouteSegment visit(TLongObjectHashMap<RouteSegment> visited, RouteDataObject road, int start, int end,
+			RouteSegment parent, float time) {
+		RouteSegment s = new RouteSegment(road, start, end);
+		s.setParentRoute(parent);
+		s.distanceFromStart = time;
+		visited.put(BinaryRoutePlanner.calculateRoutePointId(s), s);
+		return s;
+	}
+
+	private float time(ReverseSearchTree tree, long id) {
+		for (int i = 0; i < tree.getSegmentsCount(); i++) {
+			if (tree.segments[i] == id) {
+				return tree.times[i];
+			}
+		}
+		return Float.NaN;
+	}
+
+	private RouteDataObject createRoad(RouteRegion reg, long id, int points) {
+		RouteDataObject road = new RouteDataObject(reg);
+		road.id = id << RouteResultPreparation.SHIFT_ID;
+		road.types = new int[] { 0 };
+		road.pointsX = new int[points];
+		road.pointsY = new int[points];
+		for (int i = 0; i < points; i++) {
+			road.pointsX[i] = (1 << 30) + i * 1000;
+			road.pointsY[i] = (1 << 30) + (int) id * 1000;
+		}
+		return road;
+	}
+}
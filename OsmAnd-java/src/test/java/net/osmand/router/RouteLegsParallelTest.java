@@ -0,0 +1,73 @@
+package net.osmand.router;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.TestMapReaders;
+import net.osmand.data.LatLon;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Calculates routes with intermediate points sequentially and with parallel legs and checks that results are the same.
+ */
+public class RouteLegsParallelTest {
+
+	private static final int ROUTES = 5;
+	private static final int INTERMEDIATES = 4;
+
+	@Rule
+	public final TestMapReaders maps = new TestMapReaders();
+
+	@Test
+	public void testParallelLegsMatchSequential() throws Exception {
+		BinaryMapIndexReader[] readers = { maps.openRoutingMap() };
+		RouteRegion reg = readers[0].getRoutingIndexes().get(0);
+		RoutingConfiguration config = RoutingConfiguration.getDefault().build("car",
+				new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+						RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT), new HashMap<String, String>());
+
+		RoutePlannerFrontEnd sequential = new RoutePlannerFrontEnd();
+		RoutePlannerFrontEnd parallel = new RoutePlannerFrontEnd();
+		parallel.setLegsParallelism(3, null);
+		Random rnd = new Random(5);
+		for (int i = 0; i < ROUTES; i++) {
+			LatLon start = randomLocation(reg, rnd);
+			LatLon end = randomLocation(reg, rnd);
+			List<LatLon> intermediates = new ArrayList<LatLon>();
+			for (int k = 0; k < INTERMEDIATES; k++) {
+				intermediates.add(randomLocation(reg, rnd));
+			}
+			RoutingContext sctx = sequential.buildRoutingContext(config, null, readers,
+					RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+			List<RouteSegmentResult> sres = sequential.searchRoute(sctx, start, end, intermediates);
+			RoutingContext pctx = parallel.buildRoutingContext(config, null, readers,
+					RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+			List<RouteSegmentResult> pres = parallel.searchRoute(pctx, start, end, intermediates);
+
+			Assert.assertEquals(sctx.routingTime, pctx.routingTime, 0f);
+			Assert.assertEquals(sres.size(), pres.size());
+			for (int k = 0; k < sres.size(); k++) {
+				RouteSegmentResult s = sres.get(k);
+				RouteSegmentResult p = pres.get(k);
+				Assert.assertEquals(s.getObject().getId(), p.getObject().getId());
+				Assert.assertEquals(s.getStartPointIndex(), p.getStartPointIndex());
+				Assert.assertEquals(s.getEndPointIndex(), p.getEndPointIndex());
+				Assert.assertEquals(s.getSegmentTime(), p.getSegmentTime(), 0f);
+			}
+		}
+	}
+
+	private LatLon randomLocation(RouteRegion reg, Random rnd) {
+		double lat = reg.getBottomLatitude() + rnd.nextDouble() * (reg.getTopLatitude() - reg.getBottomLatitude());
+		double lon = reg.getLeftLongitude() + rnd.nextDouble() * (reg.getRightLongitude() - reg.getLeftLongitude());
+		return new LatLon(lat, lon);
+	}
+}
@@ -0,0 +1,73 @@
+package net.osmand.router;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.TestMapReaders;
+import net.osmand.data.LatLon;
+import net.osmand.router.RouteMatrixCalculator.RouteMatrix;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Calculates matrix between random points sequentially and in parallel, compares matrix times with A* routes
+ * (matrix doesn't count turn time, so it can't be slower).
+ */
+public class RouteMatrixCalculatorTest {
+
+	private static final int SOURCES = 4;
+	private static final int TARGETS = 6;
+
+	@Rule
+	public final TestMapReaders maps = new TestMapReaders();
+
+	@Test
+	public void testMatrix() throws Exception {
+		BinaryMapIndexReader[] readers = { maps.openRoutingMap() };
+		RouteRegion reg = readers[0].getRoutingIndexes().get(0);
+		RoutingConfiguration config = RoutingConfiguration.getDefault().build("car",
+				new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+						RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT), new HashMap<String, String>());
+		Random rnd = new Random(7);
+		List<LatLon> sources = randomLocations(reg, rnd, SOURCES);
+		List<LatLon> targets = randomLocations(reg, rnd, TARGETS);
+		RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+
+		RouteMatrixCalculator calculator = new RouteMatrixCalculator();
+		RouteMatrix matrix = calculator.calculate(fe.buildRoutingContext(config, null, readers,
+				RoutePlannerFrontEnd.RouteCalculationMode.NORMAL), sources, targets);
+		calculator.setParallelism(3, null);
+		RouteMatrix parallel = calculator.calculate(fe.buildRoutingContext(config, null, readers,
+				RoutePlannerFrontEnd.RouteCalculationMode.NORMAL), sources, targets);
+		for (int i = 0; i < SOURCES; i++) {
+			Assert.assertArrayEquals(matrix.times[i], parallel.times[i], 0f);
+			Assert.assertArrayEquals(matrix.distances[i], parallel.distances[i], 0f);
+			for (int j = 0; j < TARGETS; j++) {
+				RoutingContext ctx = fe.buildRoutingContext(config, null, readers,
+						RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+				List<RouteSegmentResult> res = fe.searchRoute(ctx, sources.get(i), targets.get(j), null);
+				if (res != null && !res.isEmpty()) {
+					Assert.assertTrue(matrix.times[i][j] != RouteMatrixCalculator.UNREACHABLE);
+					Assert.assertTrue(matrix.times[i][j] + " > " + ctx.routingTime, matrix.times[i][j] <= ctx.routingTime + 5);
+				}
+			}
+		}
+	}
+
+	private List<LatLon> randomLocations(RouteRegion reg, Random rnd, int count) {
+		List<LatLon> res = new ArrayList<LatLon>();
+		for (int i = 0; i < count; i++) {
+			double lat = reg.getBottomLatitude() + rnd.nextDouble() * (reg.getTopLatitude() - reg.getBottomLatitude());
+			double lon = reg.getLeftLongitude() + rnd.nextDouble() * (reg.getRightLongitude() - reg.getLeftLongitude());
+			res.add(new LatLon(lat, lon));
+		}
+		return res;
+	}
+}
@@ -0,0 +1,113 @@
+package net.osmand.router;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares sequential and parallel preparation (time, speed and turns) of long synthetic route
+ * with turn lanes which are propagated through short segments between chunks.
+ */
+public class RouteResultPreparationParallelTest {
+
+	private static final String[] TURN_LANES = { "left|through|through|right", "through|through|right",
+			"left|left;through|through", "left|through" };
+
+	@Test
+	public void testParallelPreparationEqualsSequential() {
+		for (int seed = 0; seed < 5; seed++) {
+			List<RouteSegmentResult> sequential = createRoute(seed);
+			List<RouteSegmentResult> parallel = createRoute(seed);
+			prepare(sequential, 1);
+			prepare(parallel, 4);
+			Assert.assertEquals(sequential.size(), parallel.size());
+			for (int i = 0; i < sequential.size(); i++) {
+				assertEquals(i, sequential.get(i), parallel.get(i));
+			}
+		}
+	}
+
+	private void prepare(List<RouteSegmentResult> result, int parallelism) {
+		RoutingConfiguration config = new RoutingConfiguration();
+		config.router = new GeneralRouter(GeneralRouterProfile.CAR, new LinkedHashMap<String, String>());
+		config.preparationParallelism = parallelism;
+		RoutingContext ctx = new RoutingContext(config, null, new BinaryMapIndexReader[0], RouteCalculationMode.NORMAL);
+		RouteResultPreparation.calculateTimeSpeed(ctx, result);
+		new RouteResultPreparation().prepareTurnResults(ctx, result);
+	}
+
+	private void assertEquals(int i, RouteSegmentResult exp, RouteSegmentResult act) {
+		String msg = "Segment " + i;
+		Assert.assertEquals(msg, exp.getDistance(), act.getDistance(), 0);
+		Assert.assertEquals(msg, exp.getSegmentTime(), act.getSegmentTime(), 0);
+		Assert.assertEquals(msg, exp.getSegmentSpeed(), act.getSegmentSpeed(), 0);
+		Assert.assertEquals(msg, exp.getDescription(), act.getDescription());
+		if (exp.getTurnType() == null || act.getTurnType() == null) {
+			Assert.assertEquals(msg, exp.getTurnType(), act.getTurnType());
+			return;
+		}
+		Assert.assertEquals(msg, exp.getTurnType().toXmlString(), act.getTurnType().toXmlString());
+		Assert.assertEquals(msg, exp.getTurnType().getTurnAngle(), act.getTurnType().getTurnAngle(), 0);
+		Assert.assertEquals(msg, exp.getTurnType().isSkipToSpeak(), act.getTurnType().isSkipToSpeak());
+		Assert.assertTrue(msg, Arrays.equals(exp.getTurnType().getLanes(), act.getTurnType().getLanes()));
+	}
+
+	private List<RouteSegmentResult> createRoute(int seed) {
+		Random rnd = new Random(seed);
+		RouteRegion reg = new RouteRegion();
+		reg.initRouteEncodingRule(0, "highway", "primary");
+		reg.initRouteEncodingRule(1, "oneway", "yes");
+		reg.initRouteEncodingRule(2, "highway", "secondary");
+		for (int k = 0; k < TURN_LANES.length; k++) {
+			reg.initRouteEncodingRule(3 + k, "turn:lanes", TURN_LANES[k]);
+		}
+		List<RouteSegmentResult> result = new ArrayList<RouteSegmentResult>();
+		int x = 1 << 30;
+		int y = 1 << 30;
+		double angle = 0;
+		long id = 1;
+		for (int i = 0; i < 2000; i++) {
+			// mostly short segments, so lanes of previous turn are used by next turn
+			int len = 1000 + rnd.nextInt(rnd.nextInt(5) == 0 ? 20000 : 3000);
+			angle += rnd.nextInt(3) == 0 ? (rnd.nextDouble() - 0.5) * Math.PI * 1.5 : (rnd.nextDouble() - 0.5) * 0.2;
+			int mx = x + (int) (len * Math.cos(angle) / 2);
+			int my = y + (int) (len * Math.sin(angle) / 2);
+			int ex = x + (int) (len * Math.cos(angle));
+			int ey = y + (int) (len * Math.sin(angle));
+			int[] types = rnd.nextInt(3) == 0 ? new int[] { 0, 1, 3 + rnd.nextInt(TURN_LANES.length) } : new int[] { 0, 1 };
+			RouteDataObject road = createRoad(reg, id++, types, new int[] { x, mx, ex }, new int[] { y, my, ey });
+			RouteSegmentResult segment = new RouteSegmentResult(road, 0, 2);
+			if (i > 0 && rnd.nextBoolean()) {
+				// side road at the start of segment
+				double sideAngle = angle + (rnd.nextBoolean() ? 1 : -1) * (0.3 + rnd.nextDouble());
+				RouteDataObject side = createRoad(reg, id++, new int[] { 2 }, new int[] { x, x + (int) (5000 * Math.cos(sideAngle)) },
+						new int[] { y, y + (int) (5000 * Math.sin(sideAngle)) });
+				segment.attachRoute(0, new RouteSegmentResult(side, 0, 1));
+			}
+			result.add(segment);
+			x = ex;
+			y = ey;
+		}
+		return result;
+	}
+
+	private RouteDataObject createRoad(RouteRegion reg, long id, int[] types, int[] xs, int[] ys) {
+		RouteDataObject road = new RouteDataObject(reg);
+		road.id = id << RouteResultPreparation.SHIFT_ID;
+		road.types = types;
+		road.pointsX = xs;
+		road.pointsY = ys;
+		return road;
+	}
+}
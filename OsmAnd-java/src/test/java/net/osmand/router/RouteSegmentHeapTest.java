@@ -0,0 +1,167 @@
+package net.osmand.router;
+
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Checks RouteSegmentHeap against java.util.PriorityQueue and prints timings of both open sets
+ * on synthetic A* like workload (poll one, add several with occasional decrease-key).
+ */
+public class RouteSegmentHeapTest {
+
+	private static final float HEURISTIC_COEFFICIENT = 1.5f;
+	private static final int OPERATIONS = 1000000;
+
+	private static RouteSegment segment(float distanceFromStart, float distanceToEnd) {
+		RouteSegment s = new RouteSegment(null, 0, 1);
+		s.distanceFromStart = distanceFromStart;
+		s.distanceToEnd = distanceToEnd;
+		return s;
+	}
+
+	private static class PriorityComparator implements Comparator<RouteSegment> {
+		@Override
+		public int compare(RouteSegment o1, RouteSegment o2) {
+			return BinaryRoutePlanner.roadPriorityComparator(o1.distanceFromStart, o1.distanceToEnd,
+					o2.distanceFromStart, o2.distanceToEnd, HEURISTIC_COEFFICIENT);
+		}
+	}
+
+	@Test
+	public void testPollOrderMatchesPriorityQueue() {
+		Random rnd = new Random(17);
+		RouteSegmentHeap heap = new RouteSegmentHeap(4, HEURISTIC_COEFFICIENT);
+		PriorityQueue<RouteSegment> queue = new PriorityQueue<RouteSegment>(4, new PriorityComparator());
+		for (int i = 0; i < 20000; i++) {
+			if (rnd.nextInt(3) == 0 && !queue.isEmpty()) {
+				RouteSegment h = heap.poll();
+				RouteSegment q = queue.poll();
+				// heap stores float keys, so equal priorities could differ in rounding
+				Assert.assertEquals(heap.priority(q), heap.priority(h), 0.01f);
+			} else {
+				RouteSegment s = segment(rnd.nextInt(100000) / 10f, rnd.nextInt(100000) / 10f);
+				heap.add(s);
+				queue.add(s);
+			}
+			Assert.assertEquals(queue.size(), heap.size());
+		}
+		float prev = -1;
+		while (!heap.isEmpty()) {
+			float p = heap.peekPriority();
+			Assert.assertTrue(prev <= p);
+			Assert.assertEquals(heap.priority(queue.poll()), heap.priority(heap.poll()), 0.01f);
+			prev = p;
+		}
+		Assert.assertNull(heap.poll());
+	}
+
+	@Test
+	public void testDecreaseKeyAndRemove() {
+		RouteSegmentHeap heap = new RouteSegmentHeap(HEURISTIC_COEFFICIENT);
+		List<RouteSegment> segments = new ArrayList<RouteSegment>();
+		for (int i = 0; i < 100; i++) {
+			RouteSegment s = segment(100 + i, 0);
+			segments.add(s);
+			Assert.assertTrue(heap.add(s));
+		}
+		RouteSegment last = segments.get(99);
+		last.distanceFromStart = 1;
+		Assert.assertTrue(heap.add(last));
+		Assert.assertEquals(100, heap.size());
+		Assert.assertSame(last, heap.peek());
+		// higher priority doesn't replace queued entry
+		last.distanceFromStart = 1000;
+		Assert.assertFalse(heap.add(last));
+		Assert.assertEquals(1f, heap.peekPriority(), 0f);
+
+		Assert.assertTrue(heap.remove(segments.get(50)));
+		Assert.assertFalse(heap.remove(segments.get(50)));
+		Assert.assertFalse(heap.contains(segments.get(50)));
+		Assert.assertSame(last, heap.poll());
+		Assert.assertFalse(heap.contains(last));
+		int cnt = 0;
+		float prev = -1;
+		while (!heap.isEmpty()) {
+			float p = heap.peekPriority();
+			Assert.assertTrue(prev <= p);
+			Assert.assertNotSame(segments.get(50), heap.poll());
+			prev = p;
+			cnt++;
+		}
+		Assert.assertEquals(98, cnt);
+	}
+
+	@Test
+	public void testOpenSetTimings() {
+		RouteSegment[] pool = new RouteSegment[OPERATIONS];
+		Random rnd = new Random(23);
+		for (int i = 0; i < pool.length; i++) {
+			pool[i] = segment(0, rnd.nextFloat() * 1000);
+		}
+		long t = System.nanoTime();
+		PriorityQueue<RouteSegment> queue = new PriorityQueue<RouteSegment>(50, new PriorityComparator());
+		int polledQueue = runQueue(queue, pool);
+		long queueTime = System.nanoTime() - t;
+		for (RouteSegment s : pool) {
+			s.distanceFromStart = 0;
+		}
+		t = System.nanoTime();
+		RouteSegmentHeap heap = new RouteSegmentHeap(50, HEURISTIC_COEFFICIENT);
+		int polledHeap = runHeap(heap, pool);
+		long heapTime = System.nanoTime() - t;
+		System.out.println(String.format("PriorityQueue %.2f ms (polled %d), RouteSegmentHeap %.2f ms (polled %d)",
+				queueTime / 1e6, polledQueue, heapTime / 1e6, polledHeap));
+		Assert.assertTrue(polledHeap <= polledQueue);
+	}
+
+	private int runQueue(PriorityQueue<RouteSegment> queue, RouteSegment[] pool) {
+		int polled = 0;
+		int next = 0;
+		queue.add(pool[next++]);
+		while (!queue.isEmpty()) {
+			RouteSegment s = queue.poll();
+			polled++;
+			for (int k = 0; k < 3 && next < pool.length; k++) {
+				RouteSegment n = pool[next++];
+				n.distanceFromStart = s.distanceFromStart + 1;
+				queue.add(n);
+			}
+			if (next > 10 && next < pool.length) {
+				// segment found again with shorter path is queued twice
+				RouteSegment n = pool[next - 10];
+				n.distanceFromStart = s.distanceFromStart;
+				queue.add(n);
+			}
+		}
+		return polled;
+	}
+
+	private int runHeap(RouteSegmentHeap heap, RouteSegment[] pool) {
+		int polled = 0;
+		int next = 0;
+		heap.add(pool[next++]);
+		while (!heap.isEmpty()) {
+			RouteSegment s = heap.poll();
+			polled++;
+			for (int k = 0; k < 3 && next < pool.length; k++) {
+				RouteSegment n = pool[next++];
+				n.distanceFromStart = s.distanceFromStart + 1;
+				heap.add(n);
+			}
+			if (next > 10 && next < pool.length) {
+				RouteSegment n = pool[next - 10];
+				n.distanceFromStart = s.distanceFromStart;
+				heap.add(n);
+			}
+		}
+		return polled;
+	}
+}
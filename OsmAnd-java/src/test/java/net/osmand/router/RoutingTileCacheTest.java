@@ -0,0 +1,134 @@
+package net.osmand.router;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.binary.TestMapReaders;
+import net.osmand.binary.TestMapReaders.RoadsLoader;
+import net.osmand.osm.MapPoiTypes;
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+import net.osmand.router.GeneralRouter.RouteDataObjectAttribute;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks sharing of cached tiles by router key, access of cached roads and eviction by routing memory limit.
+ */
+public class RoutingTileCacheTest {
+
+	private int reads;
+
+	@Rule
+	public final TestMapReaders maps = new TestMapReaders();
+
+	@BeforeClass
+	public static void setUp() {
+		MapPoiTypes.setDefault(new MapPoiTypes("src/test/resources/poi_types.xml"));
+	}
+
+	@Test
+	public void testTileCache() throws IOException {
+		final RouteRegion reg = new RouteRegion();
+		reg.initRouteEncodingRule(0, "highway", "primary");
+		reg.initRouteEncodingRule(1, "highway", "footway");
+		BinaryMapIndexReader reader = maps.createRoutingReader(reg, new RoadsLoader() {
+			@Override
+			public List<RouteDataObject> loadRoads(RouteSubregion rs) {
+				reads++;
+				List<RouteDataObject> res = new ArrayList<RouteDataObject>();
+				for (int i = 0; i < 10; i++) {
+					RouteDataObject ro = new RouteDataObject(reg);
+					ro.id = rs.filePointer * 100 + i;
+					ro.types = new int[] { i % 2 };
+					ro.pointsX = new int[100];
+					ro.pointsY = new int[100];
+					res.add(ro);
+				}
+				return res;
+			}
+		});
+		GeneralRouter base = createRouter();
+		RoutingConfiguration config = createConfig(new GeneralRouter(base, Collections.<String, String>emptyMap()));
+		RoutingTileCache cache = new RoutingTileCache();
+		RoutingTileCache.CachedTile tile = cache.getTile(reader, subregion(reg, 1), config);
+		Assert.assertEquals(10, tile.objects.length);
+		// footways are not accessible
+		Assert.assertEquals(5, tile.accepted.cardinality());
+		Assert.assertFalse(tile.accepted.get(1));
+
+		// router of other context with the same parameters shares tile
+		RoutingConfiguration other = createConfig(new GeneralRouter(base, Collections.<String, String>emptyMap()));
+		Assert.assertSame(tile, cache.getTile(reader, subregion(reg, 1), other));
+		Assert.assertEquals(1, reads);
+		Assert.assertEquals(1, cache.getHits());
+
+		// changed router doesn't use tiles of previous router state
+		other.router.addAttribute("minSpeed", "10");
+		Assert.assertNotSame(tile, cache.getTile(reader, subregion(reg, 1), other));
+		Map<String, String> params = new HashMap<String, String>();
+		params.put("avoid_footways", "true");
+		RoutingConfiguration withParams = createConfig(new GeneralRouter(base, params));
+		Assert.assertNotSame(tile, cache.getTile(reader, subregion(reg, 1), withParams));
+		Assert.assertEquals(3, reads);
+
+		// cache is limited by memory limit of routing
+		config.memoryLimitation = tile.estimatedSize * 2;
+		for (int i = 2; i < 10; i++) {
+			cache.getTile(reader, subregion(reg, i), config);
+		}
+		Assert.assertTrue(cache.getEstimatedSize() <= config.memoryLimitation);
+		Assert.assertEquals(2, cache.getTilesCount());
+		Assert.assertEquals(9, cache.getEvictions());
+	}
+
+	@Test
+	public void testRouterKey() {
+		GeneralRouter base = createRouter();
+		Map<String, String> params = new HashMap<String, String>();
+		params.put("avoid_footways", "true");
+		GeneralRouter router = new GeneralRouter(base, params);
+		Assert.assertEquals(router.getRouterKey(), new GeneralRouter(base, params).getRouterKey());
+		Assert.assertEquals(router.getRouterKey(), router.copyWithOwnCaches().getRouterKey());
+		Assert.assertEquals(router.getRouterKey(), new GeneralRouter(createRouter(), params).getRouterKey());
+		Assert.assertNotEquals(router.getRouterKey(), base.getRouterKey());
+
+		String key = base.getRouterKey();
+		base.getObjContext(RouteDataObjectAttribute.ROAD_SPEED).registerNewRule("30", "speed");
+		Assert.assertNotEquals(key, base.getRouterKey());
+		key = base.getRouterKey();
+		base.addAttribute("maxSpeed", "100");
+		Assert.assertNotEquals(key, base.getRouterKey());
+	}
+
+	private GeneralRouter createRouter() {
+		GeneralRouter router = new GeneralRouter(GeneralRouterProfile.CAR, new HashMap<String, String>());
+		router.getObjContext(RouteDataObjectAttribute.ACCESS).registerNewRule("-1", "access");
+		router.getObjContext(RouteDataObjectAttribute.ACCESS).getLastRule().registerAndTagValueCondition("highway",
+				"footway", false);
+		return router;
+	}
+
+	private RoutingConfiguration createConfig(GeneralRouter router) {
+		RoutingConfiguration config = new RoutingConfiguration();
+		config.router = router;
+		config.memoryLimitation = RoutingConfiguration.DEFAULT_MEMORY_LIMIT * (1l << 20);
+		return config;
+	}
+
+	private RouteSubregion subregion(RouteRegion reg, int filePointer) {
+		RouteSubregion sub = new RouteSubregion(reg);
+		sub.filePointer = filePointer;
+		return sub;
+	}
+}
@@ -0,0 +1,62 @@
+package net.osmand.router;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks histograms, metrics sink and Chrome trace export of routing trace.
+ */
+public class RoutingTraceTest {
+
+	@Test
+	public void testTrace() {
+		final List<String> recorded = new ArrayList<String>();
+		RoutingTrace trace = new RoutingTrace("test route");
+		trace.setSink(new RoutingTrace.MetricsSink() {
+			@Override
+			public void recordTime(String metric, String tag, long nanos) {
+				recorded.add(metric + " " + tag);
+			}
+
+			@Override
+			public void recordValue(String metric, String tag, double value) {
+				recorded.add(metric + " " + tag + " " + (int) value);
+			}
+		});
+		trace.complete(RoutingTrace.CATEGORY_TILES, "load", "a.obf", System.nanoTime() - 3000000);
+		trace.complete(RoutingTrace.CATEGORY_TILES, "load", "a.obf", "subregion 1", System.nanoTime() - 1000000);
+		for (int i = 0; i < 99; i++) {
+			trace.addTime(RoutingTrace.CATEGORY_ROUTER, "segmentTime", null, 1500);
+		}
+		trace.addTime(RoutingTrace.CATEGORY_ROUTER, "segmentTime", null, 5000000);
+		trace.counter(RoutingTrace.CATEGORY_ROUTING, "queue", new String[] { "direct", "reverse" }, new double[] { 10, 20 });
+
+		RoutingTrace.TimeHistogram load = trace.getHistograms().get("tiles.load [a.obf]");
+		Assert.assertEquals(2, load.getCount());
+		Assert.assertTrue(load.getMaxNanos() >= 3000000);
+		RoutingTrace.TimeHistogram router = trace.getHistograms().get("router.segmentTime");
+		Assert.assertEquals(100, router.getCount());
+		Assert.assertEquals(2, router.getPercentileMicros(0.5));
+		Assert.assertEquals(8192, router.getPercentileMicros(1));
+		Assert.assertEquals(104, recorded.size());
+		Assert.assertEquals("routing.queue reverse 20", recorded.get(recorded.size() - 1));
+
+		JSONObject json = new JSONObject(trace.toChromeTrace().toString());
+		JSONArray events = json.getJSONArray("traceEvents");
+		// process name, 2 phases and counter (aggregated times are not events)
+		Assert.assertEquals(4, events.length());
+		JSONObject phase = events.getJSONObject(2);
+		Assert.assertEquals("X", phase.getString("ph"));
+		Assert.assertEquals("subregion 1", phase.getJSONObject("args").getString("detail"));
+		Assert.assertTrue(phase.getDouble("dur") >= 1000);
+		JSONObject counter = events.getJSONObject(3);
+		Assert.assertEquals("C", counter.getString("ph"));
+		Assert.assertEquals(20, counter.getJSONObject("args").getInt("reverse"));
+		Assert.assertTrue(json.getJSONObject("otherData").getJSONObject("histograms").has("router.segmentTime"));
+	}
+}
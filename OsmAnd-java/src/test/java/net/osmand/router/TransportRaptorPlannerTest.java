@@ -0,0 +1,110 @@
+package net.osmand.router;
+
+import net.osmand.data.LatLon;
+import net.osmand.data.TransportRoute;
+import net.osmand.data.TransportSchedule;
+import net.osmand.data.TransportStop;
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Checks RAPTOR results on small synthetic network: slow direct route with many stops and
+ * two fast routes with change between them (faster but with more changes, so both are Pareto optimal).
+ */
+public class TransportRaptorPlannerTest {
+
+	private static final double LAT = 52.0;
+	private static final double START_LON = 4.0;
+	private static final double END_LON = 4.1;
+
+	private long ids = 1;
+
+	@Test
+	public void testParetoRoutes() {
+		TransportRoutingConfiguration cfg = createConfiguration();
+		List<TransportStop> slowStops = new ArrayList<TransportStop>();
+		for (int i = 0; i <= 50; i++) {
+			slowStops.add(createStop(START_LON + i * 0.002));
+		}
+		TransportStop changeStop = createStop(START_LON + 0.05);
+		TransportRoute slow = createRoute(slowStops);
+		TransportRoute fast1 = createRoute(Arrays.asList(slowStops.get(0), changeStop));
+		TransportRoute fast2 = createRoute(Arrays.asList(changeStop, slowStops.get(50)));
+
+		TransportTimetable tt = TransportTimetable.build(cfg, Arrays.asList(slow, fast1, fast2));
+		Assert.assertEquals(3, tt.getRoutesCount());
+		Assert.assertEquals(52, tt.getStopsCount());
+		List<TransportRouteResult> res = new TransportRaptorPlanner().buildRoute(new TransportRoutingContext(cfg, null),
+				tt, new LatLon(LAT, START_LON), new LatLon(LAT, END_LON));
+
+		Assert.assertEquals(2, res.size());
+		TransportRouteResult fast = res.get(0);
+		Assert.assertEquals(2, fast.getSegments().size());
+		Assert.assertEquals(fast1, fast.getSegments().get(0).route);
+		Assert.assertEquals(fast2, fast.getSegments().get(1).route);
+		Assert.assertEquals(1, fast.getSegments().get(1).end);
+		TransportRouteResult direct = res.get(1);
+		Assert.assertEquals(1, direct.getSegments().size());
+		Assert.assertEquals(slow, direct.getSegments().get(0).route);
+		Assert.assertEquals(0, direct.getSegments().get(0).start);
+		Assert.assertEquals(50, direct.getSegments().get(0).end);
+		Assert.assertTrue(fast.getRouteTime() < direct.getRouteTime());
+		double travel = fast.getSegments().get(0).travelTime + fast.getSegments().get(1).travelTime;
+		Assert.assertEquals(travel + cfg.getChangeTime() + cfg.getBoardingTime(), fast.getRouteTime(), 2);
+	}
+
+	@Test
+	public void testSchedule() {
+		TransportRoutingConfiguration cfg = createConfiguration();
+		cfg.useSchedule = true;
+		List<TransportStop> stops = new ArrayList<TransportStop>();
+		for (int i = 0; i <= 10; i++) {
+			stops.add(createStop(START_LON + i * 0.01));
+		}
+		TransportRoute route = createRoute(stops);
+		TIntArrayList stopIntervals = new TIntArrayList();
+		for (int i = 0; i < 10; i++) {
+			stopIntervals.add(6);
+		}
+		// trips depart 5 and 15 minutes after calculation time
+		route.setSchedule(new TransportSchedule(new TIntArrayList(new int[] { cfg.scheduleTimeOfDay + 30, 60 }),
+				stopIntervals, new TIntArrayList()));
+
+		TransportTimetable tt = TransportTimetable.build(cfg, Arrays.asList(route));
+		List<TransportRouteResult> res = new TransportRaptorPlanner().buildRoute(new TransportRoutingContext(cfg, null),
+				tt, new LatLon(LAT, START_LON), new LatLon(LAT, END_LON));
+		Assert.assertEquals(1, res.size());
+		Assert.assertEquals(300 + 10 * 60, res.get(0).getRouteTime(), 0);
+		Assert.assertEquals(cfg.scheduleTimeOfDay + 30, res.get(0).getSegments().get(0).depTime);
+	}
+
+	private TransportRoutingConfiguration createConfiguration() {
+		TransportRoutingConfiguration cfg = new TransportRoutingConfiguration(null, new LinkedHashMap<String, String>());
+		cfg.router = new GeneralRouter(GeneralRouterProfile.PUBLIC_TRANSPORT, new LinkedHashMap<String, String>());
+		return cfg;
+	}
+
+	private TransportStop createStop(double lon) {
+		TransportStop stop = new TransportStop();
+		stop.setId(ids++);
+		stop.setLocation(LAT, lon);
+		return stop;
+	}
+
+	private TransportRoute createRoute(List<TransportStop> stops) {
+		TransportRoute route = new TransportRoute();
+		route.setId(ids++);
+		route.setType("bus");
+		route.setForwardStops(new ArrayList<TransportStop>(stops));
+		return route;
+	}
+}
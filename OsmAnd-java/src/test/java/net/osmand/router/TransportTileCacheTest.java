@@ -0,0 +1,80 @@
+package net.osmand.router;
+
+import net.osmand.data.TransportRoute;
+import net.osmand.data.TransportStop;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Checks stop to route index of cached transport tiles, sharing of tiles and eviction by memory limit.
+ */
+public class TransportTileCacheTest {
+
+	private int reads;
+
+	@Test
+	public void testStopRouteIndex() throws IOException {
+		final List<TransportStop> stops = new ArrayList<TransportStop>();
+		for (int i = 0; i < 4; i++) {
+			TransportStop stop = new TransportStop();
+			stop.setId((long) i + 1);
+			stop.setLocation(52.0, 4.0 + i * 0.01);
+			stops.add(stop);
+		}
+		TransportRoute r1 = createRoute(10, stops);
+		TransportRoute r2 = createRoute(20, Arrays.asList(stops.get(3), stops.get(1)));
+		for (TransportStop stop : stops) {
+			stop.addRoute(r1);
+		}
+		stops.get(1).addRoute(r2);
+		stops.get(3).addRoute(r2);
+		TransportTileCache.TileLoader loader = new TransportTileCache.TileLoader() {
+			@Override
+			public Collection<TransportStop> readStops(int x, int y) {
+				reads++;
+				return stops;
+			}
+		};
+
+		TransportTileCache cache = new TransportTileCache(1 << 20);
+		TransportTileCache.CachedTile tile = cache.getTile("a", 12, 1, 2, loader);
+		Assert.assertSame(tile, cache.getTile("a", 12, 1, 2, loader));
+		Assert.assertEquals(1, reads);
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(2, tile.routes.length);
+		Assert.assertEquals(4, tile.stops.length);
+		// stop 2 is 2nd stop of r1 and 2nd stop of r2
+		Assert.assertEquals(2, tile.stopStart[2] - tile.stopStart[1]);
+		Assert.assertSame(r1, tile.routes[tile.stopRoutes[tile.stopStart[1]]]);
+		Assert.assertEquals(1, tile.stopIndexes[tile.stopStart[1]]);
+		Assert.assertSame(r2, tile.routes[tile.stopRoutes[tile.stopStart[1] + 1]]);
+		Assert.assertEquals(1, tile.stopIndexes[tile.stopStart[1] + 1]);
+		// stop 4 is first stop of r2
+		Assert.assertEquals(0, tile.stopIndexes[tile.stopStart[3] + 1]);
+
+		// other files are different tiles
+		cache.getTile("b", 12, 1, 2, loader);
+		Assert.assertEquals(2, reads);
+		Assert.assertEquals(2, cache.getTilesCount());
+
+		TransportTileCache small = new TransportTileCache(tile.estimatedSize);
+		small.getTile("a", 12, 1, 2, loader);
+		small.getTile("a", 12, 2, 1, loader);
+		Assert.assertEquals(1, small.getTilesCount());
+		Assert.assertEquals(1, small.getEvictions());
+	}
+
+	private TransportRoute createRoute(long id, List<TransportStop> stops) {
+		TransportRoute route = new TransportRoute();
+		route.setId(id);
+		route.setForwardStops(new ArrayList<TransportStop>(stops));
+		return route;
+	}
+}
@@ -0,0 +1,237 @@
+package net.osmand.search;
+
+import net.osmand.ResultMatcher;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.TestMapReaders;
+import net.osmand.data.LatLon;
+import net.osmand.search.SearchUICore.RegionSearchTask;
+import net.osmand.search.SearchUICore.SearchResultComparator;
+import net.osmand.search.SearchUICore.SearchResultMatcher;
+import net.osmand.search.core.ObjectType;
+import net.osmand.search.core.SearchCoreFactory.SearchBaseAPI;
+import net.osmand.search.core.SearchPhrase;
+import net.osmand.search.core.SearchPhrase.UnknownWordsMatchers;
+import net.osmand.search.core.SearchResult;
+import net.osmand.search.core.SearchSettings;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that maps searched in parallel publish the same results in the same order as search of maps one by one
+ * and that search with total limit keeps the best results.
+ */
+public class SearchResultMatcherTest {
+
+	private static final int REGIONS = 20;
+	private static final int RESULTS = 30;
+
+	@Rule
+	public final TestMapReaders maps = new TestMapReaders();
+
+	@BeforeClass
+	public static void setUp() {
+		SearchUICoreTest.defaultSetup();
+	}
+
+	@Test
+	public void testParallelRegionsSearch() throws IOException {
+		List<BinaryMapIndexReader> regions = createRegions();
+		SearchSettings settings = new SearchSettings(regions);
+		SearchPhrase phrase = SearchPhrase.emptyPhrase(settings).generateNewPhrase("test", settings);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<String> sequential = search(phrase, regions, null, -1, -1);
+			Assert.assertEquals(REGIONS + REGIONS * RESULTS * 3 / 4, sequential.size());
+			Assert.assertEquals(sequential, search(phrase, regions, executor, -1, -1));
+			// total limit
+			Assert.assertEquals(search(phrase, regions, null, 50, -1), search(phrase, regions, executor, 50, -1));
+			// cancelled after 100 results
+			List<String> cancelled = search(phrase, regions, executor, -1, 100);
+			Assert.assertTrue(cancelled.size() <= 100 + REGIONS);
+			Assert.assertEquals(sequential.subList(0, cancelled.size()), cancelled);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testTopResults() {
+		SearchSettings settings = new SearchSettings(new ArrayList<BinaryMapIndexReader>());
+		SearchPhrase phrase = SearchPhrase.emptyPhrase(settings).generateNewPhrase("test", settings);
+		SearchResultMatcher matcher = new SearchResultMatcher(null, phrase, 1, new AtomicInteger(1), 51);
+		matcher.collectTopResults();
+		// raw results in order of publishing
+		SearchResultMatcher raw = new SearchResultMatcher(null, phrase, 1, new AtomicInteger(1), 51);
+		Random rnd = new Random(1);
+		List<SearchResult> all = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			SearchResult sr = new SearchResult(phrase);
+			sr.localeName = "result " + i;
+			sr.objectType = ObjectType.POI;
+			sr.priority = rnd.nextInt(100);
+			sr.location = new LatLon(50 + rnd.nextInt(100) * 0.01, 10);
+			all.add(sr);
+			matcher.publish(sr);
+			raw.publish(sr);
+			if (i % 10 == 0) {
+				// the same result found in other map
+				SearchResult same = new SearchResult(phrase);
+				same.localeName = sr.localeName;
+				same.objectType = sr.objectType;
+				same.priority = sr.priority;
+				same.location = new LatLon(sr.location.getLatitude() + 0.00001, 10);
+				matcher.publish(same);
+			}
+		}
+		Assert.assertEquals(all.subList(0, 50), raw.getRequestResults());
+		Assert.assertEquals(50, raw.getCount());
+		Collections.sort(all, new SearchResultComparator(phrase));
+		List<SearchResult> results = matcher.getRequestResults();
+		Assert.assertEquals(50, results.size());
+		Assert.assertEquals(50, matcher.getCount());
+		for (int i = 0; i < results.size(); i++) {
+			Assert.assertEquals(all.get(i).localeName, results.get(i).localeName);
+		}
+	}
+
+	@Test
+	public void testSkipRegionsByBestResult() throws IOException {
+		List<BinaryMapIndexReader> regions = createRegions();
+		SearchSettings settings = new SearchSettings(regions).setOriginalLocation(new LatLon(50, 10));
+		SearchPhrase phrase = SearchPhrase.emptyPhrase(settings).generateNewPhrase("test", settings);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			AtomicInteger searched = new AtomicInteger();
+			SearchResultMatcher sequential = searchByDistance(phrase, regions, null, searched);
+			// results of the first map are nearer than results of other maps
+			Assert.assertEquals(1, searched.get());
+			Assert.assertTrue(sequential.isLimitExceeded());
+			List<String> names = new ArrayList<>();
+			for (SearchResult sr : sequential.getRequestResults()) {
+				names.add(sr.localeName);
+			}
+			Assert.assertEquals(10, names.size());
+			for (int i = 0; i < 10; i++) {
+				Assert.assertEquals("result 0_" + i, names.get(i));
+			}
+			SearchResultMatcher parallel = searchByDistance(phrase, regions, executor, new AtomicInteger());
+			Assert.assertTrue(parallel.isLimitExceeded());
+			for (int i = 0; i < 10; i++) {
+				Assert.assertEquals(names.get(i), parallel.getRequestResults().get(i).localeName);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	// readers of the same empty map
+	private List<BinaryMapIndexReader> createRegions() throws IOException {
+		File file = maps.createMapFile();
+		List<BinaryMapIndexReader> regions = new ArrayList<>();
+		for (int i = 0; i < REGIONS; i++) {
+			regions.add(maps.openReader(file));
+		}
+		return regions;
+	}
+
+	private SearchResultMatcher searchByDistance(final SearchPhrase phrase, final List<BinaryMapIndexReader> regions,
+			ExecutorService executor, final AtomicInteger searched) throws IOException {
+		SearchResultMatcher matcher = new SearchResultMatcher(null, phrase, 1, new AtomicInteger(1), 11);
+		matcher.collectTopResults();
+		matcher.regionsExecutor = executor;
+		matcher.searchRegions(new SearchBaseAPI(ObjectType.POI) {}, phrase, regions.iterator(), new RegionSearchTask() {
+			@Override
+			public void search(BinaryMapIndexReader region, SearchResultMatcher regionMatcher) {
+				int ind = regions.indexOf(region);
+				searched.incrementAndGet();
+				for (int i = 0; i < RESULTS; i++) {
+					regionMatcher.publish(createResult(phrase, "result " + ind + "_" + i, 50 + ind * 0.1 + i * 0.001));
+				}
+			}
+
+			@Override
+			public SearchResult getBestResult(BinaryMapIndexReader region) {
+				return createResult(phrase, "", 50 + regions.indexOf(region) * 0.1);
+			}
+		});
+		return matcher;
+	}
+
+	private static SearchResult createResult(SearchPhrase phrase, String name, double lat) {
+		SearchResult sr = new SearchResult(phrase);
+		sr.localeName = name;
+		sr.objectType = ObjectType.POI;
+		sr.priority = 1;
+		sr.priorityDistance = 1;
+		sr.location = new LatLon(lat, 10);
+		return sr;
+	}
+
+	private List<String> search(final SearchPhrase phrase, final List<BinaryMapIndexReader> regions, ExecutorService executor,
+			int totalLimit, final int cancelAfter) throws IOException {
+		final List<String> published = new ArrayList<>();
+		ResultMatcher<SearchResult> rm = new ResultMatcher<SearchResult>() {
+			@Override
+			public boolean publish(SearchResult object) {
+				if (object.objectType == ObjectType.SEARCH_API_REGION_FINISHED) {
+					published.add("finished " + regions.indexOf(object.file));
+				} else {
+					published.add(object.localeName);
+				}
+				return true;
+			}
+
+			@Override
+			public boolean isCancelled() {
+				return cancelAfter != -1 && published.size() >= cancelAfter;
+			}
+		};
+		SearchResultMatcher matcher = new SearchResultMatcher(rm, phrase, 1, new AtomicInteger(1), totalLimit);
+		matcher.regionsExecutor = executor;
+		final Set<String> names = new HashSet<>();
+		matcher.searchRegions(new SearchBaseAPI(ObjectType.POI) {}, phrase, regions.iterator(), new RegionSearchTask() {
+			@Override
+			public void search(BinaryMapIndexReader region, SearchResultMatcher regionMatcher) throws IOException {
+				int ind = regions.indexOf(region);
+				Random rnd = new Random(ind);
+				// matchers of region thread aren't shared with other threads
+				UnknownWordsMatchers wm = phrase.createUnknownWordsMatchers();
+				for (int i = 0; i < RESULTS && !regionMatcher.isCancelled(); i++) {
+					SearchResult sr = new SearchResult(phrase);
+					// every second result is shared by 2 regions
+					sr.localeName = i % 2 == 0 ? "result " + ind + "_" + i : "shared " + (ind / 2) + "_" + i;
+					sr.objectType = ObjectType.POI;
+					wm.countUnknownWordsMatchMainResult(sr);
+					regionMatcher.publish(sr);
+					if (rnd.nextInt(10) == 0) {
+						Thread.yield();
+					}
+				}
+			}
+
+			@Override
+			public boolean accept(SearchResult result) {
+				return names.add(result.localeName);
+			}
+		});
+		if (totalLimit != -1) {
+			Assert.assertTrue(matcher.getRequestResults().size() < totalLimit);
+		}
+		return published;
+	}
+}
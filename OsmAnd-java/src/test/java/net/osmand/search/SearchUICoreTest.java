@@ -192,6 +192,7 @@ public class SearchUICoreTest {
 			} else {
 				phrase = emptyPhrase.generateNewPhrase(text, s);
 				searchResults = getSearchResult(phrase, rm, core);
+				checkTypedSearch(emptyPhrase, text, s, rm, searchResults);
 			}
 
 			for (int i = 0; i < result.size(); i++) {
@@ -234,6 +235,27 @@ public class SearchUICoreTest {
 		return collection.getCurrentSearchResults();
 	}
 
+	// search while typing last characters (previous results are refined) should find the same results
+	private void checkTypedSearch(SearchPhrase emptyPhrase, String text, SearchSettings s, ResultMatcher<SearchResult> rm,
+			List<SearchResult> searchResults) {
+		SearchUICore core = new SearchUICore(MapPoiTypes.getDefault(), "en", false);
+		core.init();
+		List<SearchResult> typedResults = null;
+		for (int len = Math.max(1, text.length() - 3); len <= text.length(); len++) {
+			SearchPhrase phrase = emptyPhrase.generateNewPhrase(text.substring(0, len), s);
+			typedResults = getSearchResult(phrase, rm, core);
+		}
+		Assert.assertEquals(formatResults(searchResults), formatResults(typedResults));
+	}
+
+	private List<String> formatResults(List<SearchResult> searchResults) {
+		List<String> res = new ArrayList<>();
+		for (SearchResult r : searchResults) {
+			res.add(r.toString().trim());
+		}
+		return res;
+	}
+
 	private void parseResults(JSONObject sourceJson, String tag, List<List<String>> results) {
 		List<String> result = results.get(0);
 		JSONArray resultsArr = sourceJson.getJSONArray(tag);